@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A deterministic benchmark for the Scheduler's solvers that runs without a server or a DB. It generates a guide of
+ * N channels x M days of back to back shows, picks K favorites (a channel and a time of day that record every day)
+ * and gives T tuners random channel lineups; the first tuner always gets every channel. The same seed always makes
+ * the same guide, so the schedule checksum it prints only changes when the scheduling results do.
+ *
+ * Usage: SchedulerBenchmark [channels] [days] [favorites] [tuners] [seed] [iterations]
+ *
+ * This is kept out of the java source tree so it never ends up in Sage.jar; compile it with the same sourcepath
+ * buildsage.sh uses. This needs the Sage native library on java.library.path like the rest of the core does.
+ */
+public class SchedulerBenchmark {
+  private static final long MINUTE = 60000L;
+  private static final long DAY = 24 * 60 * MINUTE;
+  // Fixed so the results don't depend on when this was run
+  private static final long GUIDE_START = 1420070400000L;
+  private static final int[] SHOW_LENGTHS = { 30, 30, 30, 60, 60, 90, 120 };
+  private static final Scheduler.EncoderFilter ANY_TUNER = new Scheduler.EncoderFilter() {
+    public boolean canRecord(Schedulable airing, int encoder) {
+      return true;
+    }
+  };
+  // Looked up reflectively since com.sun.management isn't on every JVM
+  private static final Object threadBean;
+  private static final java.lang.reflect.Method allocatedBytesMethod;
+  static {
+    Object bean = null;
+    java.lang.reflect.Method method = null;
+    try {
+      bean = java.lang.management.ManagementFactory.getThreadMXBean();
+      Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+      if (sunBean.isInstance(bean) &&
+          ((Boolean) sunBean.getMethod("isThreadAllocatedMemorySupported").invoke(bean)).booleanValue()) {
+        sunBean.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(bean, Boolean.TRUE);
+        method = sunBean.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (Throwable t) {
+      // Not every JVM has these
+    }
+    threadBean = bean;
+    allocatedBytesMethod = method;
+  }
+
+  static class BenchAiring implements Schedulable {
+    final int channel;
+    final long start;
+    final long duration;
+    // Where it is in the list of recordings, or -1
+    int index = -1;
+
+    BenchAiring(int channel, long start, long duration) {
+      this.channel = channel;
+      this.start = start;
+      this.duration = duration;
+    }
+
+    public long getSchedulingStart() {
+      return start;
+    }
+
+    public long getSchedulingDuration() {
+      return duration;
+    }
+
+    public long getSchedulingEnd() {
+      return start + duration;
+    }
+
+    @Override
+    public String toString() {
+      return "BenchAiring[ch=" + channel + " " + Sage.df(start) + " " + (duration / MINUTE) + "m]";
+    }
+  }
+
+  static class Result implements Scheduler.ScheduleCollector {
+    final int[] encoderForShow;
+    final BenchAiring[] shows;
+    int conflicts;
+    // What hasEnoughEncoders said
+    boolean enoughEncoders;
+
+    Result(BenchAiring[] shows) {
+      this.shows = shows;
+      encoderForShow = new int[shows.length];
+      Arrays.fill(encoderForShow, -1);
+    }
+
+    public void schedule(Schedulable airing, int encoder) {
+      encoderForShow[((BenchAiring) airing).index] = encoder;
+    }
+
+    public boolean conflictSchedule(Schedulable airing) {
+      conflicts++;
+      return true;
+    }
+
+    long checksum() {
+      long rv = enoughEncoders ? 17 : 19;
+      for (int i = 0; i < encoderForShow.length; i++) {
+        rv = rv * 31 + encoderForShow[i];
+      }
+      return rv;
+    }
+  }
+
+  public static void main(String[] args) {
+    int numChannels = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int numDays = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+    int numFavorites = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+    int numTuners = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+    int iterations = args.length > 5 ? Integer.parseInt(args[5]) : 20;
+
+    Random rand = new Random(seed);
+    List<List<BenchAiring>> guide = generateGuide(rand, numChannels, numDays);
+    final BenchAiring[] requests = pickFavorites(rand, guide, numFavorites, numDays);
+    final boolean[][] lineups = generateLineups(rand, numTuners, numChannels);
+    Scheduler.EncoderFilter filter = new Scheduler.EncoderFilter() {
+      public boolean canRecord(Schedulable airing, int encoder) {
+        return lineups[encoder][((BenchAiring) airing).channel];
+      }
+    };
+    int numAirings = 0;
+    for (List<BenchAiring> channel : guide) {
+      numAirings += channel.size();
+    }
+    System.out.println("guide: " + numChannels + " channels x " + numDays + " days = " + numAirings + " airings; " +
+        numFavorites + " favorites = " + requests.length + " recordings; " + numTuners + " tuners; seed=" + seed);
+
+    // Warm up the JIT on the same work we time
+    for (int i = 0; i < Math.max(1, iterations / 2); i++) {
+      runRestricted(requests, numTuners, filter);
+      runEqual(requests, numTuners);
+    }
+
+    Result restricted = null;
+    long startAlloc = getAllocatedBytes();
+    long startTime = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      restricted = runRestricted(requests, numTuners, filter);
+    }
+    report("restricted tuners", System.nanoTime() - startTime, getAllocatedBytes() - startAlloc, iterations);
+
+    Result equal = null;
+    startAlloc = getAllocatedBytes();
+    startTime = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      equal = runEqual(requests, numTuners);
+    }
+    report("equal tuners", System.nanoTime() - startTime, getAllocatedBytes() - startAlloc, iterations);
+
+    reportQuality("restricted tuners", restricted, numTuners, numDays);
+    reportQuality("equal tuners", equal, numTuners, numDays);
+    verify(restricted, filter);
+    verify(equal, null);
+  }
+
+  private static List<List<BenchAiring>> generateGuide(Random rand, int numChannels, int numDays) {
+    List<List<BenchAiring>> rv = new ArrayList<List<BenchAiring>>();
+    long end = GUIDE_START + numDays * DAY;
+    for (int c = 0; c < numChannels; c++) {
+      List<BenchAiring> channel = new ArrayList<BenchAiring>();
+      long time = GUIDE_START;
+      while (time < end) {
+        long duration = SHOW_LENGTHS[rand.nextInt(SHOW_LENGTHS.length)] * MINUTE;
+        channel.add(new BenchAiring(c, time, duration));
+        time += duration;
+      }
+      rv.add(channel);
+    }
+    return rv;
+  }
+
+  // Each favorite records whatever is on its channel at its time of day, every day; like a timeslot favorite
+  private static BenchAiring[] pickFavorites(Random rand, List<List<BenchAiring>> guide, int numFavorites, int numDays) {
+    List<BenchAiring> rv = new ArrayList<BenchAiring>();
+    for (int f = 0; f < numFavorites; f++) {
+      List<BenchAiring> channel = guide.get(rand.nextInt(guide.size()));
+      // Mostly prime time, since that's where the conflicts are
+      long timeOfDay = (rand.nextInt(4) == 0 ? rand.nextInt(24 * 60) : 19 * 60 + rand.nextInt(4 * 60)) * MINUTE;
+      int idx = 0;
+      for (int d = 0; d < numDays; d++) {
+        long time = GUIDE_START + d * DAY + timeOfDay;
+        while (idx < channel.size() && channel.get(idx).getSchedulingEnd() <= time) {
+          idx++;
+        }
+        if (idx < channel.size() && channel.get(idx).index < 0) {
+          channel.get(idx).index = rv.size();
+          rv.add(channel.get(idx));
+        }
+      }
+    }
+    return rv.toArray(new BenchAiring[rv.size()]);
+  }
+
+  private static boolean[][] generateLineups(Random rand, int numTuners, int numChannels) {
+    boolean[][] rv = new boolean[numTuners][numChannels];
+    Arrays.fill(rv[0], true);
+    for (int t = 1; t < numTuners; t++) {
+      for (int c = 0; c < numChannels; c++) {
+        rv[t][c] = rand.nextInt(10) < 7;
+      }
+    }
+    return rv;
+  }
+
+  private static Result runRestricted(BenchAiring[] requests, int numTuners, Scheduler.EncoderFilter filter) {
+    Result rv = new Result(requests);
+    rv.enoughEncoders = Scheduler.hasEnoughEncoders(requests, numTuners, filter, null);
+    Scheduler.generateSchedule(requests, numTuners, filter, rv, null);
+    return rv;
+  }
+
+  private static Result runEqual(BenchAiring[] requests, int numTuners) {
+    Result rv = new Result(requests);
+    rv.enoughEncoders = Scheduler.hasEnoughEncoders(requests, numTuners, ANY_TUNER, null);
+    BenchAiring[] sorted = requests.clone();
+    Arrays.sort(sorted, Schedulable.TIME_DURATION_COMPARATOR);
+    Scheduler.generateSchedule(sorted, numTuners, rv);
+    return rv;
+  }
+
+  private static long getAllocatedBytes() {
+    if (allocatedBytesMethod == null) {
+      return -1;
+    }
+    try {
+      return ((Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId())).longValue();
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private static void report(String name, long nanos, long allocated, int iterations) {
+    double msPerOp = nanos / 1000000.0 / iterations;
+    System.out.println(name + ": " + String.format("%.3f", msPerOp) + " ms/op, " +
+        String.format("%.1f", 1000 / msPerOp) + " ops/s, " +
+        (allocated < 0 ? "allocation unavailable" : (allocated / iterations) + " bytes/op"));
+  }
+
+  private static void reportQuality(String name, Result result, int numTuners, int numDays) {
+    int scheduled = 0;
+    long recordedTime = 0;
+    for (int i = 0; i < result.shows.length; i++) {
+      if (result.encoderForShow[i] >= 0) {
+        scheduled++;
+        recordedTime += result.shows[i].duration;
+      }
+    }
+    System.out.println(name + ": scheduled " + scheduled + "/" + result.shows.length + ", conflicts " +
+        result.conflicts + ", enough tuners " + result.enoughEncoders + ", tuner utilization " +
+        String.format("%.2f%%", 100.0 * recordedTime / (numTuners * numDays * DAY)) +
+        ", checksum " + Long.toHexString(result.checksum()));
+  }
+
+  // Makes sure nothing overlaps on the same tuner, that tuners only record what they can and that if everything got
+  // scheduled then hasEnoughEncoders didn't say there weren't enough tuners for it
+  private static void verify(Result result, Scheduler.EncoderFilter filter) {
+    boolean allScheduled = true;
+    for (int i = 0; i < result.shows.length; i++) {
+      int enc = result.encoderForShow[i];
+      if (enc < 0) {
+        allScheduled = false;
+        continue;
+      }
+      if (filter != null && !filter.canRecord(result.shows[i], enc)) {
+        throw new RuntimeException(result.shows[i] + " scheduled on tuner " + enc + " that can't record it; FAILED!");
+      }
+      for (int j = 0; j < i; j++) {
+        if (result.encoderForShow[j] == enc &&
+            result.shows[i].getSchedulingEnd() > result.shows[j].getSchedulingStart() &&
+            result.shows[i].getSchedulingStart() < result.shows[j].getSchedulingEnd()) {
+          throw new RuntimeException(result.shows[i] + " overlaps " + result.shows[j] + " on tuner " + enc +
+              "; FAILED!");
+        }
+      }
+    }
+    if (allScheduled && !result.enoughEncoders) {
+      throw new RuntimeException("Everything was scheduled but hasEnoughEncoders said there weren't enough tuners; FAILED!");
+    }
+  }
+}
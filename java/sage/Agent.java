@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -428,6 +429,17 @@ public class Agent extends DBObject implements Favorite
    */
   public synchronized Airing[] getRelatedAirings(DBObject[] allAirs, boolean mainCache, boolean controlCPUUsage,
       StringBuffer sbCache)
+  {
+    return getRelatedAirings(allAirs, null, mainCache, controlCPUUsage, sbCache);
+  }
+
+  /*
+   * If allAirSet is non-null it must contain the same Airings as allAirs. Then if this Agent has anything we can look
+   * up in the Show attribute index we only test the Airings of those Shows that are in allAirSet rather than testing
+   * every one of allAirs.
+   */
+  synchronized Airing[] getRelatedAirings(DBObject[] allAirs, Set<Airing> allAirSet, boolean mainCache,
+      boolean controlCPUUsage, StringBuffer sbCache)
   {
     if (allAirs == null) return Pooler.EMPTY_AIRING_ARRAY;
 
@@ -451,7 +463,7 @@ public class Agent extends DBObject implements Favorite
     boolean keywordTest = (this.agentMask&(LOVE_MASK|KEYWORD_MASK)) == (LOVE_MASK|KEYWORD_MASK);
     if(keywordTest) {
       // If we're only doing a keyword mask, speed it up via Lucene
-      Show[] shows = wiz.searchShowsByKeyword(getKeyword());
+      Show[] shows = wiz.searchShowsByKeyword(this);
       for (Show show : shows) {
         Airing[] airings = wiz.getAirings(show, 0);
         for(Airing a : airings) {
@@ -460,14 +472,27 @@ public class Agent extends DBObject implements Favorite
         }
       }
     } else {
-      for (int i = 0; i < allAirs.length; i++)
+      List<Airing> candidates = (allAirSet != null) ? getIndexedCandidates(allAirSet) : null;
+      if (candidates != null)
+      {
+        for (int i = 0; i < candidates.size(); i++)
+        {
+          Airing a = candidates.get(i);
+          if (followsTrend(a, true, sbCache))
+            rv.add(a);
+        }
+      }
+      else
       {
-        Airing a = (Airing) allAirs[i];
-        if (a == null) continue;
-        if (followsTrend(a, true, sbCache))
-          rv.add(a);
-        if ((i % CPU_CONTROL_MOD_COUNT) == 0 && controlCPUUsage)
-          try{Thread.sleep(Carny.SLEEP_PERIOD);}catch(Exception e){}
+        for (int i = 0; i < allAirs.length; i++)
+        {
+          Airing a = (Airing) allAirs[i];
+          if (a == null) continue;
+          if (followsTrend(a, true, sbCache))
+            rv.add(a);
+          if ((i % CPU_CONTROL_MOD_COUNT) == 0 && controlCPUUsage)
+            try{Thread.sleep(Carny.SLEEP_PERIOD);}catch(Exception e){}
+        }
       }
     }
     if (ENABLE_AGENT_AIRING_CACHE)
@@ -481,6 +506,80 @@ public class Agent extends DBObject implements Favorite
       return rv.toArray(Pooler.EMPTY_AIRING_ARRAY);
   }
 
+  /*
+   * Returns the Airings in allAirSet (or in the whole DB if that's null) that could possibly match this Agent, or null
+   * if there's nothing in this Agent we can narrow that down with. Title, person, categories, rated and year come from the Show attribute index; if none
+   * of those are set then channel and network are used to pick out the stations to look at. Everything this returns
+   * still needs to be checked with followsTrend.
+   */
+  List<Airing> getIndexedCandidates(Set<Airing> allAirSet)
+  {
+    int[] kinds = new int[6];
+    String[] values = new String[6];
+    int count = 0;
+    if (title != null)
+    {
+      kinds[count] = ShowAttributeIndex.TITLE;
+      values[count++] = ShowAttributeIndex.fold(title.name);
+    }
+    if (person != null)
+    {
+      kinds[count] = ShowAttributeIndex.PERSON;
+      values[count++] = ShowAttributeIndex.fold(person.name);
+    }
+    if (category != null)
+    {
+      kinds[count] = ShowAttributeIndex.CATEGORY;
+      values[count++] = ShowAttributeIndex.fold(category.name);
+    }
+    if (subCategory != null)
+    {
+      kinds[count] = ShowAttributeIndex.CATEGORY;
+      values[count++] = ShowAttributeIndex.fold(subCategory.name);
+    }
+    if (rated != null)
+    {
+      kinds[count] = ShowAttributeIndex.RATED;
+      values[count++] = ShowAttributeIndex.fold(rated.name);
+    }
+    if (year != null)
+    {
+      kinds[count] = ShowAttributeIndex.YEAR;
+      values[count++] = ShowAttributeIndex.fold(year.name);
+    }
+    List<Airing> rv = new ArrayList<Airing>();
+    if (count > 0)
+    {
+      int[] showIDs = wiz.getShowAttributeIndex().lookup(kinds, values, count);
+      for (int i = 0; i < showIDs.length; i++)
+      {
+        // This'll be null for the stale entries of Shows that were removed
+        Show s = wiz.getShowForID(showIDs[i]);
+        if (s == null) continue;
+        Airing[] airs = wiz.getAirings(s, 0);
+        for (int j = 0; j < airs.length; j++)
+          if (allAirSet == null || allAirSet.contains(airs[j]))
+            rv.add(airs[j]);
+      }
+    }
+    else if (chanNames != null || network != null)
+    {
+      Channel[] chans = wiz.getChannels();
+      for (int i = 0; i < chans.length; i++)
+      {
+        if ((chanNames != null && !chanNameMatches(chans[i].name)) || (network != null && network != chans[i].network))
+          continue;
+        Airing[] airs = wiz.getAirings(chans[i].stationID, Long.MIN_VALUE, Long.MAX_VALUE, false);
+        for (int j = 0; j < airs.length; j++)
+          if (allAirSet == null || allAirSet.contains(airs[j]))
+            rv.add(airs[j]);
+      }
+    }
+    else
+      return null;
+    return rv;
+  }
+
   boolean validate()
   {
     if ((((agentMask & LOVE_MASK) == LOVE_MASK) && agentMask != LOVE_MASK) ||
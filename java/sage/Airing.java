@@ -436,6 +436,8 @@ public class Airing extends DBObject implements Schedulable
     prB = a.prB;
     stationID = a.stationID;
     persist = a.persist;
+    slots = 0;
+    Profiler.getSlots(this);
     super.update(fromMe);
   }
 
@@ -465,6 +467,7 @@ public class Airing extends DBObject implements Schedulable
     prB = in.readByte();
     if (ver >= 0x41 && !Wizard.COMPACT_DB)
       persist = in.readByte();
+    Profiler.getSlots(this);
     if (ver >= 0x4C && ver < 0x54) {
       int size = in.readShort();
       in.skipBytes(size); // url bytes
@@ -504,6 +507,8 @@ public class Airing extends DBObject implements Schedulable
   public Object clone()
   {
     Airing rv = (Airing) super.clone();
+    // Clones usually get their times changed
+    rv.slots = 0;
     return rv;
   }
 
@@ -966,6 +971,8 @@ public class Airing extends DBObject implements Schedulable
   byte persist;
 
   private transient Show myShow;
+  // Cached weekly timeslots, see Profiler.getSlots
+  transient int slots;
 
   public static final int CC_MASK = 0x01;
   public static final int STEREO_MASK = 0x02;
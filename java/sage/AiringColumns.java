@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * A block of Airings stored as primitive columns of the fields that full guide scans filter on. Scanning these
+ * walks a few contiguous arrays instead of chasing a pointer out to every Airing on the heap, and then only the
+ * rows that pass the filter need to be materialized with getAiring(). Only the fields that aren't modified in place
+ * are stored here (the media mask can change without a DB update). Blocks are immutable; they're built from
+ * a chunk of an Airing index and cached by the Index until that chunk changes (see Index.getAiringColumns).
+ */
+public final class AiringColumns
+{
+  AiringColumns(DBObject[] inAirs)
+  {
+    airs = inAirs;
+    size = airs.length;
+    stationIDs = new int[size];
+    times = new long[size];
+    durations = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      Airing a = (Airing) airs[i];
+      stationIDs[i] = a.stationID;
+      times[i] = a.time;
+      durations[i] = a.duration;
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public Airing getAiring(int i)
+  {
+    return (Airing) airs[i];
+  }
+
+  public int getStationID(int i)
+  {
+    return stationIDs[i];
+  }
+
+  public long getStartTime(int i)
+  {
+    return times[i];
+  }
+
+  public long getDuration(int i)
+  {
+    return durations[i];
+  }
+
+  public long getEndTime(int i)
+  {
+    return times[i] + durations[i];
+  }
+
+  // Same test as Airing.doesOverlap
+  public boolean doesOverlap(int i, long startTime, long endTime)
+  {
+    return (times[i] + durations[i] > startTime) && (times[i] < endTime);
+  }
+
+  final DBObject[] airs;
+  private final int size;
+  private final int[] stationIDs;
+  private final long[] times;
+  private final long[] durations;
+}
@@ -405,16 +405,24 @@ public class BigBrother
         return true;
       }
 
-      java.util.Set slotBag = new java.util.HashSet();
+      // Starting slot & station of each airing; if any of them are the same it's a repeat
+      long[] slotKeys = new long[allAirs.length];
       for (int i = 0; i < allAirs.length; i++)
       {
-        String str = "";
-        str += Profiler.determineSlots(allAirs[i])[0];
-        str += ":";
-        str += allAirs[i].stationID;
         // Multipart SH tagged content should not be considered unique or otherwise
         // we wouldn't record all of the parts if its a Favorite
-        if (!slotBag.add(str) || allAirs[i].getPartNum() > 0)
+        if (allAirs[i].getPartNum() > 0)
+        {
+          s.cachedUnique = Show.NON_UNIQUE;
+          return false;
+        }
+        slotKeys[i] = (((long) Profiler.getSlotStart(Profiler.getSlots(allAirs[i]))) << 32) |
+            (allAirs[i].stationID & 0xFFFFFFFFL);
+      }
+      java.util.Arrays.sort(slotKeys);
+      for (int i = 1; i < slotKeys.length; i++)
+      {
+        if (slotKeys[i] == slotKeys[i - 1])
         {
           s.cachedUnique = Show.NON_UNIQUE;
           return false;
@@ -448,22 +456,18 @@ public class BigBrother
 
   static boolean alignsSlot(Airing a, int slotType, int slotValue)
   {
-    int[] slotRange = Profiler.determineSlots(a);
-    for (int i = slotRange[0]; i <= slotRange[1]; i++)
-    {
-      if (slotType == FULL_ALIGN)
-      {
-        if (i == slotValue) return true;
-      }
-      else if (slotType == DAY_ALIGN)
-      {
-        if (i/24 == slotValue/24) return true;
-      }
-      else if (slotType == TIME_ALIGN)
-      {
-        if (i%24 == slotValue%24) return true;
-      }
-    }
+    int slots = Profiler.getSlots(a);
+    int start = Profiler.getSlotStart(slots);
+    int end = Profiler.getSlotEnd(slots);
+    if (end < start)
+      return false;
+    // The end can go past the end of the week; those slots don't wrap around
+    if (slotType == FULL_ALIGN)
+      return slotValue >= start && slotValue <= end;
+    else if (slotType == DAY_ALIGN)
+      return slotValue/24 >= start/24 && slotValue/24 <= end/24;
+    else if (slotType == TIME_ALIGN)
+      return end - start >= 23 || start + ((slotValue%24 - start%24 + 24) % 24) <= end;
     return false;
   }
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * Read-only FastRandomFile that works against a ByteBuffer instead of a RandomAccessFile. This lets us
+ * decode DBObjects from a block of the DB file that was already read into memory (i.e. on another thread)
+ * with the exact same string decoding rules that FastRandomFile uses. The data in the buffer must already
+ * be decrypted. The base offset is what is reported as the file pointer for position 0 in the buffer so that
+ * error messages line up with offsets in the actual DB file. For unencrypted DB files the whole file can be memory
+ * mapped with map() so that loading decodes straight from the page cache without going through a read buffer.
+ */
+public class ByteBufferRandomFile extends FastRandomFile
+{
+  public ByteBufferRandomFile(java.nio.ByteBuffer inBuf, long inBaseOffset, String inCharset) throws java.io.IOException
+  {
+    super(inCharset);
+    bb = inBuf;
+    baseOffset = inBaseOffset;
+    buff = null;
+  }
+
+  public ByteBufferRandomFile(byte[] data, String inCharset) throws java.io.IOException
+  {
+    this(java.nio.ByteBuffer.wrap(data), 0, inCharset);
+  }
+
+  /*
+   * Maps the whole file read-only. The mapping stays valid after this returns, but the file can't be renamed or
+   * deleted on Windows until the buffer is garbage collected.
+   */
+  public static ByteBufferRandomFile map(java.io.File f, String inCharset) throws java.io.IOException
+  {
+    java.io.RandomAccessFile raf = new java.io.RandomAccessFile(f, "r");
+    try
+    {
+      return new ByteBufferRandomFile(raf.getChannel().map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, raf.length()),
+          0, inCharset);
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  // Returns a reader over the next len bytes that shares this one's buffer, and then skips past those bytes
+  public ByteBufferRandomFile slice(int len) throws java.io.IOException
+  {
+    if (len < 0 || len > bb.remaining())
+      throw new java.io.EOFException();
+    java.nio.ByteBuffer dup = bb.duplicate();
+    dup.limit(bb.position() + len);
+    ByteBufferRandomFile rv = new ByteBufferRandomFile(dup.slice(), getFilePointer(), myCharset);
+    bb.position(bb.position() + len);
+    return rv;
+  }
+
+  public long getFilePointer()
+  {
+    return baseOffset + bb.position();
+  }
+
+  public void seek(long newfp) throws java.io.IOException
+  {
+    if (newfp - baseOffset > bb.limit() || newfp < baseOffset)
+      throw new java.io.EOFException();
+    bb.position((int)(newfp - baseOffset));
+  }
+
+  public long length() throws java.io.IOException
+  {
+    return baseOffset + bb.limit();
+  }
+
+  public void flush() throws java.io.IOException
+  {
+  }
+
+  public void fullFlush() throws java.io.IOException
+  {
+  }
+
+  public void close() throws java.io.IOException
+  {
+    bb = null;
+  }
+
+  public int read() throws java.io.IOException
+  {
+    if (!bb.hasRemaining())
+      return -1;
+    return bb.get() & 0xFF;
+  }
+
+  public byte readByte() throws java.io.IOException
+  {
+    try
+    {
+      return bb.get();
+    }
+    catch (java.nio.BufferUnderflowException e)
+    {
+      throw new java.io.EOFException();
+    }
+  }
+
+  public byte readUnencryptedByte() throws java.io.IOException
+  {
+    return readByte();
+  }
+
+  public int readInt() throws java.io.IOException
+  {
+    try
+    {
+      return bb.getInt();
+    }
+    catch (java.nio.BufferUnderflowException e)
+    {
+      throw new java.io.EOFException();
+    }
+  }
+
+  public long readLong() throws java.io.IOException
+  {
+    try
+    {
+      return bb.getLong();
+    }
+    catch (java.nio.BufferUnderflowException e)
+    {
+      throw new java.io.EOFException();
+    }
+  }
+
+  public short readShort() throws java.io.IOException
+  {
+    try
+    {
+      return bb.getShort();
+    }
+    catch (java.nio.BufferUnderflowException e)
+    {
+      throw new java.io.EOFException();
+    }
+  }
+
+  public int readUnsignedShort() throws java.io.IOException
+  {
+    return readShort() & 0xFFFF;
+  }
+
+  public void readFully(byte b[], int off, int len) throws java.io.IOException
+  {
+    try
+    {
+      bb.get(b, off, len);
+    }
+    catch (java.nio.BufferUnderflowException e)
+    {
+      throw new java.io.EOFException();
+    }
+  }
+
+  public int skipBytes(int n) throws java.io.IOException
+  {
+    seek(getFilePointer() + n);
+    return n;
+  }
+
+  // Nearly all of the strings in the DB are 7 bit ASCII, so decode those straight out of the buffer and
+  // let FastRandomFile deal with anything else.
+  public String readUTF() throws java.io.IOException
+  {
+    if (!isI18N)
+      return super.readUTF();
+    int start = bb.position();
+    int utflen = readUnsignedShort();
+    if (utflen == 0)
+      return "";
+    else if (utflen == 0xFFFF)
+      utflen = readInt();
+    if (utflen > bb.remaining())
+      throw new java.io.EOFException();
+    if (asciiBuf == null || asciiBuf.length < utflen)
+      asciiBuf = new char[Math.max(256, utflen)];
+    int pos = bb.position();
+    for (int i = 0; i < utflen; i++)
+    {
+      byte b = bb.get(pos + i);
+      if (b < 0)
+      {
+        bb.position(start);
+        return super.readUTF();
+      }
+      asciiBuf[i] = (char) b;
+    }
+    bb.position(pos + utflen);
+    return new String(asciiBuf, 0, utflen);
+  }
+
+  public void write(byte b) throws java.io.IOException
+  {
+    throw new java.io.IOException("ByteBufferRandomFile is read-only");
+  }
+
+  public void write(byte b[], int off, int len) throws java.io.IOException
+  {
+    throw new java.io.IOException("ByteBufferRandomFile is read-only");
+  }
+
+  public void writeUnencryptedByte(byte b) throws java.io.IOException
+  {
+    throw new java.io.IOException("ByteBufferRandomFile is read-only");
+  }
+
+  public void setLength(long len) throws java.io.IOException
+  {
+    throw new java.io.IOException("ByteBufferRandomFile is read-only");
+  }
+
+  protected java.nio.ByteBuffer bb;
+  protected long baseOffset;
+  private char[] asciiBuf;
+}
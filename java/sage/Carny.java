@@ -30,6 +30,12 @@ import java.util.Vector;
 public final class Carny implements Runnable
 {
   private static final String GLOBAL_WATCH_COUNT = "global_watch_count";
+  private static final String FULL_RECOMPUTE_PERIOD = "full_recompute_period";
+  private static final String MAX_INCREMENTAL_AIRINGS = "max_incremental_airings";
+  private static final String MAX_INCREMENTAL_AGENTS = "max_incremental_agents";
+  // For getProfilerSets
+  private static final int IN_WINDOW = 0x1;
+  private static final int IN_REST = 0x2;
   static final String CARNY_KEY = "carny";
   private static Carny chosenOne;
   private static final Object chosenOneLock=new Object();
@@ -98,13 +104,18 @@ public final class Carny implements Runnable
         Agent.CHANNEL_MASK | Agent.CATEGORY_MASK,
         Agent.NETWORK_MASK | Agent.CATEGORY_MASK, Agent.ACTOR_MASK,
         Agent.CHANNEL_MASK | Agent.PR_MASK, Agent.CATEGORY_MASK | Agent.PR_MASK };
-    wpMap = Collections.synchronizedMap(new HashMap<Airing, Float>());
-    causeMap = Collections.synchronizedMap(new HashMap<Airing, Agent>());
+    scores = ProfileScores.EMPTY;
     pots = Pooler.EMPTY_AIRING_ARRAY;
-    mustSeeSet = Collections.synchronizedSet(new HashSet<Airing>());
-    loveAirSet = Collections.synchronizedSet(new HashSet<Airing>());
     swapMap = new HashMap<Airing, Airing>();
     prepped = false;
+    maxIncrementalAirs = Sage.getInt(prefs + MAX_INCREMENTAL_AIRINGS, 2000);
+    wiz.addChangeListener(new Wizard.ChangeListener()
+    {
+      public void dbObjectChanged(byte opCode, byte tableCode, DBObject obj)
+      {
+        Carny.this.dbObjectChanged(opCode, tableCode, obj);
+      }
+    });
   }
 
   void lengthyInit(boolean updateStatus)
@@ -136,7 +147,10 @@ public final class Carny implements Runnable
           {
             if (Sage.DBG) System.out.println("Carny waiting for awhile...");
             try{jobs.wait(60*60000L);}catch(InterruptedException e){}
-            continue;
+            // Redo everything every so often even if nobody asked us to, see stdProcessing
+            if (!jobs.isEmpty() || !alive ||
+                Sage.eventTime() - lastFullPassTime <= Sage.getLong(prefs + FULL_RECOMPUTE_PERIOD, 6*Sage.MILLIS_PER_HR))
+              continue;
           }
         }
         while (!jobs.isEmpty())
@@ -150,6 +164,13 @@ public final class Carny implements Runnable
           }
           else if (currJob[0] == WASTED_JOB)
             applyWasteData((Airing) currJob[1]);
+          else if (currJob[0] == REQUIRED_JOB)
+          {
+            synchronized (dirtyLock)
+            {
+              needFullPass = true;
+            }
+          }
           synchronized (jobs) { jobs.notifyAll(); }
         }
         stdProcessing();
@@ -270,7 +291,7 @@ public final class Carny implements Runnable
     long start = Sage.time();
     boolean keywordTest = (rv.agentMask&(Agent.LOVE_MASK|Agent.KEYWORD_MASK)) == (Agent.LOVE_MASK|Agent.KEYWORD_MASK);
     if(keywordTest) {
-      Show[] shows = wiz.searchShowsByKeyword(rv.getKeyword());
+      Show[] shows = wiz.searchShowsByKeyword(rv);
       for (Show show : shows) {
         Airing[] airings = wiz.getAirings(show, 0);
         for(Airing air : airings) {
@@ -316,23 +337,25 @@ public final class Carny implements Runnable
     {
       synchronized (this)
       {
-        loveAirSet.addAll(airsToAdd);
+        ProfileScores.Builder next = scores.builder();
         for (int i = 0; i < airsToAdd.size(); i++)
         {
           // Make these 1.0 in the WP map
           Airing a = airsToAdd.get(i);
+          next.setFlag(a.id, ProfileScores.LOVE, true);
           if (!a.isWatchedForSchedulingPurpose() && a.time < Sage.time() + Sage.getLong("scheduling_lookahead", LOOKAHEAD) &&
               a.time >= Sage.time() - Scheduler.SCHEDULING_LOOKBEHIND &&
               a.stationID != 0)
           {
-            wpMap.put(a, new Float(1.0f));
+            next.setWP(a.id, 1.0f);
             if (!dontScheduleThisAgent)
             {
-              mustSeeSet.add(a);
+              next.setFlag(a.id, ProfileScores.MUST_SEE, true);
             }
           }
-          causeMap.put(a, rv);
+          next.setCause(a.id, rv.id);
         }
+        scores = next.build();
         Set<Airing> tempSet = new HashSet<Airing>(Arrays.asList(pots));
         tempSet.addAll(airsToAdd);
         pots = tempSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
@@ -404,7 +427,7 @@ public final class Carny implements Runnable
     if(keywordTest) {
       // Slim the haystack for finding needles faster.
       Set<Airing> airingsHaystack = new HashSet<Airing>();
-      Show[] shows = wiz.searchShowsByKeyword(fav.getKeyword());
+      Show[] shows = wiz.searchShowsByKeyword(fav);
       for (Show show : shows) {
         Airing[] airings = wiz.getAirings(show, 0);
         Collections.addAll(airingsHaystack, airings);
@@ -467,28 +490,26 @@ public final class Carny implements Runnable
       airsThatMayDie.removeAll(airsThatWillSurvive);
       synchronized (this)
       {
-        synchronized (loveAirSet)
-        {
-          loveAirSet.removeAll(airsThatMayDie);
-          loveAirSet.addAll(airsThatWillSurvive);
-        }
+        ProfileScores.Builder next = scores.builder();
+        for (int i = 0; i < airsThatMayDie.size(); i++)
+          next.setFlag(airsThatMayDie.get(i).id, ProfileScores.LOVE | ProfileScores.MUST_SEE, false);
         for (int i = 0; i < airsThatWillSurvive.size(); i++)
         {
           // Make these 1.0 in the WP map
           Airing a = airsThatWillSurvive.get(i);
+          next.setFlag(a.id, ProfileScores.LOVE, true);
           if (!a.isWatchedForSchedulingPurpose() && a.time < Sage.time() + Sage.getLong("scheduling_lookahead", LOOKAHEAD) &&
               a.time >= Sage.time() - Scheduler.SCHEDULING_LOOKBEHIND &&
               a.stationID != 0)
           {
-            wpMap.put(a, new Float(1.0f));
+            next.setWP(a.id, 1.0f);
             if (!dontScheduleThisAgent)
             {
-              mustSeeSet.add(a);
+              next.setFlag(a.id, ProfileScores.MUST_SEE, true);
             }
           }
-          causeMap.put(a, fav);
+          next.setCause(a.id, fav.id);
         }
-        mustSeeSet.removeAll(airsThatMayDie);
         /*
          * NOTE: We're clearing the WP and the cause for any Airing that was removed from Favorite status.
          * This is a little more harsh than we need to be, but this'll get fixed up on the next Carny round.
@@ -498,13 +519,10 @@ public final class Carny implements Runnable
          * retained. Then we'll clean that up on the next Carny round. Better than letting them drop off into
          * oblivion temporarily and risk a delete cycle kicking in that destroys the content.
          */
-        Float oldFavWP = new Float(0.9f);
-        synchronized (wpMap)
-        {
-          for (Airing air : airsThatMayDie) {
-            wpMap.put(air, oldFavWP);
-          }
+        for (Airing air : airsThatMayDie) {
+          next.setWP(air.id, 0.9f);
         }
+        scores = next.build();
 
         //causeMap.keySet().removeAll(airsThatMayDie);
         //wpMap.keySet().removeAll(airsThatMayDie);
@@ -557,6 +575,8 @@ public final class Carny implements Runnable
     }
     StringBuffer sbCache = new StringBuffer();
     boolean resyncAll = false;
+    List<Airing> savedAirs = new ArrayList<Airing>();
+    List<Agent> savedCauses = new ArrayList<Agent>();
     for (int i = 0; i < airs.length; i++)
     {
       Airing a = (Airing)airs[i];
@@ -571,10 +591,8 @@ public final class Carny implements Runnable
           {
             // Also swap out the cause agent
             resyncAll = true;
-            synchronized (this)
-            {
-              causeMap.put(a, otherFav);
-            }
+            savedAirs.add(a);
+            savedCauses.add(otherFav);
             airWasSaved = true;
             break;
           }
@@ -583,25 +601,33 @@ public final class Carny implements Runnable
           airsThatMayDie.add(a);
       }
     }
+    if (!savedAirs.isEmpty())
+    {
+      synchronized (this)
+      {
+        ProfileScores.Builder next = scores.builder();
+        for (int i = 0; i < savedAirs.size(); i++)
+          next.setCause(savedAirs.get(i).id, savedCauses.get(i).id);
+        scores = next.build();
+      }
+    }
     if (!airsThatMayDie.isEmpty())
     {
       synchronized (this)
       {
-        loveAirSet.removeAll(airsThatMayDie);
-        mustSeeSet.removeAll(airsThatMayDie);
         /*
          * NOTE: We're clearing the WP and the cause for any Airing that was removed from Favorite status.
          * This is a little more harsh than we need to be, but this'll get fixed up on the next Carny round.
          * The alternative involves a fair amount of extra processing here that we don't really want to do
          */
-        synchronized (causeMap)
+        ProfileScores.Builder next = scores.builder();
+        for (int i = 0; i < airsThatMayDie.size(); i++)
         {
-          causeMap.keySet().removeAll(airsThatMayDie);
-        }
-        synchronized (wpMap)
-        {
-          wpMap.keySet().removeAll(airsThatMayDie);
+          int id = airsThatMayDie.get(i).id;
+          next.setFlag(id, ProfileScores.LOVE, false);
+          next.removeScores(id);
         }
+        scores = next.build();
         Set<Airing> tempSet = new HashSet<Airing>(Arrays.asList(pots));
         tempSet.removeAll(airsThatMayDie);
         pots = tempSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
@@ -628,15 +654,16 @@ public final class Carny implements Runnable
       SageTV.incrementQuanta();
       // In case any get removed along the way
       ProfilingListener[] listData = listeners.toArray(new ProfilingListener[0]);
+      ProfileScores currScores = scores;
       for (int i = 0; i < listData.length; i++)
       {
-        if (!listData[i].updateLoves(loveAirSet)) // we used to not do this, but it does need to be synced 2/4/2004
+        if (!listData[i].updateLoves(currScores)) // we used to not do this, but it does need to be synced 2/4/2004
           continue;
-        if (!listData[i].updateWPMap(wpMap))
+        if (!listData[i].updateWPMap(currScores))
           continue;
-        if (!listData[i].updateCauseMap(causeMap))
+        if (!listData[i].updateCauseMap(currScores))
           continue;
-        if (!listData[i].updateMustSees(mustSeeSet))
+        if (!listData[i].updateMustSees(currScores))
           continue;
       }
     }
@@ -649,22 +676,24 @@ public final class Carny implements Runnable
       SageTV.incrementQuanta();
       // In case any get removed along the way
       ProfilingListener[] listData = listeners.toArray(new ProfilingListener[0]);
+      ProfileScores currScores = scores;
       for (int i = 0; i < listData.length; i++)
       {
-        listData[i].updateLoves(loveAirSet);
+        listData[i].updateLoves(currScores);
       }
     }
   }
 
-  synchronized boolean fullClientUpdate(ProfilingListener updateMe)
+  boolean fullClientUpdate(ProfilingListener updateMe)
   {
-    if (!updateMe.updateCauseMap(causeMap))
+    ProfileScores currScores = scores;
+    if (!updateMe.updateCauseMap(currScores))
       return false;
-    if (!updateMe.updateWPMap(wpMap))
+    if (!updateMe.updateWPMap(currScores))
       return false;
-    if (!updateMe.updateMustSees(mustSeeSet))
+    if (!updateMe.updateMustSees(currScores))
       return false;
-    if (!updateMe.updateLoves(loveAirSet))
+    if (!updateMe.updateLoves(currScores))
       return false;
     return true;
   }
@@ -863,7 +892,51 @@ public final class Carny implements Runnable
         0, null, null);
   }
 
+  /*
+   * Normally this only redoes the parts of the profile that were affected by what changed in the DB since the last time.
+   * Everything gets recomputed the first time, after a kickHard, when too much has changed, when something changed
+   * that we can't track (i.e. channels) and every FULL_RECOMPUTE_PERIOD as a safety net.
+   */
   private void stdProcessing()
+  {
+    Set<Airing> airs;
+    Set<Agent> agents;
+    List<DBObject> others;
+    boolean full;
+    synchronized (dirtyLock)
+    {
+      full = needFullPass || !doneInit ||
+          Sage.eventTime() - lastFullPassTime > Sage.getLong(prefs + FULL_RECOMPUTE_PERIOD, 6*Sage.MILLIS_PER_HR);
+      airs = dirtyAirs;
+      agents = dirtyAgents;
+      others = dirtyOthers;
+      dirtyAirs = new HashSet<Airing>();
+      dirtyAgents = new HashSet<Agent>();
+      dirtyOthers = new ArrayList<DBObject>();
+      needFullPass = false;
+    }
+    boolean done = false;
+    try
+    {
+      if (!full)
+        done = incrementalProcessing(airs, agents, others);
+      if (!done)
+        done = fullProcessing();
+    }
+    finally
+    {
+      if (!done)
+      {
+        synchronized (dirtyLock)
+        {
+          needFullPass = true;
+        }
+      }
+    }
+  }
+
+  // Returns false if it stopped early, in which case nothing was changed
+  private boolean fullProcessing()
   {
     if (!doneInit)
     {
@@ -874,39 +947,48 @@ public final class Carny implements Runnable
     if (lastCycleCompleteTime >= cycleStartTime)
       cycleStartTime = Sage.eventTime();
     // Go through each Agent and run their think() process.
-    Map<Airing, Float> newWPMap = Collections.synchronizedMap(new HashMap<Airing, Float>());
-    Map<Airing, Agent> newCauseMap = Collections.synchronizedMap(new HashMap<Airing, Agent>());
+    ProfileScores.Builder next = new ProfileScores.Builder();
     Set<Airing> airSet = new HashSet<Airing>();
-    Set<Airing> newMustSeeSet = Collections.synchronizedSet(new HashSet<Airing>());
     Set<Airing> blackBalled = new HashSet<Airing>();
 
     DBObject[] allAgents = wiz.getRawAccess(Wizard.AGENT_CODE, (byte) 0);
-    Set<Airing> newLoveAirSet = Collections.synchronizedSet(new HashSet<Airing>());
 
     // We don't track music at all (that used to be in Agent.followsTrend)
 
     synchronized (this)
     {
+      applyPendingSwaps();
       // Clear this out since we're getting fresh airings from the DB now
       swapMap.clear();
     }
-    DBObject[] rawAirs = wiz.getRawAccess(Wizard.AIRING_CODE,
-        Wizard.AIRINGS_BY_CT_CODE);
+    AiringColumns[] airCols = wiz.getAiringColumns();
     Set<Airing> airset = new HashSet<Airing>();
-    List<Airing> remAirSet = new ArrayList<Airing>();
+    // The ones in the window that didn't make it into airset; the rest of the remaining airings are only gathered
+    // below if there's a Favorite that needs them
+    Set<Airing> windowRemAirs = new HashSet<Airing>();
     long currLookahead = Sage.getLong("scheduling_lookahead", LOOKAHEAD);
     int testMask = DBObject.MEDIA_MASK_TV;
     long currTime = Sage.time();
-    for (int i = 0; i < rawAirs.length; i++)
-    {
-      Airing a = (Airing) rawAirs[i];
-      // Only use TV Airings in this calculation
-      if (a == null || !a.hasMediaMaskAny(testMask)) continue;
-      if (a.time < currTime + currLookahead &&
-          a.time >= currTime - Scheduler.SCHEDULING_LOOKBEHIND && a.isTV())
-        airset.add(a);
-      else
-        remAirSet.add(a);
+    long windowStart = currTime - Scheduler.SCHEDULING_LOOKBEHIND;
+    long windowEnd = currTime + currLookahead;
+    for (int j = 0; j < airCols.length; j++)
+    {
+      AiringColumns cols = airCols[j];
+      int numAirs = cols.size();
+      for (int i = 0; i < numAirs; i++)
+      {
+        // Test the time column first so we only go out to the Airings in the window
+        long airTime = cols.getStartTime(i);
+        if (airTime >= windowEnd || airTime < windowStart)
+          continue;
+        Airing a = cols.getAiring(i);
+        // Only use TV Airings in this calculation
+        if (!a.hasMediaMaskAny(testMask)) continue;
+        if (a.isTV())
+          airset.add(a);
+        else
+          windowRemAirs.add(a);
+      }
     }
     // We also need to be sure we analyze all of the files
     MediaFile[] mfs = wiz.getFiles();
@@ -917,22 +999,48 @@ public final class Carny implements Runnable
     }
 
     Airing[] allAirs = airset.toArray(Pooler.EMPTY_AIRING_ARRAY);
-    Airing[] remAirs = remAirSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
+    Airing[] remAirs = null;
 
     List<Agent> traitors = new ArrayList<Agent>();
     allAgents = wiz.getAgents();
     Set<Airing> watchedPotsToClear = new HashSet<Airing>();
     if (Sage.DBG) System.out.println("CARNY Processing " + allAgents.length + " Agents & " + allAirs.length + " Airs");
     boolean controlCPUUsage = doneInit && allAgents.length > 50 && Sage.getBoolean("control_profiler_cpu_usage", true);
-    // This array is used in the the Agent's calcWatchProb to avoid having to re-allocate a storage location each time we go through it.
+    // This is the size of the array used in the the Agent's calcWatchProb to avoid having to re-allocate a storage location each time we go through it.
     // We make it bigger than what could possibly come up in the Agent's calc (i.e. every watch & waste matching it and none overlapping)
-    Airing[] airWorkCache = new Airing[1000 + wiz.getRawAccess(Wizard.WASTED_CODE, (byte) 0).length + wiz.getRawAccess(Wizard.WATCH_CODE, (byte) 0).length];
+    int airWorkCacheSize = 1000 + wiz.getRawAccess(Wizard.WASTED_CODE, (byte) 0).length + wiz.getRawAccess(Wizard.WATCH_CODE, (byte) 0).length;
     String paidProgRez = Sage.rez("Paid_Programming");
-    // We do a lot of String work for keyword favorites so have a buffer that they can do
-    // that work in to massively reduce GC'd memory allocations
-    StringBuffer sbCache = new StringBuffer();
-    String lastSplashMsg = null;
+    boolean limitedInit = (!doneInit && Sage.getBoolean("limited_carny_init", Sage.EMBEDDED)) ||
+        (Sage.EMBEDDED && Seeker.getInstance().getDisableProfilerRecording());
+
+    // The Agents are all evaluated on the profiler pool and then merged in below in their original order, so the result
+    // is the same as it would be doing them one after another. CPU usage is controlled by the size of the pool.
+    java.util.concurrent.ExecutorService pool = getProfilerPool(controlCPUUsage);
+    List<java.util.concurrent.Future<AgentWork>> work = new ArrayList<java.util.concurrent.Future<AgentWork>>(allAgents.length);
+    // Set when we bail out of this pass so the work that hasn't started yet doesn't touch its Agent
+    java.util.concurrent.atomic.AtomicBoolean aborted = new java.util.concurrent.atomic.AtomicBoolean();
+    // Only Favorites look through the rest of the airings, this is for looking up their candidates from the Show attribute index
+    Set<Airing> remAirLookup = null;
     for (int i = 0; i < allAgents.length; i++)
+    {
+      Agent currAgent = (Agent) allAgents[i];
+      if (currAgent == null || (limitedInit && !currAgent.isFavorite()))
+      {
+        work.add(null);
+        continue;
+      }
+      if (remAirLookup == null && currAgent.isFavorite())
+      {
+        List<Airing> remAirSet = getRemainingAirings(airCols, windowStart, windowEnd, testMask, windowRemAirs);
+        remAirs = remAirSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
+        remAirLookup = new HashSet<Airing>(remAirSet);
+      }
+      work.add(pool.submit(new AgentWork(currAgent, allAirs, airset, remAirs, remAirLookup, airWorkCacheSize, aborted)));
+    }
+
+    Set<Agent> newDontScheduleAgents = new HashSet<Agent>();
+    String lastSplashMsg = null;
+    for (int i = 0; i < work.size(); i++)
     {
       if (!doneInit)
       {
@@ -943,8 +1051,6 @@ public final class Carny implements Runnable
           lastSplashMsg = newSplashMsg;
         }
       }
-      if (controlCPUUsage)
-        try{Thread.sleep(SLEEP_PERIOD);}catch(Exception e){}
       if (doneInit)
       {
         // Check to see if something else is a higher priority to calculate.
@@ -954,56 +1060,53 @@ public final class Carny implements Runnable
         if (!shouldContinueStdProcessing(Sage.eventTime() - cycleStartTime < 30*Sage.MILLIS_PER_MIN))
         {
           if (Sage.DBG) System.out.println("Carny is stopping processing early to do a new job...");
-          return; // just bail, it'll pick it all up afterwards
+          cancelWork(work, aborted);
+          return false; // just bail, it'll pick it all up afterwards
         }
       }
-      Agent currAgent = (Agent) allAgents[i];
-      if (currAgent == null)
+      if (work.get(i) == null)
         continue;
-
-      if ((!doneInit && Sage.getBoolean("limited_carny_init", Sage.EMBEDDED)) ||
-          (Sage.EMBEDDED && Seeker.getInstance().getDisableProfilerRecording()))
+      AgentWork res;
+      try
       {
-        if (!currAgent.isFavorite())
-          continue;
+        res = work.get(i).get();
       }
+      catch (InterruptedException e)
+      {
+        cancelWork(work, aborted);
+        return false;
+      }
+      catch (java.util.concurrent.ExecutionException e)
+      {
+        cancelWork(work, aborted);
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        if (e.getCause() instanceof Error)
+          throw (Error) e.getCause();
+        throw new RuntimeException(e.getCause());
+      }
+      Agent currAgent = res.agent;
 
-      if (!currAgent.calcWatchProb(controlCPUUsage, airWorkCache, sbCache))
+      if (res.traitor)
       {
         traitors.add(currAgent);
         continue;
       }
-      Airing[] agePots = currAgent.getRelatedAirings(allAirs, true, controlCPUUsage, sbCache);
+      Airing[] agePots = res.pots;
       if (currAgent.isFavorite())
       {
-        newLoveAirSet.addAll(Arrays.asList(agePots));
+        for (int j = 0; j < agePots.length; j++)
+          next.setFlag(agePots[j].id, ProfileScores.LOVE, true);
 
         // Also check the rem airs so we're sure we get EVERYTHING in the DB
         // that applies to this Favorite included in the group.
-        Airing[] remRelated = currAgent.getRelatedAirings(remAirs, false, controlCPUUsage, sbCache);
-        newLoveAirSet.addAll(Arrays.asList(remRelated));
+        for (int j = 0; j < res.remRelated.length; j++)
+          next.setFlag(res.remRelated[j].id, ProfileScores.LOVE, true);
       }
 
-      // Check to see if this Agent is a Favorite who has a keep at most limit set with
-      // manual deleting. In that case, we don't add any of its future airings to the
-      // mustSeeSet or to the pots, but we do put them in the loveAirSet.
-      boolean dontScheduleThisAgent = false;
-      if (currAgent.isFavorite() && currAgent.testAgentFlag(Agent.DONT_AUTODELETE_FLAG) &&
-          currAgent.getAgentFlag(Agent.KEEP_AT_MOST_MASK) > 0)
-      {
-        int fileCount = 0;
-        for (int j = 0; j < agePots.length; j++)
-        {
-          MediaFile mf = wiz.getFileForAiring(agePots[j]);
-          if (mf != null && mf.isCompleteRecording())
-            fileCount++;
-        }
-        int keepAtMost = currAgent.getAgentFlag(Agent.KEEP_AT_MOST_MASK);
-        if (fileCount >= keepAtMost)
-        {
-          dontScheduleThisAgent = true;
-        }
-      }
+      boolean dontScheduleThisAgent = res.dontSchedule;
+      if (dontScheduleThisAgent)
+        newDontScheduleAgents.add(currAgent);
 
       boolean negator = currAgent.isNegativeNelly();
       for (int j = 0; j < agePots.length; j++)
@@ -1033,25 +1136,27 @@ public final class Carny implements Runnable
          * issues because the wrong agent was used for the scheduling that should have been higher priority sometimes
          */
 
-        Float wp = newWPMap.get(agePots[j]);
+        int airID = agePots[j].id;
+        boolean hasWP = next.hasWP(airID);
+        float wp = next.getWP(airID);
         boolean replaceInMap = false;
-        if (wp == null || (currAgent.watchProb > wp.floatValue()))
+        if (!hasWP || (currAgent.watchProb > wp))
           replaceInMap = true;
-        if (wp != null && currAgent.watchProb == wp.floatValue() && currAgent.isFavorite())
+        if (hasWP && currAgent.watchProb == wp && currAgent.isFavorite())
         {
           // Check for agent priority
-          Agent oldAgent = newCauseMap.get(agePots[j]);
+          Agent oldAgent = wiz.getAgentForID(next.getCauseID(airID));
           if (oldAgent == null || doBattle(oldAgent, currAgent) == currAgent)
             replaceInMap = true;
         }
         if (replaceInMap)
         {
-          newCauseMap.put(agePots[j], currAgent);
+          next.setCause(airID, currAgent.id);
           /*
            * We need to put the WP in temporarily even for watched stuff so the most powerful
            * Agent shows up in the map, otherwise a cat agent could override a favorite agent on a watched show
            */
-          newWPMap.put(agePots[j], new Float(currAgent.watchProb));
+          next.setWP(airID, currAgent.watchProb);
           if (agePots[j].isWatchedForSchedulingPurpose())
           {
             watchedPotsToClear.add(agePots[j]);
@@ -1070,46 +1175,31 @@ public final class Carny implements Runnable
           }
         }
         if (currAgent.isFavorite())
-          newMustSeeSet.add(agePots[j]);
+          next.setFlag(airID, ProfileScores.MUST_SEE, true);
       }
     }
 
-    synchronized (this)
-    {
-      for (Airing oldAir : swapMap.keySet())
-      {
-        if (newLoveAirSet.contains(oldAir))
-        {
-          newLoveAirSet.remove(oldAir);
-          newLoveAirSet.add(swapMap.get(oldAir));
-        }
-      }
-      loveAirSet = newLoveAirSet;
-    }
-
-    // Remove any blackballs that are favorites now; unless they're marked don't like
-    blackBalled.removeAll(newMustSeeSet);
-
     // Clear out all of the negative energy, this includes marked waste
     Wasted[] stoners = wiz.getWasted();
 
-    newWPMap.keySet().removeAll(watchedPotsToClear);
+    for (Airing clearAir : watchedPotsToClear)
+      next.removeWP(clearAir.id);
 
     if (Sage.DBG) System.out.println("CARNY Negative Energy Size: " + (blackBalled.size() + stoners.length));
     for (Airing badAir : blackBalled)
     {
-      newWPMap.remove(badAir);
-      newCauseMap.remove(badAir);
-      newMustSeeSet.remove(badAir);
+      // Remove any blackballs that are favorites now; unless they're marked don't like
+      if (next.hasFlag(badAir.id, ProfileScores.MUST_SEE))
+        continue;
+      next.removeScores(badAir.id);
       airSet.remove(badAir);
     }
 
     for (int i = 0; i < stoners.length; i++)
     {
       Airing badAir = stoners[i].getAiring();
-      newWPMap.remove(badAir);
-      newCauseMap.remove(badAir);
-      newMustSeeSet.remove(badAir);
+      if (badAir == null) continue;
+      next.removeScores(badAir.id);
       airSet.remove(badAir);
     }
 
@@ -1122,53 +1212,363 @@ public final class Carny implements Runnable
       for (Airing oldAir : swapMap.keySet())
       {
         Airing newAir = swapMap.get(oldAir);
-        if (newWPMap.containsKey(oldAir))
-          newWPMap.put(newAir, newWPMap.remove(oldAir));
+        next.move(oldAir.id, newAir.id);
         if (airSet.contains(oldAir))
         {
           airSet.remove(oldAir);
           airSet.add(newAir);
         }
-        if (newMustSeeSet.contains(oldAir))
-        {
-          newMustSeeSet.remove(oldAir);
-          newMustSeeSet.add(newAir);
-        }
-        if (newCauseMap.containsKey(oldAir))
-          newCauseMap.put(newAir, newCauseMap.remove(oldAir));
       }
-      wpMap = newWPMap;
-      causeMap = newCauseMap;
+      scores = next.build();
       pots = airSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
-      mustSeeSet = newMustSeeSet;
     }
+    dontScheduleAgents = newDontScheduleAgents;
     // This is when we need to propogate the change to all of our
     // clients
     clientSyncAll();
 
     prepped = true;
-    lastCycleCompleteTime = Sage.eventTime();
+    lastCycleCompleteTime = lastFullPassTime = Sage.eventTime();
 
     if (doneInit)
       Scheduler.getInstance().kick(false);
+    return true;
+  }
+
+  /*
+   * Patches the profile for just what changed. The Agents that changed (or whose watch/waste history did) get their
+   * watchProb recalculated, and then every Airing that one of those Agents matches or caused, or that changed itself,
+   * gets scored again against all of the Agents with the same rules fullProcessing uses. Returns false if there's
+   * too much to do this way or it runs into something it can't handle, then the caller does a full pass instead.
+   */
+  private boolean incrementalProcessing(Set<Airing> airs, Set<Agent> agents, List<DBObject> others)
+  {
+    if (Sage.EMBEDDED && Seeker.getInstance().getDisableProfilerRecording())
+      return false;
+    if (airs.isEmpty() && agents.isEmpty() && others.isEmpty())
+      return true;
+    long startTime = Sage.eventTime();
+    synchronized (this)
+    {
+      applyPendingSwaps();
+      swapMap.clear();
+    }
+    Agent[] allAgents = wiz.getAgents();
+    StringBuffer sbCache = sbCaches.get();
+
+    // Figure out what the Show, Watched, Wasted and MediaFile changes affect
+    for (int i = 0; i < others.size(); i++)
+    {
+      DBObject obj = others.get(i);
+      Airing a;
+      if (obj instanceof Show)
+      {
+        airs.addAll(Arrays.asList(wiz.getAirings((Show) obj, 0)));
+        continue;
+      }
+      else if (obj instanceof Watched)
+        a = ((Watched) obj).getAiring();
+      else if (obj instanceof Wasted)
+        a = ((Wasted) obj).getAiring();
+      else
+        a = ((MediaFile) obj).getContentAiring();
+      if (a == null) continue;
+      airs.add(a);
+      // Agents that follow this will have a different watchProb (or keep at most count for MediaFiles)
+      for (int j = 0; j < allAgents.length; j++)
+        if (allAgents[j] != null && allAgents[j].followsTrend(a, false, sbCache))
+          agents.add(allAgents[j]);
+    }
+    if (agents.size() > Sage.getInt(prefs + MAX_INCREMENTAL_AGENTS, 50))
+      return false;
+
+    long currTime = Sage.time();
+    long windowStart = currTime - Scheduler.SCHEDULING_LOOKBEHIND;
+    long windowEnd = currTime + Sage.getLong("scheduling_lookahead", LOOKAHEAD);
+    Set<Agent> currAgents = new HashSet<Agent>(Arrays.asList(allAgents));
+    Set<Agent> newDontScheduleAgents = new HashSet<Agent>(dontScheduleAgents);
+    Airing[] airWorkCache = new Airing[1000 + wiz.getRawAccess(Wizard.WASTED_CODE, (byte) 0).length + wiz.getRawAccess(Wizard.WATCH_CODE, (byte) 0).length];
+    for (Agent bond : agents)
+    {
+      if (!currAgents.contains(bond))
+      {
+        // It was removed, anything it matched has to be rescored
+        newDontScheduleAgents.remove(bond);
+        airs.addAll(getMatchingAirings(bond, sbCache));
+        continue;
+      }
+      // Removing traitors is left to the full pass
+      if (!bond.calcWatchProb(false, airWorkCache, sbCache))
+        return false;
+      Set<Airing> matches = getMatchingAirings(bond, sbCache);
+      airs.addAll(matches);
+      newDontScheduleAgents.remove(bond);
+      if (bond.isFavorite() && bond.testAgentFlag(Agent.DONT_AUTODELETE_FLAG) && bond.getAgentFlag(Agent.KEEP_AT_MOST_MASK) > 0)
+      {
+        int fileCount = 0;
+        for (Airing a : matches)
+        {
+          if ((getProfilerSets(a, windowStart, windowEnd) & IN_WINDOW) == 0) continue;
+          MediaFile mf = wiz.getFileForAiring(a);
+          if (mf != null && mf.isCompleteRecording())
+            fileCount++;
+        }
+        if (fileCount >= bond.getAgentFlag(Agent.KEEP_AT_MOST_MASK))
+          newDontScheduleAgents.add(bond);
+      }
+      if (airs.size() > maxIncrementalAirs)
+        return false;
+    }
+    Set<Integer> agentIDs = new HashSet<Integer>();
+    for (Agent bond : agents)
+      agentIDs.add(bond.id);
+    ProfileScores currScores = scores;
+    int[] causedIDs = currScores.getCausedAiringIDs();
+    for (int i = 0; i < causedIDs.length; i++)
+    {
+      if (agentIDs.contains(currScores.getCauseID(causedIDs[i])))
+      {
+        Airing a = wiz.getAiringForID(causedIDs[i]);
+        if (a != null)
+          airs.add(a);
+      }
+    }
+    if (airs.size() > maxIncrementalAirs)
+      return false;
+
+    // Score everything again the same way fullProcessing does, but only for these Airings
+    String paidProgRez = Sage.rez("Paid_Programming");
+    List<Airing> changedAirs = new ArrayList<Airing>(airs);
+    float[] newWPs = new float[changedAirs.size()];
+    Arrays.fill(newWPs, Float.NaN);
+    Agent[] newCauses = new Agent[changedAirs.size()];
+    boolean[] newMustSees = new boolean[changedAirs.size()];
+    boolean[] newLoves = new boolean[changedAirs.size()];
+    boolean[] newPots = new boolean[changedAirs.size()];
+    for (int i = 0; i < changedAirs.size(); i++)
+    {
+      Airing a = changedAirs.get(i);
+      int sets = getProfilerSets(a, windowStart, windowEnd);
+      if (sets == 0) continue;
+      boolean inWindow = (sets & IN_WINDOW) != 0;
+      boolean skipPot = paidProgRez.equalsIgnoreCase(a.getTitle()) || wiz.isNoShow(a.showID);
+      boolean blackBalled = false;
+      boolean clearWP = false;
+      for (int j = 0; j < allAgents.length; j++)
+      {
+        Agent currAgent = allAgents[j];
+        if (currAgent == null || (!inWindow && !currAgent.isFavorite()) || !currAgent.followsTrend(a, true, sbCache))
+          continue;
+        if (currAgent.isFavorite())
+          newLoves[i] = true;
+        if (!inWindow)
+          continue;
+        if (currAgent.isNegativeNelly())
+        {
+          blackBalled = true;
+          continue;
+        }
+        if (skipPot)
+          continue;
+        newPots[i] = true;
+        boolean replaceInMap = false;
+        if (Float.isNaN(newWPs[i]) || (currAgent.watchProb > newWPs[i]))
+          replaceInMap = true;
+        if (!Float.isNaN(newWPs[i]) && currAgent.watchProb == newWPs[i] && currAgent.isFavorite())
+        {
+          if (newCauses[i] == null || doBattle(newCauses[i], currAgent) == currAgent)
+            replaceInMap = true;
+        }
+        if (replaceInMap)
+        {
+          newCauses[i] = currAgent;
+          newWPs[i] = currAgent.watchProb;
+          if (a.isWatchedForSchedulingPurpose())
+            clearWP = true;
+        }
+        if (a.isWatchedForSchedulingPurpose())
+          continue;
+        if (newDontScheduleAgents.contains(currAgent))
+        {
+          MediaFile mf = wiz.getFileForAiring(a);
+          if (mf == null || !mf.isCompleteRecording())
+          {
+            clearWP = true;
+            continue;
+          }
+        }
+        if (currAgent.isFavorite())
+          newMustSees[i] = true;
+      }
+      if (clearWP)
+        newWPs[i] = Float.NaN;
+      if ((blackBalled && !newMustSees[i]) || wiz.getWastedForAiring(a) != null)
+      {
+        newWPs[i] = Float.NaN;
+        newCauses[i] = null;
+        newMustSees[i] = newPots[i] = false;
+      }
+    }
+
+    boolean changed = false;
+    synchronized (this)
+    {
+      ProfileScores.Builder next = scores.builder();
+      Set<Airing> potSet = new HashSet<Airing>(Arrays.asList(pots));
+      for (int i = 0; i < changedAirs.size(); i++)
+      {
+        Airing a = changedAirs.get(i);
+        if (swapMap.containsKey(a))
+          a = swapMap.get(a);
+        float oldWP = next.getWP(a.id);
+        int oldCause = next.getCauseID(a.id);
+        int newCause = (newCauses[i] == null) ? 0 : newCauses[i].id;
+        if (Float.isNaN(newWPs[i]))
+          next.removeWP(a.id);
+        else
+          next.setWP(a.id, newWPs[i]);
+        next.setCause(a.id, newCause);
+        if (Float.floatToIntBits(oldWP) != Float.floatToIntBits(newWPs[i]) || oldCause != newCause)
+          changed = true;
+        if (next.setFlag(a.id, ProfileScores.MUST_SEE, newMustSees[i]))
+          changed = true;
+        if (next.setFlag(a.id, ProfileScores.LOVE, newLoves[i]))
+          changed = true;
+        if (newPots[i] ? potSet.add(a) : potSet.remove(a))
+          changed = true;
+      }
+      if (changed)
+      {
+        scores = next.build();
+        pots = potSet.toArray(Pooler.EMPTY_AIRING_ARRAY);
+      }
+    }
+    dontScheduleAgents = newDontScheduleAgents;
+    if (Sage.DBG) System.out.println("CARNY incremental update for " + agents.size() + " Agents & " + changedAirs.size() +
+        " Airs took " + (Sage.eventTime() - startTime) + " msec changed=" + changed);
+    lastCycleCompleteTime = Sage.eventTime();
+    if (changed)
+    {
+      clientSyncAll();
+      Scheduler.getInstance().kick(false);
+    }
+    return true;
+  }
+
+  // Every Airing in the DB that this Agent matches
+  private Set<Airing> getMatchingAirings(Agent bond, StringBuffer sbCache)
+  {
+    Set<Airing> rv = new HashSet<Airing>();
+    boolean keywordTest = (bond.agentMask & (Agent.LOVE_MASK|Agent.KEYWORD_MASK)) == (Agent.LOVE_MASK|Agent.KEYWORD_MASK);
+    if (keywordTest)
+    {
+      Show[] shows = wiz.searchShowsByKeyword(bond);
+      for (int i = 0; i < shows.length; i++)
+      {
+        Airing[] airings = wiz.getAirings(shows[i], 0);
+        for (int j = 0; j < airings.length; j++)
+          if (bond.followsTrend(airings[j], true, sbCache, true))
+            rv.add(airings[j]);
+      }
+      return rv;
+    }
+    List<Airing> candidates = bond.getIndexedCandidates(null);
+    if (candidates != null)
+    {
+      for (int i = 0; i < candidates.size(); i++)
+        if (bond.followsTrend(candidates.get(i), true, sbCache))
+          rv.add(candidates.get(i));
+    }
+    else
+    {
+      DBObject[] rawAirs = wiz.getRawAccess(Wizard.AIRING_CODE, Wizard.AIRINGS_BY_CT_CODE);
+      for (int i = 0; i < rawAirs.length; i++)
+      {
+        Airing a = (Airing) rawAirs[i];
+        if (a != null && bond.followsTrend(a, true, sbCache))
+          rv.add(a);
+      }
+    }
+    return rv;
+  }
+
+  // Which of the sets of Airings that fullProcessing works on this would be in
+  private int getProfilerSets(Airing a, long windowStart, long windowEnd)
+  {
+    int rv = 0;
+    if (a.hasMediaMaskAny(DBObject.MEDIA_MASK_TV) && wiz.getAiringForID(a.id, false, false) == a)
+    {
+      if (a.time < windowEnd && a.time >= windowStart && a.isTV())
+        rv |= IN_WINDOW;
+      else
+        rv |= IN_REST;
+    }
+    MediaFile mf = wiz.getFileForAiring(a);
+    if (mf != null && !mf.archive && mf.isTV() && mf.getContentAiring() == a)
+      rv |= IN_WINDOW;
+    return rv;
+  }
+
+  // Called from the Wizard whenever something's logged; this can't call back into the Wizard
+  private void dbObjectChanged(byte opCode, byte tableCode, DBObject obj)
+  {
+    synchronized (dirtyLock)
+    {
+      if (needFullPass) return;
+      switch (tableCode)
+      {
+        case Wizard.AIRING_CODE:
+          dirtyAirs.add((Airing) obj);
+          break;
+        case Wizard.SHOW_CODE:
+          // The Airings of new Shows get added after them, and removed Shows go along with their Airings
+          if (opCode == Wizard.UPDATE)
+            dirtyOthers.add(obj);
+          break;
+        case Wizard.AGENT_CODE:
+          dirtyAgents.add((Agent) obj);
+          break;
+        case Wizard.WATCH_CODE:
+        case Wizard.WASTED_CODE:
+        case Wizard.MEDIAFILE_CODE:
+          dirtyOthers.add(obj);
+          break;
+        case Wizard.CHANNEL_CODE:
+          needFullPass = true;
+          break;
+      }
+      // Don't bother tracking any more once it's clear we'll just be doing a full pass
+      if (needFullPass || dirtyAirs.size() + dirtyOthers.size() > maxIncrementalAirs)
+      {
+        needFullPass = true;
+        dirtyAirs.clear();
+        dirtyAgents.clear();
+        dirtyOthers.clear();
+      }
+    }
   }
 
   public int getWatchCount() { return globalWatchCount; }
 
-  synchronized float getWP(Airing air)
+  float getWP(Airing air)
   {
-    Float f = wpMap.get(air);
-    if (f == null)
+    int sourceID = getSwapSourceID(air);
+    ProfileScores currScores = scores;
+    float f = currScores.getWP(getScoresID(currScores, air, sourceID));
+    if (Float.isNaN(f))
       return MIN_WP;
     else
       return Math.max(f, MIN_WP);
   }
 
   // Returns false iff one is a Favorite and the other isn't, or both are favorites with different causes
-  public synchronized boolean areSameFavorite(Airing a1, Airing a2)
+  public boolean areSameFavorite(Airing a1, Airing a2)
   {
-    Agent b1 = causeMap.get(a1);
-    Agent b2 = causeMap.get(a2);
+    int sourceID1 = getSwapSourceID(a1);
+    int sourceID2 = getSwapSourceID(a2);
+    ProfileScores currScores = scores;
+    Agent b1 = wiz.getAgentForID(currScores.getCauseID(getScoresID(currScores, a1, sourceID1)));
+    Agent b2 = wiz.getAgentForID(currScores.getCauseID(getScoresID(currScores, a2, sourceID2)));
     if (b1 == b2) return true;
     if (b1 != null && b1.isFavorite())
     {
@@ -1184,16 +1584,19 @@ public final class Carny implements Runnable
     return true;
   }
 
-  public synchronized String getCause(Airing air)
+  public String getCause(Airing air)
   {
-    Agent bond = causeMap.get(air);
+    Agent bond = getCauseAgent(air);
     if (bond == null) return null;
     else return bond.getCause();
   }
 
-  public synchronized Agent getCauseAgent(Airing air)
+  public Agent getCauseAgent(Airing air)
   {
-    return causeMap.get(air);
+    int sourceID = getSwapSourceID(air);
+    ProfileScores currScores = scores;
+    int causeID = currScores.getCauseID(getScoresID(currScores, air, sourceID));
+    return (causeID == 0) ? null : wiz.getAgentForID(causeID);
   }
 
   synchronized Airing doBattle(Airing air1, Airing air2)
@@ -1216,6 +1619,174 @@ public final class Carny implements Runnable
     return familyFeud(a1, a2, new HashSet<Agent>());
   }
 
+  // The TV Airings that are outside of the scheduling window plus the ones in it that weren't used, in index order
+  private static List<Airing> getRemainingAirings(AiringColumns[] airCols, long windowStart, long windowEnd, int testMask,
+      Set<Airing> windowRemAirs)
+  {
+    List<Airing> rv = new ArrayList<Airing>();
+    for (int j = 0; j < airCols.length; j++)
+    {
+      AiringColumns cols = airCols[j];
+      int numAirs = cols.size();
+      for (int i = 0; i < numAirs; i++)
+      {
+        long airTime = cols.getStartTime(i);
+        if (airTime < windowEnd && airTime >= windowStart)
+        {
+          if (!windowRemAirs.isEmpty() && windowRemAirs.contains(cols.getAiring(i)))
+            rv.add(cols.getAiring(i));
+        }
+        else
+        {
+          Airing a = cols.getAiring(i);
+          if (a.hasMediaMaskAny(testMask))
+            rv.add(a);
+        }
+      }
+    }
+    return rv;
+  }
+
+  /*
+   * Evaluates one Agent for stdProcessing on the profiler pool. Each Agent is only ever worked on by one of these at a
+   * time so it's safe for it to update the Agent's watchProb; the scratch buffers that used to be shared across the
+   * whole loop are per thread now.
+   */
+  private class AgentWork implements java.util.concurrent.Callable<AgentWork>
+  {
+    AgentWork(Agent inAgent, Airing[] inAllAirs, Set<Airing> inAllAirSet, Airing[] inRemAirs, Set<Airing> inRemAirSet,
+        int inAirWorkCacheSize, java.util.concurrent.atomic.AtomicBoolean inAborted)
+    {
+      aborted = inAborted;
+      agent = inAgent;
+      allAirs = inAllAirs;
+      allAirSet = inAllAirSet;
+      remAirs = inRemAirs;
+      remAirSet = inRemAirSet;
+      airWorkCacheSize = inAirWorkCacheSize;
+    }
+
+    public AgentWork call()
+    {
+      if (aborted.get())
+        return this;
+      Airing[] airWorkCache = airWorkCaches.get();
+      if (airWorkCache == null || airWorkCache.length < airWorkCacheSize)
+        airWorkCaches.set(airWorkCache = new Airing[airWorkCacheSize]);
+      StringBuffer sbCache = sbCaches.get();
+      if (!agent.calcWatchProb(false, airWorkCache, sbCache))
+      {
+        traitor = true;
+        return this;
+      }
+      pots = agent.getRelatedAirings(allAirs, allAirSet, true, false, sbCache);
+      if (agent.isFavorite())
+      {
+        remRelated = agent.getRelatedAirings(remAirs, remAirSet, false, false, sbCache);
+
+        // Check to see if this Agent is a Favorite who has a keep at most limit set with
+        // manual deleting. In that case, we don't add any of its future airings to the
+        // mustSeeSet or to the pots, but we do put them in the loveAirSet.
+        if (agent.testAgentFlag(Agent.DONT_AUTODELETE_FLAG) && agent.getAgentFlag(Agent.KEEP_AT_MOST_MASK) > 0)
+        {
+          int fileCount = 0;
+          for (int j = 0; j < pots.length; j++)
+          {
+            MediaFile mf = wiz.getFileForAiring(pots[j]);
+            if (mf != null && mf.isCompleteRecording())
+              fileCount++;
+          }
+          dontSchedule = fileCount >= agent.getAgentFlag(Agent.KEEP_AT_MOST_MASK);
+        }
+      }
+      return this;
+    }
+
+    final Agent agent;
+    private final java.util.concurrent.atomic.AtomicBoolean aborted;
+    private final Airing[] allAirs;
+    private final Set<Airing> allAirSet;
+    private final Airing[] remAirs;
+    private final Set<Airing> remAirSet;
+    private final int airWorkCacheSize;
+    boolean traitor;
+    Airing[] pots;
+    Airing[] remRelated;
+    boolean dontSchedule;
+  }
+
+  /*
+   * Stops the rest of the work for a pass we're bailing out of. This waits for the ones that are already running to
+   * finish, since the next pass is going to work on the same Agents and only one thread can be doing that at a time.
+   */
+  private static void cancelWork(List<java.util.concurrent.Future<AgentWork>> work,
+      java.util.concurrent.atomic.AtomicBoolean aborted)
+  {
+    aborted.set(true);
+    boolean interrupted = false;
+    for (int i = 0; i < work.size(); i++)
+    {
+      java.util.concurrent.Future<AgentWork> currWork = work.get(i);
+      while (currWork != null)
+      {
+        try
+        {
+          currWork.get();
+          currWork = null;
+        }
+        catch (InterruptedException e)
+        {
+          interrupted = true;
+        }
+        catch (java.util.concurrent.ExecutionException e)
+        {
+          currWork = null;
+        }
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  /*
+   * The threads that stdProcessing evaluates Agents on. They're low priority and there's only a few of them when we're
+   * supposed to be controlling CPU usage, otherwise it'll use all but one of the cores. Idle threads go away on their own.
+   */
+  private java.util.concurrent.ExecutorService getProfilerPool(boolean controlCPUUsage)
+  {
+    int numCPUs = Runtime.getRuntime().availableProcessors();
+    int numThreads = Sage.getInt("profiler_threads", 0);
+    if (numThreads <= 0)
+      numThreads = controlCPUUsage ? Math.max(1, numCPUs / 4) : Math.max(1, numCPUs - 1);
+    if (profilerPool == null)
+    {
+      profilerPool = new java.util.concurrent.ThreadPoolExecutor(numThreads, numThreads, 60, java.util.concurrent.TimeUnit.SECONDS,
+          new java.util.concurrent.LinkedBlockingQueue<Runnable>(), new java.util.concurrent.ThreadFactory()
+      {
+        private int threadNum;
+        public synchronized Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "CarnyWorker-" + (threadNum++));
+          t.setDaemon(true);
+          t.setPriority(Thread.MIN_PRIORITY);
+          return t;
+        }
+      });
+      profilerPool.allowCoreThreadTimeOut(true);
+    }
+    else if (numThreads > profilerPool.getMaximumPoolSize())
+    {
+      profilerPool.setMaximumPoolSize(numThreads);
+      profilerPool.setCorePoolSize(numThreads);
+    }
+    else
+    {
+      profilerPool.setCorePoolSize(numThreads);
+      profilerPool.setMaximumPoolSize(numThreads);
+    }
+    return profilerPool;
+  }
+
   private Agent familyFeud(Agent agent1, Agent agent2, Set<Agent> fightHistory)
   {
     if (!fightHistory.add(agent1)) return null;
@@ -1470,9 +2041,11 @@ public final class Carny implements Runnable
     return pots;
   }
 
-  synchronized boolean isMustSee(Airing air)
+  boolean isMustSee(Airing air)
   {
-    return mustSeeSet.contains(air);
+    int sourceID = getSwapSourceID(air);
+    ProfileScores currScores = scores;
+    return currScores.isMustSee(getScoresID(currScores, air, sourceID));
   }
 
   boolean isBaseTrend(int trendTest)
@@ -1484,7 +2057,9 @@ public final class Carny implements Runnable
 
   public boolean isLoveAir(Airing air)
   {
-    return loveAirSet.contains(air);
+    int sourceID = getSwapSourceID(air);
+    ProfileScores currScores = scores;
+    return currScores.isLove(getScoresID(currScores, air, sourceID));
   }
 
   boolean isPrepped() { return prepped; }
@@ -1492,34 +2067,75 @@ public final class Carny implements Runnable
   void addCarnyListener(ProfilingListener x) { listeners.add(x); }
   void removeCarnyListener(ProfilingListener x) { listeners.remove(x); }
 
-  public synchronized void updateLoves(Set<Airing> s)
+  // These are used by clients to apply what the server sends them; each one replaces that part of the profile
+  public synchronized void updateLoves(int[] airingIDs)
   {
-    loveAirSet = s;
+    replaceFlag(ProfileScores.LOVE, airingIDs);
   }
-  public synchronized void updateMustSees(Set<Airing> s)
+  public synchronized void updateMustSees(int[] airingIDs)
   {
-    mustSeeSet = s;
+    replaceFlag(ProfileScores.MUST_SEE, airingIDs);
   }
-  public synchronized void updateCauseMap(Map<Airing, Agent> m)
+  public synchronized void updateCauseMap(int[] airingIDs, int[] agentIDs)
   {
-    causeMap = m;
+    ProfileScores.Builder next = scores.builder();
+    next.clearCauses();
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setCause(airingIDs[i], agentIDs[i]);
+    scores = next.build();
   }
-  public synchronized void updateWPMap(Map<Airing, Float> m)
+  public synchronized void updateWPMap(int[] airingIDs, float[] wps)
   {
-    wpMap = m;
+    ProfileScores.Builder next = scores.builder();
+    next.clearFlag(ProfileScores.WP);
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setWP(airingIDs[i], wps[i]);
+    scores = next.build();
+  }
+  // These are used by clients to apply changes from the server to one part of the profile
+  public synchronized void updateFlagDelta(int flag, int[] removedIDs, int[] airingIDs)
+  {
+    ProfileScores.Builder next = scores.builder();
+    for (int i = 0; i < removedIDs.length; i++)
+      next.setFlag(removedIDs[i], flag, false);
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setFlag(airingIDs[i], flag, true);
+    scores = next.build();
+  }
+  public synchronized void updateCauseMapDelta(int[] removedIDs, int[] airingIDs, int[] agentIDs)
+  {
+    ProfileScores.Builder next = scores.builder();
+    for (int i = 0; i < removedIDs.length; i++)
+      next.setCause(removedIDs[i], 0);
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setCause(airingIDs[i], agentIDs[i]);
+    scores = next.build();
+  }
+  public synchronized void updateWPMapDelta(int[] removedIDs, int[] airingIDs, float[] wps)
+  {
+    ProfileScores.Builder next = scores.builder();
+    for (int i = 0; i < removedIDs.length; i++)
+      next.removeWP(removedIDs[i]);
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setWP(airingIDs[i], wps[i]);
+    scores = next.build();
+  }
+  private void replaceFlag(int flag, int[] airingIDs)
+  {
+    ProfileScores.Builder next = scores.builder();
+    next.clearFlag(flag);
+    for (int i = 0; i < airingIDs.length; i++)
+      next.setFlag(airingIDs[i], flag, true);
+    scores = next.build();
   }
   // When airings get swapped in the DB we update them in here to still be Favorites in order
   // to be careful and ensure we don't lose any favorites due to an EPG update
   public synchronized void notifyAiringSwap(Airing oldAir, Airing newAir)
   {
-    if (mustSeeSet.contains(oldAir))
+    ProfileScores currScores = scores;
+    int oldScoresID = getSwapSourceID(oldAir);
+    if (currScores.isMustSee(oldScoresID))
     {
-      // To protect against a ConcurrentModificationException in SageTVConnection
-      synchronized (mustSeeSet)
-      {
-        mustSeeSet.remove(oldAir);
-        mustSeeSet.add(newAir);
-      }
       // Also check through the potentials so that gets switched too
       for (int i = 0; i < pots.length; i++)
       {
@@ -1527,32 +2143,61 @@ public final class Carny implements Runnable
           pots[i] = newAir;
       }
     }
-    if (loveAirSet.contains(oldAir))
+    if (currScores.contains(oldScoresID))
     {
-      // To protect against a ConcurrentModificationException in SageTVConnection
-      synchronized (loveAirSet)
+      if (Sage.client || !alive)
       {
-        loveAirSet.remove(oldAir);
-        loveAirSet.add(newAir);
+        // There's no profiling pass coming to apply it
+        ProfileScores.Builder next = currScores.builder();
+        next.move(oldAir.id, newAir.id);
+        scores = next.build();
       }
-    }
-    if (wpMap.containsKey(oldAir))
-    {
-      // To protect against a ConcurrentModificationException in SageTVConnection
-      synchronized (wpMap)
+      else
       {
-        wpMap.put(newAir, wpMap.remove(oldAir));
+        // Copying the whole table for each one of these adds up over an EPG update, so they all get applied at once
+        // at the start of the next pass; until then lookups for the new airing use the ID of the old one
+        pendingSwaps.add(new int[] { oldAir.id, newAir.id });
+        Integer scoresID = pendingSwapSources.remove(oldAir.id);
+        pendingSwapSources.put(newAir.id, (scoresID == null) ? oldAir.id : scoresID);
       }
     }
-    if (causeMap.containsKey(oldAir))
+    swapMap.put(oldAir, newAir);
+  }
+
+  // Moves everything in the profile for the airings that were swapped since the last pass over to the new airings
+  private synchronized void applyPendingSwaps()
+  {
+    if (pendingSwaps.isEmpty())
+      return;
+    ProfileScores.Builder next = scores.builder();
+    for (int i = 0; i < pendingSwaps.size(); i++)
     {
-      // To protect against a ConcurrentModificationException in SageTVConnection
-      synchronized (causeMap)
-      {
-        causeMap.put(newAir, causeMap.remove(oldAir));
-      }
+      int[] swap = pendingSwaps.get(i);
+      next.move(swap[0], swap[1]);
     }
-    swapMap.put(oldAir, newAir);
+    // The new scores have to be published before the sources are cleared, see getScoresID
+    scores = next.build();
+    pendingSwaps.clear();
+    pendingSwapSources.clear();
+  }
+
+  // The ID of the old airing if this one was swapped in since the last pass, otherwise its own ID
+  private int getSwapSourceID(Airing air)
+  {
+    if (pendingSwapSources.isEmpty())
+      return air.id;
+    Integer scoresID = pendingSwapSources.get(air.id);
+    return (scoresID == null) ? air.id : scoresID;
+  }
+
+  /*
+   * The ID the airing has in currScores. sourceID must come from getSwapSourceID BEFORE currScores is read from scores.
+   * applyPendingSwaps publishes the new scores before it clears the sources, so if we got a source then either
+   * currScores still has it or it's already been moved over to the airing's own ID.
+   */
+  private static int getScoresID(ProfileScores currScores, Airing air, int sourceID)
+  {
+    return (sourceID == air.id || currScores.contains(sourceID)) ? sourceID : air.id;
   }
 
   private String prefs;
@@ -1562,23 +2207,44 @@ public final class Carny implements Runnable
   private boolean prepped;
   private Wizard wiz;
   private int[] trends;
-  private Set<Airing> loveAirSet;
   private boolean doneInit;
 
   private long lastCycleCompleteTime;
   private long cycleStartTime;
 
-  // Airing -> Float
-  private Map<Airing, Float> wpMap;
-  // Airing -> Agent
-  private Map<Airing, Agent> causeMap;
-  // Airings
-  private Set<Airing> mustSeeSet;
+  // Replaced as a whole whenever it changes so it can be read without locking
+  private volatile ProfileScores scores;
   private Airing[] pots;
 
   private Vector<ProfilingListener> listeners = new Vector<ProfilingListener>();
 
   private Map<Airing, Airing> swapMap;
+  // Airing swaps that haven't been applied to scores yet as {oldID, newID} in the order they happened, and the ID in
+  // scores for each of the new airings
+  private List<int[]> pendingSwaps = new ArrayList<int[]>();
+  private final Map<Integer, Integer> pendingSwapSources = new java.util.concurrent.ConcurrentHashMap<Integer, Integer>();
+
+  private java.util.concurrent.ThreadPoolExecutor profilerPool;
+  // Favorites that have hit their keep at most limit as of the last pass
+  private Set<Agent> dontScheduleAgents = new HashSet<Agent>();
+  private long lastFullPassTime;
+  private int maxIncrementalAirs;
+  // What's changed in the DB since the last pass, see dbObjectChanged
+  private final Object dirtyLock = new Object();
+  private Set<Airing> dirtyAirs = new HashSet<Airing>();
+  private Set<Agent> dirtyAgents = new HashSet<Agent>();
+  private List<DBObject> dirtyOthers = new ArrayList<DBObject>();
+  private boolean needFullPass = true;
+  private static final ThreadLocal<Airing[]> airWorkCaches = new ThreadLocal<Airing[]>();
+  // We do a lot of String work for keyword favorites so have a buffer that they can do
+  // that work in to massively reduce GC'd memory allocations
+  private static final ThreadLocal<StringBuffer> sbCaches = new ThreadLocal<StringBuffer>()
+  {
+    protected StringBuffer initialValue()
+    {
+      return new StringBuffer();
+    }
+  };
 
   private static final int strComp(DBObject s1, DBObject s2)
   {
@@ -1757,9 +2423,10 @@ public final class Carny implements Runnable
 	}*/
   public static interface ProfilingListener
   {
-    public boolean updateLoves(Set<Airing> s);
-    public boolean updateMustSees(Set<Airing> s);
-    public boolean updateCauseMap(Map<Airing, Agent> m);
-    public boolean updateWPMap(Map<Airing, Float> m);
+    // Each of these sends the corresponding part of the scores
+    public boolean updateLoves(ProfileScores s);
+    public boolean updateMustSees(ProfileScores s);
+    public boolean updateCauseMap(ProfileScores s);
+    public boolean updateWPMap(ProfileScores s);
   }
 }
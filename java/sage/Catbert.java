@@ -520,6 +520,24 @@ public class Catbert
       Collections.synchronizedMap(new HashMap<String, JEP>());
 
   public static Object evaluateExpression(String expr, final Context context, ZPseudoComp inUIComp, Widget src) throws Exception
+  {
+    UIManager profUIMgr = context.getUIMgr();
+    UIProfiler prof = (profUIMgr == null) ? null : profUIMgr.getProfiler();
+    if (prof == null)
+      return evaluateExpressionUnprofiled(expr, context, inUIComp, src);
+    prof.enter(UIProfiler.EXPRESSION, src, expr);
+    try
+    {
+      return evaluateExpressionUnprofiled(expr, context, inUIComp, src);
+    }
+    finally
+    {
+      prof.exit();
+    }
+  }
+
+  private static Object evaluateExpressionUnprofiled(String expr, final Context context, ZPseudoComp inUIComp, Widget src)
+      throws Exception
   {
     if (LOG_REM_ACTIONS && expr.startsWith("\"REM"))
       System.out.println(expr);
@@ -1808,6 +1826,14 @@ public class Catbert
       {
         if (actClass == null)
           actClass = Class.forName(className.replace('_', '.'), true, Sage.extClassLoader);
+        // If we've already resolved a call with these same argument types then skip the overload search
+        CallSite site = findCallSite(args);
+        if (site != null)
+        {
+          stack.push(site.invoke(args));
+          return;
+        }
+        Class<?>[] argClasses = getArgClasses(args);
         Class<?>[][] paramTypes = null;
         paramTypes = new Class[curNumberOfParameters][];
         for (int i = 0; i < curNumberOfParameters; i++)
@@ -1966,10 +1992,14 @@ public class Catbert
             if (theConst == null)
               throw new sage.jep.ParseException("UNKNOWN CONSTRUCTOR ERROR name=" + methodName + " args=" + Arrays.asList(args));
           }
+          Class<?>[] convertTypes = null;
           for (int i = 0; i < args.length; i++)
           {
             if (paramTypes[i] != null && methArgs[i].isPrimitive() && !methArgs[i].isAssignableFrom(((Class[])paramTypes[i])[1]))
             {
+              if (convertTypes == null)
+                convertTypes = new Class[args.length];
+              convertTypes[i] = methArgs[i];
               if (methArgs[i] == Byte.TYPE)
                 args[i] = ((Number) args[i]).byteValue();
               else if (methArgs[i] == Short.TYPE)
@@ -1984,6 +2014,7 @@ public class Catbert
                 args[i] = ((Number) args[i]).doubleValue();
             }
           }
+          addCallSite(new CallSite(argClasses, theConst, null, false, convertTypes));
           result = theConst.newInstance(args);
         }
         else
@@ -2115,10 +2146,14 @@ public class Catbert
             args = Arrays.asList(args).subList(1, args.length).toArray();
             paramTypesOffset = 1;
           }
+          Class<?>[] convertTypes = null;
           for (int i = 0; i < args.length; i++)
           {
             if (paramTypes[i] != null && methArgs[i].isPrimitive() && !methArgs[i].isAssignableFrom(((Class[])paramTypes[i + paramTypesOffset])[1]))
             {
+              if (convertTypes == null)
+                convertTypes = new Class[args.length];
+              convertTypes[i] = methArgs[i];
               if (methArgs[i] == Byte.TYPE)
                 args[i] = new Byte(((Number) args[i]).byteValue());
               else if (methArgs[i] == Short.TYPE)
@@ -2133,6 +2168,7 @@ public class Catbert
                 args[i] = new Double(((Number) args[i]).doubleValue());
             }
           }
+          addCallSite(new CallSite(argClasses, null, theMeth, paramTypesOffset == 1, convertTypes));
           result = theMeth.invoke(instObj, args);
         }
       }
@@ -2148,7 +2184,145 @@ public class Catbert
       stack.push(result);
     }
 
-    // NOTE We don't cache the reflected method object because of operator overloading
+    // Returns the cached resolution for these exact argument classes, or null if there isn't one
+    private CallSite findCallSite(Object[] args)
+    {
+      CallSite[] sites = callSites;
+      if (sites == null)
+        return null;
+      for (int i = 0; i < sites.length; i++)
+        if (sites[i].matches(args))
+          return sites[i];
+      return null;
+    }
+
+    private synchronized void addCallSite(CallSite site)
+    {
+      CallSite[] sites = callSites;
+      CallSite[] newSites;
+      if (sites == null)
+        newSites = new CallSite[] { site };
+      else if (sites.length < MAX_CALL_SITES)
+      {
+        newSites = new CallSite[sites.length + 1];
+        System.arraycopy(sites, 0, newSites, 0, sites.length);
+        newSites[sites.length] = site;
+      }
+      else
+      {
+        // Drop the oldest one
+        newSites = new CallSite[sites.length];
+        System.arraycopy(sites, 1, newSites, 0, sites.length - 1);
+        newSites[sites.length - 1] = site;
+      }
+      callSites = newSites;
+    }
+
+    private static Class<?>[] getArgClasses(Object[] args)
+    {
+      Class<?>[] rv = new Class[args.length];
+      for (int i = 0; i < args.length; i++)
+        rv[i] = (args[i] == null) ? null : args[i].getClass();
+      return rv;
+    }
+
+    /*
+     * The method or constructor that was picked for one set of argument classes (a null class is a null argument),
+     * along with which arguments need numeric conversions. Overload resolution only depends on the classes of the
+     * arguments, so any call with the same classes resolves to the same thing.
+     */
+    private static final class CallSite
+    {
+      CallSite(Class<?>[] inArgClasses, Constructor<?> inConstructor, Method inMethod, boolean inNeedThis,
+          Class<?>[] inConvertTypes)
+      {
+        argClasses = inArgClasses;
+        constructor = inConstructor;
+        method = inMethod;
+        needThis = inNeedThis;
+        convertTypes = inConvertTypes;
+        // Skip the access check on every invoke; it's already known to be accessible since it came from a public
+        // class's getMethods/getConstructors
+        java.lang.reflect.AccessibleObject member = (constructor != null) ? constructor : method;
+        Class<?> declaringClass = (constructor != null) ? constructor.getDeclaringClass() : method.getDeclaringClass();
+        if (Modifier.isPublic(declaringClass.getModifiers()))
+        {
+          try
+          {
+            member.setAccessible(true);
+          }
+          catch (RuntimeException e)
+          {
+            // security manager or module restrictions, then it just gets checked each time
+          }
+        }
+      }
+
+      boolean matches(Object[] args)
+      {
+        if (args.length != argClasses.length)
+          return false;
+        for (int i = 0; i < args.length; i++)
+        {
+          Object arg = args[i];
+          if (arg == null ? argClasses[i] != null : arg.getClass() != argClasses[i])
+            return false;
+        }
+        return true;
+      }
+
+      Object invoke(Object[] args) throws Exception
+      {
+        Object instObj = null;
+        if (needThis)
+        {
+          instObj = args[0];
+          if (args.length == 1)
+            args = Pooler.EMPTY_OBJECT_ARRAY;
+          else
+          {
+            Object[] newArgs = new Object[args.length - 1];
+            System.arraycopy(args, 1, newArgs, 0, newArgs.length);
+            args = newArgs;
+          }
+        }
+        if (convertTypes != null)
+        {
+          for (int i = 0; i < convertTypes.length; i++)
+          {
+            Class<?> type = convertTypes[i];
+            if (type == null)
+              continue;
+            Number n = (Number) args[i];
+            if (type == Byte.TYPE)
+              args[i] = n.byteValue();
+            else if (type == Short.TYPE)
+              args[i] = n.shortValue();
+            else if (type == Integer.TYPE)
+              args[i] = n.intValue();
+            else if (type == Long.TYPE)
+              args[i] = n.longValue();
+            else if (type == Float.TYPE)
+              args[i] = n.floatValue();
+            else if (type == Double.TYPE)
+              args[i] = n.doubleValue();
+          }
+        }
+        return (constructor != null) ? constructor.newInstance(args) : method.invoke(instObj, args);
+      }
+
+      private final Class<?>[] argClasses;
+      private final Constructor<?> constructor;
+      private final Method method;
+      private final boolean needThis;
+      // The primitive type each argument needs to be converted to, or null for no conversions
+      private final Class<?>[] convertTypes;
+    }
+
+    // The method objects can't be cached by name alone because of operator overloading, so they're cached by the
+    // classes of the arguments they were resolved for. A few of them are kept for calls that see different types.
+    private static final int MAX_CALL_SITES = 4;
+    private volatile CallSite[] callSites;
     private String methodName;
     private Class<?> actClass;
     private Method[] nameMatchedMeths;
@@ -107,4 +107,54 @@ public interface EPGDBPublic2 extends EPGDBPublic
    * for you automatically.
    */
   public boolean addAiringPublic2(String extID, int stationID, long startTime, long duration, byte partsByte, int misc, String parentalRating);
+
+  /*
+   * One Show for addShowsAndAiringsBatch, the fields have the same meaning as the arguments to addShowPublic2.
+   */
+  public static class ShowData
+  {
+    public String title;
+    public String episodeName;
+    public String desc;
+    public long duration;
+    public String[] categories;
+    public String[] people;
+    public byte[] roles;
+    public String rated;
+    public String[] expandedRatings;
+    public String year;
+    public String parentalRating;
+    public String[] bonus;
+    public String extID;
+    public String language;
+    public long originalAirDate;
+    public short seasonNum;
+    public short episodeNum;
+    public boolean forcedUnique;
+  }
+
+  /*
+   * One Airing for addShowsAndAiringsBatch, the fields have the same meaning as the arguments to addAiringPublic2.
+   */
+  public static class AiringData
+  {
+    public String extID;
+    public int stationID;
+    public long startTime;
+    public long duration;
+    public byte partsByte;
+    public int misc;
+    public String parentalRating;
+  }
+
+  /*
+   * Call this to add many Shows and Airings at once, it's the same as calling addShowPublic2 for each of the shows and
+   * then addAiringPublic2 for each of the airings (so the Airings may refer to Shows in the same call) but it's much
+   * faster for large imports. The records are sorted first so they're inserted in index order, the Show table is locked
+   * once for all of the shows, and the resulting DB changes are sent to clients in large groups rather than one at a time.
+   * Either array may be null.
+   *
+   * Returns the number of Shows and Airings that were successfully updated/added to the database.
+   */
+  public int addShowsAndAiringsBatch(ShowData[] shows, AiringData[] airings);
 }
@@ -693,6 +693,8 @@ public class FastRandomFile implements java.io.DataOutput, java.io.DataInput
 
   public void setCharset(String x){ myCharset = x; isI18N = Sage.I18N_CHARSET.equals(myCharset); }
 
+  public String getCharset() { return myCharset; }
+
   public void setCircularSize(long x) { circularFileSize = x; }
 
   protected String myCharset;
@@ -17,6 +17,10 @@ package sage;
 
 public final class Index
 {
+  // Max number of objects in a single chunk when using chunked storage. Inserts/removes only move data
+  // within a single chunk, and locating a chunk is a binary search over the chunks.
+  static final int CHUNK_SIZE = 512;
+
   Index(java.util.Comparator inComp)
   {
     this((byte)0, inComp);
@@ -29,8 +33,123 @@ public final class Index
     comp = inComp;
   }
 
+  /*
+   * When chunked is true this index is stored as a list of sorted chunks instead of one big sorted array. That
+   * makes add/remove/update only copy data within one chunk instead of doing an arraycopy of the whole tail
+   * of the index. The chunks are held in an immutable ChunkView; writers build a new view that shares all of the
+   * chunks they didn't touch and then publish it. That lets lookups run against whatever view is current without
+   * taking the table lock, so they never wait behind a writer (or the writers queued up behind it on the fair lock).
+   * While the DB is being loaded the data is staged in the flat array and then split into chunks when check() is called.
+   */
+  void setChunked(boolean x)
+  {
+    if (!x && view != null)
+      flatten();
+    chunked = x;
+  }
+
+  boolean isChunked()
+  {
+    return chunked;
+  }
+
+  int size()
+  {
+    ChunkView v = view;
+    return (v != null) ? v.count : table.num;
+  }
+
+  DBObject get(int index)
+  {
+    ChunkView v = view;
+    if (v == null)
+      return data[index];
+    return v.get(index);
+  }
+
+  // Only for staging data while loading the DB, this'll convert us back to flat storage if we were chunked
+  void set(int index, DBObject obj)
+  {
+    if (view != null)
+      flatten();
+    flatSnapshot = null;
+    data[index] = obj;
+  }
+
+  // Only for staging data while loading the DB
+  void allocate(int size)
+  {
+    view = null;
+    flatSnapshot = null;
+    data = new DBObject[size + Wizard.INC_SIZE];
+  }
+
+  void free()
+  {
+    view = null;
+    flatSnapshot = null;
+    data = new DBObject[0];
+  }
+
+  /*
+   * Returns the contents of this index as an array sorted by this index. For flat storage this is the actual
+   * backing array (which may have null entries at the end) and the caller needs to hold the table lock; for chunked
+   * storage this is the snapshot of the current view.
+   */
+  DBObject[] getData()
+  {
+    ChunkView v = view;
+    if (v == null)
+      return data;
+    return v.toArray();
+  }
+
+  /*
+   * Returns a snapshot of this index that will never change underneath the caller. It has no null padding at the end.
+   * For chunked storage this doesn't lock at all; for flat storage the copy is made under the read lock and cached until
+   * the next modification.
+   */
+  DBObject[] getSnapshot()
+  {
+    ChunkView v = view;
+    if (v != null)
+      return v.toArray();
+    try {
+      table.acquireReadLock();
+      v = view;
+      if (v != null)
+        return v.toArray();
+      DBObject[] rv = flatSnapshot;
+      if (rv == null)
+      {
+        rv = new DBObject[table.num];
+        System.arraycopy(data, 0, rv, 0, table.num);
+        flatSnapshot = rv;
+      }
+      return rv;
+    } finally {
+      table.releaseReadLock();
+    }
+  }
+
+  void copyInto(int srcPos, DBObject[] dest, int destPos, int length)
+  {
+    ChunkView v = view;
+    if (v == null)
+      System.arraycopy(data, srcPos, dest, destPos, length);
+    else
+      v.copyInto(srcPos, dest, destPos, length);
+  }
+
   void add(DBObject addMe)
   {
+    if (chunked)
+    {
+      ensureChunks();
+      view = chunkedInsert(view, addMe, addMe);
+      return;
+    }
+    flatSnapshot = null;
     int index = binarySearch(addMe);
     if (index < 0) index = -(index + 1);
 
@@ -54,6 +173,8 @@ public final class Index
 
   boolean remove(DBObject removeMe)
   {
+    if (chunked)
+      ensureChunks();
     int index = findExactIndex(removeMe);
     if (index < 0)
     {
@@ -61,6 +182,12 @@ public final class Index
       return false;
     }
 
+    if (view != null)
+    {
+      view = chunkedRemove(view, index);
+      return true;
+    }
+    flatSnapshot = null;
     if (index < table.num - 1)
     {
       System.arraycopy(data, index + 1, data, index, table.num - index - 1);
@@ -75,6 +202,8 @@ public final class Index
     int originalcmp = comp.compare(updateMe, newMe);
     if (originalcmp == 0) return true;
 
+    if (chunked)
+      ensureChunks();
     int oldIndex = findExactIndex(updateMe);
     if (oldIndex < 0)
     {
@@ -82,6 +211,16 @@ public final class Index
       return false;
     }
 
+    if (view != null)
+    {
+      // Take it out and put it back in where the new values sort to. The object itself gets updated by the Table
+      // afterwards, so this view isn't published until refresh is called; until then searches still find it where its
+      // current values sort to.
+      pendingView = chunkedInsert(chunkedRemove(view, oldIndex), newMe, updateMe);
+      return true;
+    }
+    flatSnapshot = null;
+
     int low, high;
     /*
      * 10-25-02 Previously, high and then low below were oldIndex - 1 and oldIndex + 1. I changed
@@ -140,11 +279,17 @@ public final class Index
 
   DBObject getSingle(DBObject matchMe)
   {
+    ChunkView v = view;
+    if (v != null)
+    {
+      int index = v.binarySearch(comp, matchMe);
+      return (index < 0) ? null : v.get(index);
+    }
     try {
       table.acquireReadLock();
       int index = binarySearch(matchMe);
       if (index < 0) return null;
-      else return data[index];
+      else return get(index);
     } finally {
       table.releaseReadLock();
     }
@@ -156,11 +301,17 @@ public final class Index
     if (comp != DBObject.ID_COMPARATOR)
       throw new InternalError("CANNOT CALL GET SINGLE FOR ID ON THAT INDEX! tableCode=" + table.tableCode +
           " indexCode=" + indexCode);
+    ChunkView v = view;
+    if (v != null)
+    {
+      int index = v.binarySearch(idMatch);
+      return (index < 0) ? null : v.get(index);
+    }
     try {
       table.acquireReadLock();
       int index = binarySearch(idMatch);
       if (index < 0) return null;
-      else return data[index];
+      else return get(index);
     } finally {
       table.releaseReadLock();
     }
@@ -170,8 +321,9 @@ public final class Index
   {
     try {
       table.acquireWriteLock();
-      for (int i = 0; i < table.num; i++)
-        data[i].clearProfile();
+      int num = size();
+      for (int i = 0; i < num; i++)
+        get(i).clearProfile();
     } finally {
       table.releaseWriteLock();
     }
@@ -181,6 +333,12 @@ public final class Index
   {
     try {
       table.acquireWriteLock();
+      flatSnapshot = null;
+      if (view != null)
+      {
+        view = null;
+        data = new DBObject[Wizard.INC_SIZE];
+      }
       for (int i = 0; i < data.length; i++)
         data[i] = null;
     } finally {
@@ -192,18 +350,51 @@ public final class Index
   {
     try {
       table.acquireWriteLock();
+      flatSnapshot = null;
+      if (view != null)
+      {
+        int num = view.count;
+        // Orderings loaded from the DB file are normally already sorted, so just adopt those as they are
+        if (isSorted(view.toArray(), num))
+          return;
+        // Sort a copy so the current view stays intact for readers until the new one is published
+        DBObject[] src = view.toArray().clone();
+        DBObject[] newData = src.clone();
+        mergeSort(src, newData, 0, num);
+        buildChunks(newData, num);
+        return;
+      }
+      if (isSorted(data, table.num))
+      {
+        if (chunked)
+          buildChunks(data, table.num);
+        return;
+      }
       DBObject[] newData = new DBObject[data.length];
       System.arraycopy(data, 0, newData, 0, table.num);
       mergeSort(data, newData, 0, table.num);
       data = newData;
       newData = null;
+      if (chunked)
+        buildChunks(data, table.num);
     } finally {
       table.releaseWriteLock();
     }
   }
 
+  private boolean isSorted(DBObject[] arr, int num)
+  {
+    for (int i = 1; i < num; i++)
+      if (comp.compare(arr[i - 1], arr[i]) > 0)
+        return false;
+    return true;
+  }
+
   public int binarySearch(Object key)
   {
+    ChunkView v = view;
+    if (v != null)
+      return v.binarySearch(comp, key);
     int low = 0;
     int high = table.num - 1;
 
@@ -226,13 +417,16 @@ public final class Index
 
   public int binarySearch(int key)
   {
+    ChunkView v = view;
+    if (v != null)
+      return v.binarySearch(key);
     int low = 0;
-    int high = table.num - 1;
+    int high = size() - 1;
 
     while (low <= high)
     {
       int mid = (low + high) >> 1;
-    DBObject midVal = data[mid];
+    DBObject midVal = get(mid);
     int cmp = (midVal == null) ? 1 : (midVal.id - key);
 
     if (cmp < 0)
@@ -291,19 +485,23 @@ public final class Index
   {
     int index = binarySearch(matchMe);
     if (index < 0) return index;
-    if (data[index].id == matchMe.id) return index;
+    if (get(index).id == matchMe.id) return index;
 
-    for (int i = -1; (i + index >= 0) && (comp.compare(matchMe, data[i + index]) == 0); i--)
-      if (data[index + i].id == matchMe.id)
+    int num = size();
+    for (int i = -1; (i + index >= 0) && (comp.compare(matchMe, get(i + index)) == 0); i--)
+      if (get(index + i).id == matchMe.id)
         return index + i;
-    for (int i = 1; (i + index < table.num) && (comp.compare(matchMe, data[i + index]) == 0); i++)
-      if (data[index + i].id == matchMe.id)
+    for (int i = 1; (i + index < num) && (comp.compare(matchMe, get(i + index)) == 0); i++)
+      if (get(index + i).id == matchMe.id)
         return index + i;
     return index;
   }
 
   void massRemove(java.util.Set killUs)
   {
+    if (view != null)
+      flatten();
+    flatSnapshot = null;
     for (int i = 0; i < table.num; i++)
     {
       if (killUs.contains(data[i]))
@@ -311,8 +509,304 @@ public final class Index
     }
   }
 
+  /*
+   * Returns the contents of this index as blocks of primitive columns, see AiringColumns. For chunked storage there's
+   * one block per chunk and each one is cached until that chunk changes, so repeated scans only rebuild what was
+   * modified since the last one. Only valid for indices on the Airing table.
+   */
+  AiringColumns[] getAiringColumns()
+  {
+    columnsInUse = true;
+    ChunkView v = view;
+    if (v != null)
+    {
+      AiringColumns[] rv = new AiringColumns[v.chunks.length];
+      for (int i = 0; i < rv.length; i++)
+      {
+        Object o = v.derived[i];
+        if (!(o instanceof AiringColumns))
+          v.derived[i] = o = new AiringColumns(v.chunks[i]);
+        rv[i] = (AiringColumns) o;
+      }
+      return rv;
+    }
+    DBObject[] snap = getSnapshot();
+    AiringColumns rv = flatColumns;
+    if (rv == null || rv.airs != snap)
+      flatColumns = rv = new AiringColumns(snap);
+    return new AiringColumns[] { rv };
+  }
+
+  /*
+   * Called after an object in this index was modified in place. If update moved it then that's published now that its
+   * values match where it is, otherwise any cached column data for it is rebuilt. The latter is a no-op unless column
+   * data has been requested from this index.
+   */
+  void refresh(DBObject obj)
+  {
+    if (pendingView != null)
+    {
+      // The chunks it was moved between are new, so they don't have any cached column data yet
+      view = pendingView;
+      pendingView = null;
+      return;
+    }
+    if (!columnsInUse)
+      return;
+    ChunkView v = view;
+    if (v == null)
+    {
+      flatSnapshot = null;
+      flatColumns = null;
+      return;
+    }
+    int index = findExactIndex(obj);
+    if (index < 0)
+      return;
+    int c = v.findChunkForPosition(index);
+    view = replaceChunk(v, c, new DBObject[][] { (DBObject[]) v.chunks[c].clone() });
+  }
+
+  /*
+   * Chunked storage implementation. Everything here is only called with the table's write lock held (or while loading),
+   * so there's only ever one thread building a new view.
+   */
+  private void ensureChunks()
+  {
+    if (view == null)
+      buildChunks(data, table.num);
+  }
+
+  private void buildChunks(DBObject[] sorted, int num)
+  {
+    // Leave room in each chunk so that inserts don't immediately cause splits
+    int fill = CHUNK_SIZE * 3 / 4;
+    DBObject[][] newChunks = new DBObject[(num + fill - 1) / fill][];
+    for (int i = 0; i < newChunks.length; i++)
+    {
+      newChunks[i] = new DBObject[Math.min(fill, num - i*fill)];
+      System.arraycopy(sorted, i*fill, newChunks[i], 0, newChunks[i].length);
+    }
+    view = new ChunkView(newChunks, new Object[newChunks.length], null, 0);
+    // The flat array is the staging area and is now out of date
+    data = null;
+  }
+
+  // Converts back to a single flat array with room to grow, this is only used while loading
+  private void flatten()
+  {
+    ChunkView v = view;
+    DBObject[] newData = new DBObject[v.count + Wizard.INC_SIZE];
+    v.copyInto(0, newData, 0, v.count);
+    data = newData;
+    view = null;
+  }
+
+  // Returns a new view with insertMe at the position in v that sortKey belongs at
+  private ChunkView chunkedInsert(ChunkView v, DBObject sortKey, DBObject insertMe)
+  {
+    if (v.chunks.length == 0)
+      return new ChunkView(new DBObject[][] { { insertMe } }, new Object[1], null, 0);
+    int index = v.binarySearch(comp, sortKey);
+    if (index < 0) index = -(index + 1);
+    int c = (index == v.count) ? v.chunks.length - 1 : v.findChunkForPosition(index);
+    int offset = index - v.starts[c];
+    DBObject[] oldChunk = v.chunks[c];
+    DBObject[] newChunk = new DBObject[oldChunk.length + 1];
+    System.arraycopy(oldChunk, 0, newChunk, 0, offset);
+    newChunk[offset] = insertMe;
+    System.arraycopy(oldChunk, offset, newChunk, offset + 1, oldChunk.length - offset);
+    if (newChunk.length > CHUNK_SIZE)
+    {
+      // Split this chunk in half
+      int half = newChunk.length / 2;
+      DBObject[] left = new DBObject[half];
+      DBObject[] right = new DBObject[newChunk.length - half];
+      System.arraycopy(newChunk, 0, left, 0, half);
+      System.arraycopy(newChunk, half, right, 0, right.length);
+      return replaceChunk(v, c, new DBObject[][] { left, right });
+    }
+    else
+      return replaceChunk(v, c, new DBObject[][] { newChunk });
+  }
+
+  // Returns a new view with the element at index in v taken out
+  private static ChunkView chunkedRemove(ChunkView v, int index)
+  {
+    int c = v.findChunkForPosition(index);
+    int offset = index - v.starts[c];
+    DBObject[] oldChunk = v.chunks[c];
+    if (oldChunk.length == 1)
+      return replaceChunk(v, c, new DBObject[0][]);
+    DBObject[] newChunk = new DBObject[oldChunk.length - 1];
+    System.arraycopy(oldChunk, 0, newChunk, 0, offset);
+    System.arraycopy(oldChunk, offset + 1, newChunk, offset, newChunk.length - offset);
+    return replaceChunk(v, c, new DBObject[][] { newChunk });
+  }
+
+  // Creates a new view with chunk c in v replaced by the specified chunks; all the others are shared with v
+  private static ChunkView replaceChunk(ChunkView v, int c, DBObject[][] replacement)
+  {
+    DBObject[][] newChunks = new DBObject[v.chunks.length - 1 + replacement.length][];
+    System.arraycopy(v.chunks, 0, newChunks, 0, c);
+    System.arraycopy(replacement, 0, newChunks, c, replacement.length);
+    System.arraycopy(v.chunks, c + 1, newChunks, c + replacement.length, v.chunks.length - c - 1);
+    Object[] newDerived = new Object[newChunks.length];
+    System.arraycopy(v.derived, 0, newDerived, 0, c);
+    System.arraycopy(v.derived, c + 1, newDerived, c + replacement.length, v.chunks.length - c - 1);
+    return new ChunkView(newChunks, newDerived, v.starts, c);
+  }
+
+  /*
+   * An immutable list of sorted chunks. Nothing in here is ever modified after it's constructed (other than the lazily
+   * built flat copy), and it's published through the volatile 'view' field, so any thread can safely search it.
+   */
+  static final class ChunkView
+  {
+    // The start positions for chunks up to validStarts are copied from oldStarts, the rest are recalculated
+    ChunkView(DBObject[][] inChunks, Object[] inDerived, int[] oldStarts, int validStarts)
+    {
+      chunks = inChunks;
+      derived = inDerived;
+      starts = new int[chunks.length + 1];
+      if (validStarts > 0)
+        System.arraycopy(oldStarts, 0, starts, 0, validStarts + 1);
+      int start = starts[validStarts];
+      for (int i = validStarts; i < chunks.length; i++)
+      {
+        starts[i] = start;
+        start += chunks[i].length;
+      }
+      starts[chunks.length] = start;
+      count = start;
+    }
+
+    DBObject get(int pos)
+    {
+      int c = findChunkForPosition(pos);
+      return chunks[c][pos - starts[c]];
+    }
+
+    int findChunkForPosition(int pos)
+    {
+      if (pos < 0 || pos >= count)
+        throw new ArrayIndexOutOfBoundsException(pos);
+      int low = 0;
+      int high = chunks.length - 1;
+      while (low < high)
+      {
+        int mid = (low + high + 1) >> 1;
+        if (starts[mid] <= pos)
+          low = mid;
+        else
+          high = mid - 1;
+      }
+      return low;
+    }
+
+    int binarySearch(java.util.Comparator comp, Object key)
+    {
+      // Find the first chunk whose last element is >= the key
+      int low = 0;
+      int high = chunks.length - 1;
+      while (low <= high)
+      {
+        int mid = (low + high) >> 1;
+        DBObject[] chunk = chunks[mid];
+        if (comp.compare(chunk[chunk.length - 1], key) < 0)
+          low = mid + 1;
+        else
+          high = mid - 1;
+      }
+      int c = low;
+      if (c == chunks.length)
+        return -(count + 1);
+      DBObject[] chunk = chunks[c];
+      low = 0;
+      high = chunk.length - 1;
+      while (low <= high)
+      {
+        int mid = (low + high) >> 1;
+        int cmp = comp.compare(chunk[mid], key);
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return starts[c] + mid; // key found
+      }
+      return -(starts[c] + low + 1);  // key not found.
+    }
+
+    int binarySearch(int key)
+    {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high)
+      {
+        int mid = (low + high) >> 1;
+        int cmp = get(mid).id - key;
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return mid; // key found
+      }
+      return -(low + 1);  // key not found.
+    }
+
+    void copyInto(int srcPos, DBObject[] dest, int destPos, int length)
+    {
+      if (length <= 0)
+        return;
+      int c = findChunkForPosition(srcPos);
+      int offset = srcPos - starts[c];
+      while (length > 0)
+      {
+        int num = Math.min(length, chunks[c].length - offset);
+        System.arraycopy(chunks[c], offset, dest, destPos, num);
+        destPos += num;
+        length -= num;
+        offset = 0;
+        c++;
+      }
+    }
+
+    // Callers must not modify the returned array since it's shared
+    DBObject[] toArray()
+    {
+      DBObject[] rv = flat;
+      if (rv == null)
+      {
+        rv = new DBObject[count];
+        copyInto(0, rv, 0, count);
+        flat = rv;
+      }
+      return rv;
+    }
+
+    final DBObject[][] chunks;
+    // starts[i] is the position of the first object in chunk i; starts[chunks.length] is the count
+    final int[] starts;
+    final int count;
+    // Data derived from each chunk (i.e. AiringColumns), built lazily and shared with later views for untouched chunks.
+    // Anything stored in here must be immutable with final fields since it's read without synchronization.
+    final Object[] derived;
+    private volatile DBObject[] flat;
+  }
+
   Table table;
   byte indexCode;
   java.util.Comparator comp;
-  DBObject[] data;
+  // The sorted data for flat storage; it's only used for staging data while loading for chunked storage
+  private DBObject[] data;
+  private boolean chunked;
+  private volatile ChunkView view;
+  // The view from an update that's published once the object has its new values, see refresh
+  private ChunkView pendingView;
+  // Cached copy of the flat data returned from getSnapshot(), cleared on any modification
+  private DBObject[] flatSnapshot;
+  private volatile boolean columnsInUse;
+  private volatile AiringColumns flatColumns;
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/*
+ * Keeps the Show IDs that match each keyword Favorite so the Carny doesn't need a Lucene search for every one of them
+ * on every profiling pass. The queries work like the ones searchShowsByKeyword builds: every word of the keyword has
+ * to be a term in one of the searched fields (or just the title for "TITLE:" keywords). Instead of searching for each
+ * query, the Lucene Show worker hands every Show it indexes to percolate(), which tokenizes it with the index's own
+ * analyzer and matches it against all of the queries at once; each query is only looked at when the Show has its
+ * longest word. Removed and updated Shows come through remove() first since the worker deletes them before re-adding.
+ *
+ * A query is registered the first time its Agent is looked up and then seeded with one regular Lucene search. It's
+ * registered before that search is done so Shows indexed while it runs aren't missed, and other lookups of it wait
+ * until that search is done. Like the search results, these are only candidates and still need to go through
+ * followsTrend.
+ */
+final class KeywordPercolator
+{
+  KeywordPercolator(Wizard inWiz)
+  {
+    wiz = inWiz;
+  }
+
+  /*
+   * Returns the IDs of the Shows that match this Agent's keyword. This may include the IDs of Shows that were removed
+   * since, so getShowForID can return null for them. This never returns null.
+   */
+  int[] getShowIDs(Agent bond)
+  {
+    String keyword = bond.getKeyword();
+    Query q;
+    synchronized (this)
+    {
+      while (true)
+      {
+        q = queries.get(bond.id);
+        if (q == null || !q.keyword.equals(keyword))
+          break;
+        if (q.seeded)
+          return q.getIDs();
+        // Another thread is still doing the search that seeds it
+        try
+        {
+          wait();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          return toIDs(wiz.searchShowsByKeyword(keyword));
+        }
+      }
+      if (q != null)
+        unregister(q);
+      q = new Query(keyword);
+      register(bond.id, q);
+    }
+    Show[] shows = null;
+    try
+    {
+      shows = wiz.searchShowsByKeyword(keyword);
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        if (shows == null)
+        {
+          // The search failed, so take it out again; the next lookup will register it again
+          if (queries.get(bond.id) == q)
+            unregister(q);
+        }
+        else
+        {
+          for (int i = 0; i < shows.length; i++)
+            if (shows[i] != null)
+              q.add(shows[i].id);
+          q.seeded = true;
+          if (Sage.DBG) System.out.println("Registered keyword query for Agent " + bond.id + " [" + keyword + "] with " +
+              q.size + " matching Shows");
+        }
+        notifyAll();
+      }
+    }
+    synchronized (this)
+    {
+      return q.getIDs();
+    }
+  }
+
+  private static int[] toIDs(Show[] shows)
+  {
+    int[] rv = new int[shows.length];
+    int num = 0;
+    for (int i = 0; i < shows.length; i++)
+      if (shows[i] != null)
+        rv[num++] = shows[i].id;
+    if (num < rv.length)
+    {
+      int[] newIDs = new int[num];
+      System.arraycopy(rv, 0, newIDs, 0, num);
+      rv = newIDs;
+    }
+    return rv;
+  }
+
+  synchronized void removeAgent(int agentID)
+  {
+    Query q = queries.get(agentID);
+    if (q != null)
+      unregister(q);
+  }
+
+  synchronized boolean isEmpty()
+  {
+    return queries.isEmpty();
+  }
+
+  // Called from the Lucene Show worker for every Show that it indexes
+  void percolate(Show s, Analyzer analyzer) throws java.io.IOException
+  {
+    if (isEmpty()) return;
+    java.util.Set<String> titleTerms = new java.util.HashSet<String>();
+    java.util.Set<String> allTerms = new java.util.HashSet<String>();
+    addTerms(analyzer, "title", s.getTitle(), titleTerms);
+    allTerms.addAll(titleTerms);
+    addTerms(analyzer, "desc", s.getDesc(), allTerms);
+    addTerms(analyzer, "ep", s.getEpisodeName(), allTerms);
+    addTerms(analyzer, "year", s.getYear(), allTerms);
+    addTerms(analyzer, "rated", s.getRated(), allTerms);
+    for (int i = 0; i < s.people.length; i++)
+      if (s.people[i] != null)
+        addTerms(analyzer, "peep", s.people[i].name, allTerms);
+    for (int i = 0; i < s.categories.length; i++)
+      if (s.categories[i] != null)
+        addTerms(analyzer, "cat", s.categories[i].name, allTerms);
+    for (int i = 0; i < s.ers.length; i++)
+      if (s.ers[i] != null)
+        addTerms(analyzer, "ers", s.ers[i].name, allTerms);
+
+    synchronized (this)
+    {
+      for (String term : allTerms)
+      {
+        java.util.List<Query> triggered = triggers.get(term);
+        if (triggered == null) continue;
+        for (int i = 0; i < triggered.size(); i++)
+        {
+          Query q = triggered.get(i);
+          if (q.matches(q.titleOnly ? titleTerms : allTerms))
+            q.add(s.id);
+        }
+      }
+    }
+  }
+
+  // Called from the Lucene Show worker when it deletes a Show from the index
+  synchronized void remove(int showID)
+  {
+    for (Query q : queries.values())
+      q.remove(showID);
+  }
+
+  private static void addTerms(Analyzer analyzer, String field, String value, java.util.Set<String> terms)
+    throws java.io.IOException
+  {
+    if (value == null || value.length() == 0) return;
+    TokenStream ts = analyzer.reusableTokenStream(field, new java.io.StringReader(value));
+    CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+    ts.reset();
+    while (ts.incrementToken())
+      terms.add(termAtt.toString());
+    ts.end();
+    ts.close();
+  }
+
+  private void register(int agentID, Query q)
+  {
+    queries.put(agentID, q);
+    if (q.trigger == null) return;
+    java.util.List<Query> triggered = triggers.get(q.trigger);
+    if (triggered == null)
+      triggers.put(q.trigger, triggered = new java.util.ArrayList<Query>());
+    triggered.add(q);
+  }
+
+  private void unregister(Query q)
+  {
+    queries.values().remove(q);
+    if (q.trigger == null) return;
+    java.util.List<Query> triggered = triggers.get(q.trigger);
+    if (triggered != null)
+    {
+      triggered.remove(q);
+      if (triggered.isEmpty())
+        triggers.remove(q.trigger);
+    }
+  }
+
+  /*
+   * One keyword and the sorted IDs of the Shows that match it. The words are parsed the same way generateQueryTerms
+   * does it.
+   */
+  private static final class Query
+  {
+    Query(String inKeyword)
+    {
+      keyword = inKeyword;
+      titleOnly = keyword.startsWith("TITLE:");
+      String words = (titleOnly ? keyword.substring("TITLE:".length()) : keyword).trim().toLowerCase();
+      this.words = (words.length() == 0) ? Pooler.EMPTY_STRING_ARRAY : words.split("\\s+");
+      String longest = null;
+      for (int i = 0; i < this.words.length; i++)
+        if (longest == null || this.words[i].length() > longest.length())
+          longest = this.words[i];
+      trigger = longest;
+    }
+
+    boolean matches(java.util.Set<String> terms)
+    {
+      for (int i = 0; i < words.length; i++)
+        if (!terms.contains(words[i]))
+          return false;
+      return words.length > 0;
+    }
+
+    void add(int id)
+    {
+      int idx = java.util.Arrays.binarySearch(ids, 0, size, id);
+      if (idx >= 0) return;
+      idx = -idx - 1;
+      if (size == ids.length)
+      {
+        int[] newIds = new int[size * 2];
+        System.arraycopy(ids, 0, newIds, 0, size);
+        ids = newIds;
+      }
+      System.arraycopy(ids, idx, ids, idx + 1, size - idx);
+      ids[idx] = id;
+      size++;
+    }
+
+    void remove(int id)
+    {
+      int idx = java.util.Arrays.binarySearch(ids, 0, size, id);
+      if (idx < 0) return;
+      System.arraycopy(ids, idx + 1, ids, idx, size - idx - 1);
+      size--;
+    }
+
+    int[] getIDs()
+    {
+      int[] rv = new int[size];
+      System.arraycopy(ids, 0, rv, 0, size);
+      return rv;
+    }
+
+    final String keyword;
+    final boolean titleOnly;
+    final String[] words;
+    // The longest word; a Show has to have this term for the query to be checked against it
+    final String trigger;
+    int[] ids = new int[16];
+    int size;
+    // Set once the Lucene search that seeds it is done
+    boolean seeded;
+  }
+
+  private final Wizard wiz;
+  private final java.util.Map<Integer, Query> queries = new java.util.HashMap<Integer, Query>();
+  private final java.util.Map<String, java.util.List<Query>> triggers = new java.util.HashMap<String, java.util.List<Query>>();
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * Lock-free name -> object cache that sits in front of the tables we look things up in by name (Titles, People and
+ * the Stringer tables). The common case, especially during EPG imports, is that the name already exists and that can
+ * be answered from here without touching the table lock at all. Entries are only put in here while holding the table
+ * lock after the object was found in (or added to) the table, and Table evicts them under its write lock whenever an
+ * object is removed or updated, so anything that's in here is always in the table.
+ */
+final class NameDictionary
+{
+  DBObject get(String name)
+  {
+    return map.get(name);
+  }
+
+  // Must be called while holding the table's read or write lock
+  void put(String name, DBObject obj)
+  {
+    map.put(name, obj);
+  }
+
+  // Called by Table under its write lock
+  void evict(DBObject obj)
+  {
+    String name = getName(obj);
+    if (name != null)
+      map.remove(name);
+  }
+
+  void clear()
+  {
+    map.clear();
+  }
+
+  private static String getName(DBObject obj)
+  {
+    if (obj instanceof Stringer)
+      return ((Stringer) obj).name;
+    else if (obj instanceof Person)
+      return ((Person) obj).name;
+    return null;
+  }
+
+  private final java.util.concurrent.ConcurrentHashMap<String, DBObject> map =
+      new java.util.concurrent.ConcurrentHashMap<String, DBObject>(1024, 0.75f, 16);
+}
@@ -269,6 +269,12 @@ public abstract class PredefinedJEPFunction extends sage.jep.function.PostfixMat
     else
       return null;
   }
+  // For the calls that change the Widget; see UIManager.getWidgetForEdit
+  protected Widget getWidgetForEdit(Catbert.FastStack stack)
+  {
+    Widget w = getWidget(stack);
+    return (stack.getUIMgr() == null) ? w : stack.getUIMgr().getWidgetForEdit(w);
+  }
   protected sage.plugin.PluginWrapper getPlugin(Catbert.FastStack stack)
   {
     Object o = stack.pop();
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * The results of the Carny's profiling, keyed by Airing ID: the watch probability, the ID of the Agent that caused it
+ * and whether it's a must see and/or a Favorite (love) airing. This replaces a set of HashMaps/HashSets of Airing
+ * objects with one open addressing table of primitives, so building it doesn't box a Float per airing and lookups
+ * don't hash objects.
+ *
+ * Instances are immutable. The Carny publishes a new one in a volatile field whenever anything changes, so reads (like
+ * the must see checks done while rendering the UI) don't need any locking. Changes are made by getting a Builder from
+ * the current one and then building the replacement.
+ */
+public final class ProfileScores
+{
+  public static final int WP = 0x1;
+  public static final int MUST_SEE = 0x2;
+  public static final int LOVE = 0x4;
+
+  public static final ProfileScores EMPTY = new Builder().build();
+
+  private ProfileScores(Builder b)
+  {
+    keys = b.keys;
+    wps = b.wps;
+    causes = b.causes;
+    flags = b.flags;
+    size = b.size;
+  }
+
+  public Builder builder()
+  {
+    return new Builder(this);
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  // True if there's anything at all for this airing
+  public boolean contains(int airingID)
+  {
+    return find(keys, airingID) >= 0;
+  }
+
+  public boolean hasWP(int airingID)
+  {
+    int slot = find(keys, airingID);
+    return slot >= 0 && (flags[slot] & WP) != 0;
+  }
+
+  // Returns NaN if there's no watch probability for this airing
+  public float getWP(int airingID)
+  {
+    int slot = find(keys, airingID);
+    return (slot >= 0 && (flags[slot] & WP) != 0) ? wps[slot] : Float.NaN;
+  }
+
+  // Returns 0 if there's no cause for this airing
+  public int getCauseID(int airingID)
+  {
+    int slot = find(keys, airingID);
+    return (slot >= 0) ? causes[slot] : 0;
+  }
+
+  public boolean isMustSee(int airingID)
+  {
+    int slot = find(keys, airingID);
+    return slot >= 0 && (flags[slot] & MUST_SEE) != 0;
+  }
+
+  public boolean isLove(int airingID)
+  {
+    int slot = find(keys, airingID);
+    return slot >= 0 && (flags[slot] & LOVE) != 0;
+  }
+
+  public boolean hasFlag(int airingID, int flag)
+  {
+    int slot = find(keys, airingID);
+    return slot >= 0 && (flags[slot] & flag) != 0;
+  }
+
+  // The IDs of all of the airings that have any of the given flags
+  public int[] getAiringIDs(int flagMask)
+  {
+    int num = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != 0 && (flags[i] & flagMask) != 0)
+        num++;
+    int[] rv = new int[num];
+    num = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != 0 && (flags[i] & flagMask) != 0)
+        rv[num++] = keys[i];
+    return rv;
+  }
+
+  // The IDs of all of the airings that have a cause
+  public int[] getCausedAiringIDs()
+  {
+    int num = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != 0 && causes[i] != 0)
+        num++;
+    int[] rv = new int[num];
+    num = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != 0 && causes[i] != 0)
+        rv[num++] = keys[i];
+    return rv;
+  }
+
+  // Linear probing; returns the slot the key is in, or -(slot + 1) for the empty slot where it would go
+  private static int find(int[] keys, int key)
+  {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (true)
+    {
+      int k = keys[slot];
+      if (k == key)
+        return slot;
+      if (k == 0)
+        return -(slot + 1);
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private static int hash(int key)
+  {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /*
+   * Mutable copy of a ProfileScores. Entries drop out of the table on their own once they don't have a watch
+   * probability, a cause or any flags left. A Builder can't be used anymore after build() is called on it.
+   */
+  public static final class Builder
+  {
+    public Builder()
+    {
+      init(16);
+    }
+
+    private Builder(ProfileScores src)
+    {
+      keys = src.keys.clone();
+      wps = src.wps.clone();
+      causes = src.causes.clone();
+      flags = src.flags.clone();
+      size = src.size;
+    }
+
+    public ProfileScores build()
+    {
+      if (keys == null)
+        throw new IllegalStateException("ProfileScores.Builder was already built");
+      ProfileScores rv = new ProfileScores(this);
+      keys = null;
+      return rv;
+    }
+
+    public boolean hasWP(int airingID)
+    {
+      int slot = find(keys, airingID);
+      return slot >= 0 && (flags[slot] & WP) != 0;
+    }
+
+    public float getWP(int airingID)
+    {
+      int slot = find(keys, airingID);
+      return (slot >= 0 && (flags[slot] & WP) != 0) ? wps[slot] : Float.NaN;
+    }
+
+    public int getCauseID(int airingID)
+    {
+      int slot = find(keys, airingID);
+      return (slot >= 0) ? causes[slot] : 0;
+    }
+
+    public boolean hasFlag(int airingID, int flag)
+    {
+      int slot = find(keys, airingID);
+      return slot >= 0 && (flags[slot] & flag) != 0;
+    }
+
+    public void setWP(int airingID, float wp)
+    {
+      int slot = insert(airingID);
+      wps[slot] = wp;
+      flags[slot] |= WP;
+    }
+
+    public void removeWP(int airingID)
+    {
+      int slot = find(keys, airingID);
+      if (slot >= 0)
+      {
+        flags[slot] &= ~WP;
+        wps[slot] = 0;
+        checkEmpty(slot);
+      }
+    }
+
+    // A causeID of 0 removes the cause
+    public void setCause(int airingID, int causeID)
+    {
+      if (causeID == 0)
+      {
+        int slot = find(keys, airingID);
+        if (slot >= 0)
+        {
+          causes[slot] = 0;
+          checkEmpty(slot);
+        }
+      }
+      else
+      {
+        // insert() can replace the arrays, so it has to happen before causes is read
+        int slot = insert(airingID);
+        causes[slot] = causeID;
+      }
+    }
+
+    // Returns true if this changed anything
+    public boolean setFlag(int airingID, int flag, boolean on)
+    {
+      if (on)
+      {
+        int slot = insert(airingID);
+        if ((flags[slot] & flag) == flag)
+          return false;
+        flags[slot] |= flag;
+        return true;
+      }
+      int slot = find(keys, airingID);
+      if (slot < 0 || (flags[slot] & flag) == 0)
+        return false;
+      flags[slot] &= ~flag;
+      checkEmpty(slot);
+      return true;
+    }
+
+    // Clears the flag from every airing
+    public void clearFlag(int flag)
+    {
+      for (int i = 0; i < keys.length; i++)
+      {
+        if (keys[i] != 0 && (flags[i] & flag) != 0)
+        {
+          flags[i] &= ~flag;
+          if (checkEmpty(i))
+            i--; // something else may have been shifted back into this slot
+        }
+      }
+    }
+
+    // Clears all of the causes
+    public void clearCauses()
+    {
+      for (int i = 0; i < keys.length; i++)
+      {
+        if (keys[i] != 0 && causes[i] != 0)
+        {
+          causes[i] = 0;
+          if (checkEmpty(i))
+            i--;
+        }
+      }
+    }
+
+    // Removes the watch probability, cause and must see status; but not love
+    public void removeScores(int airingID)
+    {
+      int slot = find(keys, airingID);
+      if (slot >= 0)
+      {
+        flags[slot] &= ~(WP | MUST_SEE);
+        wps[slot] = 0;
+        causes[slot] = 0;
+        checkEmpty(slot);
+      }
+    }
+
+    // Moves everything for one airing over to another one, used when airings get swapped in the DB
+    public void move(int oldAiringID, int newAiringID)
+    {
+      int slot = find(keys, oldAiringID);
+      if (slot < 0 || oldAiringID == newAiringID)
+        return;
+      float wp = wps[slot];
+      int cause = causes[slot];
+      byte flag = flags[slot];
+      delete(slot);
+      slot = insert(newAiringID);
+      wps[slot] = wp;
+      causes[slot] = cause;
+      flags[slot] = flag;
+    }
+
+    private boolean checkEmpty(int slot)
+    {
+      if (flags[slot] == 0 && causes[slot] == 0)
+      {
+        delete(slot);
+        return true;
+      }
+      return false;
+    }
+
+    private int insert(int key)
+    {
+      int slot = find(keys, key);
+      if (slot >= 0)
+        return slot;
+      if ((size + 1) * 2 > keys.length)
+      {
+        rehash(keys.length * 2);
+        slot = find(keys, key);
+      }
+      slot = -slot - 1;
+      keys[slot] = key;
+      size++;
+      return slot;
+    }
+
+    // Backward shift deletion so we never need tombstones
+    private void delete(int slot)
+    {
+      int mask = keys.length - 1;
+      int hole = slot;
+      int next = (hole + 1) & mask;
+      while (keys[next] != 0)
+      {
+        int home = hash(keys[next]) & mask;
+        // Move it back if the hole is between its home slot and where it is now
+        if (((next - home) & mask) >= ((next - hole) & mask))
+        {
+          keys[hole] = keys[next];
+          wps[hole] = wps[next];
+          causes[hole] = causes[next];
+          flags[hole] = flags[next];
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      keys[hole] = 0;
+      wps[hole] = 0;
+      causes[hole] = 0;
+      flags[hole] = 0;
+      size--;
+    }
+
+    private void rehash(int newCapacity)
+    {
+      int[] oldKeys = keys;
+      float[] oldWPs = wps;
+      int[] oldCauses = causes;
+      byte[] oldFlags = flags;
+      init(newCapacity);
+      for (int i = 0; i < oldKeys.length; i++)
+      {
+        if (oldKeys[i] != 0)
+        {
+          int slot = -find(keys, oldKeys[i]) - 1;
+          keys[slot] = oldKeys[i];
+          wps[slot] = oldWPs[i];
+          causes[slot] = oldCauses[i];
+          flags[slot] = oldFlags[i];
+        }
+      }
+    }
+
+    private void init(int capacity)
+    {
+      keys = new int[capacity];
+      wps = new float[capacity];
+      causes = new int[capacity];
+      flags = new byte[capacity];
+    }
+
+    private int[] keys;
+    private float[] wps;
+    private int[] causes;
+    private byte[] flags;
+    private int size;
+  }
+
+  private final int[] keys;
+  private final float[] wps;
+  private final int[] causes;
+  private final byte[] flags;
+  private final int size;
+}
@@ -35,13 +35,60 @@ public class Profiler
   // around NUM_SLOTS
   static int[] determineSlots(Airing a)
   {
-    java.util.Calendar cal = new java.util.GregorianCalendar();
-    cal.setTimeInMillis(a.time);
-    int startIdx = 24*(cal.get(java.util.Calendar.DAY_OF_WEEK) -
-        java.util.Calendar.SUNDAY);
-    startIdx += cal.get(java.util.Calendar.HOUR_OF_DAY);
+    int slots = getSlots(a);
+    return new int[] { getSlotStart(slots), getSlotEnd(slots) };
+  }
+
+  /*
+   * The weekly timeslots of an Airing packed into an int, which is cached in the Airing. Slots are hours of the week
+   * starting at midnight Sunday in the local timezone; the start slot is in the low byte, and the number of slots it
+   * covers (0 for airings with bad durations) is in the next byte. The rest is the timezone generation it was
+   * calculated for, so changing the timezone invalidates all of them at once. The offset comes straight from the
+   * TimeZone instead of going through a Calendar so this doesn't allocate anything.
+   */
+  static int getSlots(Airing a)
+  {
+    int slots = a.slots;
+    int gen = slotGeneration;
+    if ((slots >>> 16) == gen)
+      return slots;
+    java.util.TimeZone tz = slotZone;
+    if (tz == null)
+      slotZone = tz = java.util.TimeZone.getDefault();
+    long localTime = a.time + tz.getOffset(a.time);
+    long hours = localTime / MILLIS_PER_HOUR;
+    if (localTime < 0 && hours * MILLIS_PER_HOUR != localTime)
+      hours--;
+    // The epoch was on a Thursday
+    int startIdx = (int) ((hours + 4*24) % (7*24));
+    if (startIdx < 0)
+      startIdx += 7*24;
     long useThisDur = Math.min(a.getDuration(), Sage.MILLIS_PER_WEEK) - 1;
-    int endIdx = startIdx + (int)(useThisDur / (60*60*1000L));
-    return new int[] { startIdx, endIdx };
+    int numSlots = (useThisDur < 0 && useThisDur / MILLIS_PER_HOUR != 0) ? 0 : (int)(useThisDur / MILLIS_PER_HOUR) + 1;
+    slots = (gen << 16) | (numSlots << 8) | startIdx;
+    a.slots = slots;
+    return slots;
   }
+
+  static int getSlotStart(int slots)
+  {
+    return slots & 0xFF;
+  }
+
+  // Inclusive; this is one less than the start slot if there aren't any
+  static int getSlotEnd(int slots)
+  {
+    return (slots & 0xFF) + ((slots >> 8) & 0xFF) - 1;
+  }
+
+  // Called whenever the default timezone is changed
+  static void timeZoneChanged()
+  {
+    slotZone = java.util.TimeZone.getDefault();
+    slotGeneration = (slotGeneration % 0x7FFF) + 1;
+  }
+
+  private static volatile java.util.TimeZone slotZone;
+  // Starts at 1 so an Airing's slots field of 0 is never valid
+  private static volatile int slotGeneration = 1;
 }
@@ -1094,6 +1094,7 @@ public final class Sage
           tz = TimeZone.getTimeZone(myTimeZone);
         }
         TimeZone.setDefault(tz);
+        Profiler.timeZoneChanged();
         if (DBG) System.out.println("Changed default timezone to:" + tz.getDisplayName());
         DF.setTimeZone(tz);
         DF_CLEAN.setTimeZone(tz);
@@ -1349,10 +1350,13 @@ public final class Sage
     UserEvent.updateNameMaps();
 
     Iterator<UIManager> walker = UIManager.getUIIterator();
+    // UIs that loaded the same STV share it, so only do each one once
+    Set<tv.sage.ModuleGroup> retranslated = new HashSet<tv.sage.ModuleGroup>();
     while (walker.hasNext())
     {
       UIManager currUI = walker.next();
-      currUI.getModuleGroup().retranslate();
+      if (retranslated.add(currUI.getModuleGroup()))
+        currUI.getModuleGroup().retranslate();
       currUI.fullyRefreshCurrUI();
     }
   }
@@ -1376,6 +1380,7 @@ public final class Sage
         tz = TimeZone.getTimeZone(myTimeZone);
       }
       TimeZone.setDefault(tz);
+      Profiler.timeZoneChanged();
       if (DBG) System.out.println("Changed default timezone to:" + tz.getDisplayName());
 
       // We now recreate the Locale so it's a new object and anything that's dependent upon
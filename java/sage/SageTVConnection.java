@@ -88,7 +88,8 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
   {
     if (!Sage.client)
       throw new IllegalStateException("This is a client mode call.");
-    outStream.write("LISTENER\r\n".getBytes(Sage.BYTE_CHARSET));
+    // Tell the server where our DB is synced up to so it can send us just the changes since then
+    outStream.write(("LISTENER " + Wizard.getInstance().getClientSyncPoint() + "\r\n").getBytes(Sage.BYTE_CHARSET));
     outStream.flush();
     linkType = CLIENT_LISTENER;
     String tempString = readLineBytes(inStream);
@@ -604,6 +605,19 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
       else if (myTokes[0].equals("LISTENER"))
       {
         linkType = CLIENT_LISTENER;
+        // Newer clients send their DB sync point, which also means they understand WIZARD_SYNC3
+        if (myTokes.length == 3)
+        {
+          try
+          {
+            resumeSeq = Long.parseLong(myTokes[2]);
+            resumeEpoch = myTokes[1];
+          }
+          catch (NumberFormatException e)
+          {
+            if (Sage.DBG) System.out.println("Invalid DB sync point from client of:" + requestString);
+          }
+        }
         outStream.write(OK_BYTES);
       }
       else if (myTokes[0].equals("WIZARD_SYNC"))
@@ -616,6 +630,11 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         // Client updating the server for a DB transaction...
         recvWizardSync2(myTokes);
       }
+      else if (myTokes[0].equals("WIZARD_SYNC3"))
+      {
+        // Initial DB sync from the server which may only be the changes since our last connection
+        recvWizardSync3(myTokes);
+      }
       else if (myTokes[0].equals("PROPERTY_SYNC"))
       {
         // property information update
@@ -637,6 +656,15 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
       {
         recvCarnySyncWPMap(myTokes);
       }
+      else if (myTokes[0].equals("CARNY_DELTA_VERSION"))
+      {
+        // Lets the server know we understand CARNY_DELTA
+        outStream.write(OK_BYTES);
+      }
+      else if (myTokes[0].equals("CARNY_DELTA"))
+      {
+        recvCarnyDelta(myTokes);
+      }
       // All of the below requests have been moved into the messaging system
       /*			else if (myTokes[0].equals("WATCH_LIVE"))
 			{
@@ -801,8 +829,17 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
       throw new java.io.IOException("OK response not received, got:" + tempString);
     }
 
-    outStream.write(("WIZARD_SYNC2 " + Integer.toString(Wizard.VERSION & 0xFF) + " " + Boolean.toString(Wizard.COMPACT_DB) + "\r\n").getBytes(Sage.BYTE_CHARSET));
-    Wizard.getInstance().sendDBThroughStream(mySock, outStream, this);
+    if (resumeEpoch != null)
+    {
+      outStream.write(("WIZARD_SYNC3 " + Integer.toString(Wizard.VERSION & 0xFF) + " " + Boolean.toString(Wizard.COMPACT_DB) + "\r\n").getBytes(Sage.BYTE_CHARSET));
+      if (!Wizard.getInstance().sendDBDeltaThroughStream(mySock, outStream, this, resumeEpoch, resumeSeq))
+        Wizard.getInstance().sendDBThroughStream(mySock, outStream, this, true);
+    }
+    else
+    {
+      outStream.write(("WIZARD_SYNC2 " + Integer.toString(Wizard.VERSION & 0xFF) + " " + Boolean.toString(Wizard.COMPACT_DB) + "\r\n").getBytes(Sage.BYTE_CHARSET));
+      Wizard.getInstance().sendDBThroughStream(mySock, outStream, this);
+    }
     outStream.flush();
     tempString = readLineBytes(inStream);
     if (!"OK".equals(tempString))
@@ -822,15 +859,26 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
 
   private void recvWizardSync(String[] myTokes) throws java.io.IOException
   {
-    if (myTokes.length != 1)
+    if (myTokes.length != 1 && myTokes.length != 2)
     {
-      outStream.write("ERROR need 1 tokens for WIZARD_SYNC command\r\n".getBytes(Sage.BYTE_CHARSET));
-      System.out.println("ERROR need 1 tokens for WIZARD_SYNC command." +
+      outStream.write("ERROR need 1 or 2 tokens for WIZARD_SYNC command\r\n".getBytes(Sage.BYTE_CHARSET));
+      System.out.println("ERROR need 1 or 2 tokens for WIZARD_SYNC command." +
           java.util.Arrays.asList(myTokes));
       return;
     }
 
-    Wizard.getInstance().xctIn(inStream, Wizard.VERSION, TRANSLATE_DB_IDS ? dbIDMap : null);
+    Wizard wiz = Wizard.getInstance();
+    // The second token is the sequence number of this xct on the server
+    String epoch = Sage.client ? wiz.clearClientSyncPoint() : null;
+    boolean applied = wiz.xctIn(inStream, Wizard.VERSION, TRANSLATE_DB_IDS ? dbIDMap : null);
+    if (applied && epoch != null && myTokes.length == 2)
+    {
+      try
+      {
+        wiz.setClientSyncPoint(epoch, Long.parseLong(myTokes[1]));
+      }
+      catch (NumberFormatException e){}
+    }
     outStream.write(OK_BYTES);
   }
 
@@ -850,6 +898,30 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     outStream.write(OK_BYTES);
   }
 
+  private void recvWizardSync3(String[] myTokes) throws java.io.IOException
+  {
+    if (myTokes.length != 3)
+    {
+      outStream.write("ERROR need 3 tokens for WIZARD_SYNC3 command\r\n".getBytes(Sage.BYTE_CHARSET));
+      System.out.println("ERROR need 3 tokens for WIZARD_SYNC3 command." +
+          java.util.Arrays.asList(myTokes));
+      return;
+    }
+
+    Wizard.VERSION = (byte)(Integer.parseInt(myTokes[1]) & 0xFF);
+    Wizard.COMPACT_DB = Boolean.valueOf(myTokes[2]).booleanValue();
+    Wizard wiz = Wizard.getInstance();
+    wiz.clearClientSyncPoint();
+    boolean delta = inStream.readByte() != 0;
+    if (Sage.DBG) System.out.println(delta ? "Receiving DB changes since our last connection from the server" : "Receiving full DB from the server");
+    boolean applied = wiz.xctIn(inStream, Wizard.VERSION, TRANSLATE_DB_IDS ? dbIDMap : null);
+    String epoch = inStream.readUTF();
+    long endSeq = inStream.readLong();
+    if (applied && !TRANSLATE_DB_IDS)
+      wiz.setClientSyncPoint(epoch, endSeq);
+    outStream.write(OK_BYTES);
+  }
+
   private void recvCarnySyncLove(String[] myTokes) throws java.io.IOException
   {
     if (myTokes.length != 2)
@@ -859,16 +931,11 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
           java.util.Arrays.asList(myTokes));
       return;
     }
-    Wizard wiz = Wizard.getInstance();
     int numLoves = Integer.parseInt(myTokes[1]);
-    java.util.Set loveSet = new java.util.HashSet();
+    int[] airIDs = new int[numLoves];
     for (int i = 0; i < numLoves; i++)
-    {
-      Airing theAir = wiz.getAiringForID(readDBID());
-      if (theAir != null)
-        loveSet.add(theAir);
-    }
-    Carny.getInstance().updateLoves(loveSet);
+      airIDs[i] = readDBID();
+    Carny.getInstance().updateLoves(airIDs);
     outStream.write(OK_BYTES);
   }
 
@@ -881,17 +948,12 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
           java.util.Arrays.asList(myTokes));
       return;
     }
-    Wizard wiz = Wizard.getInstance();
     int numLoves = Integer.parseInt(myTokes[1]);
-    java.util.Set loveSet = new java.util.HashSet();
+    int[] airIDs = new int[numLoves];
     for (int i = 0; i < numLoves; i++)
-    {
-      Airing theAir = wiz.getAiringForID(readDBID());
-      if (theAir != null)
-        loveSet.add(theAir);
-    }
+      airIDs[i] = readDBID();
 
-    Carny.getInstance().updateMustSees(loveSet);
+    Carny.getInstance().updateMustSees(airIDs);
     outStream.write(OK_BYTES);
   }
 
@@ -904,18 +966,16 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
           java.util.Arrays.asList(myTokes));
       return;
     }
-    Wizard wiz = Wizard.getInstance();
     int numLoves = Integer.parseInt(myTokes[1]);
-    java.util.Map causeMap = new java.util.HashMap();
+    int[] airIDs = new int[numLoves];
+    int[] agentIDs = new int[numLoves];
     for (int i = 0; i < numLoves; i++)
     {
-      Airing theAir = wiz.getAiringForID(readDBID());
-      Agent theAgent = wiz.getAgentForID(readDBID());
-      if (theAir != null && theAgent != null)
-        causeMap.put(theAir, theAgent);
+      airIDs[i] = readDBID();
+      agentIDs[i] = readDBID();
     }
 
-    Carny.getInstance().updateCauseMap(causeMap);
+    Carny.getInstance().updateCauseMap(airIDs, agentIDs);
     outStream.write(OK_BYTES);
   }
 
@@ -928,21 +988,106 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
           java.util.Arrays.asList(myTokes));
       return;
     }
-    Wizard wiz = Wizard.getInstance();
     int numLoves = Integer.parseInt(myTokes[1]);
-    java.util.Map wpMap = new java.util.HashMap();
+    int[] airIDs = new int[numLoves];
+    float[] wps = new float[numLoves];
     for (int i = 0; i < numLoves; i++)
     {
-      Airing theAir = wiz.getAiringForID(readDBID());
-      Float wp = new Float(inStream.readFloat());
-      if (theAir != null)
-        wpMap.put(theAir, wp);
+      airIDs[i] = readDBID();
+      wps[i] = inStream.readFloat();
     }
 
-    Carny.getInstance().updateWPMap(wpMap);
+    Carny.getInstance().updateWPMap(airIDs, wps);
     outStream.write(OK_BYTES);
   }
 
+  private void recvCarnyDelta(String[] myTokes) throws java.io.IOException
+  {
+    if (myTokes.length != 5)
+    {
+      outStream.write("ERROR need 5 tokens for CARNY_DELTA command\r\n".getBytes(Sage.BYTE_CHARSET));
+      System.out.println("ERROR need 5 tokens for CARNY_DELTA command." +
+          java.util.Arrays.asList(myTokes));
+      return;
+    }
+    int part = Integer.parseInt(myTokes[1]);
+    int baseVersion = Integer.parseInt(myTokes[2]);
+    int version = Integer.parseInt(myTokes[3]);
+    byte[] data = new byte[Integer.parseInt(myTokes[4])];
+    inStream.readFully(data);
+    if (part < 0 || part >= carnyVersions.length)
+    {
+      outStream.write(("ERROR invalid CARNY_DELTA part " + part + "\r\n").getBytes(Sage.BYTE_CHARSET));
+      return;
+    }
+    // A base version of 0 is a snapshot, anything else has to be a change from what we have
+    if (baseVersion != 0 && baseVersion != carnyVersions[part])
+    {
+      if (Sage.DBG) System.out.println("Carny delta for part " + part + " is from version " + baseVersion +
+          " but we have " + carnyVersions[part] + ", requesting a resync");
+      outStream.write("RESYNC\r\n".getBytes(Sage.BYTE_CHARSET));
+      return;
+    }
+    java.io.DataInputStream dataIn = new java.io.DataInputStream(new java.io.ByteArrayInputStream(data));
+    int[] removedIDs = readCarnyIDs(dataIn);
+    int numSet = readVarInt(dataIn);
+    int[] airIDs = new int[numSet];
+    int[] agentIDs = (part == CARNY_CAUSES) ? new int[numSet] : null;
+    float[] wps = (part == CARNY_WPS) ? new float[numSet] : null;
+    int lastID = 0;
+    for (int i = 0; i < numSet; i++)
+    {
+      lastID += readZigZag(dataIn);
+      airIDs[i] = convertToLocalDBID(lastID);
+      if (agentIDs != null)
+        agentIDs[i] = convertToLocalDBID(readZigZag(dataIn));
+      else if (wps != null)
+        wps[i] = dataIn.readFloat();
+    }
+    Carny carny = Carny.getInstance();
+    switch (part)
+    {
+      case CARNY_LOVES:
+        if (baseVersion == 0)
+          carny.updateLoves(airIDs);
+        else
+          carny.updateFlagDelta(ProfileScores.LOVE, removedIDs, airIDs);
+        break;
+      case CARNY_MUST_SEES:
+        if (baseVersion == 0)
+          carny.updateMustSees(airIDs);
+        else
+          carny.updateFlagDelta(ProfileScores.MUST_SEE, removedIDs, airIDs);
+        break;
+      case CARNY_CAUSES:
+        if (baseVersion == 0)
+          carny.updateCauseMap(airIDs, agentIDs);
+        else
+          carny.updateCauseMapDelta(removedIDs, airIDs, agentIDs);
+        break;
+      case CARNY_WPS:
+        if (baseVersion == 0)
+          carny.updateWPMap(airIDs, wps);
+        else
+          carny.updateWPMapDelta(removedIDs, airIDs, wps);
+        break;
+    }
+    carnyVersions[part] = version;
+    outStream.write(OK_BYTES);
+  }
+
+  private int[] readCarnyIDs(java.io.DataInput dataIn) throws java.io.IOException
+  {
+    int[] rv = new int[readVarInt(dataIn)];
+    int lastID = 0;
+    for (int i = 0; i < rv.length; i++)
+    {
+      lastID += readZigZag(dataIn);
+      rv[i] = convertToLocalDBID(lastID);
+    }
+    return rv;
+  }
+
   private void recvPropertySync(String[] myTokes) throws java.io.IOException
   {
     if (myTokes.length != 2)
@@ -2508,7 +2653,7 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     }
   }
 
-  public boolean updateLoves(java.util.Set s)
+  public boolean updateLoves(ProfileScores s)
   {
     try
     {
@@ -2517,22 +2662,18 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
         {
           // Put this on the async queue to be sent out
-          addListenerMsg(new ListenerMsg(LOVE_SYNC_MSG, null, s, null, null));
+          addListenerMsg(new ListenerMsg(LOVE_SYNC_MSG, null, s, null));
           return true;
         }
       }
       synchronized (this)
       {
-        // To protect against a ConcurrentModificationException against Carny.notifyAiringSwap
-        synchronized (s)
-        {
-          outStream.write(("CARNY_SYNC_LOVE " + s.size() + "\r\n").getBytes(Sage.BYTE_CHARSET));
-          java.util.Iterator w = s.iterator();
-          while (w.hasNext())
-          {
-            outStream.writeInt(convertToRemoteDBID(((DBObject)w.next()).id));
-          }
-        }
+        if (sendCarnyDelta(CARNY_LOVES, s))
+          return true;
+        int[] airIDs = s.getAiringIDs(ProfileScores.LOVE);
+        outStream.write(("CARNY_SYNC_LOVE " + airIDs.length + "\r\n").getBytes(Sage.BYTE_CHARSET));
+        for (int i = 0; i < airIDs.length; i++)
+          outStream.writeInt(convertToRemoteDBID(airIDs[i]));
         outStream.flush();
         String str = readLineBytes(inStream);
         if (!"OK".equals(str) && Sage.DBG)
@@ -2552,7 +2693,7 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     return true;
   }
 
-  public boolean updateMustSees(java.util.Set s)
+  public boolean updateMustSees(ProfileScores s)
   {
     try
     {
@@ -2561,23 +2702,18 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
         {
           // Put this on the async queue to be sent out
-          addListenerMsg(new ListenerMsg(MUST_SEE_SYNC_MSG, null, s, null, null));
+          addListenerMsg(new ListenerMsg(MUST_SEE_SYNC_MSG, null, s, null));
           return true;
         }
       }
       synchronized (this)
       {
-        // To protect against a ConcurrentModificationException against Carny.notifyAiringSwap
-        synchronized (s)
-        {
-          outStream.write(("CARNY_SYNC_MUSTSEE " + s.size() + "\r\n").getBytes(Sage.BYTE_CHARSET));
-          java.util.Iterator w = s.iterator();
-          while (w.hasNext())
-          {
-            Airing a = (Airing) w.next();
-            outStream.writeInt(convertToRemoteDBID(a.id));
-          }
-        }
+        if (sendCarnyDelta(CARNY_MUST_SEES, s))
+          return true;
+        int[] airIDs = s.getAiringIDs(ProfileScores.MUST_SEE);
+        outStream.write(("CARNY_SYNC_MUSTSEE " + airIDs.length + "\r\n").getBytes(Sage.BYTE_CHARSET));
+        for (int i = 0; i < airIDs.length; i++)
+          outStream.writeInt(convertToRemoteDBID(airIDs[i]));
         outStream.flush();
         String str = readLineBytes(inStream);
         if (!"OK".equals(str) && Sage.DBG)
@@ -2597,7 +2733,7 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     return true;
   }
 
-  public boolean updateCauseMap(java.util.Map m)
+  public boolean updateCauseMap(ProfileScores m)
   {
     try
     {
@@ -2606,25 +2742,20 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
         {
           // Put this on the async queue to be sent out
-          addListenerMsg(new ListenerMsg(CAUSE_MAP_SYNC_MSG, null, null, m, null));
+          addListenerMsg(new ListenerMsg(CAUSE_MAP_SYNC_MSG, null, m, null));
           return true;
         }
       }
       synchronized (this)
       {
-        // To protect against a ConcurrentModificationException against Carny.notifyAiringSwap
-        synchronized (m)
+        if (sendCarnyDelta(CARNY_CAUSES, m))
+          return true;
+        int[] airIDs = m.getCausedAiringIDs();
+        outStream.write(("CARNY_SYNC_CAUSEMAP " + airIDs.length + "\r\n").getBytes(Sage.BYTE_CHARSET));
+        for (int i = 0; i < airIDs.length; i++)
         {
-          outStream.write(("CARNY_SYNC_CAUSEMAP " + m.size() + "\r\n").getBytes(Sage.BYTE_CHARSET));
-          java.util.Iterator w = m.entrySet().iterator();
-          while (w.hasNext())
-          {
-            java.util.Map.Entry ent = (java.util.Map.Entry) w.next();
-            Airing a = (Airing) ent.getKey();
-            Agent g = (Agent) ent.getValue();
-            outStream.writeInt(convertToRemoteDBID(a.id));
-            outStream.writeInt(convertToRemoteDBID(g.id));
-          }
+          outStream.writeInt(convertToRemoteDBID(airIDs[i]));
+          outStream.writeInt(convertToRemoteDBID(m.getCauseID(airIDs[i])));
         }
         outStream.flush();
         String str = readLineBytes(inStream);
@@ -2645,7 +2776,7 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     return true;
   }
 
-  public boolean updateWPMap(java.util.Map m)
+  public boolean updateWPMap(ProfileScores m)
   {
     try
     {
@@ -2654,25 +2785,20 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
         {
           // Put this on the async queue to be sent out
-          addListenerMsg(new ListenerMsg(WP_MAP_SYNC_MSG, null, null, m, null));
+          addListenerMsg(new ListenerMsg(WP_MAP_SYNC_MSG, null, m, null));
           return true;
         }
       }
       synchronized (this)
       {
-        // To protect against a ConcurrentModificationException against Carny.notifyAiringSwap
-        synchronized (m)
+        if (sendCarnyDelta(CARNY_WPS, m))
+          return true;
+        int[] airIDs = m.getAiringIDs(ProfileScores.WP);
+        outStream.write(("CARNY_SYNC_WPMAP " + airIDs.length + "\r\n").getBytes(Sage.BYTE_CHARSET));
+        for (int i = 0; i < airIDs.length; i++)
         {
-          outStream.write(("CARNY_SYNC_WPMAP " + m.size() + "\r\n").getBytes(Sage.BYTE_CHARSET));
-          java.util.Iterator w = m.entrySet().iterator();
-          while (w.hasNext())
-          {
-            java.util.Map.Entry ent = (java.util.Map.Entry) w.next();
-            Airing a = (Airing) ent.getKey();
-            outStream.writeInt(convertToRemoteDBID(a.id));
-            Float f = (Float) ent.getValue();
-            outStream.writeFloat(f.floatValue());
-          }
+          outStream.writeInt(convertToRemoteDBID(airIDs[i]));
+          outStream.writeFloat(m.getWP(airIDs[i]));
         }
         outStream.flush();
         String str = readLineBytes(inStream);
@@ -2693,6 +2819,186 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     return true;
   }
 
+  /*
+   * Sends one part of the Carny's profile as the change from what the client last acknowledged. Each part is versioned
+   * on its own; if the client doesn't have the version the change is from it replies RESYNC and gets a snapshot of that
+   * part instead. Snapshots also go out the first time and whenever the change wouldn't be any smaller. IDs are sent
+   * sorted as zig-zag varint deltas. Returns false if the client is too old for this, then the caller sends the whole
+   * thing the old way. This must be called while synchronized on this.
+   */
+  private boolean sendCarnyDelta(int part, ProfileScores s) throws java.io.IOException
+  {
+    if (carnyDeltaClient == null)
+    {
+      // Older clients reply with an error to commands they don't know
+      outStream.write("CARNY_DELTA_VERSION\r\n".getBytes(Sage.BYTE_CHARSET));
+      outStream.flush();
+      carnyDeltaClient = Boolean.valueOf("OK".equals(readLineBytes(inStream)));
+      if (Sage.DBG && !carnyDeltaClient.booleanValue())
+        System.out.println("Client " + clientName + " doesn't support Carny deltas, sending full syncs");
+    }
+    if (!carnyDeltaClient.booleanValue())
+      return false;
+    for (int i = 0; i < 2; i++)
+    {
+      ProfileScores base = carnySynced[part];
+      byte[] data = (base == null) ? null : encodeCarnyChange(part, base, s);
+      if (data == null)
+      {
+        base = null;
+        data = encodeCarnyChange(part, null, s);
+      }
+      int version = carnyVersions[part] + 1;
+      outStream.write(("CARNY_DELTA " + part + " " + (base == null ? 0 : carnyVersions[part]) + " " + version + " " +
+          data.length + "\r\n").getBytes(Sage.BYTE_CHARSET));
+      outStream.write(data);
+      outStream.flush();
+      String str = readLineBytes(inStream);
+      carnyVersions[part] = version;
+      if ("OK".equals(str))
+      {
+        carnySynced[part] = s;
+        return true;
+      }
+      carnySynced[part] = null;
+      if (!"RESYNC".equals(str))
+      {
+        if (Sage.DBG) System.out.println("Client Carny delta denied:" + str);
+        return true;
+      }
+    }
+    return true;
+  }
+
+  // Returns null if the change from base isn't any smaller than a snapshot; a null base makes a snapshot
+  private byte[] encodeCarnyChange(int part, ProfileScores base, ProfileScores s) throws java.io.IOException
+  {
+    int[] newIDs = getCarnyIDs(part, s);
+    int[] removedIDs = Pooler.EMPTY_INT_ARRAY;
+    int numRemoved = 0;
+    int[] setIDs = newIDs;
+    int numSet = newIDs.length;
+    if (base != null)
+    {
+      int[] oldIDs = getCarnyIDs(part, base);
+      removedIDs = new int[oldIDs.length];
+      for (int i = 0; i < oldIDs.length; i++)
+        if (!hasCarnyValue(part, s, oldIDs[i]))
+          removedIDs[numRemoved++] = oldIDs[i];
+      setIDs = new int[newIDs.length];
+      numSet = 0;
+      for (int i = 0; i < newIDs.length; i++)
+        if (!sameCarnyValue(part, base, s, newIDs[i]))
+          setIDs[numSet++] = newIDs[i];
+      if (numRemoved + numSet >= newIDs.length)
+        return null;
+    }
+    java.util.Arrays.sort(removedIDs, 0, numRemoved);
+    java.util.Arrays.sort(setIDs, 0, numSet);
+    java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+    java.io.DataOutputStream dos = new java.io.DataOutputStream(baos);
+    writeVarInt(dos, numRemoved);
+    int lastID = 0;
+    for (int i = 0; i < numRemoved; i++)
+    {
+      int id = convertToRemoteDBID(removedIDs[i]);
+      writeZigZag(dos, id - lastID);
+      lastID = id;
+    }
+    writeVarInt(dos, numSet);
+    lastID = 0;
+    for (int i = 0; i < numSet; i++)
+    {
+      int id = convertToRemoteDBID(setIDs[i]);
+      writeZigZag(dos, id - lastID);
+      lastID = id;
+      if (part == CARNY_CAUSES)
+        writeZigZag(dos, convertToRemoteDBID(s.getCauseID(setIDs[i])));
+      else if (part == CARNY_WPS)
+        dos.writeFloat(s.getWP(setIDs[i]));
+    }
+    dos.flush();
+    return baos.toByteArray();
+  }
+
+  private static int[] getCarnyIDs(int part, ProfileScores s)
+  {
+    switch (part)
+    {
+      case CARNY_LOVES:
+        return s.getAiringIDs(ProfileScores.LOVE);
+      case CARNY_MUST_SEES:
+        return s.getAiringIDs(ProfileScores.MUST_SEE);
+      case CARNY_CAUSES:
+        return s.getCausedAiringIDs();
+      default:
+        return s.getAiringIDs(ProfileScores.WP);
+    }
+  }
+
+  private static boolean hasCarnyValue(int part, ProfileScores s, int airingID)
+  {
+    switch (part)
+    {
+      case CARNY_LOVES:
+        return s.hasFlag(airingID, ProfileScores.LOVE);
+      case CARNY_MUST_SEES:
+        return s.hasFlag(airingID, ProfileScores.MUST_SEE);
+      case CARNY_CAUSES:
+        return s.getCauseID(airingID) != 0;
+      default:
+        return s.hasWP(airingID);
+    }
+  }
+
+  // s has a value for this airing, this tells if base has that same value
+  private static boolean sameCarnyValue(int part, ProfileScores base, ProfileScores s, int airingID)
+  {
+    switch (part)
+    {
+      case CARNY_CAUSES:
+        return base.getCauseID(airingID) == s.getCauseID(airingID);
+      case CARNY_WPS:
+        return base.hasWP(airingID) && Float.floatToIntBits(base.getWP(airingID)) == Float.floatToIntBits(s.getWP(airingID));
+      default:
+        return hasCarnyValue(part, base, airingID);
+    }
+  }
+
+  private static void writeVarInt(java.io.DataOutput out, int x) throws java.io.IOException
+  {
+    while ((x & ~0x7F) != 0)
+    {
+      out.writeByte((x & 0x7F) | 0x80);
+      x >>>= 7;
+    }
+    out.writeByte(x);
+  }
+
+  private static int readVarInt(java.io.DataInput in) throws java.io.IOException
+  {
+    int rv = 0;
+    for (int shift = 0; shift < 35; shift += 7)
+    {
+      int b = in.readByte();
+      rv |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return rv;
+    }
+    throw new java.io.IOException("Malformed varint");
+  }
+
+  private static void writeZigZag(java.io.DataOutput out, int x) throws java.io.IOException
+  {
+    writeVarInt(out, (x << 1) ^ (x >> 31));
+  }
+
+  private static int readZigZag(java.io.DataInput in) throws java.io.IOException
+  {
+    int x = readVarInt(in);
+    return (x >>> 1) ^ -(x & 1);
+  }
+
   public void updateProperties(String[] propNames)
   {
     try
@@ -2702,7 +3008,7 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
         if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
         {
           // Put this on the async queue to be sent out
-          addListenerMsg(new ListenerMsg(PROPERTY_SYNC_MSG, null, null, null, propNames));
+          addListenerMsg(new ListenerMsg(PROPERTY_SYNC_MSG, null, null, propNames));
           return;
         }
       }
@@ -2935,7 +3241,18 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     return rv;
   }
 
-  public void xctOut(byte[] xctData) throws java.io.IOException
+  public void xctOut(byte[] xctData, long seq) throws java.io.IOException
+  {
+    xctOut(xctData, false, seq);
+  }
+
+  public void xctsOut(byte[] xctRecords, long seq) throws java.io.IOException
+  {
+    xctOut(xctRecords, true, seq);
+  }
+
+  // If framed is true then xctData is a series of length prefixed xcts; the client processes all of them in one WIZARD_SYNC
+  private void xctOut(byte[] xctData, boolean framed, long seq) throws java.io.IOException
   {
     String tempString;
     if (!Sage.client)
@@ -2943,7 +3260,10 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
       if (listenerMsgShare != null && listenerMsgThread != Thread.currentThread())
       {
         // Put this on the async queue to be sent out
-        addListenerMsg(new ListenerMsg(WIZARD_SYNC_MSG, xctData, null, null, null));
+        ListenerMsg msg = new ListenerMsg(WIZARD_SYNC_MSG, xctData, null, null);
+        msg.seq = seq;
+        msg.framed = framed;
+        addListenerMsg(msg);
         return;
       }
     }
@@ -2951,10 +3271,16 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     {
       TimeoutHandler.registerTimeout(30000, mySock);
       // We don't need to use SYNC2 here because the compactDB mode and DB version would have already been set in the initial connection
-      outStream.write("WIZARD_SYNC\r\n".getBytes(Sage.BYTE_CHARSET));
-      outStream.writeInt(xctData.length + 4);
-      if (xctData.length > 0)
+      // Clients that can resume their DB sync need to know where they're at
+      outStream.write(((resumeEpoch != null) ? ("WIZARD_SYNC " + seq + "\r\n") : "WIZARD_SYNC\r\n").getBytes(Sage.BYTE_CHARSET));
+      if (framed)
         outStream.write(xctData);
+      else
+      {
+        outStream.writeInt(xctData.length + 4);
+        if (xctData.length > 0)
+          outStream.write(xctData);
+      }
       outStream.writeInt(5);
       outStream.writeByte(Wizard.XCTS_DONE);
       outStream.flush();
@@ -3579,22 +3905,22 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
             switch (currMsg.type)
             {
               case WIZARD_SYNC_MSG:
-                xctOut(currMsg.data);
+                xctOut(currMsg.data, currMsg.framed, currMsg.seq);
                 break;
               case PROPERTY_SYNC_MSG:
                 updateProperties(currMsg.props);
                 break;
               case LOVE_SYNC_MSG:
-                updateLoves(currMsg.set);
+                updateLoves(currMsg.scores);
                 break;
               case MUST_SEE_SYNC_MSG:
-                updateMustSees(currMsg.set);
+                updateMustSees(currMsg.scores);
                 break;
               case CAUSE_MAP_SYNC_MSG:
-                updateCauseMap(currMsg.map);
+                updateCauseMap(currMsg.scores);
                 break;
               case WP_MAP_SYNC_MSG:
-                updateWPMap(currMsg.map);
+                updateWPMap(currMsg.scores);
                 break;
             }
             listenerMsgShare.quanta = Math.max(listenerMsgShare.quanta, currMsg.safePoint);
@@ -3662,6 +3988,19 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
   private int linkType;
   private String clientName;
   private String clientKey;
+  // Server side; the DB sync point the client sent in its LISTENER request, non-null if it supports WIZARD_SYNC3
+  private String resumeEpoch;
+  private long resumeSeq;
+  // The parts of the Carny profile that are synced with CARNY_DELTA; the index into the arrays below
+  private static final int CARNY_LOVES = 0;
+  private static final int CARNY_MUST_SEES = 1;
+  private static final int CARNY_CAUSES = 2;
+  private static final int CARNY_WPS = 3;
+  // Server side; null until we know if the client understands CARNY_DELTA, and what it has acknowledged of each part
+  private Boolean carnyDeltaClient;
+  private final ProfileScores[] carnySynced = new ProfileScores[4];
+  // The version of each part of the Carny profile that was last sent (server) or applied (client)
+  private final int[] carnyVersions = new int[4];
   private boolean alive = false;
   // To enable ID translation between the client & server, create this object
   private static java.util.Map dbIDMap = new java.util.HashMap()
@@ -3723,12 +4062,11 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
   };
   private class ListenerMsg
   {
-    public ListenerMsg(int inType, byte[] inData, java.util.Set inSet, java.util.Map inMap, String[] inProps)
+    public ListenerMsg(int inType, byte[] inData, ProfileScores inScores, String[] inProps)
     {
       type = inType;
       data = inData;
-      set = inSet;
-      map = inMap;
+      scores = inScores;
       props = inProps;
       safePoint = SageTV.getGlobalQuanta();
     }
@@ -3738,10 +4076,11 @@ public class SageTVConnection implements Runnable, Wizard.XctSyncClient, Carny.P
     }
     public int type;
     public byte[] data;
-    public java.util.Set set;
-    public java.util.Map map;
+    public ProfileScores scores;
     public String[] props;
     public long safePoint;
+    public long seq;
+    public boolean framed;
   }
   class ParallelListenerSharedData
   {
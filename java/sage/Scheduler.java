@@ -72,6 +72,19 @@ public class Scheduler implements Runnable
     chanTunerQualMap = new HashMap<Integer, Integer>();
     //dontKnowConflicts = Collections.synchronizedSet(new HashSet());
     prepped = false;
+    wiz.addChangeListener(new Wizard.ChangeListener()
+    {
+      public void dbObjectChanged(byte opCode, byte tableCode, DBObject obj)
+      {
+        if (tableCode == Wizard.MANUAL_CODE)
+        {
+          synchronized (dirtyMRs)
+          {
+            dirtyMRs.add(obj.id);
+          }
+        }
+      }
+    });
   }
 
   boolean isPrepped() { return prepped; }
@@ -295,14 +308,18 @@ public class Scheduler implements Runnable
         ServerPowerManagement.getInstance().softkick();
         sage.plugin.PluginEventManager.postEvent(sage.plugin.PluginEventManager.RECORDING_SCHEDULE_CHANGED, (Object[]) null);
 
+        boolean fullUpdate;
         synchronized (this)
         {
-          if (!kicked)
+          if (!kicked && !incrementalKicked)
           {
             if (Sage.DBG) System.out.println("Scheduler starting wait...");
-            try { wait(); }catch(InterruptedException e){}
+            try { wait((fullUpdateDueTime == 0) ? 0 : Math.max(1, fullUpdateDueTime - Sage.eventTime())); }catch(InterruptedException e){}
           }
+          // Timeouts are for the full update that's due after incremental ones
+          fullUpdate = kicked || !incrementalKicked || (fullUpdateDueTime != 0 && Sage.eventTime() >= fullUpdateDueTime);
           kicked = false;
+          incrementalKicked = false;
         }
         if (!alive) break;
 
@@ -348,7 +365,16 @@ public class Scheduler implements Runnable
 
         // Process scheduling information. When this returns we then deal
         // with the current record issue.
-        updateSchedule(Sage.time());
+        if (fullUpdate || !updateScheduleIncremental(Sage.time()))
+        {
+          updateSchedule(Sage.time());
+          fullUpdateDueTime = 0;
+        }
+        else if (fullUpdateDueTime == 0)
+        {
+          // Still do a full update once things settle down so the IR and encoder swapping get redone
+          fullUpdateDueTime = Sage.eventTime() + Sage.getLong("scheduler/full_update_delay_after_incremental", 60000);
+        }
         if (!prepped) // once we're prepped, stay that way
           prepped = (SageConstants.LITE || god.isPrepped());
       }
@@ -420,6 +446,20 @@ public class Scheduler implements Runnable
     }
   }
 
+  /*
+   * Kick for when the only thing that changed is the Manual Records (i.e. the user just hit Record). This lets the
+   * scheduler update just the part of the schedule around those instead of redoing all of it; any other kick that
+   * comes in before it runs still gets a full update.
+   */
+  public void kickManualRecordsChanged()
+  {
+    synchronized (this)
+    {
+      notifyAll();
+      incrementalKicked = true;
+    }
+  }
+
   public synchronized void prepareForStandby()
   {
     kick(false);
@@ -700,6 +740,11 @@ public class Scheduler implements Runnable
      */
     cachedSchedStarts.clear();
     cachedSchedEnds.clear();
+    // We pick up all of the MR changes here
+    synchronized (dirtyMRs)
+    {
+      dirtyMRs.clear();
+    }
     long schedUpdateStartTime = Sage.eventTime();
     if (Sage.DBG) System.out.println("Scheduler.updateSchedule() called " + (Sage.EMBEDDED ? "" :
       (" manual=" + Arrays.asList(wiz.getManualRecords()) + " schedules=" + encoderScheduleMap +
@@ -907,30 +952,7 @@ public class Scheduler implements Runnable
       }
     }
 
-    // Create a list of the ES's thats sorted by merit
-    CaptureDevice[] sortedEncNames = encoderScheduleMap.keySet().toArray(new CaptureDevice[0]);
-    Arrays.sort(sortedEncNames, new Comparator<CaptureDevice>()
-    {
-      public int compare(CaptureDevice c1, CaptureDevice c2)
-      {
-        int m1 = c1.getMerit();
-        int m2 = c2.getMerit();
-        if (m1 != m2)
-          return m2 - m1;
-
-        // Use the device with the better physical input type
-        int x = c2.getHighestQualityConfiguredInputType() - c1.getHighestQualityConfiguredInputType();
-        if (x != 0)
-          return x;
-
-        // The more encoding options the better, so use that one first if merit is equal
-        return c2.getEncodingQualities().length -
-            c1.getEncodingQualities().length;
-      }
-    });
-    EncoderSchedule[] sortedEncs = new EncoderSchedule[sortedEncNames.length];
-    for (int i = 0; i < sortedEncNames.length; i++)
-      sortedEncs[i] = encoderScheduleMap.get(sortedEncNames[i]);
+    EncoderSchedule[] sortedEncs = getEncodersByMerit();
 
     if (SDBG) System.out.println("mrList=" + mrList + " forcedEncodings=" + forcedEncodings);
     Vector<EncAir> scheduledMRs = generateSingleMultiTunerSchedulingPermutation(mrList, sortedEncs, forcedEncodings);
@@ -2337,6 +2359,217 @@ public class Scheduler implements Runnable
     if (Sage.DBG) System.out.println("Total Schedule eval time=" + (Sage.eventTime() - schedUpdateStartTime) + " msec");
   }
 
+  // Returns the EncoderSchedules sorted by merit
+  private EncoderSchedule[] getEncodersByMerit()
+  {
+    CaptureDevice[] sortedEncNames = encoderScheduleMap.keySet().toArray(new CaptureDevice[0]);
+    Arrays.sort(sortedEncNames, new Comparator<CaptureDevice>()
+    {
+      public int compare(CaptureDevice c1, CaptureDevice c2)
+      {
+        int m1 = c1.getMerit();
+        int m2 = c2.getMerit();
+        if (m1 != m2)
+          return m2 - m1;
+
+        // Use the device with the better physical input type
+        int x = c2.getHighestQualityConfiguredInputType() - c1.getHighestQualityConfiguredInputType();
+        if (x != 0)
+          return x;
+
+        // The more encoding options the better, so use that one first if merit is equal
+        return c2.getEncodingQualities().length -
+            c1.getEncodingQualities().length;
+      }
+    });
+    EncoderSchedule[] rv = new EncoderSchedule[sortedEncNames.length];
+    for (int i = 0; i < sortedEncNames.length; i++)
+      rv[i] = encoderScheduleMap.get(sortedEncNames[i]);
+    return rv;
+  }
+
+  /*
+   * Handles changes to only the Manual Records without redoing the whole schedule. Whatever was scheduled for the
+   * changed MRs is taken out, and then each one that still needs recording gets put back in by reassigning encoders for
+   * just the MRs in its overlap cluster: the MRs, Favorites and current recordings that overlap it, and whatever
+   * overlaps those and so on (the same way GlobAirings grows). The Favorites and current recordings in the cluster
+   * stay where they are. Returns false if it can't do it that way, in which case a full update is needed; that covers
+   * recurring or expired MRs and anything that ends up in a conflict.
+   */
+  private boolean updateScheduleIncremental(long currTime)
+  {
+    Set<Integer> changedIDs;
+    synchronized (dirtyMRs)
+    {
+      if (dirtyMRs.isEmpty())
+        return false;
+      changedIDs = new HashSet<Integer>(dirtyMRs);
+      dirtyMRs.clear();
+    }
+    if (!prepped || encoderScheduleMap.isEmpty())
+      return false;
+    long schedUpdateStartTime = Sage.eventTime();
+    cachedSchedStarts.clear();
+    cachedSchedEnds.clear();
+    try
+    {
+      ManualRecord[] allMRs = wiz.getManualRecords();
+      List<ManualRecord> placeMRs = new ArrayList<ManualRecord>();
+      for (int i = 0; i < allMRs.length; i++)
+      {
+        ManualRecord mr = allMRs[i];
+        if (!changedIDs.contains(mr.id))
+          continue;
+        // Recurrences get created by the full update, and that also cleans up expired ones
+        if (mr.recur != 0 || mr.getEndTime() <= currTime || !wiz.isManualRecordOK(mr))
+          return false;
+        placeMRs.add(mr);
+      }
+
+      // Take the changed ones out of the schedule; for the ones that were removed that's all there is to do
+      for (EncoderSchedule es : encoderScheduleMap.values())
+      {
+        for (int i = 0; i < es.mustSee.size(); i++)
+        {
+          Airing testAir = es.mustSee.get(i);
+          if (testAir instanceof ManualRecord.FakeAiring && (testAir != es.currRecord || !es.isForced) &&
+              changedIDs.contains(((ManualRecord.FakeAiring) testAir).getManualRecord().id))
+          {
+            es.removeMustSee(testAir);
+            removeFromDontSchedule(testAir);
+            i--;
+          }
+        }
+      }
+      removeConflicts(pendingConflicts, changedIDs);
+      removeConflicts(pendingUnresolvedConflicts, changedIDs);
+
+      EncoderSchedule[] sortedEncs = getEncodersByMerit();
+      for (int i = 0; i < placeMRs.size(); i++)
+      {
+        if (!placeManualRecord(placeMRs.get(i).getSchedulingAiring(), sortedEncs))
+          return false;
+      }
+      if (Sage.DBG) System.out.println("Scheduler incremental update for MRs " + changedIDs + " took " +
+          (Sage.eventTime() - schedUpdateStartTime) + " msec");
+      return true;
+    }
+    finally
+    {
+      cachedSchedStarts.clear();
+      cachedSchedEnds.clear();
+    }
+  }
+
+  private static void removeConflicts(Map<DBObject, Vector<Airing>> conflicts, Set<Integer> mrIDs)
+  {
+    Iterator<DBObject> walker = conflicts.keySet().iterator();
+    while (walker.hasNext())
+    {
+      DBObject key = walker.next();
+      if (key instanceof ManualRecord.FakeAiring && mrIDs.contains(((ManualRecord.FakeAiring) key).getManualRecord().id))
+        walker.remove();
+    }
+  }
+
+  // Puts an MR into the schedule by redoing the encoder assignments for the MRs in its overlap cluster
+  private boolean placeManualRecord(Airing mrAir, EncoderSchedule[] sortedEncs)
+  {
+    // If it's being recorded now then it's already where it needs to be; this matches the way the full update takes
+    // the current recordings out of the MR list
+    int infoAiringID = ((ManualRecord.FakeAiring) mrAir).getManualRecord().infoAiringID;
+    for (int i = 0; i < sortedEncs.length; i++)
+    {
+      EncoderSchedule es = sortedEncs[i];
+      if (es.currRecord != null && (mrAir.id == es.currRecord.id || infoAiringID == es.currRecord.id))
+      {
+        if (!es.isForced)
+          return false;
+        es.forceIntoMustSee(es.currRecord);
+        return true;
+      }
+    }
+    // If a Favorite already has the same airing scheduled then the full update needs to sort out which one records it
+    for (int i = 0; i < sortedEncs.length; i++)
+    {
+      EncoderSchedule es = sortedEncs[i];
+      for (int j = 0; j < es.mustSee.size(); j++)
+      {
+        Airing testAir = es.mustSee.get(j);
+        if (!(testAir instanceof ManualRecord.FakeAiring) && (testAir.id == mrAir.id || testAir.id == infoAiringID))
+          return false;
+      }
+    }
+    long clusterStart = getSchedulingStart(mrAir);
+    long clusterEnd = getSchedulingEnd(mrAir);
+    Set<Airing> clusterAirs = new HashSet<Airing>();
+    clusterAirs.add(mrAir);
+    Vector<Airing> clusterMRs = new Vector<Airing>();
+    clusterMRs.add(mrAir);
+    Vector<EncAir> fixedEncodings = new Vector<EncAir>();
+    boolean grew = true;
+    while (grew)
+    {
+      grew = false;
+      for (int i = 0; i < sortedEncs.length; i++)
+      {
+        EncoderSchedule es = sortedEncs[i];
+        if (es.currRecord != null && es.isForced && doesSchedulingOverlap(es.currRecord, clusterStart, clusterEnd) &&
+            clusterAirs.add(es.currRecord))
+        {
+          fixedEncodings.add(new EncAir(es.currRecord, es.capDev, true));
+          clusterStart = Math.min(clusterStart, getSchedulingStart(es.currRecord));
+          clusterEnd = Math.max(clusterEnd, getSchedulingEnd(es.currRecord));
+          grew = true;
+        }
+      }
+      for (int i = 0; i < sortedEncs.length; i++)
+      {
+        EncoderSchedule es = sortedEncs[i];
+        for (int j = 0; j < es.mustSee.size(); j++)
+        {
+          Airing testAir = es.mustSee.get(j);
+          if (doesSchedulingOverlap(testAir, clusterStart, clusterEnd) && clusterAirs.add(testAir))
+          {
+            if (testAir instanceof ManualRecord.FakeAiring)
+              clusterMRs.add(testAir);
+            else
+              fixedEncodings.add(new EncAir(testAir, es.capDev, true));
+            clusterStart = Math.min(clusterStart, getSchedulingStart(testAir));
+            clusterEnd = Math.max(clusterEnd, getSchedulingEnd(testAir));
+            grew = true;
+          }
+        }
+      }
+    }
+
+    Vector<EncAir> newEncodings = generateSingleMultiTunerSchedulingPermutation(clusterMRs, sortedEncs, fixedEncodings);
+    Set<Airing> placedAirs = new HashSet<Airing>();
+    for (int i = 0; i < newEncodings.size(); i++)
+      placedAirs.add(newEncodings.get(i).air);
+    if (newEncodings.size() != clusterMRs.size() || !placedAirs.containsAll(clusterMRs))
+    {
+      if (Sage.DBG) System.out.println("Scheduler couldn't fit " + mrAir + " into its cluster without a conflict");
+      return false;
+    }
+    for (int i = 0; i < clusterMRs.size(); i++)
+    {
+      for (int j = 0; j < sortedEncs.length; j++)
+        sortedEncs[j].removeMustSee(clusterMRs.get(i));
+    }
+    for (int i = 0; i < newEncodings.size(); i++)
+    {
+      EncAir encAir = newEncodings.get(i);
+      EncoderSchedule es = encoderScheduleMap.get(encAir.capDev);
+      if (es != null)
+      {
+        es.forceIntoMustSee(encAir.air);
+        addToDontSchedule(encAir.air);
+      }
+    }
+    return true;
+  }
+
   private boolean stationDeviceOverlapExists(Airing a1, Airing a2)
   {
     if (a1.stationID == a2.stationID) return true;
@@ -2753,6 +2986,160 @@ public class Scheduler implements Runnable
     }
   }
 
+  /**
+   * Says which encoders can record which schedulables, i.e. if the encoder receives the station and supports the
+   * recording quality.
+   */
+  public static interface EncoderFilter {
+
+    boolean canRecord(Schedulable airing, int encoder);
+  }
+
+  /**
+   * Tests if there are enough capable encoders for the schedulables at every point in time. Right after each start time
+   * the schedulables being recorded need a bipartite matching onto different encoders that can record them; this finds
+   * a maximum matching with augmenting paths for each of those. If this returns false there is no valid schedule.
+   * If it returns true there still may not be one, since this doesn't require a schedulable to stay on the same encoder
+   * for its whole duration. This is O(n * k^2 * e) for n schedulables, e encoders and at most k overlapping at once.
+   *
+   * @param mrList list of manual recordings
+   * @param numEncs the number of encoders
+   * @param filter which encoders can record what
+   * @param alreadyScheduled airings that are bound to an encoder
+   */
+  public static boolean hasEnoughEncoders(
+      Schedulable[] mrList, int numEncs, EncoderFilter filter, List<EncSchedulable> alreadyScheduled) {
+    for (Schedulable sched : mrList) {
+      long now = sched.getSchedulingStart();
+      // The encoders taken by the bound airings at this time
+      boolean[] taken = new boolean[numEncs];
+      if (alreadyScheduled != null) {
+        for (EncSchedulable prework : alreadyScheduled) {
+          if (prework.scheduable.getSchedulingStart() <= now && prework.scheduable.getSchedulingEnd() > now)
+            taken[prework.enc] = true;
+        }
+      }
+      List<Schedulable> active = new ArrayList<Schedulable>();
+      for (Schedulable other : mrList) {
+        if (other.getSchedulingStart() <= now && other.getSchedulingEnd() > now)
+          active.add(other);
+      }
+      if (active.size() > numEncs) return false;
+      int[] encMatch = new int[numEncs];
+      Arrays.fill(encMatch, -1);
+      for (int i = 0; i < active.size(); i++) {
+        if (!findAugmentingPath(i, active, numEncs, filter, taken, encMatch, new boolean[numEncs])) {
+          if (GLOB_DEBUG) System.out.println("not enough encoders at " + Sage.df(now) + " for " + active);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean findAugmentingPath(int idx, List<Schedulable> active, int numEncs, EncoderFilter filter,
+      boolean[] taken, int[] encMatch, boolean[] visited) {
+    for (int enc = 0; enc < numEncs; enc++) {
+      if (taken[enc] || visited[enc] || !filter.canRecord(active.get(idx), enc)) continue;
+      visited[enc] = true;
+      if (encMatch[enc] == -1 ||
+          findAugmentingPath(encMatch[enc], active, numEncs, filter, taken, encMatch, visited)) {
+        encMatch[enc] = idx;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Generates a schedule like the greedy one above, but for encoders that can't all record everything. The schedulables
+   * are taken in time order and each goes on the lowest numbered free encoder that can record it. If there isn't one
+   * then it looks for an augmenting path like bipartite matching does; an encoder that can record it where the one
+   * schedulable in the way can move to another encoder that's free for all of it, or that has a single schedulable
+   * in the way which can move, and so on. Each encoder is only visited once per path so this is O(n^2 * e^2) at worst.
+   * It can miss schedules that need more than one schedulable moved out of the way at once, but any schedule it
+   * makes is valid. The collector gets the schedule at the end since things can move to other encoders as it goes.
+   *
+   * @param mrList list of manual recordings
+   * @param numEncs the number of encoders
+   * @param filter which encoders can record what
+   * @param collector to notify of new schedules and conflicts
+   * @param alreadyScheduled airings that are bound to an encoder
+   * @return true if everything was scheduled
+   */
+  public static boolean generateSchedule(
+      Schedulable[] mrList, int numEncs, EncoderFilter filter, ScheduleCollector collector,
+      List<EncSchedulable> alreadyScheduled) {
+    Schedulable[] sorted = mrList.clone();
+    Arrays.sort(sorted, Schedulable.TIME_DURATION_COMPARATOR);
+    List<List<Schedulable>> encLoads = new ArrayList<List<Schedulable>>();
+    for (int i = 0; i < numEncs; i++) {
+      encLoads.add(new ArrayList<Schedulable>());
+    }
+    Set<Schedulable> bound = new HashSet<Schedulable>();
+    if (alreadyScheduled != null) {
+      for (EncSchedulable prework : alreadyScheduled) {
+        encLoads.get(prework.enc).add(prework.scheduable);
+        bound.add(prework.scheduable);
+      }
+    }
+
+    Map<Schedulable, Integer> placed = new HashMap<Schedulable, Integer>();
+    boolean allScheduled = true;
+    for (Schedulable sched : sorted) {
+      if (placeSchedulable(sched, numEncs, filter, encLoads, bound, placed, new boolean[numEncs])) continue;
+      if (GLOB_DEBUG) System.out.println("conflict: " + sched);
+      allScheduled = false;
+      if (!collector.conflictSchedule(sched)) return false;
+    }
+    for (Schedulable sched : sorted) {
+      Integer enc = placed.get(sched);
+      if (enc != null) collector.schedule(sched, enc);
+    }
+    return allScheduled;
+  }
+
+  private static boolean placeSchedulable(Schedulable sched, int numEncs, EncoderFilter filter,
+      List<List<Schedulable>> encLoads, Set<Schedulable> bound, Map<Schedulable, Integer> placed,
+      boolean[] visited) {
+    for (int enc = 0; enc < numEncs; enc++) {
+      if (!visited[enc] && filter.canRecord(sched, enc) && getOnlyOverlap(encLoads.get(enc), sched, true) == null) {
+        encLoads.get(enc).add(sched);
+        placed.put(sched, enc);
+        return true;
+      }
+    }
+    for (int enc = 0; enc < numEncs; enc++) {
+      if (visited[enc] || !filter.canRecord(sched, enc)) continue;
+      Schedulable inTheWay = getOnlyOverlap(encLoads.get(enc), sched, false);
+      if (inTheWay == null || bound.contains(inTheWay)) continue;
+      visited[enc] = true;
+      encLoads.get(enc).remove(inTheWay);
+      if (placeSchedulable(inTheWay, numEncs, filter, encLoads, bound, placed, visited)) {
+        encLoads.get(enc).add(sched);
+        placed.put(sched, enc);
+        return true;
+      }
+      encLoads.get(enc).add(inTheWay);
+    }
+    return false;
+  }
+
+  // Returns the one schedulable in the list that overlaps; null if there's more than one (or none when anyOverlap
+  // is false). When anyOverlap is true then it returns the first overlap found, so null means there's none.
+  private static Schedulable getOnlyOverlap(List<Schedulable> list, Schedulable sched, boolean anyOverlap) {
+    Schedulable rv = null;
+    for (Schedulable other : list) {
+      if (other.getSchedulingEnd() > sched.getSchedulingStart() &&
+          other.getSchedulingStart() < sched.getSchedulingEnd()) {
+        if (anyOverlap) return other;
+        if (rv != null) return null;
+        rv = other;
+      }
+    }
+    return rv;
+  }
+
   /**
    * Collect the generated schedule and map to an EncAir list. Fail fast.
    */
@@ -2824,6 +3211,13 @@ public class Scheduler implements Runnable
 
     airList = new Vector<Airing>(airList);  // make a local clone.
 
+    // The matching based solver finds a schedule in polynomial time if there's an obvious one; the permutation search
+    // is only needed when it can't
+    EncScheduleCollector collector = new EncScheduleCollector(encs);
+    if (generateSchedule(airList.toArray(new Schedulable[airList.size()]), encs.length, getEncoderFilter(encs),
+        collector, getEncSchedulables(alreadyScheduled, encs)))
+      return collector.schedule;
+
     // the new iterative way
     int numMRs = airList.size();
     int[] encoderPermutationLUT = new int[numMRs]; // each entry indexes into encs[]; starts as numMRs wide
@@ -2939,6 +3333,37 @@ public class Scheduler implements Runnable
     return currPerm;
   }
 
+  private EncoderFilter getEncoderFilter(final EncoderSchedule[] encs)
+  {
+    return new EncoderFilter()
+    {
+      public boolean canRecord(Schedulable airing, int encoder)
+      {
+        Airing air = (Airing) airing;
+        return encs[encoder].stationSet.contains(air.stationID) && encs[encoder].supportsAirQuality(air);
+      }
+    };
+  }
+
+  // Ones on encoders that aren't in encs don't restrict anything so they're left out
+  private static List<EncSchedulable> getEncSchedulables(Vector<EncAir> encAirs, EncoderSchedule[] encs)
+  {
+    List<EncSchedulable> rv = new ArrayList<EncSchedulable>();
+    for (int i = 0; i < encAirs.size(); i++)
+    {
+      EncAir encAir = encAirs.get(i);
+      for (int j = 0; j < encs.length; j++)
+      {
+        if (encs[j].capDev.equals(encAir.capDev))
+        {
+          rv.add(new EncSchedulable(j, encAir.air));
+          break;
+        }
+      }
+    }
+    return rv;
+  }
+
   /*
    * NOTE: 6/21/05 - JK - This was added to replace generateMultiTunerSchedulingPermutations. That function was
    * dying if you passed it in 8 new MRs while it already had 8 scheduled and you were dual tuner. It died because
@@ -2954,6 +3379,21 @@ public class Scheduler implements Runnable
 
     EncoderSchedule[] encs = encoderScheduleMap.values().toArray(new EncoderSchedule[0]);
 
+    // Bipartite matching says for sure when there's not enough tuners, and the matching based solver finds most
+    // schedules that are possible. The permutations only get checked when neither of those can tell, and then
+    // only up to a limit since the number of them is exponential. If we hit that limit we still don't know, so we say
+    // it can be scheduled rather than reporting a conflict that may not be there; the Scheduler sorts it out for real.
+    Schedulable[] testAirs = airList.toArray(new Schedulable[airList.size()]);
+    EncoderFilter filter = getEncoderFilter(encs);
+    if (!hasEnoughEncoders(testAirs, encs.length, filter, null))
+    {
+      if (SDBG) System.out.println("(test sched) not enough encoders for airList=" + airList);
+      return false;
+    }
+    if (generateSchedule(testAirs, encs.length, filter, new FastScheduleTestCollector(), null))
+      return true;
+    int maxPermutations = Sage.getInt("scheduler/max_test_permutations", 100000);
+
     // the new iterative way
     airList = new Vector<Airing>(airList);
     int numMRs = airList.size();
@@ -2969,6 +3409,11 @@ public class Scheduler implements Runnable
       if(SDBG && (++loopCount % 1000) == 0) {
         System.out.println("testMultiTunerSchedulingPermutation: loop: " + loopCount);
       }
+      if (--maxPermutations < 0)
+      {
+        if (Sage.DBG) System.out.println("(test sched) Scheduler gave up searching for a permutation, assuming it can be scheduled for airList=" + airList);
+        return true;
+      }
       if (countNeedsInc)
       {
         // Increment/roll the permute counter, and if we're done then break out
@@ -3118,6 +3563,11 @@ public class Scheduler implements Runnable
 
   private Thread schedulerThread;
   private boolean kicked;
+  private boolean incrementalKicked;
+  // When the full update is due after incremental ones, 0 if there isn't one pending
+  private long fullUpdateDueTime;
+  // IDs of the ManualRecords that have changed since the last update
+  private final Set<Integer> dirtyMRs = new HashSet<Integer>();
   private boolean prepped;
 
   private Airing[] lookaheadAirs;
@@ -5374,7 +5374,7 @@ if (encState.currRecord.getDuration() + (Sage.time() - encState.lastResetTime) >
     {
       int rv = addManualRecord(watchAir, uiClient);
       if (rv == 0)
-        sched.kick(false);
+        sched.kickManualRecordsChanged();
       return rv;
     }
   }
@@ -5417,7 +5417,7 @@ if (encState.currRecord.getDuration() + (Sage.time() - encState.lastResetTime) >
       {
         PluginEventManager.postEvent(PluginEventManager.MANUAL_RECORD_REMOVED,
             new Object[] { PluginEventManager.VAR_AIRING, mr.getSchedulingAiring() });
-        sched.kick(false);
+        sched.kickManualRecordsChanged();
       }
     }
     else
@@ -5518,7 +5518,7 @@ if (encState.currRecord.getDuration() + (Sage.time() - encState.lastResetTime) >
     wiz.modifyManualRecord(startTimeModify, endTimeModify, orgMR);
     PluginEventManager.postEvent(PluginEventManager.MANUAL_RECORD_MODIFIED,
         new Object[] { PluginEventManager.VAR_AIRING, orgMR.getSchedulingAiring() });
-    sched.kick(false);
+    sched.kickManualRecordsChanged();
     return VideoFrame.WATCH_OK;
   }
 
@@ -5837,7 +5837,7 @@ if (encState.currRecord.getDuration() + (Sage.time() - encState.lastResetTime) >
     else
       wiz.addManualRecord(startTime, stopTime - startTime, 0, stationID, "", "", (recAir == null) ? 0 : recAir.id,
           recurrence);
-    sched.kick(false);
+    sched.kickManualRecordsChanged();
     return VideoFrame.WATCH_OK;
   }
 
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * Inverted index from the Show attributes that Agents match on (title, people, categories, rated and year) to the
+ * IDs of the Shows that have them. The Carny uses this to find the few Shows an Agent could possibly match instead
+ * of running followsTrend against every Airing in the DB; the Airings then come from the Airings by Show index.
+ * Values are case folded the same way equalsIgnoreCase compares them, so a lookup can return more than what
+ * followsTrend would accept but never less; followsTrend is always the final test.
+ *
+ * This is built from the Show table the first time it's used and then kept up to date by ShowTable. Postings are
+ * only ever appended to; removed Shows and the old values of updated Shows are left in place and counted as stale
+ * (lookups skip IDs that no longer resolve), and once enough of it is stale the whole thing is thrown away and
+ * rebuilt on the next lookup.
+ */
+final class ShowAttributeIndex
+{
+  static final int TITLE = 0;
+  static final int PERSON = 1;
+  static final int CATEGORY = 2;
+  static final int RATED = 3;
+  static final int YEAR = 4;
+  private static final int NUM_KINDS = 5;
+
+  ShowAttributeIndex(Table inTable)
+  {
+    table = inTable;
+    postings = newPostings();
+  }
+
+  // The ShowTable hooks; these are no-ops until the first lookup builds the index
+  synchronized void add(Show s)
+  {
+    if (!built) return;
+    entries += post(s);
+  }
+
+  synchronized void update(Show s)
+  {
+    if (!built) return;
+    // Whatever the old values were are now stale, but we don't know what they were anymore
+    int num = post(s);
+    entries += num;
+    stale += num;
+    checkStale();
+  }
+
+  synchronized void remove(Show s)
+  {
+    if (!built) return;
+    stale += countKeys(s);
+    checkStale();
+  }
+
+  synchronized void invalidate()
+  {
+    built = false;
+    postings = newPostings();
+    entries = stale = 0;
+  }
+
+  static String fold(String s)
+  {
+    int len = s.length();
+    int i = 0;
+    for (; i < len; i++)
+    {
+      char c = s.charAt(i);
+      if (Character.toLowerCase(Character.toUpperCase(c)) != c)
+        break;
+    }
+    if (i == len)
+      return s;
+    char[] rv = s.toCharArray();
+    for (; i < len; i++)
+      rv[i] = Character.toLowerCase(Character.toUpperCase(rv[i]));
+    return new String(rv);
+  }
+
+  /*
+   * Returns the sorted IDs of the Shows that have all of the given values, each already passed through fold(). The
+   * kinds are the constants above. This never returns null.
+   */
+  int[] lookup(int[] kinds, String[] values, int count)
+  {
+    ensureBuilt();
+    synchronized (this)
+    {
+      Posting[] lists = new Posting[count];
+      for (int i = 0; i < count; i++)
+      {
+        lists[i] = postings[kinds[i]].get(values[i]);
+        if (lists[i] == null)
+          return Pooler.EMPTY_INT_ARRAY;
+        lists[i].normalize();
+      }
+      // Walk the shortest list and binary search the rest of them
+      int shortest = 0;
+      for (int i = 1; i < count; i++)
+        if (lists[i].size < lists[shortest].size)
+          shortest = i;
+      int[] rv = new int[lists[shortest].size];
+      int numRv = 0;
+      for (int j = 0; j < lists[shortest].size; j++)
+      {
+        int id = lists[shortest].ids[j];
+        int i = 0;
+        for (; i < count; i++)
+          if (i != shortest && java.util.Arrays.binarySearch(lists[i].ids, 0, lists[i].size, id) < 0)
+            break;
+        if (i == count)
+          rv[numRv++] = id;
+      }
+      if (numRv < rv.length)
+      {
+        int[] newRv = new int[numRv];
+        System.arraycopy(rv, 0, newRv, 0, numRv);
+        rv = newRv;
+      }
+      return rv;
+    }
+  }
+
+  private void ensureBuilt()
+  {
+    if (built) return;
+    // Take the table lock before our own; ShowTable calls into us while the Show write lock may be held.
+    Table t = table;
+    try {
+      t.acquireReadLock();
+      synchronized (this)
+      {
+        if (built) return;
+        long startTime = Sage.eventTime();
+        postings = newPostings();
+        entries = stale = 0;
+        for (int i = 0; i < t.num; i++)
+        {
+          Show s = (Show) t.primary.get(i);
+          if (s != null)
+            entries += post(s);
+        }
+        built = true;
+        if (Sage.DBG) System.out.println("Built Show attribute index for " + t.num + " Shows with " + entries +
+            " entries in " + (Sage.eventTime() - startTime) + " msec");
+      }
+    } finally {
+      t.releaseReadLock();
+    }
+  }
+
+  private void checkStale()
+  {
+    if (stale > 10000 && stale > entries / 2)
+    {
+      if (Sage.DBG) System.out.println("Show attribute index has " + stale + " stale entries out of " + entries +
+          ", it'll be rebuilt on the next lookup");
+      invalidate();
+    }
+  }
+
+  private int post(Show s)
+  {
+    int num = 0;
+    if (s.title != null)
+    {
+      post(TITLE, s.title.name, s.id);
+      num++;
+    }
+    for (int i = 0; i < s.people.length; i++)
+    {
+      post(PERSON, s.people[i].name, s.id);
+      num++;
+    }
+    for (int i = 0; i < s.categories.length && i < 2; i++)
+    {
+      post(CATEGORY, s.categories[i].name, s.id);
+      num++;
+    }
+    if (s.rated != null)
+    {
+      post(RATED, s.rated.name, s.id);
+      num++;
+    }
+    if (s.year != null)
+    {
+      post(YEAR, s.year.name, s.id);
+      num++;
+    }
+    return num;
+  }
+
+  private void post(int kind, String value, int id)
+  {
+    value = fold(value);
+    Posting p = postings[kind].get(value);
+    if (p == null)
+      postings[kind].put(value, p = new Posting());
+    p.add(id);
+  }
+
+  private static int countKeys(Show s)
+  {
+    return (s.title != null ? 1 : 0) + s.people.length + Math.min(2, s.categories.length) + (s.rated != null ? 1 : 0) +
+        (s.year != null ? 1 : 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static java.util.Map<String, Posting>[] newPostings()
+  {
+    java.util.Map<String, Posting>[] rv = new java.util.Map[NUM_KINDS];
+    for (int i = 0; i < rv.length; i++)
+      rv[i] = new java.util.HashMap<String, Posting>();
+    return rv;
+  }
+
+  /*
+   * Show IDs for one value. New Shows get higher IDs so appending normally keeps this sorted; updates can append an
+   * older ID (or one that's already in here) and then it gets sorted and de-duplicated before the next lookup.
+   */
+  private static final class Posting
+  {
+    void add(int id)
+    {
+      if (size == ids.length)
+      {
+        int[] newIds = new int[size * 2];
+        System.arraycopy(ids, 0, newIds, 0, size);
+        ids = newIds;
+      }
+      if (size > 0 && ids[size - 1] >= id)
+        sorted = false;
+      ids[size++] = id;
+    }
+
+    void normalize()
+    {
+      if (sorted) return;
+      java.util.Arrays.sort(ids, 0, size);
+      int newSize = 0;
+      for (int i = 0; i < size; i++)
+        if (newSize == 0 || ids[newSize - 1] != ids[i])
+          ids[newSize++] = ids[i];
+      size = newSize;
+      sorted = true;
+    }
+
+    int[] ids = new int[2];
+    int size;
+    boolean sorted = true;
+  }
+
+  private final Table table;
+  private java.util.Map<String, Posting>[] postings;
+  private volatile boolean built;
+  private long entries;
+  private long stale;
+}
@@ -19,7 +19,7 @@ import java.util.Set;
 
 /**
  * Override add, remove, and delete from Table so we can do some
- * different indexing.
+ * different indexing (Lucene and the Show attribute index).
  *
  * @author codefu@google.com (John McDole)
  */
@@ -32,11 +32,13 @@ public class ShowTable extends Table {
   void add(DBObject addMe, boolean logTX) {
     super.add(addMe, logTX);
     Wizard.getInstance().addShowToLucene((Show)addMe);
+    attrs.add((Show)addMe);
   }
 
   @Override
   boolean remove(DBObject removeMe, boolean logTX) {
     Wizard.getInstance().deleteShowFromLucene((Show)removeMe);
+    attrs.remove((Show)removeMe);
     return super.remove(removeMe, logTX);
   }
 
@@ -45,5 +47,14 @@ public class ShowTable extends Table {
     Wizard.getInstance().deleteShowFromLucene((Show)updateMe);
     super.update(updateMe, newMe, logTX);
     Wizard.getInstance().addShowToLucene((Show)updateMe);
+    attrs.update((Show)updateMe);
   }
+
+  @Override
+  void clear() {
+    super.clear();
+    attrs.invalidate();
+  }
+
+  final ShowAttributeIndex attrs = new ShowAttributeIndex(this);
 }
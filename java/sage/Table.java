@@ -52,6 +52,8 @@ public class Table
       for (int i = 0; i < others.length; i++)
         others[i].clear();
       num = 0;
+      if (names != null)
+        names.clear();
     } finally {
       releaseWriteLock();
     }
@@ -64,6 +66,13 @@ public class Table
       others[i].check();
   }
 
+  void setChunkedIndices(boolean x)
+  {
+    primary.setChunked(x);
+    for (int i = 0; i < others.length; i++)
+      others[i].setChunked(x);
+  }
+
   Index getIndex(byte indexCode)
   {
     if (indexCode <= 0) return primary;
@@ -78,26 +87,39 @@ public class Table
     boolean rv;
     try {
       acquireWriteLock();
+      if (names != null) {
+        // removeMe may just be a template for the object in the table
+        names.evict(removeMe);
+        names.evict(primary.getSingle(removeMe));
+      }
       if (rv = primary.remove(removeMe)) {
         for (int i = 0; i < others.length; i++)
           others[i].remove(removeMe);
         num--;
-        modCount++;
+        incModCount();
       }
       if (VERIFY_INDICES) {
-        for (int i = 0; i < primary.data.length - 1; i++) {
-          if (primary.comp.compare(primary.data[i], primary.data[i + 1]) > 0)
+        for (int i = 0; i < primary.size() - 1; i++) {
+          if (primary.comp.compare(primary.get(i), primary.get(i + 1)) > 0)
             System.out.println("PRIMARY REMOVE SORT IS SCREWED UP code=" + tableCode);
           for (int j = 0; j < others.length; j++)
-            if (others[j].comp.compare(others[j].data[i], others[j].data[i + 1]) > 0)
+            if (others[j].comp.compare(others[j].get(i), others[j].get(i + 1)) > 0)
               System.out.println("OTHER REMOVE SORT IS SCREWED UP code=" + tableCode + " otherIdx=" + j);
         }
       }
+      if (logTX)
+        unloggedXcts.incrementAndGet();
     } finally {
       releaseWriteLock();
     }
     if (logTX)
-      wiz.logRemove(removeMe, tableCode);
+    {
+      try {
+        wiz.logRemove(removeMe, tableCode);
+      } finally {
+        wiz.tableXctLogged(this);
+      }
+    }
     return rv;
   }
 
@@ -109,22 +131,30 @@ public class Table
       for (int i = 0; i < others.length; i++)
         others[i].add(addMe);
       num++;
-      modCount++;
+      incModCount();
       if (VERIFY_INDICES) {
-        for (int i = 0; i < primary.data.length - 1; i++) {
-          if (primary.comp.compare(primary.data[i], primary.data[i + 1]) > 0)
+        for (int i = 0; i < primary.size() - 1; i++) {
+          if (primary.comp.compare(primary.get(i), primary.get(i + 1)) > 0)
             System.out.println("PRIMARY ADD SORT IS SCREWED UP code=" + tableCode);
           for (int j = 0; j < others.length; j++)
-            if (others[j].comp.compare(others[j].data[i], others[j].data[i + 1]) > 0)
+            if (others[j].comp.compare(others[j].get(i), others[j].get(i + 1)) > 0)
               System.out.println("OTHER ADD SORT IS SCREWED UP code=" + tableCode + " otherIdx=" + j);
         }
       }
+      if (logTX)
+        unloggedXcts.incrementAndGet();
     } finally {
       releaseWriteLock();
     }
 
     if (logTX)
-      wiz.logAdd(addMe, tableCode);
+    {
+      try {
+        wiz.logAdd(addMe, tableCode);
+      } finally {
+        wiz.tableXctLogged(this);
+      }
+    }
   }
 
   void update(DBObject updateMe, DBObject newMe, boolean logTX)
@@ -134,24 +164,37 @@ public class Table
       primary.update(updateMe, newMe);
       for (int i = 0; i<others.length;i++)
         others[i].update(updateMe, newMe);
+      if (names != null)
+        names.evict(updateMe);
       updateMe.update(newMe);
-      modCount++;
+      primary.refresh(updateMe);
+      for (int i = 0; i<others.length;i++)
+        others[i].refresh(updateMe);
+      incModCount();
 
       if (VERIFY_INDICES) {
-        for (int i = 0; i < primary.data.length - 1; i++) {
-          if (primary.comp.compare(primary.data[i], primary.data[i + 1]) > 0)
+        for (int i = 0; i < primary.size() - 1; i++) {
+          if (primary.comp.compare(primary.get(i), primary.get(i + 1)) > 0)
             System.out.println("PRIMARY UPDATE SORT IS SCREWED UP code=" + tableCode);
           for (int j = 0; j < others.length; j++)
-            if (others[j].comp.compare(others[j].data[i], others[j].data[i + 1]) > 0)
+            if (others[j].comp.compare(others[j].get(i), others[j].get(i + 1)) > 0)
               System.out.println("OTHER UPDATE SORT IS SCREWED UP code=" + tableCode + " otherIdx=" + j);
         }
       }
+      if (logTX)
+        unloggedXcts.incrementAndGet();
     } finally {
       releaseWriteLock();
     }
 
     if (logTX)
-      wiz.logUpdate(updateMe, tableCode);
+    {
+      try {
+        wiz.logUpdate(updateMe, tableCode);
+      } finally {
+        wiz.tableXctLogged(this);
+      }
+    }
   }
 
   // 5/5/09 - Narflex - I had a temporary test case (probably due to disk fragmentation) which caused bad delays in other
@@ -222,8 +265,15 @@ public class Table
   Index primary;
   Index[] others;
   int num;
+  // Only set for the tables that are searched by name
+  NameDictionary names;
   private final Object modCountLock = new Object();
-  long modCount = 0;
+  // Written under modCountLock, but read without any lock (e.g. Wizard.getDBModCount) so it has to be volatile
+  private volatile long modCount = 0;
+  // Changes made while holding the write lock that haven't been logged yet. Their sequence numbers are only assigned
+  // once they're logged, so compactDBFile waits for this to get to zero before it decides which xcts its copy of this
+  // table already has.
+  final java.util.concurrent.atomic.AtomicInteger unloggedXcts = new java.util.concurrent.atomic.AtomicInteger();
   private ReentrantReadWriteLock rwLock;
   private Wizard wiz;
 }
@@ -1142,7 +1142,7 @@ public class UIManager implements Runnable, UIClient
         Properties modProps = new Properties();
         modProps.put("STV", actualSTVFile.toString());
         if (Sage.DBG) System.out.println("UIMgr loading UI from: " + modProps.get("STV"));
-        moduleGroup = ModuleManager.loadModuleGroup(modProps);
+        moduleGroup = ModuleManager.loadSharedModuleGroup(modProps);
         if (Sage.DBG) System.out.println("UIMgr done loading UI from: " + modProps.get("STV"));
       }
       else
@@ -1183,7 +1183,7 @@ public class UIManager implements Runnable, UIClient
           theProps.put("STV", theProps.get("secure_remote_login_stv7", fileStr.toString()));
         }
         if (Sage.DBG) System.out.println("UIMgr loading UI from: " + theProps.get("STV", null));
-        moduleGroup = ModuleManager.loadModuleGroup(theProps.getAllPrefs());
+        moduleGroup = ModuleManager.loadSharedModuleGroup(theProps.getAllPrefs());
 
         if (Sage.DBG) System.out.println("UIMgr done loading UI from: " + theProps.get("STV", null));
 
@@ -1214,7 +1214,7 @@ public class UIManager implements Runnable, UIClient
       theProps.put("STV", fileStr);
       try
       {
-        moduleGroup = ModuleManager.loadModuleGroup(theProps.getAllPrefs());
+        moduleGroup = ModuleManager.loadSharedModuleGroup(theProps.getAllPrefs());
       }
       catch (SageException sx1)
       {
@@ -1335,7 +1335,7 @@ public class UIManager implements Runnable, UIClient
         return getUI(menus[i]);
       }
     }
-    Widget newMenuWidg = moduleGroup.addWidget(Widget.MENU);
+    Widget newMenuWidg = getModuleGroupForEdit().addWidget(Widget.MENU);
     // 601 newMenuWidg.setName(uiName);
     WidgetFidget.setName(newMenuWidg, uiName);
     return getUI(newMenuWidg);
@@ -1389,7 +1389,7 @@ public class UIManager implements Runnable, UIClient
     {
       if (currUI.getUI().getRelatedContext() != null && currUI.getUI().getRelatedContext().getParent() != null)
         staticContext.putAll(currUI.getUI().getRelatedContext().getParent().getMap());
-      advanceUI(new PseudoMenu(this, currUI.getBlueprint()));
+      advanceUI(new PseudoMenu(this, getWidgetForEdit(currUI.getBlueprint(), false)));
     }
   }
 
@@ -1425,7 +1425,11 @@ public class UIManager implements Runnable, UIClient
       {
         theProps.put("STV", moduleFilename.toString());
         if (Sage.DBG) System.out.println("UIMgr loading UI from: " + moduleFilename);
-        moduleGroup = ModuleManager.loadModuleGroup(theProps.getAllPrefs());
+        // Studio edits whatever is loaded, so it always gets its own copy
+        if (myStudio != null)
+          moduleGroup = ModuleManager.loadModuleGroup(theProps.getAllPrefs());
+        else
+          moduleGroup = ModuleManager.loadSharedModuleGroup(theProps.getAllPrefs());
         if (Sage.DBG) System.out.println("UIMgr done loading UI from: " + theProps.get("STV", null));
       }
     }
@@ -1476,27 +1480,43 @@ public class UIManager implements Runnable, UIClient
     String[] imports = CorePluginManager.getInstance().getEnabledSTVImports(this);
     if (imports.length > 0)
     {
-      if (Sage.DBG) System.out.println("Importing all currently enabled STVIs into the loaded STV...");
       pluginImportsActive = true;
-      long oldModTime = getModuleGroup().defaultModule.lastModified();
-      for (int i = 0; i < imports.length; i++)
+      ModuleGroup sharedBase = moduleGroup.isShared() ? moduleGroup : null;
+      ModuleGroup sharedImported = (sharedBase != null) ? ModuleManager.getSharedModuleGroup(sharedBase, imports) : null;
+      if (sharedImported != null)
       {
-        if (Sage.DBG) System.out.println("Processing STV import: " + imports[i]);
-        try
+        if (Sage.DBG) System.out.println("Using the shared STV that already has all of the currently enabled STVIs imported");
+        moduleGroup = sharedImported;
+      }
+      else
+      {
+        if (Sage.DBG) System.out.println("Importing all currently enabled STVIs into the loaded STV...");
+        if (sharedBase != null)
         {
-          File stviFile = new File(imports[i]);
-          getModuleGroup().importXML(stviFile, this);
-          File parentFile = stviFile.getParentFile();
-          if (!imgFoldList.contains(parentFile))
-            imgFoldList.add(parentFile);
+          // The imports go into a new copy which is then shared with any other UIs that have the same ones enabled
+          try
+          {
+            moduleGroup = ModuleManager.reloadModuleGroup(sharedBase);
+          }
+          catch (SageException sx)
+          {
+            System.out.println("ERROR loading STV for the STV imports of:" + sx);
+          }
         }
-        catch (Exception e)
+        if (!moduleGroup.isShared())
         {
-          if (Sage.DBG) System.out.println("ERROR Could not process STV Import properly: " + imports[i] + " cause: " + e);
+          ModuleManager.importSTVs(moduleGroup, imports, this);
+          if (sharedBase != null)
+            ModuleManager.shareModuleGroup(moduleGroup, sharedBase, imports);
         }
+        if (Sage.DBG) System.out.println("Done importing all currently enabled STVIs into the loaded STV");
+      }
+      for (int i = 0; i < imports.length; i++)
+      {
+        File parentFile = new File(imports[i]).getParentFile();
+        if (!imgFoldList.contains(parentFile))
+          imgFoldList.add(parentFile);
       }
-      getModuleGroup().defaultModule.forceLastModified(oldModTime);
-      if (Sage.DBG) System.out.println("Done importing all currently enabled STVIs into the loaded STV");
     }
     imgSearchRoots = imgFoldList.toArray(new File[0]);
   }
@@ -2551,6 +2571,16 @@ public class UIManager implements Runnable, UIClient
 
   public Tracer getTracer() { return debugger; }
 
+  // Only set while the UI is being profiled
+  private volatile UIProfiler profiler;
+
+  public void setProfiler(UIProfiler p)
+  {
+    profiler = p;
+  }
+
+  public UIProfiler getProfiler() { return profiler; }
+
   /*
    * 7/21/08 - Narflex - The flag 'arMustGetLockNext' is here to ensure that the ActiveRendering thread will be the next
    * thing to render after the completion of another UI operaiton. For example; a thread can get the UI lock and then do
@@ -2967,6 +2997,7 @@ public class UIManager implements Runnable, UIClient
         return myStudio;
       try
       {
+        getModuleGroupForEdit();
         myStudio = (STVEditor) Class.forName("sage.StudioFrame").newInstance();
         myStudio.setUIMgr(this);
         return myStudio;
@@ -3157,6 +3188,70 @@ public class UIManager implements Runnable, UIClient
 
   public ModuleGroup getModuleGroup() { return moduleGroup; }
 
+  /*
+   * Returns this UI's ModuleGroup for changing its Widgets. The STV a UI loads is normally shared with all of the other
+   * UIs that loaded the same one and can't be modified, so this replaces it with this UI's own copy the first time
+   * it's called. The UI's menus are rebuilt from the copy afterwards.
+   */
+  public ModuleGroup getModuleGroupForEdit()
+  {
+    synchronized (forkLock)
+    {
+      if (moduleGroup == null || !moduleGroup.isShared())
+        return moduleGroup;
+      if (Sage.DBG) System.out.println("UIMgr making its own copy of the shared STV so it can be modified: " +
+          moduleGroup.defaultModule.description());
+      try
+      {
+        ModuleGroup copy = ModuleManager.forkModuleGroup(moduleGroup);
+        forkedFrom = moduleGroup;
+        moduleGroup = copy;
+      }
+      catch (SageException sx)
+      {
+        System.out.println("ERROR copying the shared STV of:" + sx);
+        sx.printStackTrace();
+        return moduleGroup;
+      }
+      ModuleManager.importSTVs(moduleGroup, ModuleManager.getSharedImports(forkedFrom), this);
+    }
+    if (router != null && currUI != null)
+    {
+      // Everything that's displayed now is still using the shared Widgets
+      router.invokeLater(new Runnable()
+      {
+        public void run()
+        {
+          fullyRefreshCurrUI();
+        }
+      });
+    }
+    else
+      clearMenuCache();
+    menuWidgetCache = null;
+    hookCache = null;
+    return moduleGroup;
+  }
+
+  /*
+   * Returns the Widget to change for this one; which is the same Widget in this UI's own copy of the STV if this is
+   * from the shared one it had before. The copy is made first if it hasn't been yet.
+   */
+  public Widget getWidgetForEdit(Widget w)
+  {
+    return getWidgetForEdit(w, true);
+  }
+
+  private Widget getWidgetForEdit(Widget w, boolean makeCopy)
+  {
+    ModuleGroup mg = makeCopy ? getModuleGroupForEdit() : moduleGroup;
+    ModuleGroup oldGroup = forkedFrom;
+    if (w == null || mg == null || oldGroup == null || oldGroup.getWidgetForID(w.id()) != w)
+      return w;
+    Widget rv = mg.getWidgetForID(w.id());
+    return (rv != null) ? rv : w;
+  }
+
   public void addTimerTask(TimerTask addMe, long delay, long period)
   {
     if (!alive) return;
@@ -3510,7 +3605,10 @@ public class UIManager implements Runnable, UIClient
   private Map<String, String> capabilities = new HashMap<String, String>();
 
   // 601
-  private ModuleGroup moduleGroup;
+  private volatile ModuleGroup moduleGroup;
+  // The shared ModuleGroup this UI had before it made its own copy of it for editing
+  private volatile ModuleGroup forkedFrom;
+  private final Object forkLock = new Object();
 
   // This was moved here because it's a UI dependent thing since a user can have it configured either way
 
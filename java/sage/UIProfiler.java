@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage;
+
+/*
+ * Measures where the time goes in one UI. The UIManager only has one of these while profiling is on, so when it's off
+ * the hooks cost a null check. Each hook calls enter() before doing its work and exit() when it's done, whether it
+ * completes or throws. The hooks are expression evaluation, component evaluation, building the rendering ops and the
+ * data paging in tables.
+ *
+ * Everything goes into a call tree whose nodes are a kind of work plus the Widget (and the expression for expression
+ * evaluation), so the same Widget reached through different parents has separate nodes. getJSON() merges the nodes for
+ * each Widget/expression back together, and getFoldedStacks() writes out the tree as one line per path with its self
+ * time, which is the input flame graph tools take.
+ *
+ * Allocated bytes are only tracked if that was asked for and the JVM supports per thread allocation counters.
+ */
+public final class UIProfiler
+{
+  public static final int EXPRESSION = 0;
+  public static final int EVALUATE = 1;
+  public static final int RENDER = 2;
+  public static final int TABLE_DATA = 3;
+  private static final String[] KIND_NAMES = { "expr", "evaluate", "render", "tableData" };
+
+  public UIProfiler(String inClientName, boolean inTrackAllocations)
+  {
+    clientName = inClientName;
+    trackAllocations = inTrackAllocations && allocationBean != null;
+    reset();
+  }
+
+  public void enter(int kind, Widget w, String expr)
+  {
+    ThreadState ts = threadState.get();
+    if (ts.generation != generation)
+    {
+      // Anything on the stack from before a reset belongs to the old tree
+      ts.depth = 0;
+      ts.generation = generation;
+    }
+    Node n;
+    synchronized (this)
+    {
+      n = ((ts.depth == 0) ? root : ts.nodes[ts.depth - 1]).getChild(kind, w, expr);
+    }
+    ts.push(n, trackAllocations ? getAllocatedBytes() : 0, System.nanoTime());
+  }
+
+  public void exit()
+  {
+    long end = System.nanoTime();
+    ThreadState ts = threadState.get();
+    if (ts.depth == 0)
+      return;
+    ts.depth--;
+    Node n = ts.nodes[ts.depth];
+    long nanos = end - ts.starts[ts.depth];
+    long alloc = trackAllocations ? getAllocatedBytes() - ts.allocs[ts.depth] : 0;
+    synchronized (this)
+    {
+      n.count++;
+      n.totalNanos += nanos;
+      if (nanos > n.maxNanos)
+        n.maxNanos = nanos;
+      n.allocBytes += alloc;
+      if (n.parent != null)
+        n.parent.childNanos += nanos;
+    }
+  }
+
+  public synchronized void reset()
+  {
+    root = new Node(null, -1, null, null);
+    generation++;
+    startTime = Sage.eventTime();
+  }
+
+  public boolean isTrackingAllocations()
+  {
+    return trackAllocations;
+  }
+
+  /*
+   * One object for the whole profile with an entry for each kind of work on each Widget (and expression), sorted by
+   * self time with the biggest first. Times are in nanoseconds.
+   */
+  public synchronized String getJSON()
+  {
+    java.util.Map<Node, Node> merged = new java.util.LinkedHashMap<Node, Node>();
+    mergeNodes(root, merged);
+    Node[] entries = merged.values().toArray(new Node[merged.size()]);
+    java.util.Arrays.sort(entries, new java.util.Comparator<Node>()
+    {
+      public int compare(Node n1, Node n2)
+      {
+        long s1 = n1.totalNanos - n1.childNanos;
+        long s2 = n2.totalNanos - n2.childNanos;
+        return (s1 < s2) ? 1 : ((s1 > s2) ? -1 : 0);
+      }
+    });
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"client\":");
+    appendJSONString(sb, clientName);
+    sb.append(",\"durationMillis\":").append(Sage.eventTime() - startTime);
+    sb.append(",\"allocationTracking\":").append(trackAllocations);
+    sb.append(",\"entries\":[");
+    for (int i = 0; i < entries.length; i++)
+    {
+      Node n = entries[i];
+      if (i > 0)
+        sb.append(',');
+      sb.append("{\"kind\":\"").append(KIND_NAMES[n.kind]).append('"');
+      if (n.widget != null)
+      {
+        sb.append(",\"widgetID\":").append(n.widget.id());
+        sb.append(",\"widgetType\":");
+        appendJSONString(sb, Widget.TYPES[n.widget.type()]);
+        sb.append(",\"widgetName\":");
+        appendJSONString(sb, n.widget.getUntranslatedName());
+      }
+      if (n.expr != null)
+      {
+        sb.append(",\"expression\":");
+        appendJSONString(sb, n.expr);
+      }
+      sb.append(",\"count\":").append(n.count);
+      sb.append(",\"totalNanos\":").append(n.totalNanos);
+      sb.append(",\"selfNanos\":").append(n.totalNanos - n.childNanos);
+      sb.append(",\"maxNanos\":").append(n.maxNanos);
+      if (trackAllocations)
+        sb.append(",\"allocatedBytes\":").append(n.allocBytes);
+      sb.append('}');
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  // One line for each path in the call tree followed by its self time in microseconds
+  public synchronized String getFoldedStacks()
+  {
+    StringBuilder sb = new StringBuilder();
+    appendFolded(root, new StringBuilder(clientName.replace(';', ',').replace(' ', '_')), sb);
+    return sb.toString();
+  }
+
+  // Adds up all of the nodes that are for the same work; the map is keyed by the first node found for it
+  private static void mergeNodes(Node n, java.util.Map<Node, Node> merged)
+  {
+    for (int i = 0; i < n.numChildren; i++)
+    {
+      Node kid = n.children[i];
+      Node sum = merged.get(kid);
+      if (sum == null)
+        merged.put(kid, sum = new Node(null, kid.kind, kid.widget, kid.expr));
+      sum.count += kid.count;
+      sum.totalNanos += kid.totalNanos;
+      sum.childNanos += kid.childNanos;
+      sum.maxNanos = Math.max(sum.maxNanos, kid.maxNanos);
+      sum.allocBytes += kid.allocBytes;
+      mergeNodes(kid, merged);
+    }
+  }
+
+  private static void appendFolded(Node n, StringBuilder path, StringBuilder sb)
+  {
+    for (int i = 0; i < n.numChildren; i++)
+    {
+      Node kid = n.children[i];
+      int oldLen = path.length();
+      path.append(';').append(kid.getFrameName());
+      long selfMicros = (kid.totalNanos - kid.childNanos) / 1000;
+      if (selfMicros > 0)
+        sb.append(path).append(' ').append(selfMicros).append('\n');
+      appendFolded(kid, path, sb);
+      path.setLength(oldLen);
+    }
+  }
+
+  private static void appendJSONString(StringBuilder sb, String s)
+  {
+    if (s == null)
+    {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\')
+        sb.append('\\').append(c);
+      else if (c == '\n')
+        sb.append("\\n");
+      else if (c == '\r')
+        sb.append("\\r");
+      else if (c == '\t')
+        sb.append("\\t");
+      else if (c < 0x20)
+      {
+        String hex = Integer.toHexString(c);
+        sb.append("\\u");
+        for (int j = hex.length(); j < 4; j++)
+          sb.append('0');
+        sb.append(hex);
+      }
+      else
+        sb.append(c);
+    }
+    sb.append('"');
+  }
+
+  private static long getAllocatedBytes()
+  {
+    return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static final class Node
+  {
+    Node(Node inParent, int inKind, Widget inWidget, String inExpr)
+    {
+      parent = inParent;
+      kind = inKind;
+      widget = inWidget;
+      expr = inExpr;
+    }
+
+    Node getChild(int inKind, Widget inWidget, String inExpr)
+    {
+      for (int i = 0; i < numChildren; i++)
+      {
+        Node kid = children[i];
+        if (kid.kind == inKind && kid.widget == inWidget &&
+            (kid.expr == inExpr || (kid.expr != null && kid.expr.equals(inExpr))))
+          return kid;
+      }
+      if (numChildren == children.length)
+      {
+        Node[] newKids = new Node[Math.max(4, numChildren * 2)];
+        System.arraycopy(children, 0, newKids, 0, numChildren);
+        children = newKids;
+      }
+      return children[numChildren++] = new Node(this, inKind, inWidget, inExpr);
+    }
+
+    String getFrameName()
+    {
+      StringBuilder sb = new StringBuilder(KIND_NAMES[kind]);
+      if (widget != null)
+        sb.append(':').append(Widget.TYPES[widget.type()]).append(':').append(widget.getUntranslatedName()).
+            append('#').append(widget.id());
+      if (expr != null)
+        sb.append(':').append(expr.length() > 100 ? expr.substring(0, 100) + "..." : expr);
+      // Semicolons separate the frames and the last space separates the count
+      String rv = sb.toString().replace(';', ',');
+      return rv.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    // For merging nodes for the same work
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Node))
+        return false;
+      Node n = (Node) o;
+      return n.kind == kind && n.widget == widget && (n.expr == expr || (expr != null && expr.equals(n.expr)));
+    }
+
+    public int hashCode()
+    {
+      return kind * 31 + (widget == null ? 0 : System.identityHashCode(widget)) + (expr == null ? 0 : expr.hashCode());
+    }
+
+    final Node parent;
+    final int kind;
+    final Widget widget;
+    final String expr;
+    Node[] children = EMPTY_NODES;
+    int numChildren;
+    long count;
+    long totalNanos;
+    // The part of totalNanos spent in the children, to get the self time
+    long childNanos;
+    long maxNanos;
+    long allocBytes;
+  }
+
+  private static final class ThreadState
+  {
+    void push(Node n, long alloc, long start)
+    {
+      if (depth == nodes.length)
+      {
+        int newLen = depth * 2;
+        Node[] newNodes = new Node[newLen];
+        System.arraycopy(nodes, 0, newNodes, 0, depth);
+        nodes = newNodes;
+        long[] newStarts = new long[newLen];
+        System.arraycopy(starts, 0, newStarts, 0, depth);
+        starts = newStarts;
+        long[] newAllocs = new long[newLen];
+        System.arraycopy(allocs, 0, newAllocs, 0, depth);
+        allocs = newAllocs;
+      }
+      nodes[depth] = n;
+      allocs[depth] = alloc;
+      starts[depth] = start;
+      depth++;
+    }
+
+    Node[] nodes = new Node[32];
+    long[] starts = new long[32];
+    long[] allocs = new long[32];
+    int depth;
+    int generation;
+  }
+
+  private static final Node[] EMPTY_NODES = new Node[0];
+  private static final com.sun.management.ThreadMXBean allocationBean;
+  static
+  {
+    com.sun.management.ThreadMXBean bean = null;
+    try
+    {
+      java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+      if (threads instanceof com.sun.management.ThreadMXBean &&
+          ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+      {
+        bean = (com.sun.management.ThreadMXBean) threads;
+        bean.setThreadAllocatedMemoryEnabled(true);
+      }
+    }
+    catch (Throwable t)
+    {
+      // Not every JVM has these
+    }
+    allocationBean = bean;
+  }
+
+  private final String clientName;
+  private final boolean trackAllocations;
+  private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>()
+  {
+    protected ThreadState initialValue()
+    {
+      return new ThreadState();
+    }
+  };
+  private Node root;
+  private volatile int generation;
+  private long startTime;
+}
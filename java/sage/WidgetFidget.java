@@ -23,6 +23,7 @@ public abstract class WidgetFidget
   // 13 callers
   public static void setName(Widget w, String name)
   {
+    checkModifiable(w);
     //        if (tv.sage.ModuleManager.isModular)
     //        {
     ((tv.sage.mod.GenericWidget)w).setName(name);
@@ -34,6 +35,7 @@ public abstract class WidgetFidget
   // 18 callers
   public static void setProperty(Widget w, byte prop, String val)
   {
+    checkModifiable(w);
     //        if (tv.sage.ModuleManager.isModular)
     //        {
     ((tv.sage.mod.GenericWidget)w).setProperty(prop, val);
@@ -46,6 +48,8 @@ public abstract class WidgetFidget
   public static void contain(Widget w, Widget con)
   {
     if (con == null || w == null) return;
+    checkModifiable(w);
+    checkModifiable(con);
     //        if (tv.sage.ModuleManager.isModular)
     //        {
     ((tv.sage.mod.GenericWidget)w).contain(con);
@@ -56,6 +60,8 @@ public abstract class WidgetFidget
 
   public static void contain(Widget w, Widget con, int index)
   {
+    checkModifiable(w);
+    checkModifiable(con);
     //        if (tv.sage.ModuleManager.isModular)
     //        {
     ((tv.sage.mod.GenericWidget)w).contain(con, index);
@@ -67,6 +73,8 @@ public abstract class WidgetFidget
   // 13 callers
   public static int discontent(Widget w, Widget dis)
   {
+    checkModifiable(w);
+    checkModifiable(dis);
     //        if (tv.sage.ModuleManager.isModular)
     //        {
     return (((tv.sage.mod.GenericWidget)w).discontent(dis));
@@ -74,4 +82,14 @@ public abstract class WidgetFidget
     //        else
     //            return (((WidgetImp)w).discontent(dis));
   }
+
+  // Widgets in an STV that's shared between UIs can't be changed; see UIManager.getWidgetForEdit
+  private static void checkModifiable(Widget w)
+  {
+    if (!(w instanceof tv.sage.mod.AbstractWidget))
+      return;
+    tv.sage.mod.Module mod = ((tv.sage.mod.AbstractWidget) w).getModule();
+    if (mod != null && mod.getModuleGroup() != null && mod.getModuleGroup().isShared())
+      throw new IllegalStateException("Cannot modify a Widget in the STV that's shared between UIs: " + w);
+  }
 }
@@ -116,6 +116,8 @@ public class Wizard implements EPGDBPublic2
   private static final int WIZARD_MEDIAMASK_MAINTENANCE_SLEEP_TIME = 2000; // time between runs on maintenance
 
   private static final int MAX_DB_ERRORS_TO_LOG = 1000;
+  // Max number of xcts that get collected in a batch before they are sent to clients
+  private static final int XCT_BATCH_LIMIT = 500;
 
 
   public static boolean COMPACT_DB = Sage.EMBEDDED;
@@ -352,8 +354,8 @@ public class Wizard implements EPGDBPublic2
     if (t == null) return 0;
     Index idx=t.primary;
     int count=0;
-    for (int i = 0; i < idx.data.length; i++) {
-      DBObject obj = idx.data[i];
+    for (int i = 0; i < idx.size(); i++) {
+      DBObject obj = idx.get(i);
       if (obj != null && (obj.getMediaMask() & mediaMask) != 0)
         count++;
     }
@@ -363,7 +365,13 @@ public class Wizard implements EPGDBPublic2
 
   public DBObject[] getRawAccess(byte tableCode, byte indexCode)
   {
-    return getIndex(tableCode, indexCode).data;
+    return getIndex(tableCode, indexCode).getSnapshot();
+  }
+
+  // Returns all of the Airings sorted by channel & time as blocks of primitive columns for doing full guide scans
+  public AiringColumns[] getAiringColumns()
+  {
+    return getIndex(AIRING_CODE, AIRINGS_BY_CT_CODE).getAiringColumns();
   }
 
   // Avoid the DB locks if we are loading as we do that single threaded so we have
@@ -420,6 +428,18 @@ public class Wizard implements EPGDBPublic2
   private static final String LAST_MAINTENANCE = "last_maintenance";
   private static final String NODATA_MAX_LEN = "nodata_max_len";
   private static final String NODATA_DUR_FOR_MAXRULE = "nodata_dur_for_maxrule";
+  private static final String PARALLEL_LOAD = "parallel_load";
+  private static final String PARALLEL_LOAD_THREADS = "parallel_load_threads";
+  private static final String CHUNKED_INDEX = "chunked_index";
+  private static final String ASYNC_XCT_LOG = "async_xct_log";
+  private static final String XCT_LOG_QUEUE_SIZE = "xct_log_queue_size";
+  private static final String XCT_LOG_FLUSH_INTERVAL = "xct_log_flush_interval";
+  private static final String XCT_LOG_FLUSH_RECORDS = "xct_log_flush_records";
+  private static final String XCT_LOG_FSYNC = "xct_log_fsync";
+  private static final String BACKGROUND_COMPACTION = "background_compaction";
+  private static final String MMAP_LOAD = "mmap_load";
+  private static final String DELTA_CLIENT_SYNC = "delta_client_sync";
+  private static final String SYNC_JOURNAL_SIZE = "sync_journal_size";
 
   // This indicates that the mediaMaskB in DBObject should be generated by ALL DBObjects during this load
   public static boolean GENERATE_MEDIA_MASK = false;
@@ -532,15 +552,36 @@ public class Wizard implements EPGDBPublic2
       new Table(USERRECORD_CODE, new Index(DBObject.ID_COMPARATOR),
         new Index[] { new Index(USERRECORD_BY_STOREKEY_CODE, UserRecord.USERRECORD_COMPARATOR) }),
     };
+    byte[] namedTables = { TITLE_CODE, PEOPLE_CODE, NETWORK_CODE, CATEGORY_CODE, SUBCATEGORY_CODE, RATED_CODE, PR_CODE,
+        ER_CODE, YEAR_CODE, BONUS_CODE };
+    for (int i = 0; i < namedTables.length; i++)
+      tables[namedTables[i]].names = new NameDictionary();
   }
 
   private void initWizInTables() {
     for (Table tab : tables) {
-      if (tab != null)
+      if (tab != null) {
         tab.setWizard(this);
+        tab.setChunkedIndices(useChunkedIndices(tab.tableCode));
+      }
     }
   }
 
+  // The big EPG tables default to using chunked index storage so guide imports don't spend all their time shifting
+  // the index arrays around. This can be overridden for any table, i.e. wizard/chunked_index/airing=false
+  private boolean useChunkedIndices(byte tableCode)
+  {
+    return Sage.getBoolean(prefsRoot + CHUNKED_INDEX + '/' + getNameForCode(tableCode).toLowerCase(),
+        !Sage.EMBEDDED && (tableCode == AIRING_CODE || tableCode == SHOW_CODE));
+  }
+
+  // Compaction of the DB file is done without suspending writes, so we can also do it whenever there's a lot of xcts
+  // in the file instead of only during maintenance
+  private boolean useBackgroundCompaction()
+  {
+    return Sage.getBoolean(prefsRoot + BACKGROUND_COMPACTION, true);
+  }
+
   private void init(String dbFilename, String dbBackupFilename, boolean inStandalone)
   {
     if (!primed)
@@ -665,6 +706,28 @@ public class Wizard implements EPGDBPublic2
 
     if (!primed && !Sage.client)
     {
+      if (!disableDatabase && Sage.getBoolean(prefsRoot + ASYNC_XCT_LOG, true))
+      {
+        LogWriter newWriter = new LogWriter(Sage.getInt(prefsRoot + XCT_LOG_QUEUE_SIZE, 8192),
+            Sage.getLong(prefsRoot + XCT_LOG_FLUSH_INTERVAL, 1000), Sage.getInt(prefsRoot + XCT_LOG_FLUSH_RECORDS, 500),
+            Sage.getBoolean(prefsRoot + XCT_LOG_FSYNC, false));
+        newWriter.start();
+        logWriter = newWriter;
+      }
+      if (!disableDatabase && Sage.getBoolean(prefsRoot + DELTA_CLIENT_SYNC, true))
+      {
+        synchronized (pendingWriteXcts)
+        {
+          try
+          {
+            syncJournal = new SyncJournal(Sage.getLong(prefsRoot + SYNC_JOURNAL_SIZE, 16*1024*1024));
+          }
+          catch (IOException e)
+          {
+            if (Sage.DBG) System.out.println("Unable to create the client sync journal, clients will always get the full DB:" + e);
+          }
+        }
+      }
       Thread flusher = new Thread("Flusher")
       {
         @Override
@@ -732,6 +795,8 @@ public class Wizard implements EPGDBPublic2
   public void flushDbOut(){
     synchronized (outLock)
     {
+      if (logWriter != null)
+        logWriter.writePending();
       if (dbout != null)
       {
         try
@@ -843,7 +908,7 @@ public class Wizard implements EPGDBPublic2
         Index watchIndex = getIndex(WATCH_CODE, (byte)0);
         for (int i = 0; i < watchIndex.table.num; i++)
         {
-          Watched currWatch = (Watched) watchIndex.data[i];
+          Watched currWatch = (Watched) watchIndex.get(i);
           if (currWatch != null)
           {
             Airing watchAir = currWatch.getAiring();
@@ -880,7 +945,7 @@ public class Wizard implements EPGDBPublic2
         long wasteExpireTime = Sage.time() - 52*Sage.MILLIS_PER_WEEK;
         for (int i = 0; i < wasteIndex.table.num; i++)
         {
-          Wasted currWaste = (Wasted) wasteIndex.data[i];
+          Wasted currWaste = (Wasted) wasteIndex.get(i);
           if (currWaste != null)
           {
             Airing wasteAir = currWaste.getAiring();
@@ -935,7 +1000,7 @@ public class Wizard implements EPGDBPublic2
         Airing lastAir = null;
         for (int i = 0; i < airIndex.table.num; i++)
         {
-          Airing iAir = (Airing) airIndex.data[i];
+          Airing iAir = (Airing) airIndex.get(i);
           if (iAir != null && iAir.id < maintainStartID)
           {
             boolean saveTheAir = toSave.contains(iAir) || (obeyAiringPersistence && iAir.persist != 0);
@@ -1036,7 +1101,7 @@ public class Wizard implements EPGDBPublic2
         List<Airing> noShowAirsToAdd = new ArrayList<Airing>();
         for (int i = 0; i < airIndex.table.num; i++)
         {
-          Airing iAir = (Airing) airIndex.data[i];
+          Airing iAir = (Airing) airIndex.get(i);
           if (iAir == null)
             break;
           // Do this AFTER we remove all the airings from the DB so we don't get tricked and leave stations
@@ -1142,9 +1207,9 @@ public class Wizard implements EPGDBPublic2
         try {
           chanIdx.table.acquireReadLock();
           for (int i = 0; i < chanIdx.table.num; i++)
-            if (!usedStations.contains(((Channel) chanIdx.data[i]).stationID) &&
-                chanIdx.data[i].id < maintainStartID)
-              killChans.add(chanIdx.data[i]);
+            if (!usedStations.contains(((Channel) chanIdx.get(i)).stationID) &&
+                chanIdx.get(i).id < maintainStartID)
+              killChans.add(chanIdx.get(i));
         } finally {
           chanIdx.table.releaseReadLock();
         }
@@ -1173,7 +1238,7 @@ public class Wizard implements EPGDBPublic2
             showIdx.table.acquireReadLock();
             for (int i = 0; i < showIdx.table.num; i++)
             {
-              Show iShow = (Show) showIdx.data[i];
+              Show iShow = (Show) showIdx.get(i);
               if ((iShow.lastWatched == 0 || iShow.isMusic()) &&
                 (iShow != noShow) && (iShow.id < maintainStartID) &&
                 (getAirings(iShow, 0, true) == null) && (getEditorial(iShow) == null))
@@ -1204,7 +1269,7 @@ public class Wizard implements EPGDBPublic2
             showIdx.table.acquireReadLock();
             for (int i = 0; i < showIdx.table.num; i++)
             {
-              Show iShow = (Show) showIdx.data[i];
+              Show iShow = (Show) showIdx.get(i);
               if (iShow.title != null)
                 keeperIDs.add(iShow.title.id);
               for (int j = 0; j < iShow.categories.length; j++)
@@ -1232,7 +1297,7 @@ public class Wizard implements EPGDBPublic2
             peopleIdx.table.acquireReadLock();
             for (int i = 0; i < peopleIdx.table.num; i++)
             {
-              Person p = (Person) peopleIdx.data[i];
+              Person p = (Person) peopleIdx.get(i);
               if (p.awardNames != null)
               {
                 for (int j = 0; j < p.awardNames.length; j++)
@@ -1256,7 +1321,7 @@ public class Wizard implements EPGDBPublic2
             agentIdx.table.acquireReadLock();
             for (int i = 0; i < agentIdx.table.num; i++)
             {
-              Agent bond = (Agent) agentIdx.data[i];
+              Agent bond = (Agent) agentIdx.get(i);
               if (bond.title != null)
                 keeperIDs.add(bond.title.id);
               if (bond.person != null)
@@ -1340,7 +1405,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Stringer currStr = (Stringer) strIndex.data[i];
+              Stringer currStr = (Stringer) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) &&
                   currStr.id < maintainStartID)
               {
@@ -1367,7 +1432,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Stringer currStr = (Stringer) strIndex.data[i];
+              Stringer currStr = (Stringer) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) &&
                   currStr.id < maintainStartID)
               {
@@ -1399,7 +1464,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Person currStr = (Person) strIndex.data[i];
+              Person currStr = (Person) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) && currStr.id < maintainStartID)
               {
                 currRemoveSet.add(currStr);
@@ -1426,7 +1491,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Stringer currStr = (Stringer) strIndex.data[i];
+              Stringer currStr = (Stringer) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) && currStr.id < maintainStartID)
               {
                 currRemoveSet.add(currStr);
@@ -1452,7 +1517,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Stringer currStr = (Stringer) strIndex.data[i];
+              Stringer currStr = (Stringer) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) && currStr.id < maintainStartID)
               {
                 currRemoveSet.add(currStr);
@@ -1478,7 +1543,7 @@ public class Wizard implements EPGDBPublic2
             strIndex.table.acquireReadLock();
             for (int i = 0; i < strIndex.table.num; i++)
             {
-              Stringer currStr = (Stringer) strIndex.data[i];
+              Stringer currStr = (Stringer) strIndex.get(i);
               if (!keeperIDs.contains(currStr.id) && currStr.id < maintainStartID)
               {
                 currRemoveSet.add(currStr);
@@ -1561,8 +1626,8 @@ public class Wizard implements EPGDBPublic2
               {
                 break;
               }
-              Airing currAir = (Airing) airIndex.data[iair];
-              Show currShow = (Show) showIdx.data[ishow];
+              Airing currAir = (Airing) airIndex.get(iair);
+              Show currShow = (Show) showIdx.get(ishow);
               if (currAir == null)
               {
                 iair++;
@@ -1713,14 +1778,14 @@ public class Wizard implements EPGDBPublic2
                   if (mmCache.length < strIndex.table.num)
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++) {
-                    if (strIndex.data[i] != null) {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                    if (strIndex.get(i) != null) {
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the title table
                   for (int i = 0; i < showIdx.table.num; i++) {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 && currShow.title != null) {
                       if (!currShow.title.hasMediaMask(currShow.getMediaMask())) {
                         currShow.title.addMediaMask(currShow.getMediaMask());
@@ -1731,16 +1796,16 @@ public class Wizard implements EPGDBPublic2
                   // Now go through and distribute the actual updates for any changes
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++) {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i]) {
-                      logUpdate(strIndex.data[i], TITLE_CODE);
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i]) {
+                      logUpdate(strIndex.get(i), TITLE_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                       if (getMaxPendingClientXcts() > 8)
@@ -1787,16 +1852,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the year table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 && currShow.year != null)
                     {
                       if (!currShow.year.hasMediaMask(currShow.getMediaMask()))
@@ -1810,17 +1875,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], YEAR_CODE);
+                      logUpdate(strIndex.get(i), YEAR_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -1864,15 +1929,15 @@ public class Wizard implements EPGDBPublic2
                   if (mmCache.length < strIndex.table.num)
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++) {
-                    if (strIndex.data[i] != null) {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                    if (strIndex.get(i) != null) {
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the people table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 &&
                         currShow.people != null && currShow.people.length > 0) {
                       for (int j = 0; j < currShow.people.length; j++) {
@@ -1886,16 +1951,16 @@ public class Wizard implements EPGDBPublic2
                   // Now go through and distribute the actual updates for any changes
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++) {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i]) {
-                      logUpdate(strIndex.data[i], PEOPLE_CODE);
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i]) {
+                      logUpdate(strIndex.get(i), PEOPLE_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                       if (getMaxPendingClientXcts() > 8)
@@ -1943,16 +2008,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the stringer table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 && currShow.categories.length > 0)
                     {
                       if (!currShow.categories[0].hasMediaMask(currShow.getMediaMask()))
@@ -1966,17 +2031,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], CATEGORY_CODE);
+                      logUpdate(strIndex.get(i), CATEGORY_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2022,16 +2087,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the stringer table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 &&
                         currShow.categories != null && currShow.categories.length > 1)
                     {
@@ -2049,17 +2114,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], SUBCATEGORY_CODE);
+                      logUpdate(strIndex.get(i), SUBCATEGORY_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2105,16 +2170,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the stringer table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 && currShow.rated != null)
                     {
                       if (!currShow.rated.hasMediaMask(currShow.getMediaMask()))
@@ -2128,17 +2193,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], RATED_CODE);
+                      logUpdate(strIndex.get(i), RATED_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2184,16 +2249,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the stringer table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 && currShow.pr != null)
                     {
                       if (!currShow.pr.hasMediaMask(currShow.getMediaMask()))
@@ -2207,17 +2272,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], PR_CODE);
+                      logUpdate(strIndex.get(i), PR_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2263,16 +2328,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propogate all of the Show media masks down to the people table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0 &&
                         currShow.ers != null && currShow.ers.length > 0)
                     {
@@ -2290,17 +2355,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], ER_CODE);
+                      logUpdate(strIndex.get(i), ER_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2346,16 +2411,16 @@ public class Wizard implements EPGDBPublic2
                     mmCache = new int[strIndex.table.num];
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null)
+                    if (strIndex.get(i) != null)
                     {
-                      mmCache[i] = strIndex.data[i].getMediaMask();
-                      strIndex.data[i].setMediaMask(0);
+                      mmCache[i] = strIndex.get(i).getMediaMask();
+                      strIndex.get(i).setMediaMask(0);
                     }
                   }
                   // Now propagate all of the Show media masks down to the stringer table
                   for (int i = 0; i < showIdx.table.num; i++)
                   {
-                    Show currShow = (Show) showIdx.data[i];
+                    Show currShow = (Show) showIdx.get(i);
                     if (currShow != null && currShow.getMediaMask() != 0)
                     {
                       if (currShow.bonuses != null && currShow.bonuses.length > 0)
@@ -2382,17 +2447,17 @@ public class Wizard implements EPGDBPublic2
                   // that occurred
                   for (int i = 0; i < strIndex.table.num; i++)
                   {
-                    if (strIndex.data[i] != null && strIndex.data[i].getMediaMask() != mmCache[i])
+                    if (strIndex.get(i) != null && strIndex.get(i).getMediaMask() != mmCache[i])
                     {
-                      logUpdate(strIndex.data[i], BONUS_CODE);
+                      logUpdate(strIndex.get(i), BONUS_CODE);
                       currentUpdates++;
                       if((Sage.eventTime() - startMediaMaskTime) > WIZARD_MEDIAMASK_MAINTENANCE_LOCK_TIME) {
                         // Before breaking out, reset the media masks moving forward from this element.
                         // By doing this, we're inherently undoing the propagation that was done to each
                         // show/element above that didn't get logged.
                         for (i++; i < strIndex.table.num; i++)
-                          if (strIndex.data[i] != null)
-                            strIndex.data[i].setMediaMask(mmCache[i]);
+                          if (strIndex.get(i) != null)
+                            strIndex.get(i).setMediaMask(mmCache[i]);
                         throw new InterruptedException();
                       }
                     }
@@ -2430,7 +2495,8 @@ public class Wizard implements EPGDBPublic2
          */
         if (saveAfter)
         {
-          saveDBFile();
+          if (!useBackgroundCompaction() || !compactDBFile())
+            saveDBFile();
           if (Sage.DBG) System.out.println("Wizard DONE saving database info.");
         }
       } catch (Throwable e) {
@@ -2555,7 +2621,7 @@ public class Wizard implements EPGDBPublic2
           try {
             sTable.acquireWriteLock();
             for (int i = 0; i < sTable.num; i++) {
-              ((Show) sTable.primary.data[i]).lastWatched = 0;
+              ((Show) sTable.primary.get(i)).lastWatched = 0;
             }
           } finally {
             sTable.releaseWriteLock();
@@ -2570,7 +2636,7 @@ public class Wizard implements EPGDBPublic2
           try {
             sTable.acquireWriteLock();
             for (int i = 0; i < sTable.num; i++) {
-              ((Show) sTable.primary.data[i]).lastWatched = 0;
+              ((Show) sTable.primary.get(i)).lastWatched = 0;
             }
           } finally {
             sTable.releaseWriteLock();
@@ -2653,101 +2719,101 @@ public class Wizard implements EPGDBPublic2
       Table t = getTable(NETWORK_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("Network: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("Network: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(CHANNEL_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
       }
 
       Index indy = getIndex(TITLE_CODE, TITLES_BY_NAME_CODE);
       for (int i = 0; i < indy.table.num; i++)
-        dumpStream.println("Title: " + indy.data[i].getMediaMaskString() + ' ' + indy.data[i].toString());
+        dumpStream.println("Title: " + indy.get(i).getMediaMaskString() + ' ' + indy.get(i).toString());
 
       indy = getIndex(PRIME_TITLE_CODE, PRIME_TITLES_BY_NAME_CODE);
       for (int i = 0; i < indy.table.num; i++)
-        dumpStream.println("PrimeTitle: " + indy.data[i].getMediaMaskString() + ' ' + indy.data[i].toString());
+        dumpStream.println("PrimeTitle: " + indy.get(i).getMediaMaskString() + ' ' + indy.get(i).toString());
 
       indy = getIndex(PEOPLE_CODE, PEOPLE_BY_NAME_CODE);
       for (int i = 0; i < indy.table.num; i++)
-        dumpStream.println("Person: " + indy.data[i].getMediaMaskString() + ' ' + ((Person)indy.data[i]).getFullString());
+        dumpStream.println("Person: " + indy.get(i).getMediaMaskString() + ' ' + ((Person)indy.get(i)).getFullString());
 
       t = getTable(CATEGORY_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("Category: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("Category: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(SUBCATEGORY_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("SubCategory: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("SubCategory: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(RATED_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("Rated: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("Rated: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(PR_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("PR: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("PR: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(ER_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("ER: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("ER: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(YEAR_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("Year: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("Year: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
       t = getTable(BONUS_CODE);
       for (int i = 0; i < t.num; i++)
       {
-        dumpStream.println("Bonus: " + t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println("Bonus: " + t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
       }
 
       indy = getIndex(SHOW_CODE);
       for (int i = 0; i < indy.table.num; i++)
-        dumpStream.println(indy.data[i].getMediaMaskString() + ' ' + indy.data[i].toString());
+        dumpStream.println(indy.get(i).getMediaMaskString() + ' ' + indy.get(i).toString());
 
       indy = getIndex(AIRING_CODE, AIRINGS_BY_CT_CODE);
       for (int i = 0; i < indy.table.num; i++)
-        dumpStream.println(indy.data[i].getMediaMaskString() + ' ' + indy.data[i].toString());
+        dumpStream.println(indy.get(i).getMediaMaskString() + ' ' + indy.get(i).toString());
 
       t = getTable(AGENT_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
 
       t = getTable(MEDIAFILE_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
 
       t = getTable(MANUAL_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
 
       t = getTable(WASTED_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
 
       t = getTable(WATCH_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].getMediaMaskString() + ' ' + t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).getMediaMaskString() + ' ' + t.primary.get(i).toString());
 
       t = getTable(WIDGET_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
 
       t = getTable(SERIESINFO_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
 
       t = getTable(TVEDITORIAL_CODE);
       for (int i = 0; i < t.num; i++)
-        dumpStream.println(t.primary.data[i].toString());
+        dumpStream.println(t.primary.get(i).toString());
     }
     finally
     {
@@ -2771,7 +2837,8 @@ public class Wizard implements EPGDBPublic2
   protected void notifyOfID(int idExists)
   {
     // We are single threaded on load so we don't need the sync lock then; minor performance gain from this
-    if (loading)
+    // (unless we're decoding tables on the parallel loader's worker threads)
+    if (loading && parallelLoader == null)
     {
       if (idExists >= nextID)
       {
@@ -2818,6 +2885,16 @@ public class Wizard implements EPGDBPublic2
     return rv;
   }
 
+  // The sum of the mod counts of all the tables, this changes whenever anything in the DB is added, removed or updated
+  public long getDBModCount()
+  {
+    long rv = 0;
+    for (int i = 0; i < tables.length; i++)
+      if (tables[i] != null)
+        rv += tables[i].getModCount();
+    return rv;
+  }
+
   public Channel[] getChannels()
   {
     if (loading) return new Channel[0];
@@ -2826,7 +2903,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       Channel[] rv = new Channel[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -2957,7 +3034,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       Playlist[] rv = new Playlist[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -2973,8 +3050,8 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       for (int i = 0; i < t.num; i++)
-        if (((Playlist) t.primary.data[i]).isMusicPlaylist())
-          rv.add((Playlist)t.primary.data[i]);
+        if (((Playlist) t.primary.get(i)).isMusicPlaylist())
+          rv.add((Playlist)t.primary.get(i));
     } finally {
       t.releaseReadLock();
     }
@@ -2990,8 +3067,8 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       for (int i = 0; i < t.num; i++)
-        if (!((Playlist) t.primary.data[i]).isMusicPlaylist())
-          rv.add((Playlist)t.primary.data[i]);
+        if (!((Playlist) t.primary.get(i)).isMusicPlaylist())
+          rv.add((Playlist)t.primary.get(i));
     } finally {
       t.releaseReadLock();
     }
@@ -3041,7 +3118,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        TVEditorial midVal = (TVEditorial) indy.data[mid];
+        TVEditorial midVal = (TVEditorial) indy.get(mid);
         int cmp = midVal.showID - showID;
 
         if (cmp < 0)
@@ -3067,7 +3144,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       TVEditorial[] rv = new TVEditorial[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -3220,7 +3297,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       SeriesInfo[] rv = new SeriesInfo[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -3235,7 +3312,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       Person[] rv = new Person[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -3250,7 +3327,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       Show[] rv = new Show[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -3268,7 +3345,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        SeriesInfo midVal = (SeriesInfo) indy.data[mid];
+        SeriesInfo midVal = (SeriesInfo) indy.get(mid);
         int cmp = midVal.legacySeriesID - seriesID;
 
         if (cmp < 0)
@@ -3297,7 +3374,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        SeriesInfo midVal = (SeriesInfo) indy.data[mid];
+        SeriesInfo midVal = (SeriesInfo) indy.get(mid);
         int cmp = midVal.showcardID - showcardID;
 
         if (cmp < 0)
@@ -3327,7 +3404,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        SeriesInfo midVal = (SeriesInfo) indy.data[mid];
+        SeriesInfo midVal = (SeriesInfo) indy.get(mid);
         int cmp = midVal.id - id;
 
         if (cmp < 0)
@@ -3377,7 +3454,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        UserRecord midVal = (UserRecord) indy.data[mid];
+        UserRecord midVal = (UserRecord) indy.get(mid);
         int cmp;
         if (midVal == null)
           cmp = 1;
@@ -3396,7 +3473,7 @@ public class Wizard implements EPGDBPublic2
           int endIdx = mid;
           while (startIdx > 0)
           {
-            if (store.equals(((UserRecord) indy.data[startIdx - 1]).store))
+            if (store.equals(((UserRecord) indy.get(startIdx - 1)).store))
               startIdx--;
             else
               break;
@@ -3404,13 +3481,13 @@ public class Wizard implements EPGDBPublic2
           high = indy.table.num;
           while (endIdx < high - 1)
           {
-            if (store.equals(((UserRecord) indy.data[endIdx + 1]).store))
+            if (store.equals(((UserRecord) indy.get(endIdx + 1)).store))
               endIdx++;
             else
               break;
           }
           UserRecord[] rv = new UserRecord[endIdx - startIdx + 1];
-          System.arraycopy(indy.data, startIdx, rv, 0, rv.length);
+          indy.copyInto(startIdx, rv, 0, rv.length);
           return rv;
         }
       }
@@ -3432,7 +3509,7 @@ public class Wizard implements EPGDBPublic2
       String lastStore = null;
       for (int i = 0; i < t.num; i++)
       {
-        UserRecord currRec = (UserRecord)t.primary.data[i];
+        UserRecord currRec = (UserRecord)t.primary.get(i);
         if (currRec.store != null && (lastStore == null || !lastStore.equals(currRec.store)))
         {
           storeList.add(currRec.store);
@@ -3457,7 +3534,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        UserRecord midVal = (UserRecord) indy.data[mid];
+        UserRecord midVal = (UserRecord) indy.get(mid);
         int cmp;
         if (midVal == null)
           cmp = 1;
@@ -3495,7 +3572,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        UserRecord midVal = (UserRecord) indy.data[mid];
+        UserRecord midVal = (UserRecord) indy.get(mid);
         int cmp = midVal.id - id;
 
         if (cmp < 0)
@@ -3754,7 +3831,7 @@ public class Wizard implements EPGDBPublic2
       usedLength = t.num;
       if (storeHereIfBigEnough.length < usedLength)
         storeHereIfBigEnough = new MediaFile[usedLength + 20];
-      System.arraycopy(t.primary.data, 0, storeHereIfBigEnough, 0, usedLength);
+      t.primary.copyInto(0, storeHereIfBigEnough, 0, usedLength);
     } finally {
       t.releaseReadLock();
     }
@@ -3770,7 +3847,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       MediaFile[] rv = new MediaFile[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -3792,7 +3869,7 @@ public class Wizard implements EPGDBPublic2
       {
         for (int i = 0; i < t.num; i++)
         {
-          MediaFile mf = (MediaFile)t.primary.data[i];
+          MediaFile mf = (MediaFile)t.primary.get(i);
           if (mf.archive && (mediaMask & mf.getMediaMask()) != 0)
             rv[x++] = mf;
         }
@@ -3801,7 +3878,7 @@ public class Wizard implements EPGDBPublic2
       {
         for (int i = 0; i < t.num; i++)
         {
-          MediaFile mf = (MediaFile)t.primary.data[i];
+          MediaFile mf = (MediaFile)t.primary.get(i);
           if ((mediaMask & mf.getMediaMask()) != 0)
             rv[x++] = mf;
         }
@@ -3844,7 +3921,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        MediaFile midVal = (MediaFile) indy.data[mid];
+        MediaFile midVal = (MediaFile) indy.get(mid);
         int cmp = midVal.infoAiringID - airingID;
 
         if (cmp < 0)
@@ -3874,7 +3951,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        MediaFile midVal = (MediaFile) indy.data[mid];
+        MediaFile midVal = (MediaFile) indy.get(mid);
         int cmp;
         if (midVal == null)
           cmp = 1;
@@ -3901,9 +3978,9 @@ public class Wizard implements EPGDBPublic2
         }
       }
       // Check if it's one of the secondary files for this MF object
-      if (high >= 0 && high < indy.data.length)
+      if (high >= 0 && high < indy.size())
       {
-        MediaFile testVal = (MediaFile) indy.data[high];
+        MediaFile testVal = (MediaFile) indy.get(high);
         if (testVal != null && testVal.hasFile(path))
           return testVal;
       }
@@ -3925,7 +4002,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        MediaFile midVal = (MediaFile) indy.data[mid];
+        MediaFile midVal = (MediaFile) indy.get(mid);
         int cmp = midVal.id - fileID;
 
         if (cmp < 0)
@@ -3986,7 +4063,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       Wasted[] rv = new Wasted[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -4009,7 +4086,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Wasted midVal = (Wasted) indy.data[mid];
+        Wasted midVal = (Wasted) indy.get(mid);
         int cmp = midVal.airingID - airingID;
 
         if (cmp < 0)
@@ -4062,6 +4139,7 @@ public class Wizard implements EPGDBPublic2
     if (removeMe == null) return;
     Table t = getTable(AGENT_CODE);
     t.remove(removeMe, true);
+    keywordPercolator.removeAgent(removeMe.id);
   }
 
   public Agent[] getAgents()
@@ -4072,7 +4150,7 @@ public class Wizard implements EPGDBPublic2
     try {
       indy.table.acquireReadLock();
       Agent[] rv = new Agent[indy.table.num];
-      System.arraycopy(indy.data, 0, rv, 0, rv.length);
+      indy.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       indy.table.releaseReadLock();
@@ -4088,8 +4166,8 @@ public class Wizard implements EPGDBPublic2
     try {
       indy.table.acquireReadLock();
       for (int i = 0; i < indy.table.num; i++)
-        if ((((Agent) indy.data[i]).agentMask & Agent.LOVE_MASK) != 0)
-          rv.add((Agent)indy.data[i]);
+        if ((((Agent) indy.get(i)).agentMask & Agent.LOVE_MASK) != 0)
+          rv.add((Agent)indy.get(i));
     } finally {
       indy.table.releaseReadLock();
     }
@@ -4196,7 +4274,7 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireReadLock();
       ManualRecord[] rv = new ManualRecord[t.num];
-      System.arraycopy(t.primary.data, 0, rv, 0, rv.length);
+      t.primary.copyInto(0, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -4246,9 +4324,9 @@ public class Wizard implements EPGDBPublic2
       t.acquireReadLock();
       for (int i = 0; i < t.num; i++)
       {
-        if (((ManualRecord) t.primary.data[i]).infoAiringID == airingID ||
-            ((ManualRecord) t.primary.data[i]).id == airingID)
-          return (ManualRecord) t.primary.data[i];
+        if (((ManualRecord) t.primary.get(i)).infoAiringID == airingID ||
+            ((ManualRecord) t.primary.get(i)).id == airingID)
+          return (ManualRecord) t.primary.get(i);
       }
     } finally {
       t.releaseReadLock();
@@ -4263,7 +4341,7 @@ public class Wizard implements EPGDBPublic2
       t.acquireReadLock();
       for (int i = 0; i < t.num; i++)
       {
-        if (t.primary.data[i] == checkMe)
+        if (t.primary.get(i) == checkMe)
           return true;
       }
     } finally {
@@ -4289,7 +4367,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Show midVal = (Show) indy.data[mid];
+        Show midVal = (Show) indy.get(mid);
         int cmp = byteStringCompare(midVal.externalID, extIDbytes);
 
         if (cmp < 0)
@@ -4322,7 +4400,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Show midVal = (Show) indy.data[mid];
+        Show midVal = (Show) indy.get(mid);
         int cmp = byteStringPrefix(midVal.externalID, extIDbytes);
 
         if (cmp < 0)
@@ -4344,7 +4422,7 @@ public class Wizard implements EPGDBPublic2
       {
         while (index > 0)
         {
-          if (byteStringPrefix(((Show) indy.data[index - 1]).externalID, extIDbytes) == 0)
+          if (byteStringPrefix(((Show) indy.get(index - 1)).externalID, extIDbytes) == 0)
             index--;
           else
             break;
@@ -4353,13 +4431,13 @@ public class Wizard implements EPGDBPublic2
       int index2 = index;
       while (index2 < indy.table.num - 1)
       {
-        if (byteStringPrefix(((Show) indy.data[index2 + 1]).externalID, extIDbytes) == 0)
+        if (byteStringPrefix(((Show) indy.get(index2 + 1)).externalID, extIDbytes) == 0)
           index2++;
         else
           break;
       }
       Show[] rv = new Show[index2 - index + 1];
-      System.arraycopy(indy.data, index, rv, 0, rv.length);
+      indy.copyInto(index, rv, 0, rv.length);
       return rv;
     } finally {
       indy.table.releaseReadLock();
@@ -4386,7 +4464,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-      Show midVal = (Show) indy.data[mid];
+      Show midVal = (Show) indy.get(mid);
       int cmp = byteStringCompare(midVal.externalID, testBytes);
 
       if (cmp < 0)
@@ -4398,7 +4476,7 @@ public class Wizard implements EPGDBPublic2
       }
       if (low >= 0 && low < indy.table.num)
       {
-        Show s = (Show) indy.data[low];
+        Show s = (Show) indy.get(low);
         if (s != null && s.externalID.length == testBytes.length)
         {
           boolean noMatch = false;
@@ -4416,7 +4494,7 @@ public class Wizard implements EPGDBPublic2
       }
       if (high >= 0 && high < indy.table.num)
       {
-        Show s = (Show) indy.data[high];
+        Show s = (Show) indy.get(high);
         if (s != null && s.externalID.length == testBytes.length)
         {
           boolean noMatch = false;
@@ -4706,6 +4784,78 @@ public class Wizard implements EPGDBPublic2
     return (addAiring(extID, stationID, startTime, duration, partsByte, misc, prB, DBObject.MEDIA_MASK_TV) != null);
   }
 
+  public int addShowsAndAiringsBatch(ShowData[] shows, AiringData[] airings)
+  {
+    int numAdded = 0;
+    beginXctBatch();
+    try
+    {
+      if (shows != null && shows.length > 0)
+      {
+        // Sorted by external ID the lookups and inserts all walk the Show index in order
+        ShowData[] sorted = new ShowData[shows.length];
+        int num = 0;
+        for (int i = 0; i < shows.length; i++)
+          if (shows[i] != null && shows[i].extID != null)
+            sorted[num++] = shows[i];
+        Arrays.sort(sorted, 0, num, new Comparator<ShowData>()
+        {
+          public int compare(ShowData s1, ShowData s2)
+          {
+            return s1.extID.compareTo(s2.extID);
+          }
+        });
+        // The people are looked up before we take the Show lock so we never wait on the Person lock while holding it
+        Person[][] people = new Person[num][];
+        for (int i = 0; i < num; i++)
+          people[i] = getPeopleArray(sorted[i].people);
+        try {
+          acquireWriteLock(SHOW_CODE);
+          for (int i = 0; i < num; i++)
+          {
+            ShowData sd = sorted[i];
+            if (addShow(sd.title, sd.episodeName, sd.desc, sd.duration, sd.categories, people[i], sd.roles, sd.rated,
+                sd.expandedRatings, sd.year, sd.parentalRating, sd.bonus, sd.extID, sd.language, sd.originalAirDate, true, 0,
+                sd.seasonNum, sd.episodeNum, (short)0, sd.forcedUnique, 0, 0, Pooler.EMPTY_SHORT_ARRAY) != null)
+              numAdded++;
+          }
+        } finally {
+          releaseWriteLock(SHOW_CODE);
+        }
+      }
+      if (airings != null && airings.length > 0)
+      {
+        // Grouping them by station in time order keeps the overlap checks for each one in the same part of the index.
+        // These are still locked one at a time since addAiring has to relink MediaFiles after it releases the Airing lock.
+        AiringData[] sorted = new AiringData[airings.length];
+        int num = 0;
+        for (int i = 0; i < airings.length; i++)
+          if (airings[i] != null && airings[i].extID != null && airings[i].duration != 0)
+            sorted[num++] = airings[i];
+        Arrays.sort(sorted, 0, num, new Comparator<AiringData>()
+        {
+          public int compare(AiringData a1, AiringData a2)
+          {
+            if (a1.stationID != a2.stationID)
+              return (a1.stationID < a2.stationID) ? -1 : 1;
+            return (a1.startTime < a2.startTime) ? -1 : ((a1.startTime == a2.startTime) ? 0 : 1);
+          }
+        });
+        for (int i = 0; i < num; i++)
+        {
+          AiringData ad = sorted[i];
+          if (addAiringPublic2(ad.extID, ad.stationID, ad.startTime, ad.duration, ad.partsByte, ad.misc, ad.parentalRating))
+            numAdded++;
+        }
+      }
+    }
+    finally
+    {
+      endXctBatch();
+    }
+    return numAdded;
+  }
+
   // 601 Airing addAiring(...
   public Airing addAiring(String extID, int stationID, long startTime, long duration,
       byte partsByte, int misc, byte prByte, int mediaMask)
@@ -4968,8 +5118,8 @@ public class Wizard implements EPGDBPublic2
       if (loading) return baseAir;
       int idx = indy.binarySearch(baseAir);
       if ((idx == -1) || (idx + relativeAmount < 0) || (idx + relativeAmount >= t.num)) return baseAir;
-      if (((Airing) indy.data[idx + relativeAmount]).stationID != baseAir.stationID) return baseAir;
-      return (Airing) indy.data[idx + relativeAmount];
+      if (((Airing) indy.get(idx + relativeAmount)).stationID != baseAir.stationID) return baseAir;
+      return (Airing) indy.get(idx + relativeAmount);
     } finally {
       t.releaseReadLock();
     }
@@ -4991,7 +5141,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Airing midVal = (Airing) indy.data[mid];
+        Airing midVal = (Airing) indy.get(mid);
         long cmp = midVal.stationID - stationID;
         if (cmp == 0)
           cmp = sign(midVal.time - startTime);
@@ -5013,7 +5163,7 @@ public class Wizard implements EPGDBPublic2
         // But check to be sure something is in that spot with no time gap
         if (!mustStart && (index > 0))
         {
-          Airing prevAir = (Airing) indy.data[index - 1];
+          Airing prevAir = (Airing) indy.get(index - 1);
           if (prevAir.stationID == stationID &&
               (prevAir.time + prevAir.duration > startTime)) index--;
         }
@@ -5021,14 +5171,14 @@ public class Wizard implements EPGDBPublic2
       index2 = index;
       for (; index2 < t.num; index2++)
       {
-        Airing a = (Airing) indy.data[index2];
+        Airing a = (Airing) indy.get(index2);
         if ((a.time >= endTime) || a.stationID != stationID)
         {
           break;
         }
       }
       Airing[] rv = new Airing[index2 - index];
-      if (rv.length > 0) System.arraycopy(indy.data, index, rv, 0, rv.length);
+      if (rv.length > 0) indy.copyInto(index, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -5063,7 +5213,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Airing midVal = (Airing) indy.data[mid];
+        Airing midVal = (Airing) indy.get(mid);
         int cmp = midVal.showID - forMe.id;
         if ((cmp == 0) && (midVal.time < startingAfter))
           cmp = -1;
@@ -5089,8 +5239,8 @@ public class Wizard implements EPGDBPublic2
           return Pooler.EMPTY_AIRING_ARRAY;
         while (index > 0)
         {
-          if ((((Airing) indy.data[index - 1]).showID == forMe.id) &&
-              (((Airing) indy.data[index - 1]).time >= startingAfter))
+          if ((((Airing) indy.get(index - 1)).showID == forMe.id) &&
+              (((Airing) indy.get(index - 1)).time >= startingAfter))
             index--;
           else
             break;
@@ -5099,13 +5249,13 @@ public class Wizard implements EPGDBPublic2
       int index2 = index;
       while (index2 < t.num - 1)
       {
-        if (((Airing) indy.data[index2 + 1]).showID == forMe.id)
+        if (((Airing) indy.get(index2 + 1)).showID == forMe.id)
           index2++;
         else
           break;
       }
       Airing[] rv = new Airing[index2 - index + 1];
-      System.arraycopy(indy.data, index, rv, 0, rv.length);
+      indy.copyInto(index, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -5147,7 +5297,7 @@ public class Wizard implements EPGDBPublic2
           while ( low < high )
           {
             mid = ( low + high ) >> 1;
-            air = (Airing) indy.data[mid];
+            air = (Airing) indy.get(mid);
             if ( mid == low )
               // cannot go deeper
               break;
@@ -5177,7 +5327,7 @@ public class Wizard implements EPGDBPublic2
             // skip noshows by moving back
             while ( index >0  && air != null && isNoShow(air.showID) && air.stationID == stationID ) {
               index--;
-              air =(Airing) indy.data[index];
+              air =(Airing) indy.get(index);
             }
 
             if ( air != null && air.stationID == stationID && ! isNoShow(air.showID) ) {
@@ -5260,9 +5410,9 @@ public class Wizard implements EPGDBPublic2
       List<Watched> rv = new ArrayList<Watched>(maxCount);
       for (int i = t.num - 1; i >= 0; i--)
       {
-        if (indy.data[i].isTV())
+        if (indy.get(i).isTV())
         {
-          rv.add((Watched) indy.data[i]);
+          rv.add((Watched) indy.get(i));
           if (rv.size() >= maxCount)
             break;
         }
@@ -5288,7 +5438,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Watched midVal = (Watched) indy.data[mid];
+        Watched midVal = (Watched) indy.get(mid);
         int cmp = sign((midVal.realEnd == 0 ? midVal.realStart : midVal.realEnd) - startingAfter);
 
         if (cmp < 0)
@@ -5307,7 +5457,7 @@ public class Wizard implements EPGDBPublic2
       }
 
       Watched[] rv = new Watched[t.num - index];
-      System.arraycopy(indy.data, index, rv, 0, rv.length);
+      indy.copyInto(index, rv, 0, rv.length);
       return rv;
     } finally {
       t.releaseReadLock();
@@ -5330,7 +5480,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Watched midVal = (Watched) indy.data[mid];
+        Watched midVal = (Watched) indy.get(mid);
 
         int cmp = midVal.showID - watchAir.showID;
         if (cmp == 0)
@@ -5353,11 +5503,11 @@ public class Wizard implements EPGDBPublic2
       {
         return null;
       }
-      if (((Watched) indy.data[index]).airingID == watchAir.id)
-        return (Watched) indy.data[index];
+      if (((Watched) indy.get(index)).airingID == watchAir.id)
+        return (Watched) indy.get(index);
       while (index > 0)
       {
-        Watched currData = (Watched) indy.data[index - 1];
+        Watched currData = (Watched) indy.get(index - 1);
         if ((currData.showID == watchAir.showID) &&
             (currData.time == watchAir.getStartTime()))
         {
@@ -5371,7 +5521,7 @@ public class Wizard implements EPGDBPublic2
       int index2 = index;
       while (index2 < t.num - 1)
       {
-        Watched currData = (Watched) indy.data[index2 + 1];
+        Watched currData = (Watched) indy.get(index2 + 1);
         if ((currData.showID == watchAir.showID) &&
             (currData.time == watchAir.getStartTime()))
         {
@@ -5445,7 +5595,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Person) getIndex(PEOPLE_CODE).data[(-id) - 1];
+      return (Person) getIndex(PEOPLE_CODE).get((-id) - 1);
     return (Person) getIndex(PEOPLE_CODE).getSingle(id);
   }
   public Person getPersonForName(String name)
@@ -5470,7 +5620,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Person midVal = (Person) indy.data[mid];
+        Person midVal = (Person) indy.get(mid);
         int cmp = midVal.name.compareTo(name);
         // If it has a 0 extID in the DB, then return it as a match so we use it
         // to update the object to the new one
@@ -5535,7 +5685,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Person midVal = (Person) indy.data[mid];
+        Person midVal = (Person) indy.get(mid);
         int cmp = midVal.extID - extID;
         if (cmp < 0)
           low = mid + 1;
@@ -5558,6 +5708,9 @@ public class Wizard implements EPGDBPublic2
     if ((name == null) || (name.length() == 0)) return null;
     name = name.trim();
     Table t = getTable(PEOPLE_CODE);
+    Person cached = (Person) t.names.get(name);
+    if (cached != null)
+      return cached;
     Index indy = t.getIndex(PEOPLE_BY_NAME_CODE);
     try {
       if (addIfNotExist)
@@ -5570,7 +5723,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Person midVal = (Person) indy.data[mid];
+        Person midVal = (Person) indy.get(mid);
         int cmp = midVal.name.compareTo(name);
 
         if (cmp < 0)
@@ -5578,7 +5731,10 @@ public class Wizard implements EPGDBPublic2
         else if (cmp > 0)
           high = mid - 1;
         else
+        {
+          t.names.put(name, midVal);
           return midVal; // key found
+        }
       }
 
       if (addIfNotExist)
@@ -5588,6 +5744,7 @@ public class Wizard implements EPGDBPublic2
         rv.setMediaMask(createMediaMask);
         rv.extID = 0;
         t.add(rv, !loading);
+        t.names.put(name, rv);
         return rv;
       }
       else
@@ -5615,7 +5772,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Person midVal = (Person) indy.data[mid];
+        Person midVal = (Person) indy.get(mid);
         int cmp = midVal.name.compareTo(name);
 
         if (cmp < 0)
@@ -5627,20 +5784,20 @@ public class Wizard implements EPGDBPublic2
           high = low = mid;
           while (low > 0)
           {
-            if (((Person) indy.data[low - 1]).name.compareTo(name) == 0)
+            if (((Person) indy.get(low - 1)).name.compareTo(name) == 0)
               low--;
             else
               break;
           }
           while (high < indy.table.num - 1)
           {
-            if (((Person) indy.data[high + 1]).name.compareTo(name) == 0)
+            if (((Person) indy.get(high + 1)).name.compareTo(name) == 0)
               high++;
             else
               break;
           }
           Person[] rv = new Person[high - low + 1];
-          System.arraycopy(indy.data, low, rv, 0, rv.length);
+          indy.copyInto(low, rv, 0, rv.length);
           return rv;
         }
       }
@@ -5736,7 +5893,7 @@ public class Wizard implements EPGDBPublic2
           idx.table.acquireReadLock();
           for (int i = 0; i < idx.table.num; i++)
           {
-            MediaFile mf = (MediaFile) idx.data[i];
+            MediaFile mf = (MediaFile) idx.get(i);
             if (mf != null && mf.isMusic())
             {
               Show s = mf.getShow();
@@ -5897,7 +6054,7 @@ public class Wizard implements EPGDBPublic2
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
       {
-        Show s = (Show) idx.data[i];
+        Show s = (Show) idx.get(i);
         if (s.isMusic())
         {
           for (int j = 0; j < s.people.length; j++)
@@ -5921,7 +6078,7 @@ public class Wizard implements EPGDBPublic2
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
       {
-        Show s = (Show) idx.data[i];
+        Show s = (Show) idx.get(i);
         if (s.isMusic() && s.categories.length > 0)
           okGenres.add(s.categories[0].name);
       }
@@ -5939,9 +6096,9 @@ public class Wizard implements EPGDBPublic2
     try {
       idx.table.acquireReadLock();
       ArrayList<String> rv = new ArrayList<String>();
-      for (int i = 0; i < idx.data.length; i++)
-        if (idx.data[i] != null && (idx.data[i].getMediaMask() & mediaMask) != 0)
-          rv.add(((Stringer) idx.data[i]).name);
+      for (int i = 0; i < idx.size(); i++)
+        if (idx.get(i) != null && (idx.get(i).getMediaMask() & mediaMask) != 0)
+          rv.add(((Stringer) idx.get(i)).name);
       return rv.toArray(Pooler.EMPTY_STRING_ARRAY);
     } finally {
       idx.table.releaseReadLock();
@@ -5954,9 +6111,9 @@ public class Wizard implements EPGDBPublic2
     try {
       idx.table.acquireReadLock();
       ArrayList<String> rv = new ArrayList<String>();
-      for (int i = 0; i < idx.data.length; i++)
-        if (idx.data[i] != null && (idx.data[i].getMediaMask() & mediaMask) != 0)
-          rv.add(((Person) idx.data[i]).name);
+      for (int i = 0; i < idx.size(); i++)
+        if (idx.get(i) != null && (idx.get(i).getMediaMask() & mediaMask) != 0)
+          rv.add(((Person) idx.get(i)).name);
       return rv.toArray(Pooler.EMPTY_STRING_ARRAY);
     } finally {
       idx.table.releaseReadLock();
@@ -5969,18 +6126,18 @@ public class Wizard implements EPGDBPublic2
     Index idx = getIndex(CATEGORY_CODE);
     try {
       idx.table.acquireReadLock();
-      for (int i = 0; i < idx.data.length; i++)
-        if (idx.data[i] != null && (idx.data[i].getMediaMask() & mediaMask) != 0)
-          rv.add(((Stringer) idx.data[i]).name);
+      for (int i = 0; i < idx.size(); i++)
+        if (idx.get(i) != null && (idx.get(i).getMediaMask() & mediaMask) != 0)
+          rv.add(((Stringer) idx.get(i)).name);
     } finally {
       idx.table.releaseReadLock();
     }
     idx = getIndex(SUBCATEGORY_CODE);
     try {
       idx.table.acquireReadLock();
-      for (int i = 0; i < idx.data.length; i++)
-        if (idx.data[i] != null && (idx.data[i].getMediaMask() & mediaMask) != 0)
-          rv.add(((Stringer) idx.data[i]).name);
+      for (int i = 0; i < idx.size(); i++)
+        if (idx.get(i) != null && (idx.get(i).getMediaMask() & mediaMask) != 0)
+          rv.add(((Stringer) idx.get(i)).name);
     } finally {
       idx.table.releaseReadLock();
     }
@@ -6033,7 +6190,7 @@ public class Wizard implements EPGDBPublic2
           aidx.table.acquireReadLock();
           for (int i = 0; i < aidx.table.num; i++)
           {
-            Airing currAir = (Airing) aidx.data[i];
+            Airing currAir = (Airing) aidx.get(i);
             if (currAir.hasMediaMaskAny(mediaMask)) {
               if ((currAir.miscB & matchMiscB) != 0) {
                     rv.add(currAir);
@@ -6058,7 +6215,7 @@ public class Wizard implements EPGDBPublic2
           mfIdx.table.acquireReadLock();
           for (int i = 0; i < mfIdx.table.num; i++)
           {
-            MediaFile currMF = (MediaFile) mfIdx.data[i];
+            MediaFile currMF = (MediaFile) mfIdx.get(i);
             if ((currMF.getMediaMask() & mediaMask) == 0)
               continue;
             ContainerFormat cf = currMF.getFileFormat();
@@ -6103,11 +6260,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okTitleStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okTitleStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6121,11 +6278,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Person) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Person) idx.data[i]).name.equalsIgnoreCase(str)))
-            okPersonStringers.add((Person) idx.data[i]);
+          if ((caseSensitive && ((Person) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Person) idx.get(i)).name.equalsIgnoreCase(str)))
+            okPersonStringers.add((Person) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6139,11 +6296,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okCategoryStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okCategoryStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6153,11 +6310,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okCategoryStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okCategoryStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6171,11 +6328,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okRatedStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okRatedStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6189,11 +6346,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okERStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okERStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6207,11 +6364,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okYearStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okYearStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6225,11 +6382,11 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if ((caseSensitive && ((Stringer) idx.data[i]).name.equals(str)) ||
-              (!caseSensitive && ((Stringer) idx.data[i]).name.equalsIgnoreCase(str)))
-            okMiscStringers.add((Stringer) idx.data[i]);
+          if ((caseSensitive && ((Stringer) idx.get(i)).name.equals(str)) ||
+              (!caseSensitive && ((Stringer) idx.get(i)).name.equalsIgnoreCase(str)))
+            okMiscStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6243,7 +6400,7 @@ public class Wizard implements EPGDBPublic2
       show_loop:
         for (int i = 0; i < sidx.table.num; i++)
         {
-          Show currShow = (Show) sidx.data[i];
+          Show currShow = (Show) sidx.get(i);
           if ((currShow.getMediaMask() & mediaMask) == 0)
             continue;
           if ((title && okTitleStringers.contains(currShow.title)) ||
@@ -6337,7 +6494,7 @@ public class Wizard implements EPGDBPublic2
           aidx.table.acquireReadLock();
           for (int i = 0; i < aidx.table.num; i++)
           {
-            Airing currAir = (Airing) aidx.data[i];
+            Airing currAir = (Airing) aidx.get(i);
             if ((currAir.getMediaMask() & mediaMask) == 0)
               continue;
             if ((currAir.miscB & matchMiscB) != 0){
@@ -6384,10 +6541,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okTitleStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okTitleStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6401,10 +6558,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Person) idx.data[i]).name).matches())
-            okPersonStringers.add((Person) idx.data[i]);
+          if (pat.matcher(((Person) idx.get(i)).name).matches())
+            okPersonStringers.add((Person) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6418,10 +6575,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okCategoryStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okCategoryStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6431,10 +6588,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okCategoryStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okCategoryStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6448,10 +6605,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okRatedStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okRatedStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6465,10 +6622,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okERStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okERStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6482,10 +6639,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okYearStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okYearStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6499,10 +6656,10 @@ public class Wizard implements EPGDBPublic2
         idx.table.acquireReadLock();
         for (int i = 0; i < idx.table.num; i++)
         {
-          if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+          if ((idx.get(i).getMediaMask() & mediaMask) == 0)
             continue;
-          if (pat.matcher(((Stringer) idx.data[i]).name).matches())
-            okMiscStringers.add((Stringer) idx.data[i]);
+          if (pat.matcher(((Stringer) idx.get(i)).name).matches())
+            okMiscStringers.add((Stringer) idx.get(i));
         }
       } finally {
         idx.table.releaseReadLock();
@@ -6516,7 +6673,7 @@ public class Wizard implements EPGDBPublic2
       show_loop:
         for (int i = 0; i < sidx.table.num; i++)
         {
-          Show currShow = (Show) sidx.data[i];
+          Show currShow = (Show) sidx.get(i);
           if ((currShow.getMediaMask() & mediaMask) == 0)
             continue;
 
@@ -6609,7 +6766,7 @@ public class Wizard implements EPGDBPublic2
           aidx.table.acquireReadLock();
           for (int i = 0; i < aidx.table.num; i++)
           {
-            Airing currAir = (Airing) aidx.data[i];
+            Airing currAir = (Airing) aidx.get(i);
             if (currAir.hasMediaMaskAny(mediaMask)) {
               if ((currAir.miscB & matchMiscB) != 0) {
                 rv.add(currAir);
@@ -6638,7 +6795,7 @@ public class Wizard implements EPGDBPublic2
           mfIdx.table.acquireReadLock();
           for (int i = 0; i < mfIdx.table.num; i++)
           {
-            MediaFile currMF = (MediaFile) mfIdx.data[i];
+            MediaFile currMF = (MediaFile) mfIdx.get(i);
             if ((currMF.getMediaMask() & mediaMask) == 0)
               continue;
             ContainerFormat cf = currMF.getFileFormat();
@@ -6665,11 +6822,11 @@ public class Wizard implements EPGDBPublic2
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
       {
-        if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+        if ((idx.get(i).getMediaMask() & mediaMask) == 0)
           continue;
-        if (pattern.matcher(((Stringer) idx.data[i]).name).matches())
+        if (pattern.matcher(((Stringer) idx.get(i)).name).matches())
         {
-          okTitles.add(((Stringer) idx.data[i]).name);
+          okTitles.add(((Stringer) idx.get(i)).name);
           if (okTitles.size() >= MAX_SEARCH_RESULTS)
             break;
         }
@@ -6710,7 +6867,7 @@ public class Wizard implements EPGDBPublic2
       sidx.table.acquireReadLock();
       for (int i = 0; i < sidx.table.num; i++)
       {
-        Show currShow = (Show) sidx.data[i];
+        Show currShow = (Show) sidx.get(i);
         if ((currShow.getMediaMask() & mediaMask) == 0)
           continue;
         if (currShow.title == str)
@@ -6737,7 +6894,7 @@ public class Wizard implements EPGDBPublic2
       sidx.table.acquireReadLock();
       for (int i = 0; i < sidx.table.num; i++)
       {
-        MediaFile mf = (MediaFile) sidx.data[i];
+        MediaFile mf = (MediaFile) sidx.get(i);
         Show s;
         if (mf.isMusic() && ((s = mf.getShow()) != null) &&
             (s.title == str))
@@ -6769,7 +6926,7 @@ public class Wizard implements EPGDBPublic2
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
       {
-        Person strgr = (Person) idx.data[i];
+        Person strgr = (Person) idx.get(i);
         if ((strgr.getMediaMask() & mediaMask) == 0)
           continue;
         if (pat.matcher(strgr.name).matches())
@@ -6837,7 +6994,7 @@ public class Wizard implements EPGDBPublic2
       while (low <= high)
       {
         int mid = (low + high) >> 1;
-        Person midVal = (Person) indy.data[mid];
+        Person midVal = (Person) indy.get(mid);
         int cmp = midVal.extID - targetExtID;
         if (cmp < 0)
           low = mid + 1;
@@ -6850,7 +7007,7 @@ public class Wizard implements EPGDBPublic2
           low = high = mid;
           while (low > 0)
           {
-            Person lowbie = (Person) indy.data[low - 1];
+            Person lowbie = (Person) indy.get(low - 1);
             if (lowbie != null && lowbie.extID == targetExtID)
               low--;
             else
@@ -6858,7 +7015,7 @@ public class Wizard implements EPGDBPublic2
           }
           while (high < t.num - 1)
           {
-            Person higher = (Person) indy.data[high + 1];
+            Person higher = (Person) indy.get(high + 1);
             if (higher != null && higher.extID == targetExtID)
               high++;
             else
@@ -6866,7 +7023,7 @@ public class Wizard implements EPGDBPublic2
           }
           Person[] rv = new Person[2 + high - low];
           rv[0] = originalPerson;
-          System.arraycopy(indy.data, low, rv, 1, rv.length - 1);
+          indy.copyInto(low, rv, 1, rv.length - 1);
           return rv;
         }
       }
@@ -6889,7 +7046,7 @@ public class Wizard implements EPGDBPublic2
       sidx.table.acquireReadLock();
       for (int i = 0; i < sidx.table.num; i++)
       {
-        Show currShow = (Show) sidx.data[i];
+        Show currShow = (Show) sidx.get(i);
         if ((currShow.getMediaMask() & mediaMask) == 0)
           continue;
         for (int j = 0; j < currShow.people.length; j++)
@@ -6916,7 +7073,7 @@ public class Wizard implements EPGDBPublic2
       sidx.table.acquireReadLock();
       for (int i = 0; i < sidx.table.num; i++)
       {
-        Show currShow = (Show) sidx.data[i];
+        Show currShow = (Show) sidx.get(i);
         if (currShow.isMusic() && currShow.categories.length > 0 && currShow.categories[0] == str)
         {
           rv.addAll(Arrays.asList(getAirings(currShow, 0)));
@@ -7002,7 +7159,7 @@ public class Wizard implements EPGDBPublic2
     try {
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++) {
-        Channel chan = (Channel) idx.data[i];
+        Channel chan = (Channel) idx.get(i);
         if (includeDisabled || chan.isViewable()) {
           // use StringMatchUtils to perform faster substring matching
           // on start-of-word where multiple words may match
@@ -7112,6 +7269,94 @@ public class Wizard implements EPGDBPublic2
     }
   }
 
+  private void loadTableData(Table t, DataInput in, byte ver, Map<Integer, Integer> idMap, int baseID,
+      LuceneIndex index, boolean indexInitialized, long loadStart) throws IOException
+  {
+    Index indy = t.primary;
+    for (int i = 0; i < indy.table.num; i++)
+    {
+      DBObject newObj = loadDBObject(t.tableCode, in, ver, idMap, baseID);
+      if(newObj != null) {
+        // This object is being added to the table out-of-band, see if we must updated
+        if(index != null && !indexInitialized) {
+          if(t.tableCode == SHOW_CODE) {
+            addShowToLucene((Show)newObj);
+          } else if (t.tableCode == PEOPLE_CODE) {
+            addPersonToLucene((Person)newObj);
+          }
+        }
+      }
+      indy.set(i, newObj);
+      // Widgets/Shows use a lot of memory on load because of the property conversions
+      if ((i % 1000) == 0)
+        Sage.gcPause();
+    }
+    long totalTime = Sage.eventTime() - loadStart;
+    if (Sage.DBG) System.out.println("Load time for " + getNameForCode(t.tableCode) + " " + totalTime +
+        " msec " + (((float)totalTime)/indy.table.num) + " msec/object");
+    loadStart = Sage.eventTime();
+    indy.check();
+    if (Sage.DBG) System.out.println("Index check time for " + getNameForCode(t.tableCode) + " " + (Sage.eventTime() - loadStart) + " msec");
+    if (ver < 0x53)
+    {
+      for (int k = 0; k < t.others.length; k++)
+      {
+        loadStart = Sage.eventTime();
+        if (Sage.DBG) System.out.println("Wizard building alt. index " + k + " for " + getNameForCode(t.tableCode));
+        for (int i = 0; i < t.num; i++)
+          t.others[k].set(i, t.primary.get(i));
+        t.others[k].check();
+        if (Sage.DBG) System.out.println("Alt. index " + k + " for " + getNameForCode(t.tableCode) + " load time " + (Sage.eventTime() - loadStart) + " msec");
+      }
+    }
+
+    // Mark un-initialzied lucene indexs as live.
+    if (index != null) {
+      if (!indexInitialized) {
+        synchronized (index.getTransactionLock()) {
+          if (Sage.DBG)
+            System.out.println("Lucene index(" + index.name + ") built from Wizard");
+          index.indexTransactions.add(null);
+          index.getTransactionLock().notifyAll();
+        }
+      } else {
+        if (Sage.DBG)
+          System.out.println("Lucene index(" + index.name + ") initialized from disk");
+      }
+    }
+  }
+
+  private void loadIndexData(Index indy, DataInput in, long loadStart) throws IOException
+  {
+    DBObject[] primaryData = indy.table.primary.getData();
+    boolean loadFailed = false;
+    for (int i = 0; i < indy.table.num; i++)
+    {
+      int idx = in.readInt();
+      if (idx < 0 || idx >= indy.table.num) {
+        loadFailed = true;
+        if (Sage.DBG) System.out.println("ERROR in DB file index table, invalid index of:" + idx + " size=" + indy.table.num);
+      } else {
+        indy.set(i, primaryData[idx]);
+      }
+    }
+    if (loadFailed) {
+      if (Sage.DBG) System.out.println("Repairing index due to error on load...");
+      // We call check() below which will fix the ordering...normally it would be presorted so check()
+      // would execute very quickly, but this will have to reorder things so it will execute more slowly but
+      // that's better than completely failing to load
+      for (int i = 0; i < indy.table.num; i++)
+        indy.set(i, primaryData[i]);
+    }
+    long totalTime = Sage.eventTime() - loadStart;
+    if (Sage.DBG) System.out.println("Load time for alt index " + indy.indexCode + " for " + getNameForCode(indy.table.tableCode) + " " + totalTime +
+        " msec");
+    loadStart = Sage.eventTime();
+    indy.check();
+    if (Sage.DBG) System.out.println("Index check time for alt index " + indy.indexCode + " for " +
+        getNameForCode(indy.table.tableCode) + " " + (Sage.eventTime() - loadStart) + " msec");
+  }
+
   private Table lastTable;
 
   private byte processXctFromStream(DataInput in, byte ver, long cmdLength,
@@ -7131,13 +7376,17 @@ public class Wizard implements EPGDBPublic2
       if (lastTable == null)
         return opcode;
       int theSize = in.readInt();
+      if (parallelLoader != null)
+        parallelLoader.waitForTable(lastTable);
       if (Sage.DBG) System.out.println("Wizard allocating table for " + getNameForCode(typecode) + " of size " + theSize);
       try {
         lastTable.acquireWriteLock();
         lastTable.num = theSize;
-        lastTable.primary.data = new DBObject[theSize + INC_SIZE];
+        if (lastTable.names != null)
+          lastTable.names.clear();
+        lastTable.primary.allocate(theSize);
         for (int i = 0; i < lastTable.others.length; i++)
-          lastTable.others[i].data = new DBObject[theSize + INC_SIZE];
+          lastTable.others[i].allocate(theSize);
       } finally {
         lastTable.releaseWriteLock();
       }
@@ -7179,56 +7428,14 @@ public class Wizard implements EPGDBPublic2
             indexInitialized = true;
           }
         }
-        for (int i = 0; i < indy.table.num; i++)
-        {
-          DBObject newObj = loadDBObject(lastTable.tableCode, in, ver, idMap, baseID);
-          if(newObj != null) {
-            // This object is being added to the table out-of-band, see if we must updated
-            if(index != null && !indexInitialized) {
-              if(lastTable.tableCode == SHOW_CODE) {
-                addShowToLucene((Show)newObj);
-              } else if (lastTable.tableCode == PEOPLE_CODE) {
-                addPersonToLucene((Person)newObj);
-              }
-            }
-          }
-          indy.data[i] = newObj;
-          // Widgets/Shows use a lot of memory on load because of the property conversions
-          if ((i % 1000) == 0)
-            Sage.gcPause();
-        }
-        long totalTime = Sage.eventTime() - loadStart;
-        if (Sage.DBG) System.out.println("Load time for " + getNameForCode(lastTable.tableCode) + " " + totalTime +
-            " msec " + (((float)totalTime)/indy.table.num) + " msec/object");
-        loadStart = Sage.eventTime();
-        indy.check();
-        if (Sage.DBG) System.out.println("Index check time for " + getNameForCode(lastTable.tableCode) + " " + (Sage.eventTime() - loadStart) + " msec");
-        if (ver < 0x53)
+        if (parallelLoader != null)
         {
-          for (int k = 0; k < lastTable.others.length; k++)
-          {
-            loadStart = Sage.eventTime();
-            if (Sage.DBG) System.out.println("Wizard building alt. index " + k + " for " + getNameForCode(lastTable.tableCode));
-            System.arraycopy(lastTable.primary.data, 0, lastTable.others[k].data, 0, lastTable.num);
-            lastTable.others[k].check();
-            if (Sage.DBG) System.out.println("Alt. index " + k + " for " + getNameForCode(lastTable.tableCode) + " load time " + (Sage.eventTime() - loadStart) + " msec");
-          }
-        }
-
-        // Mark un-initialzied lucene indexs as live.
-        if (index != null) {
-          if (!indexInitialized) {
-            synchronized (index.getTransactionLock()) {
-              if (Sage.DBG)
-                System.out.println("Lucene index(" + index.name + ") built from Wizard");
-              index.indexTransactions.add(null);
-              index.getTransactionLock().notifyAll();
-            }
-          } else {
-            if (Sage.DBG)
-              System.out.println("Lucene index(" + index.name + ") initialized from disk");
-          }
+          // Pull the whole record into memory now and let a worker thread decode it while we move
+          // onto the next table in the file
+          parallelLoader.submitTable(lastTable, parallelLoader.readRecord(in, (int)cmdLength - 6), ver, index, indexInitialized);
         }
+        else
+          loadTableData(lastTable, in, ver, idMap, baseID, index, indexInitialized, loadStart);
       } finally {
         lastTable.releaseWriteLock();
       }
@@ -7243,32 +7450,12 @@ public class Wizard implements EPGDBPublic2
       try {
         lastTable.acquireWriteLock();
         Index indy = lastTable.getIndex(typecode);
-        Index primaryIndex = lastTable.primary;
-        boolean loadFailed = false;
-        for (int i = 0; i < indy.table.num; i++)
-        {
-          int idx = in.readInt();
-          if (idx < 0 || idx >= indy.table.num) {
-            loadFailed = true;
-            if (Sage.DBG) System.out.println("ERROR in DB file index table, invalid index of:" + idx + " size=" + indy.table.num);
-          } else {
-            indy.data[i] = primaryIndex.data[idx];
-          }
-        }
-        if (loadFailed) {
-          if (Sage.DBG) System.out.println("Repairing index due to error on load...");
-          // We call check() below which will fix the ordering...normally it would be presorted so check()
-          // would execute very quickly, but this will have to reorder things so it will execute more slowly but
-          // that's better than completely failing to load
-          System.arraycopy(primaryIndex.data, 0, indy.data, 0, indy.table.num);
+        if (parallelLoader != null)
+        {
+          parallelLoader.submitIndex(indy, parallelLoader.readRecord(in, (int)cmdLength - 6));
         }
-        long totalTime = Sage.eventTime() - loadStart;
-        if (Sage.DBG) System.out.println("Load time for alt index " + typecode+ " for " + getNameForCode(lastTable.tableCode) + " " + totalTime +
-            " msec");
-        loadStart = Sage.eventTime();
-        indy.check();
-        if (Sage.DBG) System.out.println("Index check time for alt index " + typecode + " for " +
-            getNameForCode(lastTable.tableCode) + " " + (Sage.eventTime() - loadStart) + " msec");
+        else
+          loadIndexData(indy, in, loadStart);
       } finally {
         lastTable.releaseWriteLock();
       }
@@ -7286,6 +7473,9 @@ public class Wizard implements EPGDBPublic2
         }
         return opcode;
       }
+      // Transactions are replayed in file order on top of the fully loaded tables
+      if (parallelLoader != null)
+        parallelLoader.waitForAll();
       try {
         acquireWriteLock(typecode);
         DBObject newObj = loadDBObject(typecode, in, ver, idMap, baseID);
@@ -7323,7 +7513,7 @@ public class Wizard implements EPGDBPublic2
     }
     else if (dbFile.isFile() && dbFile.length() > 0)
     {
-      FasterRandomFile in = null;
+      FastRandomFile in = null;
       loading = true;
       boolean finishedAll = false;
       Map<Integer, Integer> idTranslation = null;
@@ -7359,9 +7549,10 @@ public class Wizard implements EPGDBPublic2
       {
         long fileLength = dbFile.length();
         // The SageTVLite Wiz DB files are not encrypted
-        in = new FasterRandomFile(dbFile, (SageTV.upgradeFromLite || LITE || Sage.EMBEDDED) ? "r" :"rc", Sage.I18N_CHARSET);
+        FasterRandomFile fin = new FasterRandomFile(dbFile, (SageTV.upgradeFromLite || LITE || Sage.EMBEDDED) ? "r" :"rc", Sage.I18N_CHARSET);
         // Testing shows the DB loads 5% faster if this is false...not much of an optimization, but it helps
-        in.setOptimizeReadFully(false);
+        fin.setOptimizeReadFully(false);
+        in = fin;
         byte b1 = in.readUnencryptedByte();
         byte b2 = in.readUnencryptedByte();
         byte b3 = in.readUnencryptedByte();
@@ -7381,7 +7572,16 @@ public class Wizard implements EPGDBPublic2
         {
           // unencrypted DB file
           in.close();
-          in = new FasterRandomFile(dbFile, "r", (version == 0x54) ? Sage.BYTE_CHARSET : Sage.I18N_CHARSET);
+          String charset = (version == 0x54) ? Sage.BYTE_CHARSET : Sage.I18N_CHARSET;
+          // Map the file and decode straight out of the page cache. Not on Windows by default since the file
+          // can't be renamed there while the mapping is still alive, and saving the DB does that.
+          if (version >= 0x54 && fileLength < Integer.MAX_VALUE && Sage.getBoolean(prefsRoot + MMAP_LOAD, !Sage.WINDOWS_OS))
+          {
+            if (Sage.DBG) System.out.println("Memory mapping DB file for loading");
+            in = ByteBufferRandomFile.map(dbFile, charset);
+          }
+          else
+            in = new FasterRandomFile(dbFile, "r", charset);
           in.readUnencryptedByte();
           in.readUnencryptedByte();
           in.readUnencryptedByte();
@@ -7397,6 +7597,17 @@ public class Wizard implements EPGDBPublic2
           // DB is from before we had the media mask, so we need to generate it for all DBObjects on load
           GENERATE_MEDIA_MASK = true;
         }
+        // The parallel loader can't be used when we're remapping IDs since that needs to happen in file order, and
+        // older DB versions do lookups by name while loading or don't have the stored index orders
+        if (idTranslation == null && !GENERATE_MEDIA_MASK && version >= 0x53 &&
+            Sage.getBoolean(prefsRoot + PARALLEL_LOAD, !Sage.EMBEDDED && Runtime.getRuntime().availableProcessors() > 1))
+        {
+          int numThreads = Sage.getInt(prefsRoot + PARALLEL_LOAD_THREADS, Runtime.getRuntime().availableProcessors());
+          if (Sage.DBG) System.out.println("Wizard using parallel database load with " + numThreads + " threads");
+          parallelLoader = new ParallelLoader(Math.max(1, numThreads), in.getCharset());
+        }
+        // Only files in the current format can have their table records reused
+        TableSegments loadSegments = (version == VERSION && idTranslation == null) ? new TableSegments() : null;
         Table t = null;
         HashMap<Byte, Set<DBObject>> killMap = new HashMap<Byte, Set<DBObject>>();
         if (Sage.DBG) System.out.println("DBFile at version " + version + " FileSize=" + fileLength);
@@ -7446,6 +7657,14 @@ public class Wizard implements EPGDBPublic2
           try
           {
             opcode = processXctFromStream(in, version, cmdLength, idTranslation, 0);
+            // Track where each table is in the file so an unmodified table can be copied as is when compacting
+            if (!finishedAll && loadSegments != null && lastTable != null)
+            {
+              if (opcode == SIZE)
+                loadSegments.set(lastTable, fp, fp + cmdLength);
+              else if (opcode == FULL_DATA || opcode == INDEX_DATA)
+                loadSegments.extend(lastTable, fp + cmdLength);
+            }
             if (opcode != SIZE && opcode != FULL_DATA)
             {
               if (!finishedAll && (opcode == ADD || opcode == REMOVE || opcode == UPDATE))
@@ -7471,6 +7690,13 @@ public class Wizard implements EPGDBPublic2
           }
         }
 
+        if (parallelLoader != null)
+        {
+          parallelLoader.waitForAll();
+          if (parallelLoader.hadErrors())
+            saveItNow = true;
+        }
+
         // Setup the noShowID before we do validation because getShow() is used quite
         // often in performing validation and it may resolve to the noShow
         refreshNoShow();
@@ -7480,28 +7706,17 @@ public class Wizard implements EPGDBPublic2
         if (validateObjs)
         {
           if (Sage.DBG) System.out.println("Wizard performing validation on database objects...");
-          for (int tableNum = 0; tableNum < tables.length; tableNum++)
+          if (parallelLoader != null)
+            parallelLoader.validateTables(killMap);
+          else
           {
-            t = tables[tableNum];
-            if (t == null) continue;
-            Index indy = t.primary;
-            for (int i = 0; i < indy.table.num; i++)
+            for (int tableNum = 0; tableNum < tables.length; tableNum++)
             {
-              DBObject newObj = indy.data[i];
-              if (!newObj.validate())
-              {
-                Set<DBObject> tempSet = killMap.get(t.tableCode);
-                if (tempSet == null)
-                {
-                  tempSet = new HashSet<DBObject>();
-                  killMap.put(t.tableCode, tempSet);
-                }
-                tempSet.add(newObj);
-                String errString = "";
-                try{errString = newObj.toString();}catch(Throwable thr){}
-                if (Sage.DBG) System.out.println("ERROR DBObject failed validation " +
-                    newObj.getClass() + " id=" + newObj.id + " str=" + errString);
-              }
+              t = tables[tableNum];
+              if (t == null) continue;
+              Set<DBObject> tempSet = validateTable(t);
+              if (tempSet != null)
+                killMap.put(t.tableCode, tempSet);
             }
           }
         }
@@ -7536,7 +7751,7 @@ public class Wizard implements EPGDBPublic2
           Index airIndex = getIndex(AIRING_CODE, AIRINGS_BY_CT_CODE);
           for (int i = 0; i < airIndex.table.num; i++)
           {
-            Airing iAir = (Airing) airIndex.data[i];
+            Airing iAir = (Airing) airIndex.get(i);
             if (iAir != null && usedStations.contains(iAir.stationID))
             {
               iAir.addMediaMask(DBObject.MEDIA_MASK_TV);
@@ -7555,7 +7770,7 @@ public class Wizard implements EPGDBPublic2
           Index showIndex = getIndex(SHOW_CODE);
           for (int i = 0; i < showIndex.table.num; i++)
           {
-            Show s = (Show) showIndex.data[i];
+            Show s = (Show) showIndex.get(i);
             if (s != null && s.categories.length > 0)
             {
               if (getCategoryForID(s.categories[0].id, false) == null)
@@ -7568,6 +7783,8 @@ public class Wizard implements EPGDBPublic2
           if (Sage.DBG) System.out.println("Done with category repair...fixed " + numRepairs + " entries.");
           REPAIR_CATEGORIES = false;
         }
+        if (!saveItNow)
+          tableSegments = loadSegments;
       }
       catch (Throwable e)
       {
@@ -7579,6 +7796,11 @@ public class Wizard implements EPGDBPublic2
       }
       finally
       {
+        if (parallelLoader != null)
+        {
+          parallelLoader.shutdown();
+          parallelLoader = null;
+        }
         loading = false;
         if (in != null)
         {
@@ -7592,6 +7814,231 @@ public class Wizard implements EPGDBPublic2
     return !saveItNow;
   }
 
+  // Returns the set of objects in this table that failed validation, or null if they're all OK
+  private Set<DBObject> validateTable(Table t)
+  {
+    Set<DBObject> killSet = null;
+    Index indy = t.primary;
+    for (int i = 0; i < indy.table.num; i++)
+    {
+      DBObject newObj = indy.get(i);
+      if (!newObj.validate())
+      {
+        if (killSet == null)
+          killSet = new HashSet<DBObject>();
+        killSet.add(newObj);
+        String errString = "";
+        try{errString = newObj.toString();}catch(Throwable thr){}
+        if (Sage.DBG) System.out.println("ERROR DBObject failed validation " +
+            newObj.getClass() + " id=" + newObj.id + " str=" + errString);
+      }
+    }
+    return killSet;
+  }
+
+  private static boolean isStringerTable(byte code)
+  {
+    switch (code)
+    {
+      case NETWORK_CODE:
+      case TITLE_CODE:
+      case CATEGORY_CODE:
+      case SUBCATEGORY_CODE:
+      case RATED_CODE:
+      case PR_CODE:
+      case ER_CODE:
+      case YEAR_CODE:
+      case BONUS_CODE:
+      case PRIME_TITLE_CODE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /*
+   * Decodes the FULL_DATA and INDEX_DATA sections of the DB file on a pool of worker threads. The main load
+   * thread still reads the file sequentially, but it only pulls each record into memory and hands it off. Objects
+   * in a table are variable length so a single table can't be split up; but different tables decode concurrently.
+   * Stringer tables have no dependencies; everything else resolves references into the Stringer and People tables
+   * while decoding, so those wait for all of the dictionary tables that came before them in the file. Alternate
+   * index orderings wait for the primary index of their table. Transactional records are not handled here; the
+   * caller waits for everything in here to finish and then replays those in order.
+   */
+  private class ParallelLoader
+  {
+    ParallelLoader(int numThreads, String inCharset)
+    {
+      charset = inCharset;
+      pool = java.util.concurrent.Executors.newFixedThreadPool(numThreads, new java.util.concurrent.ThreadFactory()
+      {
+        private int threadNum;
+        public synchronized Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "DBLoader-" + (threadNum++));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+
+    // When we're reading from a mapped file the record is just a view of the mapping, otherwise it gets copied out
+    ByteBufferRandomFile readRecord(DataInput in, int len) throws IOException
+    {
+      if (in instanceof ByteBufferRandomFile)
+        return ((ByteBufferRandomFile) in).slice(len);
+      byte[] data = new byte[len];
+      in.readFully(data);
+      return new ByteBufferRandomFile(data, charset);
+    }
+
+    void submitTable(final Table t, final ByteBufferRandomFile tableData, final byte ver, final LuceneIndex index,
+        final boolean indexInitialized)
+    {
+      final List<java.util.concurrent.Future<?>> deps = isStringerTable(t.tableCode) ? null :
+        new ArrayList<java.util.concurrent.Future<?>>(dictionaryLoads);
+      java.util.concurrent.Future<?> f = pool.submit(new java.util.concurrent.Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          if (deps != null)
+          {
+            for (java.util.concurrent.Future<?> dep : deps)
+              waitFor(dep);
+          }
+          long loadStart = Sage.eventTime();
+          loadTableData(t, tableData, ver, null, 0, index, indexInitialized, loadStart);
+          return null;
+        }
+      });
+      tableLoads.put(t, f);
+      allLoads.add(f);
+      if (isStringerTable(t.tableCode) || t.tableCode == PEOPLE_CODE)
+        dictionaryLoads.add(f);
+    }
+
+    void submitIndex(final Index indy, final ByteBufferRandomFile indexData)
+    {
+      final java.util.concurrent.Future<?> dep = tableLoads.get(indy.table);
+      allLoads.add(pool.submit(new java.util.concurrent.Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          if (dep != null)
+            waitFor(dep);
+          long loadStart = Sage.eventTime();
+          loadIndexData(indy, indexData, loadStart);
+          return null;
+        }
+      }));
+    }
+
+    void waitForTable(Table t) throws IOException
+    {
+      java.util.concurrent.Future<?> f = tableLoads.get(t);
+      if (f != null)
+        waitForLoad(f);
+    }
+
+    void waitForAll() throws IOException
+    {
+      for (int i = 0; i < allLoads.size(); i++)
+        waitForLoad(allLoads.get(i));
+      allLoads.clear();
+    }
+
+    boolean hadErrors()
+    {
+      return loadErrors;
+    }
+
+    void validateTables(Map<Byte, Set<DBObject>> killMap) throws IOException
+    {
+      Map<Byte, java.util.concurrent.Future<Set<DBObject>>> results =
+          new HashMap<Byte, java.util.concurrent.Future<Set<DBObject>>>();
+      for (int tableNum = 0; tableNum < tables.length; tableNum++)
+      {
+        final Table t = tables[tableNum];
+        if (t == null) continue;
+        results.put(t.tableCode, pool.submit(new java.util.concurrent.Callable<Set<DBObject>>()
+        {
+          public Set<DBObject> call()
+          {
+            return validateTable(t);
+          }
+        }));
+      }
+      for (Entry<Byte, java.util.concurrent.Future<Set<DBObject>>> ent : results.entrySet())
+      {
+        Set<DBObject> killSet = (Set<DBObject>) waitForLoad(ent.getValue());
+        if (killSet != null)
+          killMap.put(ent.getKey(), killSet);
+      }
+    }
+
+    void shutdown()
+    {
+      pool.shutdownNow();
+      try
+      {
+        // Don't let a task that's still running modify tables that we may be about to clear for recovery
+        pool.awaitTermination(60, java.util.concurrent.TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e){}
+    }
+
+    // Used from the worker threads; any error in a dependency is reported by the main thread instead
+    private void waitFor(java.util.concurrent.Future<?> f) throws Exception
+    {
+      try
+      {
+        f.get();
+      }
+      catch (java.util.concurrent.ExecutionException e)
+      {
+      }
+    }
+
+    // IOExceptions are treated the same as when we load serially; the record is skipped and we continue.
+    // Anything else gets thrown back to the load thread.
+    private Object waitForLoad(java.util.concurrent.Future<?> f) throws IOException
+    {
+      while (true)
+      {
+        try
+        {
+          return f.get();
+        }
+        catch (InterruptedException e)
+        {
+        }
+        catch (java.util.concurrent.ExecutionException e)
+        {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException)
+          {
+            if (Sage.DBG) System.out.println("ERROR Processing DB record, skipping it and continuing. Error:" + cause);
+            if (Sage.DBG) Sage.printStackTrace(cause);
+            loadErrors = true;
+            return null;
+          }
+          if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+          if (cause instanceof Error)
+            throw (Error) cause;
+          throw new IOException("Error in parallel DB load: " + cause);
+        }
+      }
+    }
+
+    private String charset;
+    private java.util.concurrent.ExecutorService pool;
+    private Map<Table, java.util.concurrent.Future<?>> tableLoads = new HashMap<Table, java.util.concurrent.Future<?>>();
+    private List<java.util.concurrent.Future<?>> dictionaryLoads = new ArrayList<java.util.concurrent.Future<?>>();
+    private List<java.util.concurrent.Future<?>> allLoads = new ArrayList<java.util.concurrent.Future<?>>();
+    private boolean loadErrors;
+  }
+
   Vector diffWidgetFile(STVEditor myStudio, File diffFile) throws Throwable
   {
     if (UIManager.ENABLE_STUDIO)
@@ -7667,6 +8114,19 @@ public class Wizard implements EPGDBPublic2
 
   void goodbye()
   {
+    if (logWriter != null)
+    {
+      synchronized (outLock)
+      {
+        logWriter.writePending();
+      }
+      if (Sage.DBG) System.out.println("Wizard xct log stats: " + getXctLogStats());
+    }
+    synchronized (pendingWriteXcts)
+    {
+      if (syncJournal != null)
+        syncJournal.close();
+    }
     if (dbout != null)
     {
       try
@@ -7683,7 +8143,8 @@ public class Wizard implements EPGDBPublic2
     synchronized (pendingWriteXcts)
     {
       // If writes are suspended already due to sending a DB to a client...then hold off until that's done before we proceed.
-      while (suspendWrite)
+      // Same for a background compaction since that's also going to replace the DB file.
+      while (suspendWrite || compactionXcts != null)
       {
         try { pendingWriteXcts.wait(1000);} catch (Exception e){}
       }
@@ -7692,6 +8153,9 @@ public class Wizard implements EPGDBPublic2
     synchronized (outLock)
     {
       boolean backupFailed = false;
+      // Anything that was queued before we suspended writes belongs in the file we're about to back up
+      if (logWriter != null)
+        logWriter.writePending();
       if (dbout != null)
       {
         dbout.close();
@@ -7760,49 +8224,19 @@ public class Wizard implements EPGDBPublic2
         dbout.writeUnencryptedByte(BAD_VERSION);
         dbout.fullFlush();
 
+        TableSegments newSegments = new TableSegments();
         for (int i = 0; i < WRITE_ORDER.length; i++)
         {
           if (Sage.DBG) System.out.println("Wizard writing out table info for " +
               getNameForCode(WRITE_ORDER[i]));
           Table currTable = getTable(WRITE_ORDER[i]);
-          long fp = dbout.getFilePointer();
-          dbout.writeInt(10);
-          dbout.writeByte(SIZE);
           try {
             currTable.acquireReadLock();
-            dbout.writeByte(currTable.tableCode);
-            dbout.writeInt(currTable.num);
-            if (currTable.num > 0)
-            {
-              fp = dbout.getFilePointer();
-              dbout.writeInt(Integer.MAX_VALUE);
-              dbout.writeByte(FULL_DATA);
-              dbout.writeByte(currTable.primary.indexCode);
-
-              DBObject[] currData = currTable.primary.data;
-              for (int j = 0; j < currTable.num; j++)
-              {
-                DBObject dbobj = currData[j];
-                dbobj.write(dbout, dbWriteFlags);
-                dbobj.lookupIdx = -(j + 1);
-              }
-
-              logCmdLength(dbout, fp);
-
-              for (int k = 0; k < currTable.others.length; k++)
-              {
-                Index currIdx = currTable.others[k];
-                currData = currIdx.data;
-                dbout.writeInt((4 * currTable.num) + 6);
-                dbout.writeByte(INDEX_DATA);
-                dbout.writeByte(currIdx.indexCode);
-                for (int m = 0; m < currTable.num; m++)
-                {
-                  dbout.writeInt(-1*(currData[m].lookupIdx + 1));
-                }
-              }
-              // We don't need to log the command length because we knew it when we started writing it out
-            }
+            long segStart = dbout.getFilePointer();
+            writeTableSegment(dbout, currTable, dbWriteFlags);
+            // Segments that refer to other tables by array index can't be reused once those tables change
+            if (dbWriteFlags == 0)
+              newSegments.set(currTable, segStart, dbout.getFilePointer());
             // Remove any transasctions that are for the full table we just wrote out,
             // updates that occur after this need to be written
             synchronized (pendingWriteXcts)
@@ -7821,6 +8255,7 @@ public class Wizard implements EPGDBPublic2
         long endSaveTime = Sage.eventTime();
         if (Sage.DBG) System.out.println("DB saveTime=" + ((endSaveTime - startSaveTime)/1000.0) + " sec");
         numUncompXcts = 0;
+        tableSegments = newSegments;
         long fp = dbout.getFilePointer();
         dbout.setLength(fp);
         dbout.fullFlush();
@@ -7866,11 +8301,271 @@ public class Wizard implements EPGDBPublic2
     Sage.gcPause();
   }
 
-  /*
-   * ADD/REMOVE Object Methods
-   * UPDATE Object Methods. For these if logTX is true, then it logs an update on the arg
-   * and doesn't use the arg as a template for locating the one that it changed.
-   */
+  // Writes the SIZE, FULL_DATA and INDEX_DATA records for a table; the caller must hold the table's read lock
+  private void writeTableSegment(FastRandomFile out, Table currTable, int dbWriteFlags) throws IOException
+  {
+    out.writeInt(10);
+    out.writeByte(SIZE);
+    out.writeByte(currTable.tableCode);
+    out.writeInt(currTable.num);
+    if (currTable.num > 0)
+    {
+      long fp = out.getFilePointer();
+      out.writeInt(Integer.MAX_VALUE);
+      out.writeByte(FULL_DATA);
+      out.writeByte(currTable.primary.indexCode);
+
+      DBObject[] currData = currTable.primary.getData();
+      for (int j = 0; j < currTable.num; j++)
+      {
+        DBObject dbobj = currData[j];
+        dbobj.write(out, dbWriteFlags);
+        dbobj.lookupIdx = -(j + 1);
+      }
+
+      logCmdLength(out, fp);
+
+      for (int k = 0; k < currTable.others.length; k++)
+      {
+        Index currIdx = currTable.others[k];
+        currData = currIdx.getData();
+        out.writeInt((4 * currTable.num) + 6);
+        out.writeByte(INDEX_DATA);
+        out.writeByte(currIdx.indexCode);
+        for (int m = 0; m < currTable.num; m++)
+        {
+          out.writeInt(-1*(currData[m].lookupIdx + 1));
+        }
+      }
+      // We don't need to log the command length because we knew it when we started writing it out
+    }
+  }
+
+  /*
+   * Rewrites the DB file without suspending writes. Tables are written out one at a time under their read lock while
+   * xcts keep going to the current file as usual; every xct logged while this runs is also captured in memory. Tables
+   * that haven't been modified since their records were last written are copied straight from the current file
+   * instead of being serialized again. When all the tables are done we append the captured xcts that came after each
+   * table was written (the same thing saveDBFile does with the pending xcts) and then swap the files while holding the
+   * log locks, which only takes as long as writing out that tail. The current file becomes the backup just like a full
+   * save. Returns false if the compaction couldn't be done, in which case the current file is untouched.
+   */
+  boolean compactDBFile()
+  {
+    if (Sage.client || disableDatabase) return false;
+    synchronized (pendingWriteXcts)
+    {
+      if (suspendWrite || compactionXcts != null || dbout == null)
+        return false;
+      compactionXcts = new ArrayList<LoggedXct>();
+    }
+    if (Sage.DBG) System.out.println("Wizard starting background compaction of the database file...");
+    long startTime = Sage.eventTime();
+    File realDBFile = dbFile;
+    File tmpFile = new File(realDBFile.getAbsolutePath() + ".tmp");
+    String fileMode = Sage.EMBEDDED ? "rw" : "rwd";
+    FasterRandomFile newOut = null;
+    FasterRandomFile oldIn = null;
+    boolean swapped = false;
+    try
+    {
+      LuceneIndex index = getShowIndex();
+      if(index != null) {
+        synchronized (index.getTransactionLock()) {
+          index.indexTransactions.add(null);
+          index.getTransactionLock().notifyAll();
+        }
+      }
+      index = getPersonIndex();
+      if(index != null) {
+        synchronized (index.getTransactionLock()) {
+          index.indexTransactions.add(null);
+          index.getTransactionLock().notifyAll();
+        }
+      }
+      tmpFile.delete();
+      newOut = new FasterRandomFile(tmpFile, fileMode, Sage.I18N_CHARSET);
+      newOut.writeUnencryptedByte((byte) 'W');
+      newOut.writeUnencryptedByte((byte) 'I');
+      newOut.writeUnencryptedByte((byte) 'Z');
+      long verPos = newOut.getFilePointer();
+      newOut.writeUnencryptedByte(BAD_VERSION);
+
+      TableSegments oldSegments = tableSegments;
+      TableSegments newSegments = new TableSegments();
+      long[] tableXctSeqs = new long[tables.length];
+      int numCopied = 0;
+      byte[] copyBuf = null;
+      for (int i = 0; i < WRITE_ORDER.length; i++)
+      {
+        Table currTable = getTable(WRITE_ORDER[i]);
+        try {
+          currTable.acquireReadLock();
+          long segStart = newOut.getFilePointer();
+          if (oldSegments != null && oldSegments.isClean(currTable))
+          {
+            if (oldIn == null)
+            {
+              oldIn = new FasterRandomFile(realDBFile, "r", Sage.I18N_CHARSET);
+              copyBuf = new byte[65536];
+            }
+            long left = oldSegments.getLength(currTable);
+            oldIn.seek(oldSegments.getStart(currTable));
+            while (left > 0)
+            {
+              int currRead = (int) Math.min(copyBuf.length, left);
+              oldIn.readFully(copyBuf, 0, currRead);
+              newOut.write(copyBuf, 0, currRead);
+              left -= currRead;
+            }
+            numCopied++;
+          }
+          else
+            writeTableSegment(newOut, currTable, 0);
+          newSegments.set(currTable, segStart, newOut.getFilePointer());
+          // Everything logged for this table up until now is in what we just wrote. So are any changes that were made
+          // before we got the read lock but haven't been logged yet, so wait for those to get their sequence numbers
+          // or they'd be written again in the tail. Nothing new can be changed in this table while we hold the read lock.
+          synchronized (pendingWriteXcts)
+          {
+            while (currTable.unloggedXcts.get() > 0)
+            {
+              try { pendingWriteXcts.wait(1000);} catch (Exception e){}
+            }
+            tableXctSeqs[currTable.tableCode] = xctSeq;
+          }
+        } finally {
+          currTable.releaseReadLock();
+        }
+        mpause();
+      }
+      newOut.flush();
+      if (oldIn != null)
+      {
+        oldIn.close();
+        oldIn = null;
+      }
+
+      synchronized (pendingWriteXcts)
+      {
+        // Can't swap the file while a client is being sent the current one or a save is in progress
+        while (suspendWrite)
+        {
+          try { pendingWriteXcts.wait(1000);} catch (Exception e){}
+        }
+        synchronized (outLock)
+        {
+          if (logWriter != null)
+            logWriter.writePending();
+          int numTail = 0;
+          for (int i = 0; i < compactionXcts.size(); i++)
+          {
+            LoggedXct currXct = compactionXcts.get(i);
+            if (currXct.seq > tableXctSeqs[currXct.objectType])
+            {
+              newOut.writeInt(currXct.data.length + 4);
+              newOut.write(currXct.data);
+              numTail++;
+            }
+          }
+          long fp = newOut.getFilePointer();
+          newOut.setLength(fp);
+          newOut.fullFlush();
+          newOut.seek(verPos);
+          newOut.writeUnencryptedByte(VERSION);
+          newOut.close();
+          newOut = null;
+
+          if (dbout != null)
+          {
+            dbout.close();
+            dbout = null;
+          }
+          dbBackupFile.delete();
+          if (realDBFile.renameTo(dbBackupFile) && tmpFile.renameTo(realDBFile))
+          {
+            swapped = true;
+            numUncompXcts = numTail;
+            tableSegments = newSegments;
+            dbout = new FasterRandomFile(realDBFile, fileMode, Sage.I18N_CHARSET);
+            dbout.seek(fp);
+          }
+          else
+          {
+            if (Sage.DBG) System.out.println("ERROR Unable to swap in the compacted DB file, keeping the current one");
+            if (!realDBFile.isFile())
+              dbBackupFile.renameTo(realDBFile);
+            dbout = new FasterRandomFile(realDBFile, fileMode, Sage.I18N_CHARSET);
+            dbout.seek(dbout.length());
+          }
+          if (Sage.DBG) System.out.println("Wizard DONE compacting the database file time=" + ((Sage.eventTime() - startTime)/1000.0) +
+              " sec tablesCopied=" + numCopied + " tailXcts=" + numTail + " captured=" + compactionXcts.size());
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      System.out.println("ERROR during background compaction of the database:" + e);
+      e.printStackTrace();
+    }
+    finally
+    {
+      try
+      {
+        if (newOut != null)
+          newOut.close();
+        if (oldIn != null)
+          oldIn.close();
+      }
+      catch (IOException e){}
+      if (!swapped)
+        tmpFile.delete();
+      synchronized (pendingWriteXcts)
+      {
+        compactionXcts = null;
+        pendingWriteXcts.notifyAll();
+      }
+    }
+    Sage.gcPause();
+    return swapped;
+  }
+
+  // Called by a Table once it's logged a change it made, see compactDBFile
+  void tableXctLogged(Table t)
+  {
+    if (t.unloggedXcts.decrementAndGet() == 0 && compactionXcts != null)
+    {
+      synchronized (pendingWriteXcts)
+      {
+        pendingWriteXcts.notifyAll();
+      }
+    }
+  }
+
+  /*
+   * Must be called while holding the pendingWriteXcts lock whenever an xct is logged. Returns the serialized xct if it
+   * was needed here so the caller can reuse it instead of serializing it again, otherwise null.
+   */
+  private byte[] xctLogged(byte opCode, byte code, DBObject obj)
+  {
+    xctSeq++;
+    for (int i = 0; i < changeListeners.size(); i++)
+      changeListeners.get(i).dbObjectChanged(opCode, code, obj);
+    if (compactionXcts == null && syncJournal == null)
+      return null;
+    byte[] xctData = serializeXct(opCode, code, obj);
+    if (compactionXcts != null && xctData != null)
+      compactionXcts.add(new LoggedXct(xctSeq, code, xctData));
+    if (syncJournal != null)
+      syncJournal.append(xctSeq, xctData);
+    return xctData;
+  }
+
+  /*
+   * ADD/REMOVE Object Methods
+   * UPDATE Object Methods. For these if logTX is true, then it logs an update on the arg
+   * and doesn't use the arg as a template for locating the one that it changed.
+   */
   void logUpdate(DBObject updateMe, byte code)
   {
     if (disableDatabase) return;
@@ -7878,13 +8573,19 @@ public class Wizard implements EPGDBPublic2
     getTable(code).incModCount();
     synchronized (pendingWriteXcts)
     {
+      byte[] loggedData = xctLogged(UPDATE, code, updateMe);
       if (suspendWrite)
       {
         pendingWriteXcts.add(new XctObject(UPDATE, code, updateMe));
-        distributeOp(UPDATE, code, updateMe);
+        distributeOp(UPDATE, code, updateMe, loggedData);
         return;
       }
       numUncompXcts++;
+      if (logWriter != null)
+      {
+        queueXct(UPDATE, code, updateMe, loggedData);
+        return;
+      }
       synchronized (outLock)
       {
         FastRandomFile frf = dbout;
@@ -7902,7 +8603,7 @@ public class Wizard implements EPGDBPublic2
           }
           else
           {
-            byte[] xctData = distributeOp(UPDATE, code, updateMe);
+            byte[] xctData = distributeOp(UPDATE, code, updateMe, loggedData);
             frf.writeInt(xctData.length + 4);
             frf.write(xctData);
           }
@@ -7931,34 +8632,66 @@ public class Wizard implements EPGDBPublic2
   // distributeOP calls which handle distributing a xct during the save operation to connected clients since we can't write them
   // to the DB file at that time since the outLock is being held by the saveDBFile method.
 
-  private byte[] distributeOp(byte opCode, byte tableCode, DBObject updateMe)
+  // xctData is the already serialized xct from xctLogged, or null if it wasn't serialized there
+  private byte[] distributeOp(byte opCode, byte tableCode, DBObject updateMe, byte[] xctData)
   {
     if (disableDatabase) return null;
     if (Sage.client || !hasListeners()) return null;
     synchronized (pendingWriteXcts)
     {
-      if (cachedDOS == null || cachedBAOS == null)
-      {
-        cachedBAOS = new ByteArrayOutputStream(512);
-        cachedDOS = new SageTVConnection.MyDataOutput(cachedBAOS);
-      }
-      else
-        cachedBAOS.reset();
-      try
-      {
-        cachedDOS.writeByte(opCode);
-        cachedDOS.writeByte(tableCode);
-        updateMe.write(cachedDOS, 0);
-        byte[] xctData = cachedBAOS.toByteArray();
+      if (xctData == null)
+        xctData = serializeXct(opCode, tableCode, updateMe);
+      if (xctData != null)
         distributeXct(xctData);
-        return xctData;
-      }
-      catch (Exception e)
-      {
-        if (Sage.DBG) System.out.println("Error distributing DB operation:" + e);
-      }
-      return null;
+      return xctData;
+    }
+  }
+
+  // Must be called while holding the pendingWriteXcts lock since it uses the shared buffer
+  private byte[] serializeXct(byte opCode, byte tableCode, DBObject obj)
+  {
+    if (cachedDOS == null || cachedBAOS == null)
+    {
+      cachedBAOS = new ByteArrayOutputStream(512);
+      cachedDOS = new SageTVConnection.MyDataOutput(cachedBAOS);
+    }
+    else
+      cachedBAOS.reset();
+    try
+    {
+      cachedDOS.writeByte(opCode);
+      cachedDOS.writeByte(tableCode);
+      obj.write(cachedDOS, 0);
+      return cachedBAOS.toByteArray();
+    }
+    catch (Exception e)
+    {
+      if (Sage.DBG) System.out.println("Error serializing DB operation:" + e);
     }
+    return null;
+  }
+
+  // Must be called while holding the pendingWriteXcts lock so the xcts are queued in the same order they're made in
+  private void queueXct(byte opCode, byte tableCode, DBObject obj, byte[] xctData)
+  {
+    if (xctData == null)
+      xctData = serializeXct(opCode, tableCode, obj);
+    if (xctData == null) return;
+    if (hasListeners())
+      distributeXct(xctData);
+    logWriter.enqueue(xctData);
+  }
+
+  public String getXctLogStats()
+  {
+    LogWriter lw = logWriter;
+    return (lw == null) ? "disabled" : lw.getStats();
+  }
+
+  public int getXctLogQueueDepth()
+  {
+    LogWriter lw = logWriter;
+    return (lw == null) ? 0 : lw.getQueueDepth();
   }
 
   void logRemove(DBObject removeMe, byte code)
@@ -7968,13 +8701,19 @@ public class Wizard implements EPGDBPublic2
     getTable(code).incModCount();
     synchronized (pendingWriteXcts)
     {
+      byte[] loggedData = xctLogged(REMOVE, code, removeMe);
       if (suspendWrite)
       {
         pendingWriteXcts.add(new XctObject(REMOVE, code, removeMe));
-        distributeOp(REMOVE, code, removeMe);
+        distributeOp(REMOVE, code, removeMe, loggedData);
         return;
       }
       numUncompXcts++;
+      if (logWriter != null)
+      {
+        queueXct(REMOVE, code, removeMe, loggedData);
+        return;
+      }
       synchronized (outLock)
       {
         FastRandomFile frf = dbout;
@@ -7992,7 +8731,7 @@ public class Wizard implements EPGDBPublic2
           }
           else
           {
-            byte[] xctData = distributeOp(REMOVE, code, removeMe);
+            byte[] xctData = distributeOp(REMOVE, code, removeMe, loggedData);
             frf.writeInt(xctData.length + 4);
             frf.write(xctData);
           }
@@ -8023,13 +8762,19 @@ public class Wizard implements EPGDBPublic2
     getTable(code).incModCount();
     synchronized (pendingWriteXcts)
     {
+      byte[] loggedData = xctLogged(ADD, code, addMe);
       if (suspendWrite)
       {
         pendingWriteXcts.add(new XctObject(ADD, code, addMe));
-        distributeOp(ADD, code, addMe);
+        distributeOp(ADD, code, addMe, loggedData);
         return;
       }
       numUncompXcts++;
+      if (logWriter != null)
+      {
+        queueXct(ADD, code, addMe, loggedData);
+        return;
+      }
       synchronized (outLock)
       {
         FastRandomFile frf = dbout;
@@ -8047,7 +8792,7 @@ public class Wizard implements EPGDBPublic2
           }
           else
           {
-            byte[] xctData = distributeOp(ADD, code, addMe);
+            byte[] xctData = distributeOp(ADD, code, addMe, loggedData);
             frf.writeInt(xctData.length + 4);
             frf.write(xctData);
           }
@@ -8088,10 +8833,14 @@ public class Wizard implements EPGDBPublic2
   {
     if ((name == null) || (name.length() == 0)) return null;
     Table t = getTable(code);
-    Stringer rv;
+    Stringer rv = (Stringer) t.names.get(name);
+    if (rv != null && rv.hasMediaMask(createMediaMask))
+      return rv;
     try {
       t.acquireReadLock();
       rv = getLinearStringerForNameWhileLocked(t, name);
+      if (rv != null)
+        t.names.put(name, rv);
       if (rv != null && rv.hasMediaMask(createMediaMask))
         return rv;
     } finally {
@@ -8109,6 +8858,7 @@ public class Wizard implements EPGDBPublic2
         rv.name = name;
         rv.setMediaMask(createMediaMask);
         t.add(rv, true);
+        t.names.put(name, rv);
       } else {
         rv.addMediaMask(createMediaMask);
         logUpdate(rv, code);
@@ -8121,10 +8871,10 @@ public class Wizard implements EPGDBPublic2
 
   private Stringer getLinearStringerForNameWhileLocked(Table t, String name)
   {
-    for (int i = 0; (i < t.num) && (t.primary.data[i] != null); i++)
+    for (int i = 0; (i < t.num) && (t.primary.get(i) != null); i++)
     {
-      if (((Stringer) t.primary.data[i]).name.equals(name))
-        return (Stringer) t.primary.data[i];
+      if (((Stringer) t.primary.get(i)).name.equals(name))
+        return (Stringer) t.primary.get(i);
     }
     return null;
   }
@@ -8220,12 +8970,17 @@ public class Wizard implements EPGDBPublic2
   private Stringer getStringerForName(Table t, Index indy, String name, int createMediaMask)
   {
     if ((name == null) || (name.length() == 0)) return null;
-    Stringer rv;
+    Stringer rv = (Stringer) t.names.get(name);
+    if (rv != null)
+      return rv;
     try {
       t.acquireReadLock();
       rv = getStringerForNameWhileLocked(t, indy, name);
       if (rv != null)
+      {
+        t.names.put(name, rv);
         return rv;
+      }
     } finally {
       t.releaseReadLock();
     }
@@ -8234,12 +8989,14 @@ public class Wizard implements EPGDBPublic2
     try {
       t.acquireWriteLock();
       rv = getStringerForNameWhileLocked(t, indy, name);
-      if (rv != null)
-        return rv;
-      rv = new Stringer(getNextWizID());
-      rv.name = new String(name);
-      rv.setMediaMask(createMediaMask);
-      t.add(rv, !loading);
+      if (rv == null)
+      {
+        rv = new Stringer(getNextWizID());
+        rv.name = new String(name);
+        rv.setMediaMask(createMediaMask);
+        t.add(rv, !loading);
+      }
+      t.names.put(name, rv);
       return rv;
     } finally {
       t.releaseWriteLock();
@@ -8254,7 +9011,7 @@ public class Wizard implements EPGDBPublic2
     while (low <= high)
     {
       int mid = (low + high) >> 1;
-      Stringer midVal = (Stringer) indy.data[mid];
+      Stringer midVal = (Stringer) indy.get(mid);
       int cmp = midVal.name.compareTo(name);
 
       if (cmp < 0)
@@ -8277,6 +9034,11 @@ public class Wizard implements EPGDBPublic2
     }
   }
 
+  ShowAttributeIndex getShowAttributeIndex()
+  {
+    return ((ShowTable) tables[SHOW_CODE]).attrs;
+  }
+
   public Show getShowForID(int showID)
   {
     return (Show) getIndex(SHOW_CODE).getSingle(showID);
@@ -8293,8 +9055,8 @@ public class Wizard implements EPGDBPublic2
     try {
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
-        if (idx.data[i].id == channelID)
-          return (Channel) idx.data[i];
+        if (idx.get(i).id == channelID)
+          return (Channel) idx.get(i);
     } finally {
       idx.table.releaseReadLock();
     }
@@ -8344,7 +9106,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(CATEGORY_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(CATEGORY_CODE).get((-id) - 1);
     Stringer rv = (Stringer) getIndex(CATEGORY_CODE).getSingle(id);
     if (rv == null && allowSubCat)
     {
@@ -8362,7 +9124,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(SUBCATEGORY_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(SUBCATEGORY_CODE).get((-id) - 1);
     Stringer rv = (Stringer) getIndex(SUBCATEGORY_CODE).getSingle(id);
     return rv;
   }
@@ -8371,7 +9133,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(TITLE_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(TITLE_CODE).get((-id) - 1);
     return (Stringer) getIndex(TITLE_CODE).getSingle(id);
   }
 
@@ -8395,7 +9157,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(NETWORK_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(NETWORK_CODE).get((-id) - 1);
     return (Stringer) getIndex(NETWORK_CODE).getSingle(id);
   }
 
@@ -8403,7 +9165,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(RATED_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(RATED_CODE).get((-id) - 1);
     return (Stringer) getIndex(RATED_CODE).getSingle(id);
   }
 
@@ -8411,7 +9173,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(PR_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(PR_CODE).get((-id) - 1);
     return (Stringer) getIndex(PR_CODE).getSingle(id);
   }
 
@@ -8419,7 +9181,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(ER_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(ER_CODE).get((-id) - 1);
     return (Stringer) getIndex(ER_CODE).getSingle(id);
   }
 
@@ -8427,7 +9189,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(YEAR_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(YEAR_CODE).get((-id) - 1);
     return (Stringer) getIndex(YEAR_CODE).getSingle(id);
   }
 
@@ -8435,7 +9197,7 @@ public class Wizard implements EPGDBPublic2
   {
     if (id == 0) return null;
     if (id < 0)
-      return (Stringer) getIndex(BONUS_CODE).data[(-id) - 1];
+      return (Stringer) getIndex(BONUS_CODE).get((-id) - 1);
     return (Stringer) getIndex(BONUS_CODE).getSingle(id);
   }
 
@@ -8453,6 +9215,58 @@ public class Wizard implements EPGDBPublic2
     maintenanceNeeded = true;
   }
 
+  /*
+   * While a batch is open the xcts that would be sent to each client one at a time are collected and then sent as
+   * a single WIZARD_SYNC message instead, which saves a network round trip per xct. Batches belong to the thread that
+   * opens them and can be nested. An xct from any other thread sends out what's been collected so far before it goes
+   * out itself, so clients still get them in the order they were made in and other threads are never held up.
+   */
+  void beginXctBatch()
+  {
+    xctBatchDepth.get()[0]++;
+  }
+
+  void endXctBatch()
+  {
+    if (--xctBatchDepth.get()[0] == 0)
+    {
+      synchronized (pendingWriteXcts)
+      {
+        if (xctBatchThread == Thread.currentThread())
+          flushXctBatch();
+      }
+    }
+  }
+
+  // Must be called while holding the pendingWriteXcts lock
+  private void flushXctBatch()
+  {
+    if (xctBatchCount == 0)
+      return;
+    byte[] xctRecords = xctBatch.toByteArray();
+    xctBatch.reset();
+    xctBatchCount = 0;
+    xctBatchThread = null;
+    synchronized (listeners)
+    {
+      XctSyncClient[] listData = listeners.toArray(new XctSyncClient[0]);
+      SageTV.incrementQuanta();
+      for (int i = 0; i < listData.length; i++)
+      {
+        try
+        {
+          listData[i].xctsOut(xctRecords, xctBatchSeq);
+        }
+        catch (Exception e)
+        {
+          System.out.println("Error communicating with client-2:" + e);
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  // Must be called while holding the pendingWriteXcts lock if xcts are being batched
   private void addXctListener(XctSyncClient addMe)
   {
     listeners.addElement(addMe);
@@ -8478,8 +9292,29 @@ public class Wizard implements EPGDBPublic2
     return max;
   }
 
+  // Must be called while holding the pendingWriteXcts lock right after xctLogged so xctSeq is the sequence number of this xct
   private void distributeXct(byte[] xctData)
   {
+    // Whatever another thread has collected so far has to go out before this one does
+    if (xctBatchThread != null && xctBatchThread != Thread.currentThread())
+      flushXctBatch();
+    if (xctBatchDepth.get()[0] > 0)
+    {
+      if (listeners.isEmpty()) return;
+      if (xctBatch == null)
+        xctBatch = new ByteArrayOutputStream(65536);
+      xctBatchThread = Thread.currentThread();
+      int len = xctData.length + 4;
+      xctBatch.write((len >>> 24) & 0xFF);
+      xctBatch.write((len >>> 16) & 0xFF);
+      xctBatch.write((len >>> 8) & 0xFF);
+      xctBatch.write(len & 0xFF);
+      xctBatch.write(xctData, 0, xctData.length);
+      xctBatchSeq = xctSeq;
+      if (++xctBatchCount >= XCT_BATCH_LIMIT)
+        flushXctBatch();
+      return;
+    }
     synchronized (listeners)
     {
       if (listeners.isEmpty()) return;
@@ -8490,7 +9325,7 @@ public class Wizard implements EPGDBPublic2
       {
         try
         {
-          listData[i].xctOut(xctData);
+          listData[i].xctOut(xctData, xctSeq);
         }
         catch (Exception e)
         {
@@ -8501,7 +9336,7 @@ public class Wizard implements EPGDBPublic2
     }
   }
 
-  void xctIn(DataInput in, byte ver, Map<Integer, Integer> idMap)
+  boolean xctIn(DataInput in, byte ver, Map<Integer, Integer> idMap)
   {
     try
     {
@@ -8510,6 +9345,7 @@ public class Wizard implements EPGDBPublic2
       {
         lastOpcode = processXctFromStream(in, ver, -1, idMap, 0);
       } while (lastOpcode != XCTS_DONE);
+      return true;
     }
     catch (IOException e)
     {
@@ -8518,15 +9354,134 @@ public class Wizard implements EPGDBPublic2
         System.out.println("WIZARD TRANSACTION ERROR:" + e);
         e.printStackTrace();
       }
+      return false;
+    }
+  }
+
+  /*
+   * Client side. This is the journal epoch and sequence number of the last server xct we've applied so that if we
+   * reconnect to the same server we can ask for just what we missed. It's cleared while xcts are being applied since
+   * a partially applied update can't be resumed from.
+   */
+  String getClientSyncPoint()
+  {
+    synchronized (clientSyncLock)
+    {
+      return (clientSyncEpoch == null) ? "none 0" : (clientSyncEpoch + " " + clientSyncSeq);
+    }
+  }
+
+  String clearClientSyncPoint()
+  {
+    synchronized (clientSyncLock)
+    {
+      String rv = clientSyncEpoch;
+      clientSyncEpoch = null;
+      return rv;
+    }
+  }
+
+  void setClientSyncPoint(String epoch, long seq)
+  {
+    synchronized (clientSyncLock)
+    {
+      clientSyncEpoch = (epoch == null || epoch.length() == 0) ? null : epoch;
+      clientSyncSeq = seq;
+    }
+  }
+
+  /*
+   * Sends a reconnecting client only the xcts it missed, taken from the sync journal, and then adds it as a listener.
+   * The stream starts with a 1 byte to indicate that, and ends with the journal epoch and the sequence number of the last
+   * xct in it. If the journal doesn't go back far enough this returns false without sending anything and the caller
+   * should send the whole DB instead.
+   */
+  boolean sendDBDeltaThroughStream(Socket sake, OutputStream outStream, SageTVConnection addMe, String resumeEpoch,
+      long resumeSeq) throws IOException
+  {
+    List<byte[]> xcts;
+    String epoch;
+    long endSeq;
+    SyncJournal journal;
+    synchronized (pendingWriteXcts)
+    {
+      journal = syncJournal;
+      if (journal == null || !journal.epoch.equals(resumeEpoch) || resumeSeq > xctSeq)
+        return false;
+      epoch = journal.epoch;
+      endSeq = xctSeq;
+      // Anything after endSeq goes into the listener queue and is sent once we're done here
+      flushXctBatch();
+      addMe.constructListenerQueue();
+      addXctListener(addMe);
+    }
+    // The journal is read outside of the lock so we don't hold up everyone else's xcts while we go to disk
+    try
+    {
+      xcts = journal.read(resumeSeq, endSeq);
+    }
+    catch (IOException e)
+    {
+      if (Sage.DBG) System.out.println("Error reading client sync journal, sending full DB instead:" + e);
+      xcts = null;
     }
+    if (xcts == null)
+    {
+      // The full DB send adds them back as a listener with a new queue
+      removeXctListener(addMe);
+      return false;
+    }
+    if (Sage.DBG) System.out.println("Resuming client DB sync from " + resumeSeq + " to " + endSeq + " with " + xcts.size() + " xcts");
+    java.io.DataOutputStream dos = new java.io.DataOutputStream(outStream);
+    TimeoutHandler.registerTimeout(60000, sake);
+    dos.writeByte(1);
+    TimeoutHandler.clearTimeout(sake);
+    for (int i = 0; i < xcts.size(); i++)
+    {
+      byte[] xctData = xcts.get(i);
+      TimeoutHandler.registerTimeout(60000, sake);
+      dos.writeInt(xctData.length + 4);
+      dos.write(xctData);
+      TimeoutHandler.clearTimeout(sake);
+      xcts.set(i, null);
+    }
+    TimeoutHandler.registerTimeout(60000, sake);
+    dos.writeInt(5);
+    dos.writeByte(XCTS_DONE);
+    dos.writeUTF(epoch);
+    dos.writeLong(endSeq);
+    dos.flush();
+    TimeoutHandler.clearTimeout(sake);
+    return true;
   }
 
   void sendDBThroughStream(Socket sake, OutputStream outStream, SageTVConnection addMe) throws IOException
   {
+    sendDBThroughStream(sake, outStream, addMe, false);
+  }
+
+  /*
+   * If resumable is true then the client understands the WIZARD_SYNC3 format; the stream starts with a 0 byte to
+   * indicate it's the full DB and after the xcts it gets the journal epoch and sequence number it's synced up to.
+   */
+  void sendDBThroughStream(Socket sake, OutputStream outStream, SageTVConnection addMe, boolean resumable) throws IOException
+  {
+    if (resumable)
+    {
+      TimeoutHandler.registerTimeout(15000, sake);
+      outStream.write(0);
+      TimeoutHandler.clearTimeout(sake);
+    }
     // Suspend database writing while we send our current DB to clients so we don't block server operations
     // during this time period.
     clientIsSyncing = true;
     boolean didSuspend = false;
+    // Set once the whole DB file has gone out; then they become a listener in the same critical section that resumes
+    // writes, so every xct is either sent with the DB, queued for them as a listener or already in the file
+    boolean dbSent = false;
+    boolean listening = false;
+    String epoch = "";
+    long endSeq = 0;
     synchronized (pendingWriteXcts)
     {
       if (!suspendWrite && dbout != null)
@@ -8540,6 +9495,9 @@ public class Wizard implements EPGDBPublic2
     {
       try
       {
+        // Make sure the file we send has everything that was logged before we suspended writes
+        if (logWriter != null)
+          logWriter.writePending();
         if (dbout == null)
         {
           TimeoutHandler.registerTimeout(15000, sake);
@@ -8551,6 +9509,14 @@ public class Wizard implements EPGDBPublic2
           outStream.flush();
           TimeoutHandler.clearTimeout(sake);
           addXctListener(addMe);
+          if (resumable)
+          {
+            // No DB file means no journal either
+            java.io.DataOutputStream dos = new java.io.DataOutputStream(outStream);
+            dos.writeUTF("");
+            dos.writeLong(0);
+            dos.flush();
+          }
           return;
         }
         long startFP = dbout.getFilePointer();
@@ -8577,6 +9543,7 @@ public class Wizard implements EPGDBPublic2
         {
           dbout.seek(startFP);
         }
+        dbSent = true;
       }
       finally
       {
@@ -8595,6 +9562,16 @@ public class Wizard implements EPGDBPublic2
             if (pendingWriteXcts.isEmpty())
             {
               suspendWrite = false;
+              if (dbSent)
+              {
+                // Nothing can be logged between sending them the last pending xct and this, so the sync point is exact
+                flushXctBatch();
+                addMe.constructListenerQueue();
+                addXctListener(addMe);
+                epoch = (syncJournal == null) ? "" : syncJournal.epoch;
+                endSeq = xctSeq;
+                listening = true;
+              }
               pendingWriteXcts.notifyAll();
               break;
             }
@@ -8644,22 +9621,43 @@ public class Wizard implements EPGDBPublic2
           clientIsSyncingLock.notifyAll();
         }
       }
+    }
+    if (!listening)
+    {
+      // Someone else had writes suspended, so whatever they've got pending gets written to the file by them. This is
+      // done outside the outLock since the synchronous log path takes outLock while holding pendingWriteXcts.
+      synchronized (pendingWriteXcts)
+      {
+        flushXctBatch();
+        addMe.constructListenerQueue();
+        addXctListener(addMe);
+        epoch = (syncJournal == null) ? "" : syncJournal.epoch;
+        endSeq = xctSeq;
+      }
+    }
+    // Only now that they're a listener do they get told the DB is done and what it's synced up to
+    TimeoutHandler.registerTimeout(60000, sake);
+    outStream.write(0); // 32-bit int for 5
+    outStream.write(0);
+    outStream.write(0);
+    outStream.write(5);
+    outStream.write(XCTS_DONE);
+    outStream.flush();
+    TimeoutHandler.clearTimeout(sake);
+    // The listener queue for the connection was constructed before we added them as a xct listener
+    // or otherwise socket delays on that connection can hang up the entire server
+    // system until the replies come back from that client since we would then
+    // try to serially send transactions to it.
+    if (resumable)
+    {
       TimeoutHandler.registerTimeout(60000, sake);
-      outStream.write(0); // 32-bit int for 5
-      outStream.write(0);
-      outStream.write(0);
-      outStream.write(5);
-      outStream.write(XCTS_DONE);
-      outStream.flush();
-      TimeoutHandler.clearTimeout(sake);
-      // Construct the listener queue for the connection before we add them as a xct listener
-      // or otherwise socket delays on that connection can hang up the entire server
-      // system until the replies come back from that client since we would then
-      // try to serially send transactions to it.
-      addMe.constructListenerQueue();
-      addXctListener(addMe);
-      if (Sage.DBG) System.out.println("DONE sending DB to the client and client is now added as a DB sync listener");
+      java.io.DataOutputStream dos = new java.io.DataOutputStream(outStream);
+      dos.writeUTF(epoch);
+      dos.writeLong(endSeq);
+      dos.flush();
+      TimeoutHandler.clearTimeout(sake);
     }
+    if (Sage.DBG) System.out.println("DONE sending DB to the client and client is now added as a DB sync listener");
   }
 
   public void setLineup(long providerID, Map lineupMap)
@@ -8712,9 +9710,9 @@ public class Wizard implements EPGDBPublic2
       Table t = tables[i];
       if (t == null) continue;
       t.num = 0;
-      t.primary.data = new DBObject[0];
+      t.primary.free();
       for (int j = 0; j < t.others.length; j++)
-        t.others[j].data = new DBObject[0];
+        t.others[j].free();
     }
     if (Sage.DBG) System.out.println("Done freeing the database!");
   }
@@ -8744,7 +9742,34 @@ public class Wizard implements EPGDBPublic2
 
   public void compressDBIfNeeded()
   {
-    if (Sage.EMBEDDED && numUncompXcts > NUM_TRANSACTIONS_TO_COMPRESS)
+    if (numUncompXcts > NUM_TRANSACTIONS_TO_COMPRESS && useBackgroundCompaction())
+    {
+      synchronized (pendingWriteXcts)
+      {
+        if (compactionXcts != null || compactorRunning)
+          return;
+        compactorRunning = true;
+      }
+      if (Sage.DBG) System.out.println("Starting background DB compaction because we have " + numUncompXcts + " pending");
+      Thread t = new Thread("DBCompactor")
+      {
+        public void run()
+        {
+          try
+          {
+            compactDBFile();
+          }
+          finally
+          {
+            compactorRunning = false;
+          }
+        }
+      };
+      t.setDaemon(true);
+      t.setPriority(Thread.MIN_PRIORITY);
+      t.start();
+    }
+    else if (Sage.EMBEDDED && numUncompXcts > NUM_TRANSACTIONS_TO_COMPRESS)
     {
       if (Sage.DBG) System.out.println("Performing Save on DB file outside of maintenance because we have " + numUncompXcts + " pending");
       try
@@ -8803,6 +9828,7 @@ public class Wizard implements EPGDBPublic2
   private File widgetDBFile;
   private int nextID;
   private boolean loading = false;
+  private ParallelLoader parallelLoader;
   private long lastModifiedMusic;
   private long lastModifiedVideo;
   private long lastModifiedPicture;
@@ -8837,15 +9863,60 @@ public class Wizard implements EPGDBPublic2
 
   private Vector<XctObject> pendingWriteXcts;
   private boolean suspendWrite;
+  private volatile LogWriter logWriter;
+  // Sequence number of the last xct that was logged, guarded by pendingWriteXcts
+  private long xctSeq;
+  // Non-null while compactDBFile is running, guarded by pendingWriteXcts (tableXctLogged also checks it without the lock)
+  private volatile List<LoggedXct> compactionXcts;
+  private volatile boolean compactorRunning;
+  // Locations of the table records in the current DB file
+  private TableSegments tableSegments;
 
   private boolean clientIsSyncing;
   private final Object clientIsSyncingLock = new Object();
+  // Set while holding pendingWriteXcts; the LogWriter also reads it to write out the journal
+  private volatile SyncJournal syncJournal;
+  // How many batches the current thread has open, see beginXctBatch
+  private final ThreadLocal<int[]> xctBatchDepth = new ThreadLocal<int[]>()
+  {
+    @Override
+    protected int[] initialValue()
+    {
+      return new int[1];
+    }
+  };
+  // The thread whose xcts are in xctBatch, guarded by pendingWriteXcts
+  private Thread xctBatchThread;
+  private ByteArrayOutputStream xctBatch;
+  private int xctBatchCount;
+  private long xctBatchSeq;
+  // Client side, see getClientSyncPoint
+  private String clientSyncEpoch;
+  private long clientSyncSeq;
+  private final Object clientSyncLock = new Object();
 
   private boolean primed;
+  private final java.util.List<ChangeListener> changeListeners = new java.util.concurrent.CopyOnWriteArrayList<ChangeListener>();
+
+  /*
+   * Gets told about every add, update and remove that's logged on the server. This is called while holding the
+   * pendingWriteXcts lock, and often a table lock as well, so it must not call back into the Wizard.
+   */
+  public static interface ChangeListener
+  {
+    public void dbObjectChanged(byte opCode, byte tableCode, DBObject obj);
+  }
+
+  void addChangeListener(ChangeListener addMe)
+  {
+    changeListeners.add(addMe);
+  }
 
   public static interface XctSyncClient
   {
-    public void xctOut(byte[] xctData) throws IOException;
+    public void xctOut(byte[] xctData, long seq) throws IOException;
+    // xctRecords is a series of xcts that are each prefixed with their length like they are in the DB file
+    public void xctsOut(byte[] xctRecords, long seq) throws IOException;
     public int getPendingXctCount();
   }
 
@@ -8862,6 +9933,480 @@ public class Wizard implements EPGDBPublic2
     DBObject obj;
   }
 
+  private static class LoggedXct
+  {
+    public LoggedXct(long seq, byte objectType, byte[] data)
+    {
+      this.seq = seq;
+      this.objectType = objectType;
+      this.data = data;
+    }
+    long seq;
+    byte objectType;
+    byte[] data;
+  }
+
+  /*
+   * Where the SIZE/FULL_DATA/INDEX_DATA records for each table are in the current DB file, and the table's modCount when
+   * they were written. If the modCount hasn't changed since then compactDBFile can reuse those bytes as is.
+   */
+  private class TableSegments
+  {
+    TableSegments()
+    {
+      starts = new long[tables.length];
+      ends = new long[tables.length];
+      modCounts = new long[tables.length];
+    }
+
+    // Should be called while holding the table's read lock
+    void set(Table t, long start, long end)
+    {
+      starts[t.tableCode] = start;
+      ends[t.tableCode] = end;
+      modCounts[t.tableCode] = t.getModCount();
+    }
+
+    // Should be called while holding the table's read lock
+    void extend(Table t, long end)
+    {
+      ends[t.tableCode] = end;
+    }
+
+    // Should be called while holding the table's read lock
+    boolean isClean(Table t)
+    {
+      return ends[t.tableCode] > starts[t.tableCode] && modCounts[t.tableCode] == t.getModCount();
+    }
+
+    long getStart(Table t)
+    {
+      return starts[t.tableCode];
+    }
+
+    long getLength(Table t)
+    {
+      return ends[t.tableCode] - starts[t.tableCode];
+    }
+
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] modCounts;
+  }
+
+  /*
+   * Group commit writer for the transaction log. The log methods serialize each xct on the calling thread (while
+   * they hold pendingWriteXcts, so the queue order is the order the changes were made in) and put it in this ring;
+   * the writer thread then appends everything that's queued up in one pass and flushes the file based on the flush
+   * policy. That way a slow disk only holds up this thread instead of the recorder/EPG/UI thread that made the change.
+   * Records are only taken out of the ring while holding the outLock, so anything that needs the DB file to be current
+   * (saving it, sending it to a client, closing it) just calls writePending() while it holds the outLock.
+   */
+  private class LogWriter implements Runnable
+  {
+    LogWriter(int capacity, long inFlushInterval, int inFlushRecords, boolean inSync)
+    {
+      ring = new byte[Math.max(16, capacity)][];
+      enqueueTimes = new long[ring.length];
+      batch = new byte[ring.length][];
+      batchTimes = new long[ring.length];
+      flushInterval = inFlushInterval;
+      flushRecords = Math.max(1, inFlushRecords);
+      sync = inSync;
+      lastFlush = Sage.eventTime();
+    }
+
+    void start()
+    {
+      Thread t = new Thread(this, "DBLogWriter");
+      t.setDaemon(true);
+      t.start();
+    }
+
+    void enqueue(byte[] xctData)
+    {
+      synchronized (this)
+      {
+        if (count < ring.length)
+        {
+          add(xctData);
+          return;
+        }
+      }
+      // The disk isn't keeping up, so write out what's queued on this thread; this keeps the memory used by the
+      // queue bounded. We hold pendingWriteXcts so nobody else can queue anything in the meantime.
+      synchronized (outLock)
+      {
+        writePending();
+      }
+      synchronized (this)
+      {
+        add(xctData);
+      }
+    }
+
+    private void add(byte[] xctData)
+    {
+      ring[tail] = xctData;
+      enqueueTimes[tail] = Sage.eventTime();
+      tail = (tail + 1) % ring.length;
+      count++;
+      if (count > maxQueueDepth)
+        maxQueueDepth = count;
+      notifyAll();
+    }
+
+    public void run()
+    {
+      while (true)
+      {
+        synchronized (this)
+        {
+          if (count == 0)
+          {
+            try
+            {
+              wait(Math.max(0, flushInterval));
+            }
+            catch (InterruptedException e){}
+          }
+        }
+        synchronized (outLock)
+        {
+          writePending();
+          if (unflushed > 0 && (flushInterval <= 0 || unflushed >= flushRecords ||
+              Sage.eventTime() - lastFlush >= flushInterval))
+          {
+            FastRandomFile frf = dbout;
+            try
+            {
+              if (frf != null)
+              {
+                if (sync)
+                  frf.fullFlush();
+                else
+                  frf.flush();
+              }
+            }
+            catch (IOException e)
+            {
+              if (Sage.DBG) System.out.println("Error flushing DB file:" + e);
+            }
+            unflushed = 0;
+            lastFlush = Sage.eventTime();
+          }
+        }
+        SyncJournal journal = syncJournal;
+        if (journal != null)
+          journal.writePending(false);
+      }
+    }
+
+    // Must be called while holding the outLock
+    void writePending()
+    {
+      int num;
+      synchronized (this)
+      {
+        num = count;
+        for (int i = 0; i < num; i++)
+        {
+          batch[i] = ring[head];
+          batchTimes[i] = enqueueTimes[head];
+          ring[head] = null;
+          head = (head + 1) % ring.length;
+        }
+        count = 0;
+      }
+      if (num == 0)
+        return;
+      FastRandomFile frf = dbout;
+      for (int i = 0; frf != null && i < num; i++)
+      {
+        long fp = frf.getFilePointer();
+        try
+        {
+          frf.writeInt(batch[i].length + 4);
+          frf.write(batch[i]);
+        }
+        catch (Exception e)
+        {
+          if (Sage.DBG) System.out.println("Error updating DB file:" + e);
+          if (Sage.DBG) e.printStackTrace();
+          try
+          {
+            frf.flush();
+            frf.seek(fp);
+          }
+          catch (IOException ioe)
+          {
+            System.out.println("IO Error updating DB file: " + ioe);
+            ioe.printStackTrace();
+          }
+        }
+      }
+      long now = Sage.eventTime();
+      synchronized (this)
+      {
+        for (int i = 0; i < num; i++)
+        {
+          long latency = now - batchTimes[i];
+          totalLatency += latency;
+          if (latency > maxLatency)
+            maxLatency = latency;
+          batch[i] = null;
+        }
+        numWritten += num;
+        numBatches++;
+      }
+      unflushed += num;
+    }
+
+    synchronized int getQueueDepth()
+    {
+      return count;
+    }
+
+    synchronized String getStats()
+    {
+      return "queueDepth=" + count + " maxQueueDepth=" + maxQueueDepth + " written=" + numWritten + " batches=" + numBatches +
+          " avgLatency=" + (numWritten == 0 ? 0 : (totalLatency / numWritten)) + "ms maxLatency=" + maxLatency + "ms";
+    }
+
+    private final byte[][] ring;
+    private final long[] enqueueTimes;
+    private int head;
+    private int tail;
+    private int count;
+    // Only used while holding the outLock
+    private final byte[][] batch;
+    private final long[] batchTimes;
+    private int unflushed;
+    private long lastFlush;
+    private final long flushInterval;
+    private final int flushRecords;
+    private final boolean sync;
+    // Metrics
+    private int maxQueueDepth;
+    private long numWritten;
+    private long numBatches;
+    private long totalLatency;
+    private long maxLatency;
+  }
+
+  /*
+   * Bounded on-disk journal of the xcts made since the server started so a client that reconnects can be sent only
+   * what it missed instead of the whole DB. Records are [length][seq][xct] with the xct in the same format we send to
+   * clients. They go into two segment files; when the current one fills up the older one is thrown away and reused, so
+   * at least half of the size limit worth of history is always available. The epoch identifies this run of the server
+   * since sequence numbers start over on each one. Xcts are queued here while holding pendingWriteXcts and written out
+   * later by the LogWriter thread (or right away if there isn't one); the files themselves are guarded by fileLock so
+   * clients can be caught up from them without holding pendingWriteXcts.
+   */
+  private class SyncJournal
+  {
+    SyncJournal(long maxSize) throws IOException
+    {
+      segmentSize = Math.max(65536, maxSize / 2);
+      epoch = Long.toHexString(System.currentTimeMillis()) + Long.toHexString(new java.util.Random().nextInt() & 0xFFFFFFFFL);
+      files = new File[] { new File(dbFile.getParentFile(), dbFile.getName() + ".sync0"),
+          new File(dbFile.getParentFile(), dbFile.getName() + ".sync1") };
+      firstSeqs = new long[] { -1, -1 };
+      reset(xctSeq + 1);
+    }
+
+    // Must be called while holding the pendingWriteXcts lock so the xcts are queued in order
+    void append(long seq, byte[] xctData)
+    {
+      synchronized (this)
+      {
+        queue.add(new LoggedXct(seq, (byte) 0, xctData));
+      }
+      if (logWriter == null)
+        writePending(true);
+    }
+
+    // Writes out what's been queued; if wait is false and someone else is using the files then this leaves it for them
+    void writePending(boolean wait)
+    {
+      if (wait)
+        fileLock.lock();
+      else if (!fileLock.tryLock())
+        return;
+      try
+      {
+        writeQueued();
+      }
+      finally
+      {
+        fileLock.unlock();
+      }
+    }
+
+    // Must be called while holding the fileLock
+    private void writeQueued()
+    {
+      List<LoggedXct> xcts;
+      synchronized (this)
+      {
+        if (queue.isEmpty())
+          return;
+        xcts = queue;
+        queue = new ArrayList<LoggedXct>();
+      }
+      for (int i = 0; out != null && i < xcts.size(); i++)
+      {
+        LoggedXct xct = xcts.get(i);
+        try
+        {
+          if (xct.data == null)
+          {
+            // Can't leave a gap in the history, so start over after this one
+            reset(xct.seq + 1);
+            continue;
+          }
+          if (currSize > 0 && currSize + xct.data.length + 12 > segmentSize)
+            roll(xct.seq);
+          out.writeInt(xct.data.length);
+          out.writeLong(xct.seq);
+          out.write(xct.data);
+          currSize += xct.data.length + 12;
+          lastSeq = xct.seq;
+        }
+        catch (IOException e)
+        {
+          if (Sage.DBG) System.out.println("Error writing client sync journal, disabling it:" + e);
+          close();
+        }
+      }
+    }
+
+    /*
+     * The xcts after seq up through endSeq in order; this is at most maxSize of data. Returns null if we no longer have
+     * all of them. This does file I/O so it must NOT be called while holding the pendingWriteXcts lock.
+     */
+    List<byte[]> read(long seq, long endSeq) throws IOException
+    {
+      fileLock.lock();
+      try
+      {
+        writeQueued();
+        if (out == null || endSeq > lastSeq)
+          return null;
+        long oldest = (firstSeqs[1 - curr] != -1) ? firstSeqs[1 - curr] : firstSeqs[curr];
+        if (seq + 1 < oldest)
+          return null;
+        out.flush();
+        List<byte[]> rv = new ArrayList<byte[]>();
+        if (firstSeqs[1 - curr] != -1)
+          readSegment(files[1 - curr], files[1 - curr].length(), seq, endSeq, rv);
+        readSegment(files[curr], currSize, seq, endSeq, rv);
+        return rv;
+      }
+      finally
+      {
+        fileLock.unlock();
+      }
+    }
+
+    private void readSegment(File f, long len, long seq, long endSeq, List<byte[]> rv) throws IOException
+    {
+      java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(f), 65536));
+      try
+      {
+        long pos = 0;
+        while (pos < len)
+        {
+          int recLen = in.readInt();
+          long recSeq = in.readLong();
+          if (recSeq > endSeq)
+            break;
+          if (recSeq <= seq)
+          {
+            for (int left = recLen; left > 0; )
+            {
+              int n = in.skipBytes(left);
+              if (n <= 0)
+                throw new java.io.EOFException();
+              left -= n;
+            }
+          }
+          else
+          {
+            byte[] xctData = new byte[recLen];
+            in.readFully(xctData);
+            rv.add(xctData);
+          }
+          pos += recLen + 12;
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    private void roll(long nextSeq) throws IOException
+    {
+      out.close();
+      curr = 1 - curr;
+      open(nextSeq);
+    }
+
+    private void reset(long nextSeq) throws IOException
+    {
+      if (out != null)
+        out.close();
+      files[1].delete();
+      firstSeqs[1] = -1;
+      curr = 0;
+      open(nextSeq);
+    }
+
+    private void open(long nextSeq) throws IOException
+    {
+      // Overwrites whatever was in this segment before
+      out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(new java.io.FileOutputStream(files[curr]), 65536));
+      firstSeqs[curr] = nextSeq;
+      currSize = 0;
+      lastSeq = nextSeq - 1;
+    }
+
+    void close()
+    {
+      fileLock.lock();
+      try
+      {
+        writeQueued();
+        if (out != null)
+        {
+          try
+          {
+            out.close();
+          }
+          catch (IOException e){}
+          out = null;
+        }
+      }
+      finally
+      {
+        fileLock.unlock();
+      }
+    }
+
+    final String epoch;
+    // Guarded by this
+    private List<LoggedXct> queue = new ArrayList<LoggedXct>();
+    private final java.util.concurrent.locks.ReentrantLock fileLock = new java.util.concurrent.locks.ReentrantLock();
+    // Everything below is guarded by the fileLock
+    private final long segmentSize;
+    private final File[] files;
+    private final long[] firstSeqs;
+    private int curr;
+    private java.io.DataOutputStream out;
+    private long currSize;
+    private long lastSeq;
+  }
+
   public Vector<Airing> searchFieldsNTE(String nteString, boolean title, boolean episode,
       boolean description, boolean person, boolean category, boolean rated, boolean extendedRatings, boolean year,
       boolean misc, int mediaMask, boolean wholeWord) {
@@ -8882,12 +10427,12 @@ public class Wizard implements EPGDBPublic2
       idx.table.acquireReadLock();
       for (int i = 0; i < idx.table.num; i++)
       {
-        if ((idx.data[i].getMediaMask() & mediaMask) == 0)
+        if ((idx.get(i).getMediaMask() & mediaMask) == 0)
           continue;
         if (StringMatchUtils.wordMatchesNte(
-            ((Stringer) idx.data[i]).name,nteString))
+            ((Stringer) idx.get(i)).name,nteString))
         {
-          okTitles.add(((Stringer) idx.data[i]).name);
+          okTitles.add(((Stringer) idx.get(i)).name);
           if (okTitles.size() >= MAX_SEARCH_RESULTS)
             break;
         }
@@ -9302,7 +10847,7 @@ public class Wizard implements EPGDBPublic2
           resetIndex();
           Table table = Wizard.getInstance().getTable(this.type);
           Index showIndex = table.getIndex((byte) 0);
-          for(Object o : showIndex.data) {
+          for(Object o : showIndex.getData()) {
             if(o != null) {
               work.add(o);
             }
@@ -9324,6 +10869,7 @@ public class Wizard implements EPGDBPublic2
 
   LuceneIndex showIndex;
   LuceneIndex personIndex;
+  final KeywordPercolator keywordPercolator = new KeywordPercolator(this);
 
   boolean indexShowTransactionRunning = false;
   boolean indexPersonTransactionRunning = false;
@@ -9390,6 +10936,7 @@ public class Wizard implements EPGDBPublic2
                   // TODO(codefu): possibly set a countdown timer and commit the writer for
                   // performance.
                   deletions++;
+                  keywordPercolator.remove(delId);
                 } catch (Exception e) {
                   if (Sage.DBG) System.out.println(
                       "Exception while trying to delete show[" + delId + "] from index; " + e);
@@ -9464,6 +11011,12 @@ public class Wizard implements EPGDBPublic2
                       + sTitle + "] into index; " + e);
                   e.printStackTrace();
                 }
+                try {
+                  keywordPercolator.percolate(s, index.analyzer);
+                } catch (IOException e) {
+                  if (Sage.DBG) System.out.println("IOException while matching show[" + s.getID()
+                      + "] against the keyword favorites; " + e);
+                }
                 start = Sage.time() - start;
                 index.insertions++;
                 index.insertionTime += start;
@@ -9728,6 +11281,25 @@ public class Wizard implements EPGDBPublic2
     return searchShowsByKeyword(currKeyword, (titleOnly ? TITLE_SEARCH : SIMPLE_ALL_SEARCH) | WHOLE_WORD_SEARCH);
   }
 
+  /**
+   * Returns the Shows that match a keyword Favorite. These are kept up to date as Shows are indexed instead of searching
+   * every time, so this is what the Carny uses for the keyword Favorites it profiles. Use the String version for
+   * keywords that aren't for a current Agent.
+   */
+  Show[] searchShowsByKeyword(Agent bond) {
+    if (disableLucene) {
+      return Pooler.EMPTY_SHOW_ARRAY;
+    }
+    int[] showIDs = keywordPercolator.getShowIDs(bond);
+    List<Show> rv = new ArrayList<Show>(showIDs.length);
+    for (int i = 0; i < showIDs.length; i++) {
+      // This'll be null for Shows that were removed since
+      Show s = getShowForID(showIDs[i]);
+      if (s != null) rv.add(s);
+    }
+    return rv.toArray(Pooler.EMPTY_SHOW_ARRAY);
+  }
+
   BooleanQuery generateQueryTerms(String keyword, List<String> fields, int searchFlags) {
     int index = 0;
     int end;
@@ -1636,6 +1636,24 @@ public class ZDataTable extends ZPseudoComp
   private java.util.ArrayList finalColWidgs;
   private long finalColModTime;
   private void buildUIForData(boolean doDataAlways, boolean doDataNew)
+  {
+    UIProfiler prof = uiMgr.getProfiler();
+    if (prof == null)
+    {
+      buildUIForDataUnprofiled(doDataAlways, doDataNew);
+      return;
+    }
+    prof.enter(UIProfiler.TABLE_DATA, widg, null);
+    try
+    {
+      buildUIForDataUnprofiled(doDataAlways, doDataNew);
+    }
+    finally
+    {
+      prof.exit();
+    }
+  }
+  private void buildUIForDataUnprofiled(boolean doDataAlways, boolean doDataNew)
   {
     // NOTE: This is because when you re-use components from a table during table scrolling there may still
     // need to be data updates done to the components. A good example is the time extender arrows in the EPG which
@@ -1151,7 +1151,20 @@ public class ZPseudoComp extends ZComp implements java.awt.event.MouseListener,
     // One of the old assumptions we made was that focus changes only affected how the UI
     // looked, not how it was structured. We had it fixed for navigation (simple focus changes),
     // but it was still wrong for when the Menu was loaded. Now it should be OK.
-    if (!evaluate(doComps/* || focusListener*/, doData))
+    UIProfiler prof = uiMgr.getProfiler();
+    if (prof != null)
+      prof.enter(UIProfiler.EVALUATE, widg, null);
+    boolean passed;
+    try
+    {
+      passed = evaluate(doComps/* || focusListener*/, doData);
+    }
+    finally
+    {
+      if (prof != null)
+        prof.exit();
+    }
+    if (!passed)
     {
       // We failed the UI conditional testing so do the focus check
       // clears anything underneath us that has the focus since it can't be shown anymore
@@ -5630,6 +5643,25 @@ public class ZPseudoComp extends ZComp implements java.awt.event.MouseListener,
   private boolean recalcAllEffectStates = false;
   public void buildRenderingOps(java.util.ArrayList opList, java.awt.geom.Rectangle2D.Float clipRect,
       int diffuseColor, float alphaFactor, float xoff, float yoff, int flags)
+  {
+    UIProfiler prof = uiMgr.getProfiler();
+    if (prof == null)
+    {
+      buildRenderingOpsUnprofiled(opList, clipRect, diffuseColor, alphaFactor, xoff, yoff, flags);
+      return;
+    }
+    prof.enter(UIProfiler.RENDER, widg, null);
+    try
+    {
+      buildRenderingOpsUnprofiled(opList, clipRect, diffuseColor, alphaFactor, xoff, yoff, flags);
+    }
+    finally
+    {
+      prof.exit();
+    }
+  }
+  private void buildRenderingOpsUnprofiled(java.util.ArrayList opList, java.awt.geom.Rectangle2D.Float clipRect,
+      int diffuseColor, float alphaFactor, float xoff, float yoff, int flags)
   {
     currRenderVisibility = isVisible() && (parent == null || !(parent instanceof ZPseudoComp) || (passesConditionalCacheValue && ((ZPseudoComp) parent).currRenderVisibility));
     maxEffectZoom = 1;
@@ -416,10 +416,13 @@ public class Database {
           }
         }
         java.util.ArrayList filtMeths = new java.util.ArrayList();
+        java.util.ArrayList filtMethNames = new java.util.ArrayList();
         java.util.StringTokenizer toker = new java.util.StringTokenizer(filterMethName, " |");
         while (toker.hasMoreTokens())
         {
-          filtMeths.add(Catbert.getAPI().get(toker.nextToken()));
+          String currMethName = toker.nextToken();
+          filtMethNames.add(currMethName);
+          filtMeths.add(Catbert.getAPI().get(currMethName));
         }
         if (dataObj instanceof java.util.Collection || dataObj instanceof java.util.Map)
         {
@@ -508,29 +511,13 @@ public class Database {
           }
           else
           {
-            while (walker.hasNext())
+            // The iterator goes through them in the same order as toArray
+            boolean[] testResults = filterTest(currData.toArray(), filtMethNames, filtMeths, matchValue, extraArgs,
+                stack);
+            for (int i = 0; walker.hasNext(); i++)
             {
-              Object currObj = walker.next();
-              boolean testResult = false;
-              for (int j = 0; j < filtMeths.size(); j++)
-              {
-                sage.jep.function.PostfixMathCommandI filtMeth = (sage.jep.function.PostfixMathCommandI) filtMeths.get(j);
-                stack.push(currObj);
-                for (int i = extraArgs.size() - 1; i >= 0; i--)
-                  stack.push(extraArgs.get(i));
-                filtMeth.setCurNumberOfParameters(1 + extraArgs.size());
-                filtMeth.run(stack);
-                Object testRes = stack.pop();
-                boolean didPass = (testRes == matchValue) || (testRes != null &&
-                    (testRes.equals(matchValue) || (matchValue != null &&
-                    testRes.toString().equals(matchValue.toString()))));
-                if (didPass)
-                {
-                  testResult = true;
-                  break;
-                }
-              }
-              if (invertRes == testResult)
+              walker.next();
+              if (invertRes == testResults[i])
                 walker.remove();
             }
           }
@@ -615,28 +602,10 @@ public class Database {
           }
           else
           {
+            boolean[] testResults = filterTest(currData, filtMethNames, filtMeths, matchValue, extraArgs, stack);
             for (int i = 0; i < currData.length; i++)
             {
-              boolean testResult = false;
-              for (int j = 0; j < filtMeths.size(); j++)
-              {
-                sage.jep.function.PostfixMathCommandI filtMeth = (sage.jep.function.PostfixMathCommandI) filtMeths.get(j);
-                stack.push(currData[i]);
-                for (int k = extraArgs.size() - 1; k >= 0; k--)
-                  stack.push(extraArgs.get(k));
-                filtMeth.setCurNumberOfParameters(1 + extraArgs.size());
-                filtMeth.run(stack);
-                Object testRes = stack.pop();
-                boolean didPass = (testRes == matchValue) || (testRes != null &&
-                    (testRes.equals(matchValue) || (matchValue != null &&
-                    testRes.toString().equals(matchValue.toString()))));
-                if (didPass)
-                {
-                  testResult = true;
-                  break;
-                }
-              }
-              if (invertRes != testResult)
+              if (invertRes != testResults[i])
                 passedData.add(currData[i]);
             }
           }
@@ -644,6 +613,38 @@ public class Database {
               passedData.size()));
         }
       }
+      // An element passes if any of the Methods returns the match value for it; later Methods are only called for the
+      // elements that haven't passed yet
+      private boolean[] filterTest(Object[] data, java.util.List methNames, java.util.List meths, Object matchValue,
+          java.util.List extraArgs, Catbert.FastStack stack) throws Exception
+      {
+        boolean[] rv = new boolean[data.length];
+        int[] remaining = new int[data.length];
+        for (int i = 0; i < remaining.length; i++)
+          remaining[i] = i;
+        int numRemaining = data.length;
+        for (int j = 0; j < meths.size() && numRemaining > 0; j++)
+        {
+          Object[] testData = new Object[numRemaining];
+          for (int i = 0; i < numRemaining; i++)
+            testData[i] = data[remaining[i]];
+          Object[] testRes = MethodKeys.getKeys((String) methNames.get(j),
+              (sage.jep.function.PostfixMathCommandI) meths.get(j), testData, extraArgs, stack);
+          int newNumRemaining = 0;
+          for (int i = 0; i < numRemaining; i++)
+          {
+            boolean didPass = (testRes[i] == matchValue) || (testRes[i] != null &&
+                (testRes[i].equals(matchValue) || (matchValue != null &&
+                testRes[i].toString().equals(matchValue.toString()))));
+            if (didPass)
+              rv[remaining[i]] = true;
+            else
+              remaining[newNumRemaining++] = remaining[i];
+          }
+          numRemaining = newNumRemaining;
+        }
+        return rv;
+      }
       private boolean categoryTest(Object obj, String[] cats, Agent[] cachedFavs)
       {
         // Root this in the Airing object since everything else will link to that quickly
@@ -1162,14 +1163,10 @@ public class Database {
           {
             sage.jep.function.PostfixMathCommandI groupMeth =
                 (sage.jep.function.PostfixMathCommandI) Catbert.getAPI().get(groupMethName);
+            Object[] groupKeys = MethodKeys.getKeys(groupMethName, groupMeth, linearData, extraArgs, stack);
             for (int i = 0; i < linearData.length; i++)
             {
-              stack.push(linearData[i]);
-              for (int k = extraArgs.size() - 1; k >= 0; k--)
-                stack.push(extraArgs.get(k));
-              groupMeth.setCurNumberOfParameters(1 + extraArgs.size());
-              groupMeth.run(stack);
-              Object currKey = stack.pop();
+              Object currKey = groupKeys[i];
               java.util.Vector currVec = (java.util.Vector) groupedMap.get(currKey);
               if (currVec == null)
                 groupedMap.put(currKey, currVec = new java.util.Vector());
@@ -1432,6 +1429,9 @@ public class Database {
         else
           currData = (Object[]) fooData;
         boolean alreadySorted = false;
+        // Set when we're sorting by the results of a Method, then sortie compares those results
+        sage.jep.function.PostfixMathCommandI sortKeyMeth = null;
+        String sortKeyMethName = null;
         if (sortTech == null || "Natural".equalsIgnoreCase(sortTech.toString()))
           sortie = null;
         else if (sortTech instanceof java.util.Comparator)
@@ -1455,27 +1455,15 @@ public class Database {
             final boolean specialChannelCompare = (filterMethName != null) && filterMethName.indexOf("ChannelNumber") != -1;
             if (filterMethName.equalsIgnoreCase("ChannelNumber"))
               filterMethName = extraArgs.remove(extraArgs.size() - 1).toString();
-            final sage.jep.function.PostfixMathCommandI sortMeth =
-                (sage.jep.function.PostfixMathCommandI) Catbert.getAPI().get(filterMethName);
+            sortKeyMethName = filterMethName;
+            sortKeyMeth = (sage.jep.function.PostfixMathCommandI) Catbert.getAPI().get(filterMethName);
+            // The Method is called once for each element before sorting and then this compares what it returned
             sortie = new java.util.Comparator()
             {
-              public int compare(Object o1, Object o2)
+              public int compare(Object c1, Object c2)
               {
                 try
                 {
-                  Catbert.FastStack s = new Catbert.FastStack();
-                  s.push(o1);
-                  for (int i = extraArgs.size() - 1; i >= 0; i--)
-                    s.push(extraArgs.get(i));
-                  sortMeth.setCurNumberOfParameters(1 + extraArgs.size());
-                  sortMeth.run(s);
-                  Object c1 = s.pop();
-                  s.push(o2);
-                  for (int i = extraArgs.size() - 1; i >= 0; i--)
-                    s.push(extraArgs.get(i));
-                  sortMeth.setCurNumberOfParameters(1 + extraArgs.size());
-                  sortMeth.run(s);
-                  Object c2 = s.pop();
                   if (specialChannelCompare)
                   {
                     try
@@ -1567,7 +1555,10 @@ public class Database {
               };
             }
           }
-          if (sortie != null)
+          if (sortKeyMeth != null)
+            MethodKeys.sortByKeys(currData, MethodKeys.getKeys(sortKeyMethName, sortKeyMeth, currData, extraArgs, stack),
+                sortie);
+          else if (sortie != null)
             java.util.Arrays.sort(currData, sortie);
           else
             java.util.Arrays.sort(currData);
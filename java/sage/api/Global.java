@@ -46,6 +46,7 @@ import sage.Scheduler;
 import sage.Seeker;
 import sage.UIClient;
 import sage.UIManager;
+import sage.UIProfiler;
 import sage.UserEvent;
 import sage.Widget;
 import sage.Wizard;
@@ -3036,6 +3037,96 @@ public class Global {
       public Object runSafely(Catbert.FastStack stack) throws Exception{
         return EPG.getInstance().getEpgStateString();
       }});
+    rft.put(new PredefinedJEPFunction("Global", "StartUIProfiling", new String[] { "TrackAllocations" })
+    {
+      /**
+       * Starts profiling where the time goes in this UI. This records the number of calls, the total, self and max time
+       * (and optionally the allocated bytes) for each expression evaluation, component evaluation, rendering and table paging
+       * by Widget. Use GetUIProfileJSON or GetUIProfileFoldedStacks to get the results. If profiling is already on then it's
+       * restarted.
+       * @param TrackAllocations true if the bytes allocated should be tracked as well, this adds some overhead and isn't supported on all JVMs
+       * @since 9.0
+       *
+       * @declaration public void StartUIProfiling(boolean TrackAllocations);
+       */
+      public Object runSafely(Catbert.FastStack stack) throws Exception
+      {
+        boolean trackAllocations = evalBool(stack.pop());
+        UIManager uiMgr = stack.getUIMgrSafe();
+        if (uiMgr != null)
+          uiMgr.setProfiler(new UIProfiler(uiMgr.getLocalUIClientName(), trackAllocations));
+        return null;
+      }
+    });
+    rft.put(new PredefinedJEPFunction("Global", "StopUIProfiling")
+    {
+      /**
+       * Stops profiling this UI and discards the results. Get them with GetUIProfileJSON or GetUIProfileFoldedStacks first
+       * if they're needed.
+       * @since 9.0
+       *
+       * @declaration public void StopUIProfiling();
+       */
+      public Object runSafely(Catbert.FastStack stack) throws Exception
+      {
+        UIManager uiMgr = stack.getUIMgrSafe();
+        if (uiMgr != null)
+          uiMgr.setProfiler(null);
+        return null;
+      }
+    });
+    rft.put(new PredefinedJEPFunction("Global", "ResetUIProfiling")
+    {
+      /**
+       * Clears the results gathered so far by the profiler for this UI, it keeps profiling if it was on
+       * @since 9.0
+       *
+       * @declaration public void ResetUIProfiling();
+       */
+      public Object runSafely(Catbert.FastStack stack) throws Exception
+      {
+        UIManager uiMgr = stack.getUIMgrSafe();
+        UIProfiler prof = (uiMgr == null) ? null : uiMgr.getProfiler();
+        if (prof != null)
+          prof.reset();
+        return null;
+      }
+    });
+    rft.put(new PredefinedJEPFunction("Global", "GetUIProfileJSON")
+    {
+      /**
+       * Returns the results of the profiler for this UI as a JSON object. It has an entry for each kind of work
+       * (expr, evaluate, render or tableData) on each Widget (and expression) with its call count and its total, self and max
+       * time in nanoseconds, sorted by self time.
+       * @return the profile as a JSON String, null if profiling isn't on for this UI
+       * @since 9.0
+       *
+       * @declaration public String GetUIProfileJSON();
+       */
+      public Object runSafely(Catbert.FastStack stack) throws Exception
+      {
+        UIManager uiMgr = stack.getUIMgrSafe();
+        UIProfiler prof = (uiMgr == null) ? null : uiMgr.getProfiler();
+        return (prof == null) ? null : prof.getJSON();
+      }
+    });
+    rft.put(new PredefinedJEPFunction("Global", "GetUIProfileFoldedStacks")
+    {
+      /**
+       * Returns the results of the profiler for this UI in the folded stack format used by flame graph tools. There's one
+       * line for each call path with the self time in microseconds at the end.
+       * @return the profile as folded stacks, null if profiling isn't on for this UI
+       * @since 9.0
+       *
+       * @declaration public String GetUIProfileFoldedStacks();
+       */
+      public Object runSafely(Catbert.FastStack stack) throws Exception
+      {
+        UIManager uiMgr = stack.getUIMgrSafe();
+        UIProfiler prof = (uiMgr == null) ? null : uiMgr.getProfiler();
+        return (prof == null) ? null : prof.getFoldedStacks();
+      }
+    });
     /*
 		rft.put(new PredefinedJEPFunction("Global", "", -1)
 		{public Object runSafely(Catbert.FastStack stack) throws Exception{
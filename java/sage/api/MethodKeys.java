@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 The SageTV Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sage.api;
+
+import sage.*;
+
+/*
+ * Calls a Method once for each element of some data so Sort, GroupByMethod and FilterByMethod can work off of the
+ * results instead of calling the Method over and over from inside of a Comparator or a loop.
+ *
+ * Big inputs are split up across a small thread pool when the Method is one of a short list of API getters that only
+ * read fields of the DB object they're called on (PURE_METHODS). Anything else always runs on the calling thread since
+ * we can't know if it's thread safe. The results always line up with the data by index, so what the callers end up
+ * with never depends on how the work was split up.
+ *
+ * The results of those same getters are also kept between calls for each UI until anything in the DB changes.
+ */
+final class MethodKeys
+{
+  private MethodKeys()
+  {
+  }
+
+  /*
+   * Returns the result of calling the Method with each element followed by the extra arguments. The results are in the
+   * same order as the data. The stack is only used when everything runs on the calling thread.
+   */
+  static Object[] getKeys(String methName, final sage.jep.function.PostfixMathCommandI meth, final Object[] data,
+      final java.util.List extraArgs, Catbert.FastStack stack) throws Exception
+  {
+    final Object[] keys = new Object[data.length];
+    final boolean pure = isPure(methName, meth);
+    KeyCache cache = (pure && extraArgs.isEmpty()) ? getKeyCache(stack.getUIMgr(), methName) : null;
+    if (cache == null)
+    {
+      forEach(pure, data.length, stack, new Task()
+      {
+        public void run(Catbert.FastStack s, int i) throws Exception
+        {
+          keys[i] = call(meth, data[i], extraArgs, s);
+        }
+      });
+      return keys;
+    }
+
+    long modCount = Wizard.getInstance().getDBModCount();
+    final int[] misses = new int[data.length];
+    int numMisses = 0;
+    synchronized (cache)
+    {
+      if (cache.modCount != modCount || cache.keys.size() > MAX_CACHED_KEYS)
+      {
+        cache.keys.clear();
+        cache.modCount = modCount;
+      }
+      for (int i = 0; i < data.length; i++)
+      {
+        if (data[i] instanceof DBObject && cache.keys.containsKey(data[i]))
+          keys[i] = cache.keys.get(data[i]);
+        else
+          misses[numMisses++] = i;
+      }
+    }
+    forEach(pure, numMisses, stack, new Task()
+    {
+      public void run(Catbert.FastStack s, int i) throws Exception
+      {
+        keys[misses[i]] = call(meth, data[misses[i]], extraArgs, s);
+      }
+    });
+    synchronized (cache)
+    {
+      // Don't keep any of them if the DB changed while we were getting them
+      if (cache.modCount == modCount && Wizard.getInstance().getDBModCount() == modCount)
+      {
+        for (int i = 0; i < numMisses; i++)
+          if (data[misses[i]] instanceof DBObject)
+            cache.keys.put(data[misses[i]], keys[misses[i]]);
+      }
+    }
+    return keys;
+  }
+
+  /*
+   * Sorts the data by the keys that line up with it. This is a stable sort, so equal keys stay in the order they were
+   * in the data.
+   */
+  static void sortByKeys(Object[] data, Object[] keys, final java.util.Comparator keyComparator)
+  {
+    Object[][] pairs = new Object[data.length][];
+    for (int i = 0; i < data.length; i++)
+      pairs[i] = new Object[] { keys[i], data[i] };
+    java.util.Arrays.sort(pairs, new java.util.Comparator()
+    {
+      public int compare(Object o1, Object o2)
+      {
+        return keyComparator.compare(((Object[]) o1)[0], ((Object[]) o2)[0]);
+      }
+    });
+    for (int i = 0; i < data.length; i++)
+      data[i] = pairs[i][1];
+  }
+
+  static Object call(sage.jep.function.PostfixMathCommandI meth, Object obj, java.util.List extraArgs,
+      Catbert.FastStack s) throws sage.jep.ParseException
+  {
+    s.push(obj);
+    for (int i = extraArgs.size() - 1; i >= 0; i--)
+      s.push(extraArgs.get(i));
+    meth.setCurNumberOfParameters(1 + extraArgs.size());
+    meth.run(s);
+    return s.pop();
+  }
+
+  private interface Task
+  {
+    void run(Catbert.FastStack s, int i) throws Exception;
+  }
+
+  private static void forEach(boolean pure, int count, Catbert.FastStack stack, final Task task) throws Exception
+  {
+    int numThreads = canRunInParallel(pure) ? Math.min(NUM_THREADS, count / Math.max(1,
+        Sage.getInt("parallel_method_eval_min_size", 2000))) : 1;
+    if (numThreads <= 1)
+    {
+      for (int i = 0; i < count; i++)
+        task.run(stack, i);
+      return;
+    }
+
+    final UIManager uiMgr = stack.getUIMgr();
+    final ZPseudoComp uiComp = stack.getUIComponent();
+    int chunkSize = (count + numThreads - 1) / numThreads;
+    java.util.List<java.util.concurrent.Future<Object>> futures = new java.util.ArrayList<java.util.concurrent.Future<Object>>();
+    for (int start = chunkSize; start < count; start += chunkSize)
+    {
+      final int chunkStart = start;
+      final int chunkEnd = Math.min(count, start + chunkSize);
+      futures.add(getPool().submit(new java.util.concurrent.Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          Catbert.FastStack s = new Catbert.FastStack();
+          s.setUIMgr(uiMgr);
+          s.setUIComponent(uiComp);
+          for (int i = chunkStart; i < chunkEnd; i++)
+            task.run(s, i);
+          return null;
+        }
+      }));
+    }
+    // We do the first chunk ourself while the pool does the rest
+    Exception error = null;
+    try
+    {
+      for (int i = 0; i < chunkSize && i < count; i++)
+        task.run(stack, i);
+    }
+    catch (Exception e)
+    {
+      error = e;
+    }
+    for (int i = 0; i < futures.size(); i++)
+    {
+      try
+      {
+        futures.get(i).get();
+      }
+      catch (java.util.concurrent.ExecutionException e)
+      {
+        // Report the error from the earliest element, like it would have been if this was done in order
+        if (error == null)
+          error = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+      }
+    }
+    if (error != null)
+      throw error;
+  }
+
+  private static boolean canRunInParallel(boolean pure)
+  {
+    // Nested calls could end up waiting on the pool they're in
+    return pure && NUM_THREADS > 1 && !(Thread.currentThread() instanceof PoolThread);
+  }
+
+  // True if this is one of the API getters in PURE_METHODS and not a widget or plugin that happens to have the same name
+  private static boolean isPure(String methName, sage.jep.function.PostfixMathCommandI meth)
+  {
+    // Clients send most of these over to the server
+    return !Sage.client && meth instanceof PredefinedJEPFunction && PURE_METHODS.contains(methName);
+  }
+
+  // The cache for this call in this UI, or null if there's no UI to keep it for
+  private static KeyCache getKeyCache(UIManager uiMgr, String methName)
+  {
+    if (uiMgr == null)
+      return null;
+    synchronized (keyCaches)
+    {
+      java.util.Map<String, KeyCache> uiCaches = keyCaches.get(uiMgr);
+      if (uiCaches == null)
+        keyCaches.put(uiMgr, uiCaches = new java.util.HashMap<String, KeyCache>());
+      KeyCache rv = uiCaches.get(methName);
+      if (rv == null)
+        uiCaches.put(methName, rv = new KeyCache());
+      return rv;
+    }
+  }
+
+  private static synchronized java.util.concurrent.ExecutorService getPool()
+  {
+    if (pool == null)
+    {
+      pool = java.util.concurrent.Executors.newFixedThreadPool(NUM_THREADS - 1, new java.util.concurrent.ThreadFactory()
+      {
+        private int threadNum;
+        public synchronized Thread newThread(Runnable r)
+        {
+          Thread t = new PoolThread(r, "MethodKeys-" + (threadNum++));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return pool;
+  }
+
+  private static final class PoolThread extends Thread
+  {
+    PoolThread(Runnable r, String name)
+    {
+      super(r, name);
+    }
+  }
+
+  // Results for one API call keyed by the DB object, all of them are from when the DB had this mod count
+  private static final class KeyCache
+  {
+    long modCount = -1;
+    final java.util.Map<Object, Object> keys = new java.util.IdentityHashMap<Object, Object>();
+  }
+
+  private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+  private static final int MAX_CACHED_KEYS = 100000;
+  // Getters that have been checked to only read fields of the DB object they're called on, so they're safe to call from
+  // the pool and their result is fixed for as long as the DB doesn't change. Don't add anything here without checking that.
+  private static final java.util.Set<String> PURE_METHODS = new java.util.HashSet<String>(java.util.Arrays.asList(
+      new String[] { "GetMediaTitle", "GetShowTitle", "GetAiringTitle", "GetShowEpisode", "GetShowYear", "GetShowCategory",
+      "GetShowSubCategory", "GetShowSeasonNumber", "GetShowEpisodeNumber", "GetShowExternalID", "GetOriginalAiringDate",
+      "GetAiringStartTime", "GetAiringEndTime", "GetAiringDuration", "GetAiringID", "GetMediaFileID", "GetFileStartTime",
+      "GetTrackNumber", "GetAlbumName", "GetAlbumArtist" }));
+  // UIManager -> method name -> cache; they go away along with the UI
+  private static final java.util.Map<UIManager, java.util.Map<String, KeyCache>> keyCaches =
+      new java.util.WeakHashMap<UIManager, java.util.Map<String, KeyCache>>();
+  private static java.util.concurrent.ExecutorService pool;
+}
@@ -74,7 +74,7 @@ public class WidgetAPI {
           // 601
           //Wizard.getInstance().importWidgetFile(stack.getUIMgr(), f);
 
-          stack.getUIMgr().getModuleGroup().importXML(f, stack.getUIMgr());
+          stack.getUIMgr().getModuleGroupForEdit().importXML(f, stack.getUIMgr());
 
           if (stack.getUIMgr().getBoolean("save_stv_after_import", true))
           {
@@ -198,7 +198,7 @@ public class WidgetAPI {
       public Object runSafely(Catbert.FastStack stack) throws Exception{
         String s = getString(stack);
         if (SageConstants.LITE) return null;
-        return stack.getUIMgr() == null ? null : stack.getUIMgr().getModuleGroup().addWidget(WidgetMeta.getTypeForName(s));
+        return stack.getUIMgr() == null ? null : stack.getUIMgr().getModuleGroupForEdit().addWidget(WidgetMeta.getTypeForName(s));
       }});
     rft.put(new PredefinedJEPFunction("Widget", "AddWidgetWithSymbol", new String[] { "WidgetType", "Symbol" })
     {
@@ -215,7 +215,7 @@ public class WidgetAPI {
         String symb = getString(stack);
         String s = getString(stack);
         if (SageConstants.LITE) return null;
-        return stack.getUIMgr() == null ? null : stack.getUIMgr().getModuleGroup().addWidget(WidgetMeta.getTypeForName(s), symb);
+        return stack.getUIMgr() == null ? null : stack.getUIMgr().getModuleGroupForEdit().addWidget(WidgetMeta.getTypeForName(s), symb);
       }});
     rft.put(new PredefinedJEPFunction("Widget", "RemoveWidget", new String[] { "Widget" })
     {
@@ -226,7 +226,8 @@ public class WidgetAPI {
        * @declaration public void RemoveWidget(Widget Widget);
        */
       public Object runSafely(Catbert.FastStack stack) throws Exception{
-        stack.getUIMgr().getModuleGroup().removeWidget(getWidget(stack)); return null;
+        Widget w = getWidgetForEdit(stack);
+        stack.getUIMgr().getModuleGroupForEdit().removeWidget(w); return null;
       }});
     rft.put(new PredefinedJEPFunction("Widget", "AddWidgetChild", new String[] { "WidgetParent", "WidgetChild" })
     {
@@ -239,8 +240,8 @@ public class WidgetAPI {
        * @declaration public void AddWidgetChild(Widget WidgetParent, Widget WidgetChild);
        */
       public Object runSafely(Catbert.FastStack stack) throws Exception{
-        Widget cw = getWidget(stack);
-        Widget pw = getWidget(stack);
+        Widget cw = getWidgetForEdit(stack);
+        Widget pw = getWidgetForEdit(stack);
         if (SageConstants.LITE) return null;
         if (cw != null && pw != null && pw.willContain(cw))
           WidgetFidget.contain(pw, cw);
@@ -259,8 +260,8 @@ public class WidgetAPI {
        */
       public Object runSafely(Catbert.FastStack stack) throws Exception{
         int idx = getInt(stack);
-        Widget cw = getWidget(stack);
-        Widget pw = getWidget(stack);
+        Widget cw = getWidgetForEdit(stack);
+        Widget pw = getWidgetForEdit(stack);
         if (SageConstants.LITE) return null;
         if (cw != null && pw != null && pw.willContain(cw))
           WidgetFidget.contain(pw, cw, idx);
@@ -277,8 +278,8 @@ public class WidgetAPI {
        * @declaration public void RemoveWidgetChild(Widget WidgetParent, Widget WidgetChild);
        */
       public Object runSafely(Catbert.FastStack stack) throws Exception{
-        Widget cw = getWidget(stack);
-        Widget pw = getWidget(stack);
+        Widget cw = getWidgetForEdit(stack);
+        Widget pw = getWidgetForEdit(stack);
         if (SageConstants.LITE) return null;
         if (cw != null && pw != null)
           WidgetFidget.discontent(pw, cw);
@@ -342,7 +343,7 @@ public class WidgetAPI {
       public Object runSafely(Catbert.FastStack stack) throws Exception{
         String pv = getString(stack);
         String pn = getString(stack);
-        Widget w = getWidget(stack);
+        Widget w = getWidgetForEdit(stack);
         if (SageConstants.LITE) return null;
         if (w != null)
           WidgetFidget.setProperty(w, WidgetMeta.getPropForName(pn), pv);
@@ -389,7 +390,7 @@ public class WidgetAPI {
        */
       public Object runSafely(Catbert.FastStack stack) throws Exception{
         String s = getString(stack);
-        Widget w = getWidget(stack);
+        Widget w = getWidgetForEdit(stack);
         if (SageConstants.LITE) return null;
         if (w != null)
           WidgetFidget.setName(w, s);
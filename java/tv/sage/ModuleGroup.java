@@ -48,6 +48,9 @@ public class ModuleGroup
 
   private java.util.Map breakIdMap = null;
 
+  // Set when ModuleManager shares this between UIs; it can't be modified after that
+  ModuleManager.SharedSource sharedSource;
+
   public ModuleGroup()
   {
   }
@@ -84,8 +87,21 @@ public class ModuleGroup
     return defaultModule.lastModified();
   }
 
+  public boolean isShared()
+  {
+    return sharedSource != null;
+  }
+
+  private void checkModifiable()
+  {
+    if (sharedSource != null)
+      throw new IllegalStateException("Cannot modify the STV that's shared between UIs, it has to be copied first: " +
+          defaultModule.description());
+  }
+
   public sage.Widget addWidget(byte type)
   {
+    checkModifiable();
     sage.Widget rv = (defaultModule.addWidget(type, null));
     if (rv.symbol() != null)
       symbolMap.put(rv.symbol(), rv);
@@ -94,6 +110,7 @@ public class ModuleGroup
 
   public sage.Widget addWidget(byte type, String symbol)
   {
+    checkModifiable();
     sage.Widget rv = (defaultModule.addWidget(type, symbol));
     if (rv.symbol() != null)
       symbolMap.put(rv.symbol(), rv);
@@ -102,6 +119,7 @@ public class ModuleGroup
 
   public sage.Widget klone(sage.Widget w)
   {
+    checkModifiable();
     sage.Widget rv = defaultModule.kloneWidget(w);
     if (rv.symbol() != null)
       symbolMap.put(rv.symbol(), rv);
@@ -110,12 +128,14 @@ public class ModuleGroup
 
   public void removeWidget(sage.Widget w)
   {
+    checkModifiable();
     symbolMap.remove(w.symbol());
     defaultModule.removeWidget(w);
   }
 
   public void resurrectWidget(sage.Widget w)
   {
+    checkModifiable();
     defaultModule.resurrectWidget(w);
     if (w.symbol() != null)
       symbolMap.put(w.symbol(), w);
@@ -126,13 +146,6 @@ public class ModuleGroup
     defaultModule.retranslate();
   }
 
-  // Cache the last one loaded in case we reload it again so it'll be quick!
-  private static String cachedModuleName;
-  private static tv.sage.mod.Module cachedModule;
-  private static java.util.Map<String, Widget> cachedSymbolMap = new java.util.HashMap<String, Widget>();
-  private static long timestampCachedModule;
-  private static long timestampCachedModuleFile;
-
   public void load(java.util.Properties moduleProperties) throws tv.sage.SageException
   {
     if (moduleProperties == null)
@@ -164,17 +177,6 @@ public class ModuleGroup
       }
 
       java.io.File file = new java.io.File(stvFilename);
-      if (sage.Sage.EMBEDDED && stvFilename.equals(cachedModuleName) && cachedModule != null &&
-          cachedModule.lastModified() < timestampCachedModule &&
-          timestampCachedModuleFile >= file.lastModified())
-      {
-        if (sage.Sage.DBG) System.out.println("Using cached STV module to speed loading!");
-        moduleMap.put(cachedModule.name(), cachedModule);
-
-        defaultModule = cachedModule;
-        cachedModule.setModuleGroup(this);
-        return;
-      }
 
       // Peek at the first 3 bytes of the file to see if it's an STV file
       boolean isSTVFile = isWIZFile(file);
@@ -218,15 +220,7 @@ public class ModuleGroup
       moduleMap.put(mod.name(), mod);
 
       defaultModule = mod;
-      if (sage.Sage.EMBEDDED)
-      {
-        mod.setModuleGroup(this);
-
-        cachedModuleName = stvFilename;
-        timestampCachedModule = sage.Sage.time();
-        cachedModule = mod;
-        timestampCachedModuleFile = file.lastModified() + 10000; //offset it to account for filesystem differences
-      }
+      mod.setModuleGroup(this);
     }
     else // XML
     {
@@ -253,6 +247,7 @@ public class ModuleGroup
 
   public void importXML(java.io.File file, sage.UIManager uiMan) throws tv.sage.SageException
   {
+    checkModifiable();
     if (defaultModule != null)
     {
       defaultModule.importXML(symbolMap, file, uiMan);
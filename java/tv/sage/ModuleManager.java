@@ -96,6 +96,198 @@ public abstract class ModuleManager
     return mg;
   }
 
+  /**
+   * Loads the STV in these properties like loadModuleGroup does, except that it's shared with every other UI that
+   * loads the same STV file. This is only done for STV files; anything else is always loaded on its own. The shared
+   * ModuleGroup is reused for as long as the file doesn't change and it can't be modified, so anything that needs to
+   * edit Widgets has to make its own copy with forkModuleGroup first.
+   */
+  public static ModuleGroup loadSharedModuleGroup(java.util.Properties moduleProperties) throws tv.sage.SageException
+  {
+    String stvFilename = moduleProperties.getProperty("STV");
+    if (stvFilename == null || moduleProperties.getProperty("save") != null ||
+        !sage.Sage.getBoolean("ui/share_loaded_stvs", true))
+      return loadModuleGroup(moduleProperties);
+    if ("true".equalsIgnoreCase(stvFilename))
+      stvFilename = sage.Sage.get(ModuleGroup.DEFAULT_STV_FILENAME_KEY, null);
+    SharedSource src = new SharedSource(new java.io.File(stvFilename), sage.Pooler.EMPTY_STRING_ARRAY);
+    ModuleGroup mg = getSharedModuleGroup(src);
+    if (mg != null)
+    {
+      if (sage.Sage.DBG) System.out.println("Using the already loaded STV that's shared with the other UIs: " + stvFilename);
+      return mg;
+    }
+    mg = loadModuleGroup(moduleProperties);
+    shareModuleGroup(mg, src);
+    return mg;
+  }
+
+  /**
+   * Returns the shared copy of the STV the shared ModuleGroup is for with these STV imports already imported into it,
+   * or null if there isn't one that's current.
+   */
+  public static ModuleGroup getSharedModuleGroup(ModuleGroup base, String[] imports)
+  {
+    if (base.sharedSource == null)
+      return null;
+    return getSharedModuleGroup(new SharedSource(base.sharedSource.file, imports));
+  }
+
+  /**
+   * Shares a copy of the STV the shared ModuleGroup is for that has these STV imports imported into it. The
+   * ModuleGroup can't be modified after this.
+   */
+  public static void shareModuleGroup(ModuleGroup mg, ModuleGroup base, String[] imports)
+  {
+    if (base.sharedSource != null)
+      shareModuleGroup(mg, new SharedSource(base.sharedSource.file, imports));
+  }
+
+  /**
+   * Loads a new copy of the STV file for a shared ModuleGroup that can be modified. The STV imports that were done on
+   * the shared one (see getSharedImports) still need to be imported into it; that's left to the caller since the
+   * STVImported hooks have to see the copy as their UI's ModuleGroup. Widgets keep the same IDs in the copy, which is
+   * why this fails if the file was changed since the shared one was loaded.
+   */
+  public static ModuleGroup forkModuleGroup(ModuleGroup shared) throws tv.sage.SageException
+  {
+    SharedSource src = shared.sharedSource;
+    if (src == null)
+      return shared;
+    checkSameFiles(src);
+    ModuleGroup mg = reloadModuleGroup(shared);
+    // It could have changed while it was loading too
+    checkSameFiles(src);
+    return mg;
+  }
+
+  /**
+   * Loads a new copy of whatever is in the STV file for a shared ModuleGroup now, so unlike forkModuleGroup the
+   * Widgets in it don't necessarily match the shared ones.
+   */
+  public static ModuleGroup reloadModuleGroup(ModuleGroup shared) throws tv.sage.SageException
+  {
+    SharedSource src = shared.sharedSource;
+    if (src == null)
+      return shared;
+    java.util.Properties moduleProperties = new java.util.Properties();
+    moduleProperties.put("STV", src.file.toString());
+    return loadModuleGroup(moduleProperties);
+  }
+
+  private static void checkSameFiles(SharedSource src) throws tv.sage.SageException
+  {
+    if (!src.isSameFiles(new SharedSource(src.file, src.imports)))
+      throw new tv.sage.SageException("The STV was changed since it was loaded so it can't be copied: " + src.file,
+          tv.sage.SageExceptable.INTEGRITY);
+  }
+
+  public static String[] getSharedImports(ModuleGroup shared)
+  {
+    return (shared.sharedSource == null) ? sage.Pooler.EMPTY_STRING_ARRAY : shared.sharedSource.imports;
+  }
+
+  /**
+   * Imports each of the STVIs into the ModuleGroup. This doesn't count as a modification of the STV. A failed import
+   * is logged and then skipped.
+   */
+  public static void importSTVs(ModuleGroup mg, String[] imports, sage.UIManager uiMan)
+  {
+    if (imports.length == 0)
+      return;
+    long oldModTime = mg.defaultModule.lastModified();
+    for (int i = 0; i < imports.length; i++)
+    {
+      if (sage.Sage.DBG) System.out.println("Processing STV import: " + imports[i]);
+      try
+      {
+        mg.importXML(new java.io.File(imports[i]), uiMan);
+      }
+      catch (Exception e)
+      {
+        if (sage.Sage.DBG) System.out.println("ERROR Could not process STV Import properly: " + imports[i] + " cause: " + e);
+      }
+    }
+    mg.defaultModule.forceLastModified(oldModTime);
+  }
+
+  private static ModuleGroup getSharedModuleGroup(SharedSource src)
+  {
+    synchronized (sharedGroups)
+    {
+      java.lang.ref.SoftReference<ModuleGroup> ref = sharedGroups.get(src.key);
+      ModuleGroup mg = (ref == null) ? null : ref.get();
+      if (mg != null && mg.sharedSource.isSameFiles(src))
+        return mg;
+      if (ref != null)
+        sharedGroups.remove(src.key);
+      return null;
+    }
+  }
+
+  private static void shareModuleGroup(ModuleGroup mg, SharedSource src)
+  {
+    // Anything that was changed since the files were checked wouldn't match them anymore
+    if (mg.defaultModule == null || !src.isSameFiles(new SharedSource(src.file, src.imports)))
+      return;
+    mg.sharedSource = src;
+    synchronized (sharedGroups)
+    {
+      sharedGroups.put(src.key, new java.lang.ref.SoftReference<ModuleGroup>(mg));
+    }
+  }
+
+  /*
+   * The files a shared ModuleGroup was loaded from; the STV and then any STV imports in the order they were imported.
+   * The modification times and sizes are from when this was created, so it only matches a newer one while none of the
+   * files have changed.
+   */
+  static final class SharedSource
+  {
+    SharedSource(java.io.File inFile, String[] inImports)
+    {
+      file = inFile;
+      imports = inImports;
+      StringBuilder sb = new StringBuilder();
+      modTimes = new long[imports.length + 1];
+      lengths = new long[imports.length + 1];
+      for (int i = 0; i <= imports.length; i++)
+      {
+        java.io.File f = (i == 0) ? file : new java.io.File(imports[i - 1]);
+        try
+        {
+          f = f.getCanonicalFile();
+        }
+        catch (java.io.IOException e)
+        {
+          f = f.getAbsoluteFile();
+        }
+        if (i > 0)
+          sb.append(java.io.File.pathSeparatorChar);
+        sb.append(f.getPath());
+        modTimes[i] = f.lastModified();
+        lengths[i] = f.length();
+      }
+      key = sb.toString();
+    }
+
+    boolean isSameFiles(SharedSource src)
+    {
+      return key.equals(src.key) && java.util.Arrays.equals(modTimes, src.modTimes) &&
+          java.util.Arrays.equals(lengths, src.lengths);
+    }
+
+    final java.io.File file;
+    final String[] imports;
+    final String key;
+    final long[] modTimes;
+    final long[] lengths;
+  }
+
+  // The shared ModuleGroups by their SharedSource keys, they're soft so they can go away while no UI is using them
+  private static final java.util.Map<String, java.lang.ref.SoftReference<ModuleGroup>> sharedGroups =
+      new java.util.HashMap<String, java.lang.ref.SoftReference<ModuleGroup>>();
+
   /**
    * Get the default Module properties from the default place.
    */
@@ -77,6 +77,11 @@ public class Module implements tv.sage.Modular
     myGroup = inGroup;
   }
 
+  public tv.sage.ModuleGroup getModuleGroup()
+  {
+    return myGroup;
+  }
+
   // This is used for XBMC skin loading to optimize performance and so there's
   // consistency when different users load the exact same XBMC files
   public void setBatchLoad(boolean x)
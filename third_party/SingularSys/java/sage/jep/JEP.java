@@ -46,6 +46,8 @@ public final class JEP {
   // If we're simply a constant, then store that so we can return it quickly
   private boolean fastResultSet;
   private Object fastResult;
+  // If the constant came from folding operators; then the expression text may still need focus/paging listeners
+  private boolean foldedResult;
   private String fastVarLookup;
 
   private boolean specialVarMatch;
@@ -110,7 +112,7 @@ public final class JEP {
 
   public boolean isConstant()
   {
-    return fastResultSet;
+    return fastResultSet && !(foldedResult && (specialVarMatch || volatileVarMatch || volatileVarMatch2));
   }
 
   public Boolean getConstantBoolResult()
@@ -222,6 +224,7 @@ public final class JEP {
         {
           fastResultSet = true;
           fastResult = fastNodes[0].value;
+          foldedResult = compiler.folded;
         }
         else if (fastNodes[0].type == CommandElement.VAR)
         {
@@ -391,6 +394,16 @@ public final class JEP {
     Object result;
     if (fastResultSet)
     {
+      if (foldedResult && inUIComp != null)
+      {
+        // Something like "Focused" + "" still needs to set these up like it did before it was folded
+        if (specialVarMatch)
+          inUIComp.setPagingListenState(true);
+        if (volatileVarMatch)
+          inUIComp.setFocusListenState(sage.ZPseudoComp.PARENT_FOCUS_CHANGES);
+        if (volatileVarMatch2)
+          inUIComp.setFocusListenState(sage.ZPseudoComp.ALL_FOCUS_CHANGES);
+      }
       // These are always constants so we don't need to worry about it matching a special/volatile variable; even on the assignment
       if (assignmentVar != null)
       {
@@ -607,6 +620,9 @@ public final class JEP {
   public static class ExpressionCompiler implements ParserVisitor {
     /** Commands */
     private ArrayList commands;
+    /** True if the last compile folded any operators into constants */
+    boolean folded;
+    private sage.Catbert.FastStack foldStack = new sage.Catbert.FastStack();
 
     public ExpressionCompiler() {
       commands = new ArrayList();
@@ -614,6 +630,7 @@ public final class JEP {
 
     public CommandElement[] compile(Node node) throws ParseException{
       commands.clear();
+      folded = false;
       node.jjtAccept(this, null);
       CommandElement[] temp = new CommandElement[commands.size()];
       Iterator en = commands.listIterator();
@@ -631,11 +648,55 @@ public final class JEP {
       c.type = CommandElement.FUNC;
       c.pfmc = node.getPFMC();
       c.nParam = node.jjtGetNumChildren();
-      commands.add(c);
+      if (!foldConstants(c))
+        commands.add(c);
 
       return data;
     }
 
+    /**
+     * Evaluates an operator now if all of its arguments are constants, and replaces them with the result. Only the
+     * operators are done since they only depend on their arguments; every node gets its own instance of them from the
+     * Parser so this can't interfere with another evaluation. If the operator fails it's left alone so the error still
+     * happens when it's evaluated.
+     */
+    private boolean foldConstants(CommandElement c) {
+      if (!(c.pfmc instanceof Add || c.pfmc instanceof Subtract || c.pfmc instanceof Multiply ||
+          c.pfmc instanceof Divide || c.pfmc instanceof Modulus || c.pfmc instanceof Power ||
+          c.pfmc instanceof UMinus || c.pfmc instanceof Not || c.pfmc instanceof Logical ||
+          c.pfmc instanceof Comparative))
+        return false;
+      int numCommands = commands.size();
+      if (c.nParam < 1 || c.nParam > numCommands)
+        return false;
+      for (int i = numCommands - c.nParam; i < numCommands; i++)
+        if (((CommandElement) commands.get(i)).type != CommandElement.CONST)
+          return false;
+      Object value;
+      try {
+        foldStack.clear();
+        for (int i = numCommands - c.nParam; i < numCommands; i++)
+          foldStack.push(((CommandElement) commands.get(i)).value);
+        c.pfmc.setCurNumberOfParameters(c.nParam);
+        c.pfmc.run(foldStack);
+        if (foldStack.size() != 1)
+          return false;
+        value = foldStack.pop();
+      } catch (Exception e) {
+        return false;
+      } finally {
+        foldStack.clear();
+      }
+      for (int i = 0; i < c.nParam; i++)
+        commands.remove(commands.size() - 1);
+      CommandElement folded = new CommandElement();
+      folded.type = CommandElement.CONST;
+      folded.value = value;
+      commands.add(folded);
+      this.folded = true;
+      return true;
+    }
+
     public Object visit(ASTVarNode node, Object data) {
       CommandElement c = new CommandElement();
       // Check for constants here to make it faster